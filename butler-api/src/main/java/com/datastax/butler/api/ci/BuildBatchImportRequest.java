@@ -0,0 +1,21 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.api.ci;
+
+import java.util.List;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Request to import many RAW builds at once, possibly of different jobs (see {@link
+ * BuildImportRequest}).
+ *
+ * <p>Rationale: to backfill the history of an external CI without one request per build.
+ */
+@Value
+public class BuildBatchImportRequest {
+  @NonNull List<BuildImportRequest> builds;
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.api.ci;
+
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import lombok.Value;
+
+/**
+ * Result of the import of a build of a {@link BuildBatchImportRequest}.
+ *
+ * <p>The build id is missing if the build of the request is invalid.
+ */
+@Value
+@JsonInclude(Include.NON_NULL)
+public class BuildImportResult {
+  BuildId buildId;
+  boolean imported;
+  String error;
+
+  public static BuildImportResult imported(BuildId buildId) {
+    return new BuildImportResult(buildId, true, null);
+  }
+
+  public static BuildImportResult failed(BuildId buildId, String error) {
+    return new BuildImportResult(buildId, false, error);
+  }
+}
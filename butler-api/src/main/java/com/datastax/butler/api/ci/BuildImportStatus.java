@@ -0,0 +1,34 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.api.ci;
+
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.util.UUID;
+import lombok.Value;
+
+/**
+ * Status of an asynchronous raw build import.
+ *
+ * <p>Once finished it contains the error that made the import fail, if any.
+ */
+@Value
+@JsonInclude(Include.NON_NULL)
+public class BuildImportStatus {
+  UUID taskId;
+  BuildId buildId;
+  boolean finished;
+  String error;
+
+  public static BuildImportStatus pending(UUID taskId, BuildId buildId) {
+    return new BuildImportStatus(taskId, buildId, false, null);
+  }
+
+  public static BuildImportStatus rejected(BuildId buildId, String error) {
+    return new BuildImportStatus(null, buildId, true, error);
+  }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.api.client;
+
+import com.datastax.butler.api.ci.BuildBatchImportRequest;
+import com.datastax.butler.api.ci.BuildImportRequest;
+import com.datastax.butler.api.ci.BuildImportResult;
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.json.Json;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Client uploading builds to butler from CI agents, without slowing them down.
+ *
+ * <p>Builds are {@link #submit submitted} to a bounded buffer, and uploaded in the background by a
+ * single thread: small builds are grouped (for up to {@link Builder#linger}) and uploaded in
+ * batches to {@code /api/ci/builds/import/raw/batch}, while builds with many tests are streamed one
+ * by one as NDJSON to {@code /api/ci/builds/import/raw/stream}, so that neither the client nor
+ * butler holds them encoded in memory as a whole. All the uploads are compressed with gzip, and
+ * retried with an exponential backoff when butler is unavailable or overloaded (429 and 5xx
+ * responses, whose {@code Retry-After} is honored).
+ *
+ * <pre>{@code
+ * try (var client = ButlerClient.builder(URI.create("http://butler:8080")).build()) {
+ *   client.submit(build).thenAccept(result -> ...);
+ * }
+ * }</pre>
+ */
+public class ButlerClient implements AutoCloseable {
+  private static final Logger logger = LogManager.getLogger();
+
+  static final String BATCH_PATH = "api/ci/builds/import/raw/batch";
+  static final String STREAM_PATH = "api/ci/builds/import/raw/stream";
+
+  /** Maximum number of builds of a batch, larger batches being rejected by the server. */
+  public static final int MAX_BATCH_SIZE = 1000;
+
+  private static final String JSON_TYPE = "application/json";
+  private static final String NDJSON_TYPE = "application/x-ndjson";
+  /** How long the sender waits for builds before checking whether the client is closed. */
+  private static final Duration IDLE_POLL = Duration.ofMillis(100);
+  /** Number of test runs encoded at a time when streaming a build. */
+  private static final int STREAM_CHUNK_RUNS = 256;
+
+  private final URI baseUri;
+  private final String token;
+  private final int batchSize;
+  private final int maxBatchTests;
+  private final int streamThreshold;
+  private final Duration linger;
+  private final int maxRetries;
+  private final Duration initialBackoff;
+  private final Duration maxBackoff;
+  private final Duration requestTimeout;
+  private final Duration submitTimeout;
+  private final int bufferCapacity;
+
+  private final ObjectMapper mapper = Json.mapper();
+  private final HttpClient http;
+  private final BlockingQueue<Upload> buffer;
+  private final Thread sender;
+  private volatile boolean closed;
+
+  private ButlerClient(Builder builder) {
+    String base = builder.baseUri.toString();
+    this.baseUri = URI.create(base.endsWith("/") ? base : base + "/");
+    this.token = builder.token;
+    this.batchSize = builder.batchSize;
+    this.maxBatchTests = builder.maxBatchTests;
+    this.streamThreshold = builder.streamThreshold;
+    this.linger = builder.linger;
+    this.maxRetries = builder.maxRetries;
+    this.initialBackoff = builder.initialBackoff;
+    this.maxBackoff = builder.maxBackoff;
+    this.requestTimeout = builder.requestTimeout;
+    this.submitTimeout = builder.submitTimeout;
+    this.bufferCapacity = builder.bufferCapacity;
+    this.http = HttpClient.newBuilder().connectTimeout(requestTimeout).build();
+    this.buffer = new ArrayBlockingQueue<>(bufferCapacity);
+    this.sender = new Thread(this::sendAll, "butler-client-sender");
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  /** Creates a builder of a client uploading to the butler at the provided URI. */
+  public static Builder builder(URI baseUri) {
+    return new Builder(baseUri);
+  }
+
+  /**
+   * Submits a build to upload.
+   *
+   * <p>This never blocks for longer than the submit timeout (not at all by default): if the buffer
+   * is full, because builds are submitted faster than they can be uploaded, the returned future
+   * fails right away, so that the caller can decide to wait, retry or drop the build.
+   *
+   * @param build the build to upload
+   * @return the result of the import of the build, failed with a {@link ButlerClientException} if
+   *     the build could not be uploaded
+   * @throws IllegalStateException if the client is closed
+   */
+  public CompletableFuture<BuildImportResult> submit(BuildImportRequest build) {
+    if (closed) {
+      throw new IllegalStateException("The client is closed");
+    }
+    var upload = new Upload(build);
+    boolean buffered;
+    try {
+      buffered =
+          submitTimeout.isZero()
+              ? buffer.offer(upload)
+              : buffer.offer(upload, submitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      buffered = false;
+    }
+    if (!buffered) {
+      String msg = String.format("The upload buffer is full (%d builds)", bufferCapacity);
+      upload.result.completeExceptionally(new ButlerClientException(0, msg));
+    }
+    return upload.result;
+  }
+
+  /** Uploads the builds submitted so far, waiting for their uploads, and stops the client. */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      sender.join();
+    } catch (InterruptedException e) {
+      sender.interrupt();
+      Thread.currentThread().interrupt();
+    }
+    // builds submitted concurrently with the closing, after the sender stopped
+    List<Upload> remaining = new ArrayList<>();
+    buffer.drainTo(remaining);
+    fail(remaining, new ButlerClientException(0, "The client was closed"));
+  }
+
+  private void sendAll() {
+    try {
+      while (!closed || !buffer.isEmpty()) {
+        var first = buffer.poll(IDLE_POLL.toMillis(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        if (first.numTests() > streamThreshold) {
+          stream(first);
+          continue;
+        }
+        List<Upload> batch = new ArrayList<>(List.of(first));
+        long batchTests = first.numTests();
+        long deadline = System.nanoTime() + linger.toNanos();
+        while (batch.size() < batchSize) {
+          long wait = closed ? 0 : deadline - System.nanoTime();
+          var next = wait > 0 ? buffer.poll(wait, TimeUnit.NANOSECONDS) : buffer.poll();
+          if (next == null) {
+            break;
+          }
+          if (next.numTests() > streamThreshold) {
+            stream(next);
+          } else {
+            if (batchTests + next.numTests() > maxBatchTests) {
+              sendBatch(batch);
+              batch = new ArrayList<>();
+              batchTests = 0;
+            }
+            batch.add(next);
+            batchTests += next.numTests();
+          }
+        }
+        sendBatch(batch);
+      }
+    } catch (InterruptedException e) {
+      logger.warn("Interrupted while uploading builds, {} builds not uploaded", buffer.size());
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void sendBatch(List<Upload> batch) throws InterruptedException {
+    try {
+      var builds = batch.stream().map(u -> u.build).collect(Collectors.toList());
+      byte[] body = gzip(mapper.writeValueAsBytes(new BuildBatchImportRequest(builds)));
+      var response =
+          send(
+              () ->
+                  request(BATCH_PATH)
+                      .header("Content-Type", JSON_TYPE)
+                      .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                      .build());
+      List<BuildImportResult> results =
+          mapper.readValue(response.body(), new TypeReference<List<BuildImportResult>>() {});
+      if (results.size() != batch.size()) {
+        String msg = String.format("Expected %d results, got %d", batch.size(), results.size());
+        throw new ButlerClientException(response.statusCode(), msg);
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        batch.get(i).result.complete(results.get(i));
+      }
+      logger.debug("Uploaded a batch of {} builds", batch.size());
+    } catch (IOException e) {
+      fail(batch, new ButlerClientException("Error reading the result of a batch upload", e));
+    } catch (RuntimeException e) {
+      fail(batch, e);
+    }
+  }
+
+  private void stream(Upload upload) throws InterruptedException {
+    var build = upload.build;
+    var header =
+        new BuildImportRequest(
+            build.workflow(),
+            build.branch(),
+            build.buildNumber(),
+            build.startTime(),
+            build.durationMs(),
+            build.url(),
+            null);
+    try {
+      var response =
+          send(
+              () ->
+                  request(STREAM_PATH)
+                      .header("Content-Type", NDJSON_TYPE)
+                      .POST(
+                          HttpRequest.BodyPublishers.ofInputStream(
+                              () -> new NdjsonStream(header, build.tests())))
+                      .build());
+      var buildId = mapper.readValue(response.body(), BuildId.class);
+      upload.result.complete(BuildImportResult.imported(buildId));
+      logger.debug("Streamed {} with {} tests", buildId, build.numTests());
+    } catch (IOException e) {
+      var error = new ButlerClientException("Error reading the result of a streamed upload", e);
+      upload.result.completeExceptionally(error);
+    } catch (RuntimeException e) {
+      upload.result.completeExceptionally(e);
+    }
+  }
+
+  /** A request to butler, whose body is compressed with gzip. */
+  private HttpRequest.Builder request(String path) {
+    var request =
+        HttpRequest.newBuilder(baseUri.resolve(path))
+            .timeout(requestTimeout)
+            .header("Accept", JSON_TYPE);
+    if (token != null) {
+      request.header("Authorization", "Bearer " + token);
+    }
+    return request.header("Content-Encoding", "gzip");
+  }
+
+  /**
+   * Sends a request, retrying it with an exponential backoff (with jitter) on connection errors,
+   * 429 and 5xx responses.
+   *
+   * @param request supplies the request to send, once per attempt (so that streamed bodies are
+   *     encoded again)
+   * @return the successful response
+   * @throws ButlerClientException if the request failed with another status, or after all retries
+   */
+  private HttpResponse<byte[]> send(Supplier<HttpRequest> request) throws InterruptedException {
+    Duration backoff = initialBackoff;
+    for (int attempt = 0; ; attempt++) {
+      Optional<Duration> retryAfter = Optional.empty();
+      try {
+        var response = http.send(request.get(), HttpResponse.BodyHandlers.ofByteArray());
+        int status = response.statusCode();
+        if (status >= 200 && status < 300) {
+          return response;
+        }
+        String msg =
+            String.format(
+                "Upload failed with status %d: %s",
+                status, new String(response.body(), StandardCharsets.UTF_8));
+        if ((status != 429 && status < 500) || attempt >= maxRetries) {
+          throw new ButlerClientException(status, msg);
+        }
+        logger.warn("{}, retrying (attempt {} of {})", msg, attempt + 1, maxRetries);
+        retryAfter = retryAfter(response);
+      } catch (IOException e) {
+        if (attempt >= maxRetries) {
+          throw new ButlerClientException("Upload failed: " + e.getMessage(), e);
+        }
+        logger.warn("Upload failed, retrying (attempt {} of {})", attempt + 1, maxRetries, e);
+      }
+      // waits between half and all of the backoff, so that agents failing together retry apart
+      long half = backoff.toMillis() / 2;
+      long jittered = half + ThreadLocalRandom.current().nextLong(half + 1);
+      Thread.sleep(retryAfter.map(Duration::toMillis).orElse(jittered));
+      var doubled = backoff.multipliedBy(2);
+      backoff = doubled.compareTo(maxBackoff) > 0 ? maxBackoff : doubled;
+    }
+  }
+
+  /** The delay of a Retry-After header, if it is set as a number of seconds. */
+  private static Optional<Duration> retryAfter(HttpResponse<?> response) {
+    return response
+        .headers()
+        .firstValue("Retry-After")
+        .filter(v -> v.matches("\\d+"))
+        .map(v -> Duration.ofSeconds(Long.parseLong(v)));
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    var compressed = new ByteArrayOutputStream(bytes.length / 4);
+    try (var out = new GZIPOutputStream(compressed)) {
+      out.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return compressed.toByteArray();
+  }
+
+  private static void fail(List<Upload> uploads, Throwable error) {
+    uploads.forEach(u -> u.result.completeExceptionally(error));
+  }
+
+  /** A build submitted for upload, and the result of its import. */
+  private static class Upload {
+    private final BuildImportRequest build;
+    private final CompletableFuture<BuildImportResult> result = new CompletableFuture<>();
+
+    private Upload(BuildImportRequest build) {
+      this.build = build;
+    }
+
+    private long numTests() {
+      return build.tests() == null ? 0 : build.numTests();
+    }
+  }
+
+  /**
+   * The gzipped NDJSON of a build (the build without its tests, then its test runs), encoded a few
+   * test runs at a time as it is read.
+   */
+  private class NdjsonStream extends InputStream {
+    private final Iterator<?> values;
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    private final SequenceWriter writer;
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean finished;
+
+    private NdjsonStream(BuildImportRequest header, List<BuildImportRequest.TestRun> runs) {
+      this.values = Stream.concat(Stream.of(header), runs.stream()).iterator();
+      try {
+        this.writer =
+            mapper.writer().withRootValueSeparator("\n").writeValues(new GZIPOutputStream(encoded));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      while (position == chunk.length) {
+        if (finished) {
+          return -1;
+        }
+        encodeChunk();
+      }
+      int read = Math.min(len, chunk.length - position);
+      System.arraycopy(chunk, position, b, off, read);
+      position += read;
+      return read;
+    }
+
+    private void encodeChunk() throws IOException {
+      for (int i = 0; i < STREAM_CHUNK_RUNS && values.hasNext(); i++) {
+        writer.write(values.next());
+      }
+      if (values.hasNext()) {
+        writer.flush();
+      } else {
+        // also finishes the gzip stream
+        writer.close();
+        finished = true;
+      }
+      chunk = encoded.toByteArray();
+      encoded.reset();
+      position = 0;
+    }
+  }
+
+  /** Builder of {@link ButlerClient}, whose defaults suit most CI agents. */
+  public static class Builder {
+    private final URI baseUri;
+    private String token;
+    private int batchSize = 50;
+    private int maxBatchTests = 20_000;
+    private int streamThreshold = 10_000;
+    private int bufferCapacity = 1000;
+    private Duration linger = Duration.ofSeconds(1);
+    private int maxRetries = 5;
+    private Duration initialBackoff = Duration.ofMillis(500);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+    private Duration requestTimeout = Duration.ofMinutes(5);
+    private Duration submitTimeout = Duration.ZERO;
+
+    private Builder(URI baseUri) {
+      this.baseUri = baseUri;
+    }
+
+    /** The JWT token to authenticate with, if butler requires it. */
+    public Builder token(String token) {
+      this.token = token;
+      return this;
+    }
+
+    /** The maximum number of builds uploaded in a batch (50 by default, at most 1000). */
+    public Builder batchSize(int batchSize) {
+      if (batchSize > MAX_BATCH_SIZE) {
+        throw new IllegalArgumentException(
+            String.format("batchSize must be at most %d, got %d", MAX_BATCH_SIZE, batchSize));
+      }
+      this.batchSize = positive("batchSize", batchSize);
+      return this;
+    }
+
+    /** The maximum number of tests of the builds of a batch (20000 by default). */
+    public Builder maxBatchTests(int maxBatchTests) {
+      this.maxBatchTests = positive("maxBatchTests", maxBatchTests);
+      return this;
+    }
+
+    /** The number of tests above which a build is streamed rather than batched (10000 default). */
+    public Builder streamThreshold(int streamThreshold) {
+      this.streamThreshold = positive("streamThreshold", streamThreshold);
+      return this;
+    }
+
+    /** The maximum number of builds submitted and not uploaded yet (1000 by default). */
+    public Builder bufferCapacity(int bufferCapacity) {
+      this.bufferCapacity = positive("bufferCapacity", bufferCapacity);
+      return this;
+    }
+
+    /** How long to wait for more builds to fill a batch (1 second by default). */
+    public Builder linger(Duration linger) {
+      this.linger = linger;
+      return this;
+    }
+
+    /** The maximum number of retries of an upload (5 by default). */
+    public Builder maxRetries(int maxRetries) {
+      if (maxRetries < 0) {
+        throw new IllegalArgumentException("maxRetries must not be negative, got " + maxRetries);
+      }
+      this.maxRetries = maxRetries;
+      return this;
+    }
+
+    /** The delays between retries, doubled from the initial to the maximum one. */
+    public Builder backoff(Duration initialBackoff, Duration maxBackoff) {
+      if (initialBackoff.compareTo(maxBackoff) > 0) {
+        throw new IllegalArgumentException("The initial backoff exceeds the maximum backoff");
+      }
+      this.initialBackoff = initialBackoff;
+      this.maxBackoff = maxBackoff;
+      return this;
+    }
+
+    /** The timeout of each upload request (5 minutes by default). */
+    public Builder requestTimeout(Duration requestTimeout) {
+      this.requestTimeout = requestTimeout;
+      return this;
+    }
+
+    /** How long {@link ButlerClient#submit} waits for room in a full buffer (none by default). */
+    public Builder submitTimeout(Duration submitTimeout) {
+      this.submitTimeout = submitTimeout;
+      return this;
+    }
+
+    public ButlerClient build() {
+      return new ButlerClient(this);
+    }
+
+    private static int positive(String name, int value) {
+      if (value <= 0) {
+        throw new IllegalArgumentException(name + " must be positive, got " + value);
+      }
+      return value;
+    }
+  }
+}
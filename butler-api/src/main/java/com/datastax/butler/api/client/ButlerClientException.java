@@ -0,0 +1,31 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.api.client;
+
+/**
+ * Error of an upload of {@link ButlerClient}, once it has been retried as configured (or right away
+ * if it cannot succeed by being retried).
+ */
+public class ButlerClientException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+
+  ButlerClientException(int statusCode, String message) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  ButlerClientException(String message, Throwable cause) {
+    super(message, cause);
+    this.statusCode = 0;
+  }
+
+  /** The HTTP status of the last response of butler, or 0 if there was no response. */
+  public int statusCode() {
+    return statusCode;
+  }
+}
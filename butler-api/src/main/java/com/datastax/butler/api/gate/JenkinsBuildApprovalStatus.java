@@ -0,0 +1,39 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.api.gate;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.util.UUID;
+import lombok.Value;
+
+/**
+ * Status of the asynchronous build approval request.
+ *
+ * <p>Once finished it contains either the approval response or the error that prevented making the
+ * decision.
+ */
+@Value
+@JsonInclude(Include.NON_NULL)
+public class JenkinsBuildApprovalStatus {
+  UUID decisionId;
+  boolean finished;
+  String error;
+  JenkinsBuildApprovalResponse response;
+
+  public static JenkinsBuildApprovalStatus pending(UUID decisionId) {
+    return new JenkinsBuildApprovalStatus(decisionId, false, null, null);
+  }
+
+  public static JenkinsBuildApprovalStatus done(
+      UUID decisionId, JenkinsBuildApprovalResponse response) {
+    return new JenkinsBuildApprovalStatus(decisionId, true, null, response);
+  }
+
+  public static JenkinsBuildApprovalStatus failed(UUID decisionId, String error) {
+    return new JenkinsBuildApprovalStatus(decisionId, true, error, null);
+  }
+}
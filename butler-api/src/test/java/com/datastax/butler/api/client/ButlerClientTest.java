@@ -0,0 +1,266 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.api.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.api.ci.BuildBatchImportRequest;
+import com.datastax.butler.api.ci.BuildImportRequest;
+import com.datastax.butler.api.ci.BuildImportResult;
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.json.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ButlerClientTest {
+  private HttpServer server;
+  /** Requests received by the server: their path, content type and decompressed body. */
+  private final Queue<Received> received = new ConcurrentLinkedQueue<>();
+  /** Statuses to respond with before succeeding, in order. */
+  private final Queue<Integer> failures = new ConcurrentLinkedQueue<>();
+
+  private static class Received {
+    private final String path;
+    private final String contentType;
+    private final String authorization;
+    private final String body;
+
+    private Received(String path, String contentType, String authorization, String body) {
+      this.path = path;
+      this.contentType = contentType;
+      this.authorization = authorization;
+      this.body = body;
+    }
+  }
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  /** Responds as butler would, unless a failure status is queued. */
+  private void handle(HttpExchange exchange) throws IOException {
+    var headers = exchange.getRequestHeaders();
+    InputStream in = exchange.getRequestBody();
+    if ("gzip".equals(headers.getFirst("Content-Encoding"))) {
+      in = new GZIPInputStream(in);
+    }
+    String path = exchange.getRequestURI().getPath();
+    String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    received.add(
+        new Received(
+            path, headers.getFirst("Content-Type"), headers.getFirst("Authorization"), body));
+
+    Integer failure = failures.poll();
+    byte[] response;
+    if (failure != null) {
+      exchange.getResponseHeaders().add("Retry-After", "0");
+      response = "overloaded".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(failure, response.length);
+    } else {
+      if (path.endsWith("/batch")) {
+        var batch = Json.mapper().readValue(body, BuildBatchImportRequest.class);
+        var results =
+            batch.builds().stream()
+                .map(b -> BuildImportResult.imported(buildId(b)))
+                .collect(Collectors.toList());
+        response = Json.mapper().writeValueAsBytes(results);
+      } else {
+        String header = body.substring(0, body.indexOf('\n'));
+        var build = Json.mapper().readValue(header, BuildImportRequest.class);
+        response = Json.mapper().writeValueAsBytes(buildId(build));
+      }
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, response.length);
+    }
+    exchange.getResponseBody().write(response);
+    exchange.close();
+  }
+
+  private static BuildId buildId(BuildImportRequest build) {
+    var jobId = JobId.forWorkflowAndBranch(build.workflow(), build.branch());
+    return new BuildId(jobId, build.buildNumber());
+  }
+
+  private ButlerClient.Builder client() {
+    var address = server.getAddress();
+    return ButlerClient.builder(URI.create("http://localhost:" + address.getPort()))
+        .backoff(Duration.ofMillis(1), Duration.ofMillis(10));
+  }
+
+  private static BuildImportRequest build(int buildNumber, int numTests) {
+    var runs =
+        IntStream.range(0, numTests)
+            .mapToObj(
+                i ->
+                    new BuildImportRequest.TestRun(
+                        "Suite", "test" + i, null, null, i == 0, false, 10, null, null))
+            .collect(Collectors.toList());
+    return new BuildImportRequest("ci", "main", buildNumber, 0, 100, null, runs);
+  }
+
+  @Test
+  void shouldUploadSmallBuildsInBatches() throws Exception {
+    List<BuildImportResult> results = new ArrayList<>();
+    try (var client = client().batchSize(3).linger(Duration.ofSeconds(10)).token("t").build()) {
+      var futures = List.of(client.submit(build(1, 2)), client.submit(build(2, 2)));
+      var last = client.submit(build(3, 2));
+      for (var future : futures) {
+        results.add(future.get(10, TimeUnit.SECONDS));
+      }
+      results.add(last.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(
+        List.of(1, 2, 3),
+        results.stream().map(r -> r.buildId().buildNumber()).collect(Collectors.toList()));
+    assertTrue(results.stream().allMatch(BuildImportResult::imported));
+
+    assertEquals(1, received.size());
+    var request = received.peek();
+    assertEquals("/" + ButlerClient.BATCH_PATH, request.path);
+    assertEquals("application/json", request.contentType);
+    assertEquals("Bearer t", request.authorization);
+    var batch = Json.mapper().readValue(request.body, BuildBatchImportRequest.class);
+    assertEquals(build(2, 2), batch.builds().get(1));
+  }
+
+  @Test
+  void shouldLimitTheTestsOfBatches() throws Exception {
+    try (var client = client().maxBatchTests(5).linger(Duration.ofMillis(200)).build()) {
+      var first = client.submit(build(1, 3));
+      var second = client.submit(build(2, 3));
+      first.get(10, TimeUnit.SECONDS);
+      second.get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(2, received.size());
+  }
+
+  @Test
+  void shouldStreamLargeBuilds() throws Exception {
+    BuildImportResult result;
+    try (var client = client().streamThreshold(1000).build()) {
+      result = client.submit(build(7, 2000)).get(10, TimeUnit.SECONDS);
+    }
+    assertTrue(result.imported());
+    assertEquals(7, result.buildId().buildNumber());
+
+    var request = received.peek();
+    assertEquals("/" + ButlerClient.STREAM_PATH, request.path);
+    assertEquals("application/x-ndjson", request.contentType);
+    var lines = request.body.split("\n");
+    assertEquals(2001, lines.length);
+    var header = Json.mapper().readValue(lines[0], BuildImportRequest.class);
+    assertEquals(7, header.buildNumber());
+    assertNull(header.tests());
+    var lastRun = Json.mapper().readValue(lines[2000], BuildImportRequest.TestRun.class);
+    assertEquals("test1999", lastRun.testCase());
+  }
+
+  @Test
+  void shouldRetryWhenButlerIsOverloadedOrUnavailable() throws Exception {
+    failures.add(429);
+    failures.add(503);
+    try (var client = client().linger(Duration.ZERO).build()) {
+      assertTrue(client.submit(build(1, 1)).get(10, TimeUnit.SECONDS).imported());
+      failures.add(500);
+      assertTrue(client.submit(build(2, 5000)).get(10, TimeUnit.SECONDS).imported());
+    }
+    assertEquals(5, received.size());
+    // streamed bodies are encoded again for each attempt
+    received.stream()
+        .filter(r -> r.path.endsWith("/stream"))
+        .forEach(r -> assertEquals(5001, r.body.split("\n").length));
+  }
+
+  @Test
+  void shouldFailAfterTheLastRetryOrOnClientErrors() throws Exception {
+    failures.add(503);
+    failures.add(503);
+    failures.add(400);
+    try (var client = client().linger(Duration.ZERO).maxRetries(1).build()) {
+      var exhausted = client.submit(build(1, 1));
+      var error = assertThrows(ExecutionException.class, () -> exhausted.get(10, TimeUnit.SECONDS));
+      assertEquals(503, ((ButlerClientException) error.getCause()).statusCode());
+
+      var invalid = client.submit(build(2, 1));
+      error = assertThrows(ExecutionException.class, () -> invalid.get(10, TimeUnit.SECONDS));
+      assertEquals(400, ((ButlerClientException) error.getCause()).statusCode());
+    }
+    assertEquals(3, received.size());
+  }
+
+  @Test
+  void shouldFailSubmissionsWhenTheBufferIsFull() throws Exception {
+    var uploading = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    server.removeContext("/");
+    server.createContext(
+        "/",
+        exchange -> {
+          uploading.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          handle(exchange);
+        });
+
+    try (var client = client().batchSize(1).bufferCapacity(1).build()) {
+      var first = client.submit(build(1, 1));
+      assertTrue(uploading.await(10, TimeUnit.SECONDS));
+      var second = client.submit(build(2, 1));
+      var third = client.submit(build(3, 1));
+
+      var error = assertThrows(ExecutionException.class, () -> third.get(1, TimeUnit.SECONDS));
+      assertTrue(error.getCause() instanceof ButlerClientException);
+      release.countDown();
+      assertTrue(first.get(10, TimeUnit.SECONDS).imported());
+      assertTrue(second.get(10, TimeUnit.SECONDS).imported());
+    }
+  }
+
+  @Test
+  void shouldRejectSubmissionsOnceClosed() {
+    var client = client().build();
+    client.close();
+    assertThrows(IllegalStateException.class, () -> client.submit(build(1, 1)));
+  }
+
+  @Test
+  void shouldRejectBatchesLargerThanAcceptedByServer() {
+    assertThrows(
+        IllegalArgumentException.class, () -> client().batchSize(ButlerClient.MAX_BATCH_SIZE + 1));
+    client().batchSize(ButlerClient.MAX_BATCH_SIZE).build().close();
+  }
+}
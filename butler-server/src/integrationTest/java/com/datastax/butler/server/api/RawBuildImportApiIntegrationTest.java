@@ -73,6 +73,13 @@ public class RawBuildImportApiIntegrationTest extends IntegrationTest {
     // it was run 6 times (2 variants x 3 builds) with 2 failures
     assertEquals(2, failedTest.failedCount());
     assertEquals(6, failedTest.runs());
+    // details of many tests are fetched at once, unknown tests being omitted
+    var unknownTest = new TestName(failedTest.test().category(), "com.example", "Nope", "test");
+    var details =
+        upstreamFailuresRepository.getFailureDetails(List.of(failedTest.test(), unknownTest));
+    assertEquals(Set.of(failedTest.test()), details.keySet());
+    assertEquals(2, details.get(failedTest.test()).failedCount());
+    assertEquals(6, details.get(failedTest.test()).runs());
     // and comparison should show 2 failures
     assertEquals(2, changeVsMain.size());
     var changeFailures = changeVsMain.get(0);
@@ -0,0 +1,79 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.server.IntegrationTest;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+public class AuthoritiesDbIntegrationTest extends IntegrationTest {
+
+  private static final List<SimpleGrantedAuthority> ADMIN =
+      List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+  @Autowired private AuthoritiesDb authoritiesRepository;
+  @Autowired private UsersDb usersRepository;
+  @Autowired private NamedParameterJdbcTemplate template;
+
+  private String randomUser() {
+    return "user-" + randomBranch();
+  }
+
+  @Test
+  void shouldSeeRoleChangeWithoutWaitingForExpiration() {
+    // given
+    var user = randomUser();
+    usersRepository.add(user, "password");
+    Assertions.assertEquals(List.of(), authoritiesRepository.grantedAuthorities(user));
+
+    // when
+    authoritiesRepository.setAdmin(user);
+
+    // then
+    Assertions.assertEquals(ADMIN, authoritiesRepository.grantedAuthorities(user));
+  }
+
+  @Test
+  void shouldOnlyGrantAuthoritiesOfTheUser() {
+    // given
+    var admin = randomUser();
+    var user = randomUser();
+    usersRepository.add(admin, "password");
+    usersRepository.add(user, "password");
+
+    // when
+    authoritiesRepository.setAdmin(admin);
+
+    // then: whichever is read first, and once cached
+    for (int i = 0; i < 2; i++) {
+      Assertions.assertEquals(List.of(), authoritiesRepository.grantedAuthorities(user));
+      Assertions.assertEquals(ADMIN, authoritiesRepository.grantedAuthorities(admin));
+    }
+  }
+
+  @Test
+  void shouldNotGrantAuthoritiesOfPreviousUserWithSameName() {
+    // given: an admin removed outside of butler, which also removes its authorities
+    var user = randomUser();
+    usersRepository.add(user, "password");
+    authoritiesRepository.setAdmin(user);
+    Assertions.assertEquals(ADMIN, authoritiesRepository.grantedAuthorities(user));
+    template.update(
+        String.format("DELETE FROM %s WHERE username=:username", UsersDb.TABLE),
+        Map.of("username", user));
+
+    // when
+    usersRepository.add(user, "password");
+
+    // then
+    Assertions.assertEquals(List.of(), authoritiesRepository.grantedAuthorities(user));
+  }
+}
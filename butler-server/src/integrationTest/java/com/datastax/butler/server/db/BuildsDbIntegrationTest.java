@@ -10,6 +10,9 @@ import com.datastax.butler.commons.dev.Branch;
 import com.datastax.butler.commons.jenkins.BuildId;
 import com.datastax.butler.commons.jenkins.JenkinsBuild;
 import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestCategory;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.commons.jenkins.TestVariant;
 import com.datastax.butler.commons.jenkins.WorkflowId;
 import com.datastax.butler.server.IntegrationTest;
 import com.datastax.butler.server.TestData;
@@ -21,11 +24,16 @@ import okhttp3.HttpUrl;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 public class BuildsDbIntegrationTest extends IntegrationTest {
 
   @Autowired private BuildsDb buildsRepository;
   @Autowired private JobsDb jobsRepository;
+  @Autowired private TestNamesDb testNamesRepository;
+  @Autowired private TestRunsDb testRunsRepository;
+  @Autowired private PlatformTransactionManager transactionManager;
 
   private static final WorkflowId ciWorkflow = WorkflowId.of("ci");
 
@@ -70,6 +78,29 @@ public class BuildsDbIntegrationTest extends IntegrationTest {
         Set.of(3, 4), limited.stream().map(StoredBuild::buildNumber).collect(Collectors.toSet()));
   }
 
+  @Test
+  void shouldKeepRecentBuildsOfRolledBackDeletions() {
+    // given
+    var jobId = new JobId(ciWorkflow, Branch.fromString(randomBranch()));
+    long jobDbId = jobsRepository.dbId(jobId);
+    buildsRepository.insert(jobDbId, jenkinsBuild(jobId, 1));
+    long deleted = buildsRepository.insert(jobDbId, jenkinsBuild(jobId, 2));
+    Assertions.assertEquals(2, buildsRepository.recentOf(jobDbId, 2).size());
+
+    // when
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              buildsRepository.delete(deleted);
+              status.setRollbackOnly();
+            });
+
+    // then
+    Assertions.assertEquals(2, buildsRepository.recentOf(jobDbId, 2).size());
+    buildsRepository.delete(deleted);
+    Assertions.assertEquals(1, buildsRepository.recentOf(jobDbId, 2).size());
+  }
+
   @Test
   void shouldStoreRawBuild() {
     // given
@@ -103,6 +134,57 @@ public class BuildsDbIntegrationTest extends IntegrationTest {
     Assertions.assertEquals(1, result.get().skippedTests());
   }
 
+  @Test
+  void shouldInsertBuildsAndStoreTheirSummaryInBatch() {
+    // given
+    var branch = randomBranch();
+    long jobDbId = jobsRepository.dbId(new JobId(ciWorkflow, Branch.fromString(branch)));
+    var testRuns =
+        List.of(
+            TestData.rawTestRun("case1", false, false),
+            TestData.rawTestRun("case2", true, false),
+            TestData.rawTestRun("case3", false, true));
+    var withRuns = new BuildImportRequest("ci", branch, 21, 0, 100, null, testRuns);
+    var withoutRuns = new BuildImportRequest("ci", branch, 22, 0, 100, null, testRuns);
+
+    // when
+    var inserted = buildsRepository.insertAll(jobDbId, List.of(withRuns, withoutRuns));
+    long withRunsDbId = inserted.get(21).id();
+    var names =
+        testRuns.stream()
+            .map(r -> new TestName(TestCategory.UNKNOWN, "some", "Suite", r.testCase()))
+            .collect(Collectors.toList());
+    var testIds = testNamesRepository.dbIds(names);
+    testRunsRepository.insertRuns(
+        List.of(
+            storedRun(testIds.get(names.get(0)), withRunsDbId, false, false),
+            storedRun(testIds.get(names.get(1)), withRunsDbId, true, false),
+            storedRun(testIds.get(names.get(2)), withRunsDbId, false, true)));
+    buildsRepository.markBuildsStoredWithSummary(
+        inserted.values().stream().map(StoredBuild::id).collect(Collectors.toList()));
+    var stored = buildsRepository.getByBuildNumbers(jobDbId, List.of(21, 22, 23));
+
+    // then
+    Assertions.assertEquals(Set.of(21, 22), inserted.keySet());
+    Assertions.assertEquals(Set.of(21, 22), stored.keySet());
+    var summary = stored.get(21);
+    Assertions.assertTrue(summary.fullyStored());
+    Assertions.assertEquals(3, summary.ranTests());
+    Assertions.assertEquals(1, summary.failedTests());
+    Assertions.assertEquals(1, summary.skippedTests());
+    // the summary is the one of the stored runs, none here, rather than the one of the request
+    var empty = stored.get(22);
+    Assertions.assertTrue(empty.fullyStored());
+    Assertions.assertEquals(0, empty.ranTests());
+    Assertions.assertEquals(0, empty.failedTests());
+  }
+
+  private static StoredTestRun storedRun(
+      long testDbId, long buildDbId, boolean failed, boolean skipped) {
+    return new StoredTestRun(
+        testDbId, TestVariant.DEFAULT, buildDbId, null, failed, skipped, 10, null);
+  }
+
   private JenkinsBuild jenkinsBuild(JobId jobId, int buildNumber) {
     return new JenkinsBuild(
         null,
@@ -0,0 +1,109 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.server.IntegrationTest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+public class LeasesDbIntegrationTest extends IntegrationTest {
+
+  private static final Duration TTL = Duration.ofMinutes(1);
+  /** Short enough for leases acquired with it to be expired once waited for. */
+  private static final Duration SHORT_TTL = Duration.ofMillis(1);
+
+  @Autowired private LeasesDb leasesRepository;
+  @Autowired private NamedParameterJdbcTemplate template;
+
+  private String randomLease() {
+    return "test:" + randomBranch() + ":";
+  }
+
+  private static void waitForExpiration() throws InterruptedException {
+    Thread.sleep(50);
+  }
+
+  @Test
+  void shouldAcquireFreeLeaseOnlyOnce() {
+    // given
+    var lease = randomLease();
+
+    // when
+    boolean acquired = leasesRepository.tryAcquire(lease, "a", TTL);
+
+    // then
+    Assertions.assertTrue(acquired);
+    Assertions.assertTrue(leasesRepository.tryAcquire(lease, "a", TTL));
+    Assertions.assertFalse(leasesRepository.tryAcquire(lease, "b", TTL));
+    Assertions.assertEquals(List.of("a"), leasesRepository.owners(lease));
+  }
+
+  @Test
+  void shouldRenewLeaseOfOwnerOnly() throws InterruptedException {
+    // given
+    var lease = randomLease();
+    leasesRepository.tryAcquire(lease, "a", SHORT_TTL);
+    waitForExpiration();
+    Assertions.assertTrue(leasesRepository.owners(lease).isEmpty());
+
+    // when
+    boolean renewed = leasesRepository.renew(lease, "a", TTL);
+
+    // then
+    Assertions.assertTrue(renewed);
+    Assertions.assertEquals(List.of("a"), leasesRepository.owners(lease));
+    Assertions.assertFalse(leasesRepository.renew(lease, "b", TTL));
+    Assertions.assertFalse(leasesRepository.renew(randomLease(), "a", TTL));
+  }
+
+  @Test
+  void shouldStealExpiredLease() throws InterruptedException {
+    // given
+    var lease = randomLease();
+    leasesRepository.tryAcquire(lease, "a", SHORT_TTL);
+    waitForExpiration();
+
+    // when
+    boolean stolen = leasesRepository.tryAcquire(lease, "b", TTL);
+
+    // then
+    Assertions.assertTrue(stolen);
+    Assertions.assertEquals(List.of("b"), leasesRepository.owners(lease));
+    Assertions.assertFalse(leasesRepository.renew(lease, "a", TTL));
+    Assertions.assertFalse(leasesRepository.tryAcquire(lease, "a", TTL));
+  }
+
+  @Test
+  void shouldReleaseAndPurgeLeases() throws InterruptedException {
+    // given
+    var prefix = randomLease();
+    leasesRepository.tryAcquire(prefix + "released", "a", TTL);
+    leasesRepository.tryAcquire(prefix + "expired", "a", SHORT_TTL);
+    leasesRepository.tryAcquire(prefix + "held", "b", TTL);
+    waitForExpiration();
+
+    // when
+    leasesRepository.release(prefix + "released", "b");
+    leasesRepository.release(prefix + "released", "a");
+    leasesRepository.purgeExpired(Duration.ZERO);
+
+    // then
+    Assertions.assertEquals(List.of("b"), leasesRepository.owners(prefix));
+    var stored =
+        template.queryForList(
+            "SELECT name FROM leases WHERE name LIKE :prefix",
+            Map.of("prefix", prefix + "%"),
+            String.class);
+    Assertions.assertEquals(List.of(prefix + "held"), stored);
+    Assertions.assertTrue(leasesRepository.tryAcquire(prefix + "released", "c", TTL));
+    Assertions.assertTrue(leasesRepository.tryAcquire(prefix + "expired", "c", TTL));
+  }
+}
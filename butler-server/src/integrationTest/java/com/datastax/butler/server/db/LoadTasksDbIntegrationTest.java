@@ -0,0 +1,55 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.server.IntegrationTest;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class LoadTasksDbIntegrationTest extends IntegrationTest {
+
+  @Autowired private LoadTasksDb loadTasksRepository;
+
+  private static final WorkflowId ciWorkflow = WorkflowId.of("ci");
+
+  @Test
+  void shouldKeepMultiLineMessagesWhole() {
+    // given
+    var taskId = UUID.randomUUID();
+    var jobId = new JobId(ciWorkflow, Branch.fromString(randomBranch()));
+    loadTasksRepository.insert(taskId, jobId, 10, "a");
+    var messages = List.of("Loading build 1", "Error loading build 2:\n  at line 1\n  at line 2");
+
+    // when
+    loadTasksRepository.updateStatus(
+        taskId, true, false, 50, Duration.ofSeconds(1), null, messages, 2);
+
+    // then
+    var task = loadTasksRepository.get(taskId).orElseThrow();
+    Assertions.assertEquals(messages, task.messages());
+    Assertions.assertEquals(2, task.messageCount());
+  }
+
+  @Test
+  void shouldReadNoMessagesOfNewTask() {
+    // given
+    var taskId = UUID.randomUUID();
+    var jobId = new JobId(ciWorkflow, Branch.fromString(randomBranch()));
+
+    // when
+    loadTasksRepository.insert(taskId, jobId, 10, null);
+
+    // then
+    Assertions.assertEquals(List.of(), loadTasksRepository.get(taskId).orElseThrow().messages());
+  }
+}
@@ -11,13 +11,17 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import com.datastax.butler.commons.jenkins.TestCategory;
 import com.datastax.butler.commons.jenkins.TestName;
 import com.datastax.butler.server.IntegrationTest;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 public class TestNamesDbIntegrationTest extends IntegrationTest {
 
   @Autowired private TestNamesDb testNamesDb;
+  @Autowired private NamedParameterJdbcTemplate template;
 
   @Test
   void shouldInsertRowOnlyOnceIfTestNameIsSame() {
@@ -50,4 +54,31 @@ public class TestNamesDbIntegrationTest extends IntegrationTest {
     assertTrue(id > 0);
     assertEquals(id, idWithCat);
   }
+
+  @Test
+  void shouldGetIdsOfStoredAndNewTestsInBatches() {
+    // given: a test stored by another instance (so not cached), and more new tests than fit in a
+    // single statement, some of which only differ from others by their path
+    var suite = "Suite" + randomBranch();
+    var stored = new TestName(TestCategory.UNKNOWN, "com.example", suite, randomTestCase());
+    template.update(
+        "INSERT INTO tests(category, path, class_name, test_name) VALUES ('UNKNOWN', :p, :c, :t)",
+        Map.of("p", stored.path(), "c", stored.className(), "t", stored.testName()));
+    List<TestName> names = new ArrayList<>(List.of(stored));
+    for (int i = 0; i < 600; i++) {
+      var path = i % 2 == 0 ? "com.example" : "org.example";
+      names.add(new TestName(TestCategory.UNKNOWN, path, suite, "test" + (i / 2)));
+    }
+    // when
+    var ids = testNamesDb.dbIds(names);
+    var again = testNamesDb.dbIds(names);
+    // then
+    assertEquals(names.size(), ids.size());
+    assertEquals(names.size(), ids.values().stream().distinct().count());
+    assertEquals(ids, again);
+    assertEquals(stored, testNamesDb.find(ids.get(stored)).orElseThrow());
+    for (TestName name : names) {
+      assertEquals(ids.get(name), testNamesDb.dbId(name));
+    }
+  }
 }
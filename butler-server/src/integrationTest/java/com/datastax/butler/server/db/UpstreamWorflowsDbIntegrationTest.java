@@ -0,0 +1,73 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.server.IntegrationTest;
+import com.google.common.collect.Sets;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class UpstreamWorflowsDbIntegrationTest extends IntegrationTest {
+
+  @Autowired private UpstreamWorflowsDb workflowsRepository;
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  @Test
+  void shouldReadWorkflowsOnceAddedOrRemoved() {
+    // given
+    Set<WorkflowId> initial = workflowsRepository.databaseWorkflows();
+    var added = WorkflowId.of("wf-" + randomBranch());
+    var withAdded = Set.copyOf(Sets.union(initial, Set.of(added)));
+
+    try {
+      // when
+      workflowsRepository.update(withAdded);
+
+      // then
+      Assertions.assertEquals(withAdded, workflowsRepository.databaseWorkflows());
+      workflowsRepository.refresh();
+      Assertions.assertEquals(withAdded, workflowsRepository.databaseWorkflows());
+
+      // when
+      workflowsRepository.update(initial);
+
+      // then
+      Assertions.assertEquals(initial, workflowsRepository.databaseWorkflows());
+      workflowsRepository.refresh();
+      Assertions.assertEquals(initial, workflowsRepository.databaseWorkflows());
+    } finally {
+      workflowsRepository.update(initial);
+    }
+  }
+
+  @Test
+  void shouldOnlyReadWorkflowsOnceCommitted() {
+    // given
+    Set<WorkflowId> initial = workflowsRepository.databaseWorkflows();
+    long version = workflowsRepository.snapshot().version();
+    var added = WorkflowId.of("wf-" + randomBranch());
+    var withAdded = Set.copyOf(Sets.union(initial, Set.of(added)));
+
+    // when
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              workflowsRepository.update(withAdded);
+              // then: not visible before the commit
+              Assertions.assertEquals(initial, workflowsRepository.databaseWorkflows());
+              status.setRollbackOnly();
+            });
+
+    // then: nor after a rollback
+    Assertions.assertEquals(initial, workflowsRepository.databaseWorkflows());
+    Assertions.assertEquals(version, workflowsRepository.snapshot().version());
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import com.datastax.butler.server.cache.ButlerCache;
+import com.datastax.butler.server.cache.CacheRegistry;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Compares the per-request cost of authorizing a JWT token before and after caching the authorities
+ * of the users.
+ *
+ * <p>The database is simulated: an authorities lookup parks the thread for {@code roundTripMicros}
+ * (a local MySQL round trip is typically a few hundred micros), so that "database" measures the
+ * previous behavior of one query per request and "cached" the current one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtAuthorizationBenchmark {
+
+  private static final String SECRET =
+      "benchmark-secret-benchmark-secret-benchmark-secret-benchmark-secret";
+
+  @Param({"0", "300"})
+  long roundTripMicros;
+
+  private String header;
+  private JwtAuthorizationFilter databaseFilter;
+  private JwtAuthorizationFilter cachedFilter;
+
+  /** Creates a signed token and the filters looking up authorities with and without cache. */
+  @Setup
+  public void setup() {
+    var config = new JwtConfig(SECRET);
+    header =
+        JwtConfig.HEADER_PREFIX
+            + Jwts.builder()
+                .signWith(config.secretKey(), SignatureAlgorithm.HS512)
+                .setSubject("admin")
+                .compact();
+    // same bounds as AuthoritiesDb
+    ButlerCache<String, List<SimpleGrantedAuthority>> cache =
+        new CacheRegistry()
+            .<String, List<SimpleGrantedAuthority>>builder("authorities")
+            .maximumSize(1_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build(this::query);
+    databaseFilter = new JwtAuthorizationFilter(authentication -> null, config, this::query);
+    cachedFilter = new JwtAuthorizationFilter(authentication -> null, config, cache::get);
+  }
+
+  private List<SimpleGrantedAuthority> query(String username) {
+    if (roundTripMicros > 0) {
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+    }
+    return List.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+  }
+
+  @Benchmark
+  public UsernamePasswordAuthenticationToken database() {
+    return databaseFilter.authenticate(header);
+  }
+
+  @Benchmark
+  public UsernamePasswordAuthenticationToken cached() {
+    return cachedFilter.authenticate(header);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import com.datastax.butler.api.ci.BuildImportRequest;
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.dev.FailureDetails;
+import com.datastax.butler.commons.dev.RunDetails;
+import com.datastax.butler.commons.dev.TestFailure;
+import com.datastax.butler.commons.dev.UpstreamFailures;
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestCategory;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.commons.jenkins.TestRunOutput;
+import com.datastax.butler.commons.jenkins.TestVariant;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.commons.json.Json;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the throughput of the payload formats of the REST API: JSON and the binary Smile and
+ * CBOR formats, for the two largest payloads.
+ *
+ * <p>A build import (as posted by CI agents to /builds/import/raw) is both encoded (by the client)
+ * and decoded (by butler), while upstream failures (as pulled by the UI) are only encoded by
+ * butler. The size of the payloads in each format is logged once at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PayloadFormatsBenchmark {
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final int HISTORY_DEPTH = 16;
+
+  @Param({"json", "smile", "cbor"})
+  String format;
+
+  @Param({"1000", "10000"})
+  int numTests;
+
+  private ObjectMapper mapper;
+  private BuildImportRequest build;
+  private byte[] encodedBuild;
+  private UpstreamFailures upstreamFailures;
+
+  /** Generates a build and upstream failures of {@code numTests} tests, a tenth of them failing. */
+  @Setup
+  public void setup() throws IOException {
+    switch (format) {
+      case "smile":
+        mapper = Json.smileMapper();
+        break;
+      case "cbor":
+        mapper = Json.cborMapper();
+        break;
+      default:
+        mapper = Json.mapper();
+    }
+    var random = new Random(42);
+    List<BuildImportRequest.TestRun> runs = new ArrayList<>(numTests);
+    for (int i = 0; i < numTests; i++) {
+      boolean failed = random.nextInt(10) == 0;
+      var output =
+          failed
+              ? new TestRunOutput("expected:<1> but was:<2>", "at Test.test" + i, "stdout", null)
+              : null;
+      runs.add(
+          new BuildImportRequest.TestRun(
+              "com.example.Test" + (i / 16),
+              "test" + i,
+              null,
+              "UNIT",
+              failed,
+              false,
+              random.nextInt(10_000),
+              null,
+              output));
+    }
+    build = new BuildImportRequest("ci", "main", 42, 1_600_000_000_000L, 3_600_000, null, runs);
+    encodedBuild = mapper.writeValueAsBytes(build);
+
+    var jobId = new JobId(WorkflowId.of("ci"), Branch.fromString("main"));
+    List<TestFailure> failures = new ArrayList<>(numTests);
+    for (int i = 0; i < numTests; i++) {
+      var name = new TestName(TestCategory.UNKNOWN, "com.example", "Test" + (i / 16), "test" + i);
+      failures.add(failure(name, jobId, random));
+    }
+    upstreamFailures = new UpstreamFailures(failures);
+
+    logger.info(
+        "{} payloads for {} tests: build import {} bytes, upstream failures {} bytes",
+        format,
+        numTests,
+        encodedBuild.length,
+        mapper.writeValueAsBytes(upstreamFailures).length);
+  }
+
+  private static TestFailure failure(TestName name, JobId jobId, Random random) {
+    List<RunDetails> runs = new ArrayList<>(HISTORY_DEPTH);
+    for (int b = HISTORY_DEPTH; b > 0; b--) {
+      int r = random.nextInt(10);
+      runs.add(
+          new RunDetails(
+              new BuildId(jobId, b), TestVariant.DEFAULT, null, b, r == 0, r == 1, null));
+    }
+    var details = FailureDetails.build(runs);
+    return new TestFailure(name, null, details, jobId.workflow(), runs.size(), 0, 0);
+  }
+
+  @Benchmark
+  public byte[] encodeBuildImport() throws IOException {
+    return mapper.writeValueAsBytes(build);
+  }
+
+  @Benchmark
+  public BuildImportRequest decodeBuildImport() throws IOException {
+    return mapper.readValue(encodedBuild, BuildImportRequest.class);
+  }
+
+  @Benchmark
+  public byte[] encodeUpstreamFailures() throws IOException {
+    return mapper.writeValueAsBytes(upstreamFailures);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service.prgate;
+
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.dev.FailureDetails;
+import com.datastax.butler.commons.dev.RunDetails;
+import com.datastax.butler.commons.dev.TestFailure;
+import com.datastax.butler.commons.dev.UpstreamFailures;
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestCategory;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.commons.jenkins.TestVariant;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the PR gate decision loop before and after indexing upstream failures by test name and
+ * bit-packing the run stories.
+ *
+ * <p>The "legacy" benchmark reproduces the previous implementation: a linear scan of upstream
+ * failures for every branch failure and string based stories counted with regexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GateDecisionBenchmark {
+
+  private static final int GATE_ANALYSIS_DEPTH = 16;
+
+  @Param({"100", "1000", "10000"})
+  int numTests;
+
+  List<TestFailure> branchFailures;
+  UpstreamFailures upstreamFailures;
+
+  /** Generates random branch and upstream histories sharing the same test names. */
+  @Setup
+  public void setup() {
+    var random = new Random(42);
+    var branchJob = new JobId(WorkflowId.of("ci"), Branch.fromString("PR-1"));
+    var upstreamJob = new JobId(WorkflowId.of("ci"), Branch.fromString("main"));
+    branchFailures = new ArrayList<>(numTests);
+    List<TestFailure> upstream = new ArrayList<>(numTests);
+    for (int i = 0; i < numTests; i++) {
+      var name = new TestName(TestCategory.UNKNOWN, "com.example", "Test" + (i / 16), "test" + i);
+      branchFailures.add(failure(name, branchJob, random));
+      upstream.add(failure(name, upstreamJob, random));
+    }
+    upstreamFailures = new UpstreamFailures(upstream);
+  }
+
+  private static TestFailure failure(TestName name, JobId jobId, Random random) {
+    List<RunDetails> runs = new ArrayList<>(GATE_ANALYSIS_DEPTH);
+    for (int b = GATE_ANALYSIS_DEPTH; b > 0; b--) {
+      int r = random.nextInt(10);
+      runs.add(
+          new RunDetails(
+              new BuildId(jobId, b), TestVariant.DEFAULT, null, b, r == 0, r == 1, null));
+    }
+    var details = FailureDetails.build(runs);
+    return new TestFailure(name, null, details, jobId.workflow(), runs.size(), 0, 0);
+  }
+
+  @Benchmark
+  public void indexedPackedStories(Blackhole bh) {
+    for (TestFailure failure : branchFailures) {
+      bh.consume(GateDecision.check(failure, upstreamFailures));
+    }
+  }
+
+  @Benchmark
+  public void legacyLinearScanStringStories(Blackhole bh) {
+    for (TestFailure failure : branchFailures) {
+      if (!failure.hasFailed()) continue;
+      var branchStory = GateDecision.encode(failure);
+      var upstreamStory =
+          upstreamFailures.failures().stream()
+              .filter(x -> x.test().equals(failure.test()))
+              .collect(Collectors.toList())
+              .stream()
+              .map(GateDecision::encode)
+              .findFirst()
+              .orElse("");
+      bh.consume(legacyCounts(branchStory));
+      bh.consume(legacyCounts(StringUtils.substring(branchStory, 4)));
+      bh.consume(legacyCounts(upstreamStory));
+    }
+  }
+
+  private static int legacyCounts(String story) {
+    return StringUtils.countMatches(story, 'F')
+        + StringUtils.countMatches(story, 'P')
+        + story.replaceAll("[S ]+", "").length();
+  }
+}
@@ -6,6 +6,7 @@
 package com.datastax.butler.server;
 
 import com.datastax.butler.commons.dev.Workflow;
+import com.datastax.butler.commons.issues.github.GithubProject;
 import com.datastax.butler.commons.issues.jira.JiraProject;
 import com.datastax.butler.commons.jenkins.WorkflowId;
 import com.datastax.butler.commons.jira.client.JiraClient;
@@ -51,6 +52,9 @@ public class ButlerProjectsRegistry {
   @Value("${butler.jira.url: }")
   private String defaultJiraUrl;
 
+  @Value("${butler.github.repositories: }")
+  private String githubRepositories;
+
   @Autowired
   public ButlerProjectsRegistry(
       List<ButlerProject> projects,
@@ -73,6 +77,7 @@ public class ButlerProjectsRegistry {
     if (defaultJiraProjectEnabled) {
       registerDefaultJiraProject();
     }
+    registerGithubProjects();
     var databaseWorkflows =
         workflowsDb.databaseWorkflows().stream().map(WorkflowId::name).collect(Collectors.toSet());
     var registeredWorkflows =
@@ -123,4 +128,11 @@ public class ButlerProjectsRegistry {
     var jiraProject = new JiraProject(jiraClient, defaultJiraProjectKey);
     issuesService.registerProject(jiraProject);
   }
+
+  private void registerGithubProjects() {
+    for (String repository : StringUtils.split(githubRepositories, ", ")) {
+      logger.info("Registering github issues project {}", repository);
+      issuesService.registerProject(GithubProject.forRepository(repository));
+    }
+  }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server;
+
+import com.datastax.butler.server.config.RuntimeRole;
+import java.util.Map;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Disables the web server of worker instances (see {@link RuntimeRole}), so that they do not start
+ * the threads serving requests and do not answer queries.
+ */
+public class RuntimeRoleEnvironment implements EnvironmentPostProcessor {
+
+  @Override
+  public void postProcessEnvironment(
+      ConfigurableEnvironment environment, SpringApplication application) {
+    var role = RuntimeRole.fromString(environment.getProperty(RuntimeRole.PROPERTY, "all"));
+    if (!role.servesApi()) {
+      environment
+          .getPropertySources()
+          .addFirst(
+              new MapPropertySource(
+                  "butlerRuntimeRole", Map.of("spring.main.web-application-type", "none")));
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.api;
+
+import com.datastax.butler.api.ci.BulkLoadStatus;
+import com.datastax.butler.server.tools.BuildLoader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Streams the status of bulk load tasks to their watchers, as Server-Sent Events.
+ *
+ * <p>A stream starts with the current status of the task, and then only gets the changes of the
+ * status: each subsequent event holds the messages logged since the previous event rather than all
+ * of them. The stream is completed once the task is finished.
+ *
+ * <p>The watchers of a task share a single {@link Watch}, so that each change is serialized once
+ * whatever the number of watchers. Changes of the tasks run by this instance are pushed as soon as
+ * {@link BuildLoader} reports them, while the tasks run by other instances are polled from the
+ * database, once per task.
+ *
+ * <p>Events are sent to each watcher in order on its own, outside of the lock of the watch, so that
+ * a stalled watcher does not block the others. They are sent by a fixed number of threads shared by
+ * all the watchers, a stalled watcher only holding one of them until its write fails. Watchers
+ * which fall too far behind are dropped.
+ */
+@Component
+public class BulkLoadStatusStream {
+  private static final Logger logger = LogManager.getLogger();
+  /** Time after which a stream is closed; clients like EventSource then reconnect on their own. */
+  private static final long STREAM_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+
+  /** Max number of events waiting to be sent to a watcher, slower watchers are dropped. */
+  static final int MAX_PENDING_EVENTS = 16;
+
+  /** Number of threads sending events to the watchers. */
+  private static final int SENDER_THREADS = 8;
+
+  private static final String EVENT_NAME = "status";
+
+  private final BuildLoader buildLoader;
+  private final ObjectMapper mapper;
+  private final Executor publisher;
+  private final Executor sender;
+  private final ConcurrentMap<UUID, Watch> watches = new ConcurrentHashMap<>();
+
+  /** Creates the stream (Autowired by Spring). */
+  @Autowired
+  public BulkLoadStatusStream(BuildLoader buildLoader, ObjectMapper mapper) {
+    this(
+        buildLoader,
+        mapper,
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("bulk-load-status-stream")
+                .setDaemon(true)
+                .build()),
+        Executors.newFixedThreadPool(
+            SENDER_THREADS,
+            new ThreadFactoryBuilder()
+                .setNameFormat("bulk-load-status-send-%d")
+                .setDaemon(true)
+                .build()));
+  }
+
+  @VisibleForTesting
+  BulkLoadStatusStream(
+      BuildLoader buildLoader, ObjectMapper mapper, Executor publisher, Executor sender) {
+    this.buildLoader = buildLoader;
+    this.mapper = mapper;
+    this.publisher = publisher;
+    this.sender = sender;
+    // watchers are written to on the publisher thread, not to slow down the loading threads
+    buildLoader.addStatusListener(
+        status -> {
+          if (watches.containsKey(status.taskId())) publisher.execute(() -> update(status));
+        });
+  }
+
+  /** Converts a status to the API, with the provided messages (all of them or only new ones). */
+  static BulkLoadStatus bulkLoadStatus(BuildLoader.Status status, List<String> messages) {
+    return new BulkLoadStatus(
+        status.taskId(),
+        status.jobId(),
+        status.finished(),
+        status.progressPercentage(),
+        status.duration().toSeconds(),
+        status.error(),
+        messages,
+        status.updateTimestamp().toString());
+  }
+
+  /** Number of tasks currently watched. */
+  @VisibleForTesting
+  int watchedTasks() {
+    return watches.size();
+  }
+
+  /** Opens a new stream of the status of a task, starting from the provided current status. */
+  public SseEmitter open(BuildLoader.Status current) {
+    return open(current, new SseEmitter(STREAM_TIMEOUT_MS));
+  }
+
+  @VisibleForTesting
+  SseEmitter open(BuildLoader.Status current, SseEmitter emitter) {
+    if (current.finished()) {
+      send(emitter, serialize(bulkLoadStatus(current, current.messages())));
+      emitter.complete();
+      return emitter;
+    }
+    Watch watch;
+    do {
+      watch = watches.computeIfAbsent(current.taskId(), id -> new Watch(id, current));
+    } while (!watch.add(emitter));
+    Watch added = watch;
+    emitter.onCompletion(() -> added.remove(emitter));
+    emitter.onTimeout(() -> added.remove(emitter));
+    emitter.onError(e -> added.remove(emitter));
+    return emitter;
+  }
+
+  /**
+   * Periodically poll the status of the watched tasks, for those run by other instances.
+   *
+   * <p>Tasks run by this instance are also polled, which is a no-op unless the change of their
+   * status was missed.
+   */
+  @SuppressWarnings("unused")
+  @Scheduled(fixedDelay = 1000 * 2) // every 2 seconds
+  public void pollWatchedTasks() {
+    for (UUID taskId : watches.keySet()) {
+      Optional<BuildLoader.Status> status = buildLoader.taskStatus(taskId);
+      if (status.isPresent()) {
+        publisher.execute(() -> update(status.get()));
+      } else {
+        // the task was cleaned up (or its instance restarted before storing it)
+        var watch = watches.get(taskId);
+        if (watch != null) watch.close();
+      }
+    }
+  }
+
+  private void update(BuildLoader.Status status) {
+    var watch = watches.get(status.taskId());
+    if (watch != null) watch.update(status);
+  }
+
+  private Optional<String> serialize(BulkLoadStatus status) {
+    try {
+      return Optional.of(mapper.writeValueAsString(status));
+    } catch (JsonProcessingException e) {
+      logger.error("Cannot serialize status of loading task {}", status.taskId(), e);
+      return Optional.empty();
+    }
+  }
+
+  private static boolean send(SseEmitter emitter, Optional<String> json) {
+    if (json.isEmpty()) return true;
+    try {
+      emitter.send(
+          SseEmitter.event().name(EVENT_NAME).data(json.get(), MediaType.APPLICATION_JSON));
+      return true;
+    } catch (IOException | IllegalStateException e) {
+      // the watcher went away, its emitter is completed by Spring
+      return false;
+    }
+  }
+
+  /** A watcher of a task, to which events are sent in order by the sender threads. */
+  private class Watcher {
+    private final SseEmitter emitter;
+    private final Watch watch;
+    private final Executor events = MoreExecutors.newSequentialExecutor(sender);
+    private final AtomicInteger pending = new AtomicInteger();
+    // only accessed by the sequential tasks
+    private boolean failed;
+
+    private Watcher(SseEmitter emitter, Watch watch) {
+      this.emitter = emitter;
+      this.watch = watch;
+    }
+
+    /** Queues an event, false if too many events are already waiting to be sent. */
+    private boolean send(Optional<String> json) {
+      if (pending.incrementAndGet() > MAX_PENDING_EVENTS) {
+        pending.decrementAndGet();
+        return false;
+      }
+      events.execute(
+          () -> {
+            try {
+              if (failed) return;
+              if (!BulkLoadStatusStream.send(emitter, json)) {
+                failed = true;
+                watch.remove(emitter);
+              }
+            } finally {
+              pending.decrementAndGet();
+            }
+          });
+      return true;
+    }
+
+    /** Completes the stream once the queued events are sent. */
+    private void complete() {
+      events.execute(emitter::complete);
+    }
+  }
+
+  /** The watchers of a task, and the last status sent to them. */
+  private class Watch {
+    private final UUID taskId;
+    private final List<Watcher> watchers = new ArrayList<>();
+    private BuildLoader.Status last;
+    private boolean closed;
+
+    private Watch(UUID taskId, BuildLoader.Status initial) {
+      this.taskId = taskId;
+      this.last = initial;
+    }
+
+    /**
+     * Adds a watcher, which first gets the full last status; false if the watch is closed.
+     *
+     * <p>The watcher is removed again (closing the watch if it was the only one) if sending it any
+     * status fails, including the first one.
+     */
+    private synchronized boolean add(SseEmitter emitter) {
+      if (closed) return false;
+      var watcher = new Watcher(emitter, this);
+      watchers.add(watcher);
+      watcher.send(serialize(bulkLoadStatus(last, last.messages())));
+      return true;
+    }
+
+    private synchronized void remove(SseEmitter emitter) {
+      watchers.removeIf(w -> w.emitter == emitter);
+      if (watchers.isEmpty()) close();
+    }
+
+    private synchronized void update(BuildLoader.Status status) {
+      if (closed || status.equals(last)) return;
+      // a status polled before a pushed one may be applied after it
+      if (status.updateTimestamp().isBefore(last.updateTimestamp())) return;
+      var delta = serialize(bulkLoadStatus(status, status.messagesAfter(last.messageCount())));
+      last = status;
+      // failing watchers may remove themselves while being written to, so iterate over a copy
+      for (Watcher watcher : List.copyOf(watchers)) {
+        if (!watcher.send(delta)) {
+          logger.info("Dropping stalled watcher of loading task {}", taskId);
+          watchers.remove(watcher);
+          watcher.complete();
+        }
+      }
+      if (status.finished() || watchers.isEmpty()) close();
+    }
+
+    private synchronized void close() {
+      if (closed) return;
+      closed = true;
+      watches.remove(taskId, this);
+      var completed = List.copyOf(watchers);
+      watchers.clear();
+      completed.forEach(Watcher::complete);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.api;
+
+import com.datastax.butler.server.cache.CacheRegistry;
+import com.datastax.butler.server.cache.CacheStatistics;
+import java.util.List;
+import javax.annotation.security.RolesAllowed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/** Controller exposing the statistics of the in-memory caches of the server. */
+@RestController
+@RequestMapping("/api/caches")
+public class CachesController {
+  private final CacheRegistry caches;
+
+  /** Creates the controller (Autowired by Spring). */
+  @Autowired
+  public CachesController(CacheRegistry caches) {
+    this.caches = caches;
+  }
+
+  /** Statistics (size, hits, misses, loads, evictions) of every cache. */
+  @GetMapping
+  public List<CacheStatistics> statistics() {
+    return caches.statistics();
+  }
+
+  /** Drops all the entries of given cache, which will be reloaded on demand. */
+  @PostMapping("/{name}/invalidate")
+  @RolesAllowed("ROLE_ADMIN")
+  public void invalidate(@PathVariable String name) {
+    caches
+        .get(name)
+        .orElseThrow(
+            () ->
+                new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, String.format("Unknown cache %s", name)))
+        .invalidateAll();
+  }
+
+  /** Drops all the entries of all the caches. */
+  @PostMapping("/invalidate")
+  @RolesAllowed("ROLE_ADMIN")
+  public void invalidateAll() {
+    caches.invalidateAll();
+  }
+}
@@ -7,7 +7,10 @@ package com.datastax.butler.server.api;
 
 import static java.lang.String.format;
 
+import com.datastax.butler.api.ci.BuildBatchImportRequest;
 import com.datastax.butler.api.ci.BuildImportRequest;
+import com.datastax.butler.api.ci.BuildImportResult;
+import com.datastax.butler.api.ci.BuildImportStatus;
 import com.datastax.butler.api.ci.BulkLoadRequest;
 import com.datastax.butler.api.ci.BulkLoadStatus;
 import com.datastax.butler.api.ci.JenkinsBuildLoadRequest;
@@ -25,8 +28,14 @@ import com.datastax.butler.server.db.JobsDb;
 import com.datastax.butler.server.db.StoredBuild;
 import com.datastax.butler.server.db.UpstreamWorflowsDb;
 import com.datastax.butler.server.service.BuildsService;
+import com.datastax.butler.server.service.ClusterService;
+import com.datastax.butler.server.service.RawImportService;
 import com.datastax.butler.server.tools.BuildLoader;
 import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -44,7 +53,10 @@ import okhttp3.HttpUrl;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -53,18 +65,27 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /** Controller for Rest API related to CI/Jenkins. */
 @RestController
 @RequestMapping("/api/ci")
 public class CiController {
   private final Logger logger = LogManager.getLogger();
+  /** Time after which the lease on a job expires, storing a single build should be well within. */
+  private static final Duration JOB_LEASE_TTL = Duration.ofMinutes(10);
+  /** Media type of newline delimited JSON (only part of {@link MediaType} from Spring 5.3). */
+  private static final String NDJSON_VALUE = "application/x-ndjson";
   private final JobsDb jobsDb;
   private final BuildsDb buildsDb;
   private final UpstreamWorflowsDb workflowsDb;
   private final BuildsService buildsService;
   private final BuildLoader buildLoader;
+  private final ClusterService cluster;
+  private final BulkLoadStatusStream bulkLoadStatusStream;
+  private final RawImportService rawImports;
   private final Queue<JenkinsLoadRequest> jenkinsLoadRequestQueue;
 
   /** Creates the controller (Autowired by Spring). */
@@ -74,12 +95,18 @@ public class CiController {
       BuildsDb buildsDb,
       UpstreamWorflowsDb workflowsDb,
       BuildsService buildsService,
-      BuildLoader buildLoader) {
+      BuildLoader buildLoader,
+      ClusterService cluster,
+      BulkLoadStatusStream bulkLoadStatusStream,
+      RawImportService rawImports) {
     this.jobsDb = jobsDb;
     this.buildsDb = buildsDb;
     this.workflowsDb = workflowsDb;
     this.buildsService = buildsService;
     this.buildLoader = buildLoader;
+    this.cluster = cluster;
+    this.bulkLoadStatusStream = bulkLoadStatusStream;
+    this.rawImports = rawImports;
     this.jenkinsLoadRequestQueue = new ConcurrentLinkedQueue<>();
   }
 
@@ -343,6 +370,112 @@ public class CiController {
     }
   }
 
+  /**
+   * Batch variant of {@link #importRawBuild}, for many builds possibly of different jobs.
+   *
+   * <p>The builds are imported with batched database statements, which is much faster than
+   * importing them one by one. The result of each build is returned in the order of the request: a
+   * build that cannot be imported does not prevent the import of the others.
+   */
+  @PostMapping("/builds/import/raw/batch")
+  public List<BuildImportResult> importRawBuilds(@RequestBody BuildBatchImportRequest request) {
+    int count = request.builds().size();
+    if (count == 0 || count > RawImportService.MAX_BATCH_BUILDS) {
+      String msg =
+          format(
+              "Expected between 1 and %d builds, got %d", RawImportService.MAX_BATCH_BUILDS, count);
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, msg);
+    }
+    return rawImports.importBatch(request.builds());
+  }
+
+  /**
+   * Streaming variant of {@link #importRawBuild}, for very large builds.
+   *
+   * <p>The body is NDJSON: a first line with the build (as for {@link #importRawBuild}, without its
+   * tests), followed by one line per test run of the build. Test runs are parsed and stored as the
+   * body is read, rather than after the whole body is bound in memory. The body can be compressed
+   * with gzip, which must then be set as the Content-Encoding of the request (see {@link
+   * com.datastax.butler.server.config.GzipRequestFilter}).
+   */
+  @PostMapping(value = "/builds/import/raw/stream", consumes = NDJSON_VALUE)
+  public BuildId importRawBuildStream(InputStream body) {
+    try {
+      return rawImports.importStream(body);
+    } catch (IOException | IllegalArgumentException e) {
+      String msg = String.format("Error when importing streamed build: %s", e.getMessage());
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, msg);
+    }
+  }
+
+  /**
+   * Imports a build from JUnit XML reports, as produced by most test runners.
+   *
+   * <p>The reports are uploaded as multipart files named "reports", each being either a JUnit XML
+   * report or a tar.gz archive of reports. They are parsed as a stream, and test cases are mapped
+   * to tests through the test name schemes of the workflow.
+   */
+  @PostMapping(value = "/builds/import/junit", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+  public BuildId importJunitBuild(
+      @RequestParam String workflow,
+      @RequestParam String branch,
+      @RequestParam int buildNumber,
+      @RequestParam(defaultValue = "0") long startTime,
+      @RequestParam(defaultValue = "0") int durationMs,
+      @RequestParam(required = false) String url,
+      @RequestParam List<MultipartFile> reports) {
+    var header =
+        new BuildImportRequest(
+            workflow, branch, buildNumber, startTime, durationMs, url, List.of());
+    var resources =
+        reports.stream().map(MultipartFile::getResource).collect(Collectors.toList());
+    try {
+      return rawImports.importJunit(header, resources);
+    } catch (IOException | IllegalArgumentException e) {
+      String msg = String.format("Error when importing JUnit reports: %s", e.getMessage());
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, msg);
+    }
+  }
+
+  /**
+   * Asynchronous variant of {@link #importRawBuild}.
+   *
+   * <p>The build is accepted right away (stored for later processing) and imported in the
+   * background, the returned task id can be used to poll for the outcome with {@link
+   * #rawImportStatus}. If too many imports are pending, the build is rejected with a 429 status and
+   * a Retry-After header, and should be submitted again later.
+   */
+  @PostMapping("/builds/import/raw/async")
+  public ResponseEntity<BuildImportStatus> submitRawBuildImport(
+      @RequestBody BuildImportRequest buildData) {
+    getWorkflowDef(WorkflowId.of(buildData.workflow()));
+    BuildId buildId;
+    try {
+      buildId = RawImportService.buildId(buildData);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    Optional<UUID> taskId = rawImports.submit(buildData);
+    if (taskId.isEmpty()) {
+      return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+          .header(HttpHeaders.RETRY_AFTER, String.valueOf(RawImportService.RETRY_AFTER.toSeconds()))
+          .body(BuildImportStatus.rejected(buildId, "Too many pending imports, retry later"));
+    }
+    return ResponseEntity.accepted()
+        .location(URI.create("/api/ci/builds/import/raw/tasks/" + taskId.get()))
+        .body(BuildImportStatus.pending(taskId.get(), buildId));
+  }
+
+  /** Retrieves the status of an asynchronous import (through {@link #submitRawBuildImport}). */
+  @GetMapping("/builds/import/raw/tasks/{taskId}")
+  public BuildImportStatus rawImportStatus(@PathVariable UUID taskId) {
+    return rawImports
+        .status(taskId)
+        .map(t -> new BuildImportStatus(t.taskId(), t.buildId(), t.finished(), t.error()))
+        .orElseThrow(
+            () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown import " + taskId));
+  }
+
   /** Retrieves the status of a loading task (through {@link #bulkLoad}). */
   @GetMapping("/builds/bulkload/status/task/{taskId}")
   public BulkLoadStatus bulkLoadStatusTask(@PathVariable UUID taskId) {
@@ -350,6 +483,24 @@ public class CiController {
     return status.map(this::createBulkLoadStatus).orElse(BulkLoadStatus.NONE);
   }
 
+  /**
+   * Streams the status of a loading task (through {@link #bulkLoad}) as Server-Sent Events.
+   *
+   * <p>Unlike {@link #bulkLoadStatusTask(UUID)}, which is meant to be polled, this sends the full
+   * status once and then only its changes, each "status" event holding the messages logged since
+   * the previous event. The stream ends once the task is finished.
+   */
+  @GetMapping(
+      value = "/builds/bulkload/status/task/{taskId}/stream",
+      produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter bulkLoadStatusStream(@PathVariable UUID taskId) {
+    return buildLoader
+        .taskStatus(taskId)
+        .map(bulkLoadStatusStream::open)
+        .orElseThrow(
+            () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown task " + taskId));
+  }
+
   /** Return information about all statuses of loading tasks. */
   @GetMapping("/builds/bulkload/status/all")
   public List<BulkLoadStatus> bulkLoadStatusAll() {
@@ -374,15 +525,7 @@ public class CiController {
    * @return api status object
    */
   private BulkLoadStatus createBulkLoadStatus(BuildLoader.Status status) {
-    return new BulkLoadStatus(
-        status.taskId(),
-        status.jobId(),
-        status.finished(),
-        status.progressPercentage(),
-        status.duration().toSeconds(),
-        status.error(),
-        status.messages(),
-        status.updateTimestamp().toString());
+    return BulkLoadStatusStream.bulkLoadStatus(status, status.messages());
   }
 
   private JobInfo jobInfo(JobId job) {
@@ -398,6 +541,13 @@ public class CiController {
     JenkinsWorkflow jenkinsWorkflow;
   }
 
+  /**
+   * Stores the next queued build if it is completed.
+   *
+   * <p>The queue is local to this instance, but the build is only stored while holding the lease on
+   * its job, so that it is not stored while another instance loads the job (the request is queued
+   * again in that case).
+   */
   @SuppressWarnings("unused")
   @Scheduled(fixedDelay = 1000 * 60) // every minute
   private void processJenkinsLoadRequestsQueue() {
@@ -405,14 +555,22 @@ public class CiController {
     try {
       var task = jenkinsLoadRequestQueue.remove();
       logger.debug("processing {} popped from the queue", task.buildId);
-      Optional<JenkinsBuild> build = task.jenkinsWorkflow.getBuild(task.buildId, task.buildUrl);
-      if (build.isPresent()) {
-        requestStoreJenkinsBuild(task.buildId, build.get(), task.buildUrl);
-      } else {
-        logger.warn(
-            "build {} with url {} was not found in jenkins and will not be imported",
-            build,
-            task.buildUrl);
+      var lease = cluster.tryAcquire(BuildLoader.leaseName(task.buildId.jobId()), JOB_LEASE_TTL);
+      if (lease.isEmpty()) {
+        logger.info("Job of {} is being loaded by another node, queuing it again", task.buildId);
+        jenkinsLoadRequestQueue.add(task);
+        return;
+      }
+      try (var heldLease = lease.get()) {
+        Optional<JenkinsBuild> build = task.jenkinsWorkflow.getBuild(task.buildId, task.buildUrl);
+        if (build.isPresent()) {
+          requestStoreJenkinsBuild(task.buildId, build.get(), task.buildUrl);
+        } else {
+          logger.warn(
+              "build {} with url {} was not found in jenkins and will not be imported",
+              build,
+              task.buildUrl);
+        }
       }
     } catch (NoSuchElementException ex) {
       logger.debug("queue is empty, noting to do here");
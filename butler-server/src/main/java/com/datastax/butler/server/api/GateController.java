@@ -7,6 +7,7 @@ package com.datastax.butler.server.api;
 
 import com.datastax.butler.api.gate.JenkinsBuildApprovalRequest;
 import com.datastax.butler.api.gate.JenkinsBuildApprovalResponse;
+import com.datastax.butler.api.gate.JenkinsBuildApprovalStatus;
 import com.datastax.butler.commons.dev.Branch;
 import com.datastax.butler.commons.dev.TestFailure;
 import com.datastax.butler.commons.dev.UpstreamFailures;
@@ -22,22 +23,44 @@ import com.datastax.butler.server.db.JobsDb;
 import com.datastax.butler.server.db.UpstreamFailuresDb;
 import com.datastax.butler.server.service.BuildsService;
 import com.datastax.butler.server.service.prgate.GateDecision;
+import com.datastax.butler.server.service.prgate.UpstreamBaselineService;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 import okhttp3.HttpUrl;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.util.UuidUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
 
 /** Controller for REST API related to PR gating. */
@@ -45,13 +68,26 @@ import org.springframework.web.server.ResponseStatusException;
 @RequestMapping("/api/gate")
 public class GateController {
   private static final Logger logger = LogManager.getLogger();
-  private static final int GATE_ANALYSIS_DEPTH = 16;
+  private static final int GATE_ANALYSIS_DEPTH = UpstreamBaselineService.GATE_ANALYSIS_DEPTH;
+  private static final int ASYNC_APPROVAL_THREADS = 4;
+  /** Maximum number of asynchronous approvals waiting for a thread before new ones are refused. */
+  @VisibleForTesting static final int MAX_QUEUED_APPROVALS = 64;
+  /** Maximum number of decisions kept, whether pending or not yet retrieved by clients. */
+  @VisibleForTesting static final int MAX_DECISIONS = 10_000;
+  /** Time after which clients are told to retry when too many approvals are pending. */
+  @VisibleForTesting static final Duration RETRY_AFTER = Duration.ofSeconds(30);
+  /** Time during which finished decisions are kept, so that clients have time to retrieve them. */
+  private static final Duration DECISION_RETENTION = Duration.ofHours(1);
+  private static final int MAX_WAIT_SECONDS = 60;
 
   private final JobsDb jobsDb;
   private final BuildsDb buildsDb;
   private final BuildsService buildsService;
   private final CiController ciController;
   private final UpstreamFailuresDb upstreamFailuresDb;
+  private final UpstreamBaselineService upstreamBaselines;
+  private final ExecutorService approvals;
+  private final ConcurrentMap<UUID, PendingDecision> decisions = Maps.newConcurrentMap();
 
   @Value("${butlerAppUrl}")
   private String butlerAppUrl;
@@ -63,12 +99,46 @@ public class GateController {
       BuildsDb buildsDb,
       BuildsService buildService,
       CiController ciController,
-      UpstreamFailuresDb upstreamFailuresDb) {
+      UpstreamFailuresDb upstreamFailuresDb,
+      UpstreamBaselineService upstreamBaselines) {
+    this(
+        jobsDb,
+        buildsDb,
+        buildService,
+        ciController,
+        upstreamFailuresDb,
+        upstreamBaselines,
+        new ThreadPoolExecutor(
+            ASYNC_APPROVAL_THREADS,
+            ASYNC_APPROVAL_THREADS,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_APPROVALS),
+            new ThreadFactoryBuilder().setNameFormat("gate-approval-%d").setDaemon(true).build()));
+  }
+
+  @VisibleForTesting
+  GateController(
+      JobsDb jobsDb,
+      BuildsDb buildsDb,
+      BuildsService buildService,
+      CiController ciController,
+      UpstreamFailuresDb upstreamFailuresDb,
+      UpstreamBaselineService upstreamBaselines,
+      ExecutorService approvals) {
     this.jobsDb = jobsDb;
     this.buildsDb = buildsDb;
     this.buildsService = buildService;
     this.ciController = ciController;
     this.upstreamFailuresDb = upstreamFailuresDb;
+    this.upstreamBaselines = upstreamBaselines;
+    this.approvals = approvals;
+  }
+
+  /** Stops the asynchronous approvals in progress on shutdown. */
+  @PreDestroy
+  public void shutdown() {
+    approvals.shutdownNow();
   }
 
   /** Approve or reject given build from the perspective of test failures. */
@@ -78,16 +148,7 @@ public class GateController {
     logger.info("Calculating approval for build {}", request);
     // we need to know workflow and jenkins
     var workflowDef = ciController.getWorkflowDef(WorkflowId.of(request.pipeline()));
-    var url = HttpUrl.parse(request.url());
-    if (url == null) {
-      logger.warn("Cannot parse url in {}", request);
-      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid url: " + request.url());
-    }
-    if (request.buildNumber() <= 0) {
-      logger.warn("Invalid request, build number should be > 0 in {}", request);
-      throw new ResponseStatusException(
-          HttpStatus.BAD_REQUEST, "Invalid request, build number should be > 0: " + request.url());
-    }
+    var url = validateRequest(request);
     var jenkinsClient = JenkinsClient.createForUrl(url);
     // now we need to load build using provided URL
     var jobId = new JobId(WorkflowId.of(request.pipeline()), Branch.fromString(request.branch()));
@@ -121,6 +182,96 @@ public class GateController {
     }
   }
 
+  /**
+   * Asynchronous variant of {@link #approveBuild}.
+   *
+   * <p>Request is validated and accepted right away, the returned decision id can be used to poll
+   * for the decision with {@link #decisionStatus}. Loading the build from jenkins and making the
+   * decision happens in the background. If too many approvals are pending, the request is rejected
+   * with a 429 status and a Retry-After header, and should be submitted again later.
+   */
+  @PostMapping("/builds/approve/async")
+  public ResponseEntity<JenkinsBuildApprovalStatus> submitApproval(
+      @RequestBody JenkinsBuildApprovalRequest request) {
+    ciController.getWorkflowDef(WorkflowId.of(request.pipeline()));
+    validateRequest(request);
+    UUID decisionId = UuidUtil.getTimeBasedUuid();
+    CompletableFuture<JenkinsBuildApprovalResponse> future;
+    try {
+      if (decisions.size() >= MAX_DECISIONS) {
+        throw new RejectedExecutionException(MAX_DECISIONS + " decisions are kept");
+      }
+      future = CompletableFuture.supplyAsync(() -> approveBuild(request), approvals);
+    } catch (RejectedExecutionException e) {
+      logger.warn("Refusing approval of build {}: {}", request, e.getMessage());
+      return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+          .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER.toSeconds()))
+          .build();
+    }
+    decisions.put(decisionId, new PendingDecision(future));
+    logger.info("Submitted approval {} for build {}", decisionId, request);
+    return ResponseEntity.accepted()
+        .location(URI.create("/api/gate/decisions/" + decisionId))
+        .body(JenkinsBuildApprovalStatus.pending(decisionId));
+  }
+
+  /**
+   * Return status of the asynchronous approval.
+   *
+   * <p>With positive wait this is a long-poll: the answer is sent as soon as the decision is made,
+   * but not later than after given number of seconds (capped to {@value #MAX_WAIT_SECONDS}).
+   */
+  @GetMapping("/decisions/{decisionId}")
+  public DeferredResult<JenkinsBuildApprovalStatus> decisionStatus(
+      @PathVariable UUID decisionId,
+      @RequestParam(name = "wait", defaultValue = "0") int waitSeconds) {
+    var pending = decisions.get(decisionId);
+    if (pending == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown decision " + decisionId);
+    }
+    long timeoutMs = TimeUnit.SECONDS.toMillis(Math.min(waitSeconds, MAX_WAIT_SECONDS));
+    if (timeoutMs <= 0 || pending.future().isDone()) {
+      var result = new DeferredResult<JenkinsBuildApprovalStatus>();
+      result.setResult(pending.status(decisionId));
+      return result;
+    }
+    var stillPending = JenkinsBuildApprovalStatus.pending(decisionId);
+    var result = new DeferredResult<JenkinsBuildApprovalStatus>(timeoutMs, stillPending);
+    // the wait is also bounded here, whether or not the container times the request out
+    pending
+        .future()
+        .handle((r, e) -> pending.status(decisionId))
+        .completeOnTimeout(stillPending, timeoutMs, TimeUnit.MILLISECONDS)
+        .thenAccept(result::setResult);
+    return result;
+  }
+
+  /** Remove decisions finished more than 1h ago, so that clients have time to retrieve them. */
+  @SuppressWarnings("unused")
+  @Scheduled(fixedDelay = 1000 * 60 * 15) // every 15 minutes
+  public void cleanupFinishedDecisions() {
+    cleanupDecisionsFinishedBefore(Instant.now().minus(DECISION_RETENTION));
+  }
+
+  @VisibleForTesting
+  void cleanupDecisionsFinishedBefore(Instant threshold) {
+    decisions.values().removeIf(d -> d.finishedBefore(threshold));
+  }
+
+  private HttpUrl validateRequest(JenkinsBuildApprovalRequest request) {
+    var url = HttpUrl.parse(request.url());
+    if (url == null) {
+      logger.warn("Cannot parse url in {}", request);
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid url: " + request.url());
+    }
+    if (request.buildNumber() <= 0) {
+      logger.warn("Invalid request, build number should be > 0 in {}", request);
+      throw new ResponseStatusException(
+          HttpStatus.BAD_REQUEST, "Invalid request, build number should be > 0: " + request.url());
+    }
+    return url;
+  }
+
   @VisibleForTesting
   JenkinsBuildApprovalResponse approval(
       JenkinsBuild build, JenkinsBuildApprovalRequest request, String explanation) {
@@ -241,21 +392,14 @@ public class GateController {
    */
   @VisibleForTesting
   GateDecision makeDecision(JenkinsBuildApprovalRequest request) {
-    // Collect failures from both branch and upstream
-    var failures =
-        upstreamFailuresDb.compareJobs(
-            request.pipeline(),
-            request.branch(),
-            request.upstreamWorkflow(),
-            request.upstreamBranch(),
-            Optional.of(GATE_ANALYSIS_DEPTH));
-    // [0] includes any tests that were run on branch and failed on branch OR upstream
-    var branchFailures = failures.get(0).failed();
-    // [1] includes tests failing on upstream worflow+branch
-    // if no upstream branch provided compare against all builds before the requested one
-    var selfComparison = failures.size() == 1;
-    var upstreamFailures =
-        selfComparison ? failures.get(0).beforeBuild(request.buildNumber()) : failures.get(1);
+    var branchJob = WorkflowId.of(request.pipeline()).job(Branch.fromString(request.branch()));
+    var upstreamJob =
+        WorkflowId.of(request.upstreamWorkflow()).job(Branch.fromString(request.upstreamBranch()));
+    // includes any tests that were run on branch and failed on branch
+    var branchResults =
+        upstreamFailuresDb.findFailures(
+            upstreamFailuresDb.recentBuilds(branchJob, GATE_ANALYSIS_DEPTH));
+    var branchFailures = branchResults.failed();
     if (branchFailures.isEmpty()) {
       // if there are no failures we can approve
       return GateDecision.approved("All tests passed in all runs");
@@ -267,12 +411,22 @@ public class GateController {
               .filter(x -> x.failureDetails().last().id().buildNumber() == request.buildNumber())
               .filter(x -> !x.failureDetails().last().skipped())
               .collect(Collectors.toList());
+      // upstream failures come from the precomputed baseline of upstream workflow+branch
+      // if no upstream branch provided compare against all builds before the requested one
+      var selfComparison = branchJob.equals(upstreamJob);
+      var upstreamFailures =
+          selfComparison
+              ? branchResults.beforeBuild(request.buildNumber())
+              : upstreamBaselines.resultsFor(
+                  upstreamJob,
+                  GATE_ANALYSIS_DEPTH,
+                  ranInThisBuild.stream().map(TestFailure::test).collect(Collectors.toList()));
       // in other case we check case by case if failure classifies as rejected
       var newFailures = findNewTestFailures(ranInThisBuild, upstreamFailures);
       if (newFailures.isEmpty()) {
         return GateDecision.approved("No NEW test failures");
       } else {
-        var branchBuilds = failures.get(0).numBuilds();
+        var branchBuilds = branchResults.numBuilds();
         var summary =
             String.format("%d NEW test failure(s) in %d builds.", newFailures.size(), branchBuilds);
         return GateDecision.rejected(summary, newFailures);
@@ -302,4 +456,39 @@ public class GateController {
 
     return result;
   }
+
+  /** Asynchronous approval being computed (or already computed). */
+  private static class PendingDecision {
+    private final CompletableFuture<JenkinsBuildApprovalResponse> future;
+    private volatile Instant finished;
+
+    private PendingDecision(CompletableFuture<JenkinsBuildApprovalResponse> future) {
+      // done only once the time it finished is recorded
+      this.future = future.whenComplete((r, e) -> finished = Instant.now());
+    }
+
+    CompletableFuture<JenkinsBuildApprovalResponse> future() {
+      return future;
+    }
+
+    boolean finishedBefore(Instant threshold) {
+      var finishedAt = finished;
+      return finishedAt != null && finishedAt.isBefore(threshold);
+    }
+
+    JenkinsBuildApprovalStatus status(UUID decisionId) {
+      if (!future.isDone()) return JenkinsBuildApprovalStatus.pending(decisionId);
+      try {
+        return JenkinsBuildApprovalStatus.done(decisionId, future.join());
+      } catch (CompletionException e) {
+        var cause = e.getCause();
+        var error =
+            cause instanceof ResponseStatusException
+                ? ((ResponseStatusException) cause).getReason()
+                : cause.getMessage();
+        logger.warn("Approval {} failed: {}", decisionId, error);
+        return JenkinsBuildApprovalStatus.failed(decisionId, error);
+      }
+    }
+  }
 }
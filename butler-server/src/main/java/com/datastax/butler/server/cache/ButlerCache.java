@@ -0,0 +1,260 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory cache, bounded and instrumented, created through {@link CacheRegistry#builder}.
+ *
+ * <p>Values are never null: a loader returning null means "no value", which is returned as is but
+ * not cached (so that lookups of things that do not exist yet are not cached forever).
+ *
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ */
+public class ButlerCache<K, V> {
+  private final String name;
+  private final Cache<K, V> cache;
+  @Nullable private final Function<K, V> loader;
+  private final String bounds;
+
+  private ButlerCache(
+      String name, Cache<K, V> cache, @Nullable Function<K, V> loader, String bounds) {
+    this.name = name;
+    this.cache = cache;
+    this.loader = loader;
+    this.bounds = bounds;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Gets the value of the key, loading it with the loader of the cache if it is not cached.
+   *
+   * @param key the key to get the value of.
+   * @return the value, or null if the loader has none for {@code key}.
+   * @throws IllegalStateException if this cache has not been built with a loader.
+   */
+  @Nullable
+  public V get(K key) {
+    if (loader == null) {
+      throw new IllegalStateException(String.format("Cache %s has no loader", name));
+    }
+    try {
+      return ((LoadingCache<K, V>) cache).getUnchecked(key);
+    } catch (CacheLoader.InvalidCacheLoadException e) {
+      return null;
+    } catch (UncheckedExecutionException | ExecutionError e) {
+      throw rethrow(e.getCause());
+    }
+  }
+
+  /**
+   * Gets the value of the key, loading it with provided loader if it is not cached.
+   *
+   * <p>Concurrent gets of the same missing key wait for a single load.
+   *
+   * @param key the key to get the value of.
+   * @param loader computes the value of {@code key} if it is not cached, or returns null if there
+   *     is none.
+   * @return the value, or null if there is none for {@code key}.
+   */
+  @Nullable
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    try {
+      return cache.get(key, () -> loader.apply(key));
+    } catch (CacheLoader.InvalidCacheLoadException e) {
+      return null;
+    } catch (UncheckedExecutionException | ExecutionError | ExecutionException e) {
+      throw rethrow(e.getCause());
+    }
+  }
+
+  @Nullable
+  public V getIfPresent(K key) {
+    return cache.getIfPresent(key);
+  }
+
+  /** Whether the key has a cached value, without counting it as an access. */
+  public boolean containsKey(K key) {
+    return cache.asMap().containsKey(key);
+  }
+
+  public void put(K key, V value) {
+    cache.put(key, value);
+  }
+
+  /**
+   * Atomically computes the new value of the key from its current one (null if not cached).
+   *
+   * @param key the key to compute the value of.
+   * @param remapping computes the new value from the current one, or returns null to remove it.
+   * @return the new value, or null if there is none.
+   */
+  @Nullable
+  public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+    return cache.asMap().compute(key, remapping);
+  }
+
+  public void invalidate(K key) {
+    cache.invalidate(key);
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  /** Current statistics of the cache, counted since its creation. */
+  public CacheStatistics statistics() {
+    return CacheStatistics.of(name, bounds, cache.size(), cache.stats());
+  }
+
+  private static RuntimeException rethrow(Throwable cause) {
+    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+    if (cause instanceof Error) throw (Error) cause;
+    throw new IllegalStateException(cause);
+  }
+
+  /**
+   * Configures a cache before building it.
+   *
+   * <p>Every cache must be bounded, either by {@link #maximumSize} or by {@link #maximumWeight}.
+   *
+   * @param <K> type of the keys of the built cache.
+   * @param <V> type of the values of the built cache.
+   */
+  public static class Builder<K, V> {
+    private final CacheRegistry registry;
+    private final String name;
+    private final Executor refresher;
+
+    private long maximumSize = -1;
+    private long maximumWeight = -1;
+    @Nullable private ToIntBiFunction<? super K, ? super V> weigher;
+    @Nullable private Duration expireAfterWrite;
+    @Nullable private Duration expireAfterAccess;
+    @Nullable private Duration refreshAfterWrite;
+
+    Builder(CacheRegistry registry, String name, Executor refresher) {
+      this.registry = registry;
+      this.name = name;
+      this.refresher = refresher;
+    }
+
+    /** Bounds the number of entries, the least recently used being evicted first. */
+    public Builder<K, V> maximumSize(long maximumSize) {
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /** Bounds the total weight of the entries, as computed by {@code weigher}. */
+    public Builder<K, V> maximumWeight(
+        long maximumWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+      this.maximumWeight = maximumWeight;
+      this.weigher = weigher;
+      return this;
+    }
+
+    /** Expires entries after given time since they have been loaded (or put). */
+    public Builder<K, V> expireAfterWrite(Duration duration) {
+      this.expireAfterWrite = duration;
+      return this;
+    }
+
+    /** Expires entries after given time since they have been last accessed. */
+    public Builder<K, V> expireAfterAccess(Duration duration) {
+      this.expireAfterAccess = duration;
+      return this;
+    }
+
+    /**
+     * Reloads entries accessed after given time since they have been loaded.
+     *
+     * <p>The reload happens in the background, the current value being returned until the new one
+     * is loaded. This only applies to caches built with a loader.
+     */
+    public Builder<K, V> refreshAfterWrite(Duration duration) {
+      this.refreshAfterWrite = duration;
+      return this;
+    }
+
+    /** Builds a cache whose values are put or loaded by the callers. */
+    public ButlerCache<K, V> build() {
+      if (refreshAfterWrite != null) {
+        throw new IllegalArgumentException(
+            String.format("Cache %s cannot be refreshed without a loader", name));
+      }
+      return registry.register(new ButlerCache<>(name, builder().build(), null, bounds()));
+    }
+
+    /**
+     * Builds a cache whose values are loaded by the provided loader.
+     *
+     * @param loader loads the value of a key, or returns null if there is none.
+     */
+    public ButlerCache<K, V> build(Function<K, V> loader) {
+      CacheLoader<K, V> cacheLoader =
+          new CacheLoader<>() {
+            @Override
+            public V load(K key) {
+              // a null value is reported by guava as an InvalidCacheLoadException, see get(K)
+              return loader.apply(key);
+            }
+          };
+      cacheLoader = CacheLoader.asyncReloading(cacheLoader, refresher);
+      return registry.register(
+          new ButlerCache<>(name, builder().build(cacheLoader), loader, bounds()));
+    }
+
+    private CacheBuilder<K, V> builder() {
+      if ((maximumSize < 0) == (maximumWeight < 0)) {
+        throw new IllegalArgumentException(
+            String.format("Cache %s must be bounded by either its size or its weight", name));
+      }
+      @SuppressWarnings("unchecked")
+      CacheBuilder<K, V> builder =
+          (CacheBuilder<K, V>) (CacheBuilder<?, ?>) CacheBuilder.newBuilder();
+      builder = builder.recordStats();
+      if (maximumSize >= 0) builder = builder.maximumSize(maximumSize);
+      if (weigher != null) {
+        var w = weigher;
+        builder = builder.maximumWeight(maximumWeight).weigher(w::applyAsInt);
+      }
+      if (expireAfterWrite != null) builder = builder.expireAfterWrite(expireAfterWrite);
+      if (expireAfterAccess != null) builder = builder.expireAfterAccess(expireAfterAccess);
+      if (refreshAfterWrite != null) builder = builder.refreshAfterWrite(refreshAfterWrite);
+      return builder;
+    }
+
+    private String bounds() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(maximumSize >= 0 ? "size<=" + maximumSize : "weight<=" + maximumWeight);
+      if (expireAfterWrite != null) sb.append(", expire-after-write=").append(expireAfterWrite);
+      if (expireAfterAccess != null) sb.append(", expire-after-access=").append(expireAfterAccess);
+      if (refreshAfterWrite != null) sb.append(", refresh-after-write=").append(refreshAfterWrite);
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of all the in-memory caches of the server.
+ *
+ * <p>Caches are created through the registry (see {@link #builder}) so that all of them are
+ * bounded, record statistics and can be inspected and invalidated by name through the caches
+ * endpoint.
+ */
+@Component
+public class CacheRegistry {
+  private final ConcurrentMap<String, ButlerCache<?, ?>> caches = new ConcurrentHashMap<>();
+  private final Executor refresher;
+
+  /** Creates the registry (Autowired by Spring). */
+  @Autowired
+  public CacheRegistry() {
+    this(Executors.newFixedThreadPool(2));
+  }
+
+  @VisibleForTesting
+  CacheRegistry(Executor refresher) {
+    this.refresher = refresher;
+  }
+
+  /**
+   * Starts configuring a new cache.
+   *
+   * @param name the name of the cache, which must be unique.
+   * @return a builder for the cache, which is registered when built.
+   */
+  public <K, V> ButlerCache.Builder<K, V> builder(String name) {
+    return new ButlerCache.Builder<>(this, name, refresher);
+  }
+
+  <K, V> ButlerCache<K, V> register(ButlerCache<K, V> cache) {
+    if (caches.putIfAbsent(cache.name(), cache) != null) {
+      throw new IllegalArgumentException(
+          String.format("A cache named %s already exists", cache.name()));
+    }
+    return cache;
+  }
+
+  public Optional<ButlerCache<?, ?>> get(String name) {
+    return Optional.ofNullable(caches.get(name));
+  }
+
+  /** Statistics of all the caches, sorted by name. */
+  public List<CacheStatistics> statistics() {
+    return caches.values().stream()
+        .map(ButlerCache::statistics)
+        .sorted(Comparator.comparing(CacheStatistics::name))
+        .collect(Collectors.toList());
+  }
+
+  /** Drops all the entries of all the caches. */
+  public void invalidateAll() {
+    caches.values().forEach(ButlerCache::invalidateAll);
+  }
+}
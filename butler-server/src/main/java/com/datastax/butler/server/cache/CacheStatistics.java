@@ -0,0 +1,40 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.cache;
+
+import com.google.common.cache.CacheStats;
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
+
+/** Statistics of a {@link ButlerCache}, as exposed by the caches endpoint. */
+@Value
+public class CacheStatistics {
+  String name;
+  /** Human readable description of the bounds of the cache (size, weight, expiry, refresh). */
+  String bounds;
+  long size;
+  long hits;
+  long misses;
+  double hitRate;
+  long loads;
+  long loadFailures;
+  double averageLoadMs;
+  long evictions;
+
+  static CacheStatistics of(String name, String bounds, long size, CacheStats stats) {
+    return new CacheStatistics(
+        name,
+        bounds,
+        size,
+        stats.hitCount(),
+        stats.missCount(),
+        stats.hitRate(),
+        stats.loadCount(),
+        stats.loadExceptionCount(),
+        stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1),
+        stats.evictionCount());
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UrlPathHelper;
+
+/**
+ * Decompresses the bodies of build imports sent with a gzip Content-Encoding, as they are read.
+ *
+ * <p>Servlet containers only compress responses, while clients uploading builds (e.g. the butler
+ * client) compress their payloads, which are mostly repetitive test names. Only the import
+ * endpoints (under /api/ci/builds/import/) are filtered, where imports with other content encodings
+ * are refused. As a few KB of gzip can expand to GB, a body which decompresses to more than the
+ * configured maximum size is rejected with a 413 status.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class GzipRequestFilter extends OncePerRequestFilter {
+  /** Path of the endpoints whose bodies may be compressed. */
+  static final String IMPORT_PATH = "/api/ci/builds/import/";
+
+  private final UrlPathHelper pathHelper = new UrlPathHelper();
+  private final long maxDecompressedBytes;
+
+  /** Creates the filter (Autowired by Spring). */
+  @Autowired
+  public GzipRequestFilter(
+      @Value("${butler.import.maxDecompressedSize:1GB}") DataSize maxDecompressedSize) {
+    this.maxDecompressedBytes = maxDecompressedSize.toBytes();
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !pathHelper.getPathWithinApplication(request).startsWith(IMPORT_PATH);
+  }
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+    if (encoding == null || "identity".equalsIgnoreCase(encoding)) {
+      filterChain.doFilter(request, response);
+    } else if ("gzip".equalsIgnoreCase(encoding)) {
+      filterChain.doFilter(new GzipRequest(request, maxDecompressedBytes), response);
+    } else {
+      String msg = "Unsupported content encoding " + encoding;
+      response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, msg);
+    }
+  }
+
+  /** The request with its decompressed body, whose length is unknown. */
+  private static class GzipRequest extends HttpServletRequestWrapper {
+    private final long maxDecompressedBytes;
+    private ServletInputStream body;
+
+    private GzipRequest(HttpServletRequest request, long maxDecompressedBytes) {
+      super(request);
+      this.maxDecompressedBytes = maxDecompressedBytes;
+    }
+
+    private static boolean isHidden(String header) {
+      return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(header)
+          || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header);
+    }
+
+    @Override
+    public synchronized ServletInputStream getInputStream() throws IOException {
+      if (body == null) {
+        body = new DecompressedBody(super.getInputStream(), maxDecompressedBytes);
+      }
+      return body;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+      var charset =
+          getCharacterEncoding() == null
+              ? StandardCharsets.UTF_8
+              : Charset.forName(getCharacterEncoding());
+      return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+    }
+
+    @Override
+    public int getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+      return -1;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return isHidden(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+      var names = Collections.list(super.getHeaderNames());
+      names.removeIf(GzipRequest::isHidden);
+      return Collections.enumeration(names);
+    }
+  }
+
+  /**
+   * The decompressed body of a request, which is refused once more than the maximum number of bytes
+   * are read.
+   *
+   * <p>Non-blocking reads are delegated to the compressed body: the read listener is notified as
+   * compressed data is available.
+   */
+  private static class DecompressedBody extends ServletInputStream {
+    private final ServletInputStream compressed;
+    private final GZIPInputStream decompressed;
+    private final long maxBytes;
+    private long readBytes;
+    private boolean finished;
+
+    private DecompressedBody(ServletInputStream compressed, long maxBytes) throws IOException {
+      this.compressed = compressed;
+      this.decompressed = new GZIPInputStream(compressed);
+      this.maxBytes = maxBytes;
+    }
+
+    private int count(int read) {
+      finished = read < 0;
+      if (read > 0) {
+        readBytes += read;
+        if (readBytes > maxBytes) {
+          String msg = String.format("Decompressed body is larger than %d bytes", maxBytes);
+          throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, msg);
+        }
+      }
+      return read;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = decompressed.read();
+      count(read < 0 ? read : 1);
+      return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return count(decompressed.read(b, off, len));
+    }
+
+    @Override
+    public boolean isFinished() {
+      return finished;
+    }
+
+    @Override
+    public boolean isReady() {
+      return compressed.isReady();
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      compressed.setReadListener(readListener);
+    }
+
+    @Override
+    public void close() throws IOException {
+      decompressed.close();
+    }
+  }
+}
@@ -7,15 +7,41 @@ package com.datastax.butler.server.config;
 
 import com.datastax.butler.commons.json.Json;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+/**
+ * Configures the mapping of the REST API payloads.
+ *
+ * <p>Payloads are JSON by default, but clients can also send (with Content-Type) and receive (with
+ * Accept) the same objects in the binary Smile ({@code application/x-jackson-smile}) or CBOR
+ * ({@code application/cbor}) formats, which are smaller and faster to parse and write. This mostly
+ * matters for build imports and upstream failures, whose payloads can be tens of MB.
+ */
 @Configuration
-public class JsonConfig {
+public class JsonConfig implements WebMvcConfigurer {
   @Bean
   @Primary
   public ObjectMapper jsonMapper() {
     return Json.mapper();
   }
+
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    // Spring registers its own converters when the formats are available, but with mappers that do
+    // not map objects as the JSON one does (e.g. property names), so they are replaced by ours;
+    // which are added last, so that clients accepting anything still get JSON
+    converters.removeIf(
+        c ->
+            c instanceof MappingJackson2SmileHttpMessageConverter
+                || c instanceof MappingJackson2CborHttpMessageConverter);
+    converters.add(new MappingJackson2SmileHttpMessageConverter(Json.smileMapper()));
+    converters.add(new MappingJackson2CborHttpMessageConverter(Json.cborMapper()));
+  }
 }
@@ -5,12 +5,13 @@
  */
 package com.datastax.butler.server.config;
 
-import com.datastax.butler.server.db.AuthoritiesDb;
+import com.google.common.annotations.VisibleForTesting;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import java.io.IOException;
 import java.util.List;
+import java.util.function.Function;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -28,17 +29,32 @@ public class JwtAuthorizationFilter extends BasicAuthenticationFilter {
   protected static final Logger log = LogManager.getLogger();
 
   private final JwtParser claimsParser;
-  private final AuthoritiesDb authoritiesDb;
+  private final Function<String, List<SimpleGrantedAuthority>> authorities;
 
+  /**
+   * Creates the filter.
+   *
+   * @param authenticationManager the authentication manager.
+   * @param config the JWT configuration.
+   * @param authorities returns the authorities of a user, this is called on every authenticated
+   *     request so it should be cheap (see {@link
+   *     com.datastax.butler.server.db.AuthoritiesDb#grantedAuthorities}).
+   */
   JwtAuthorizationFilter(
-      AuthenticationManager authenticationManager, JwtConfig config, AuthoritiesDb authoritiesDb) {
+      AuthenticationManager authenticationManager,
+      JwtConfig config,
+      Function<String, List<SimpleGrantedAuthority>> authorities) {
     super(authenticationManager);
     this.claimsParser = Jwts.parserBuilder().setSigningKey(config.secretKey()).build();
-    this.authoritiesDb = authoritiesDb;
+    this.authorities = authorities;
   }
 
   private UsernamePasswordAuthenticationToken parseToken(HttpServletRequest request) {
-    String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+    return authenticate(request.getHeader(HttpHeaders.AUTHORIZATION));
+  }
+
+  @VisibleForTesting
+  UsernamePasswordAuthenticationToken authenticate(String header) {
     if (header == null || !header.startsWith(JwtConfig.HEADER_PREFIX)) {
       return null;
     }
@@ -50,8 +66,7 @@ public class JwtAuthorizationFilter extends BasicAuthenticationFilter {
         return null;
       }
 
-      List<SimpleGrantedAuthority> authorities = authoritiesDb.grantedAuthorities(username);
-      return new UsernamePasswordAuthenticationToken(username, null, authorities);
+      return new UsernamePasswordAuthenticationToken(username, null, authorities.apply(username));
     } catch (JwtException exception) {
       log.warn("Error decoding JWT token {}: {}", token, exception.getMessage());
       return null;
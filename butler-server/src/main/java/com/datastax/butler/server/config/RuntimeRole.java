@@ -0,0 +1,47 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import java.util.Locale;
+
+/**
+ * Role of a butler-server instance, selected with the {@value #PROPERTY} property.
+ *
+ * <p>Instances of different roles only coordinate through the database: API instances queue bulk
+ * loads in the LOAD_TASKS table, and worker instances claim and run them. So the instances serving
+ * queries and the ones ingesting builds can be scaled independently, and a big bulk load does not
+ * compete for the threads and heap of the instances serving the UI.
+ */
+public enum RuntimeRole {
+  /** Serves the UI and the REST API, bulk loads are left to worker instances. */
+  API,
+  /** Runs the bulk loads (including the periodic load of upstream jobs), without web server. */
+  WORKER,
+  /** Both of the above, for single-instance deployments (the default). */
+  ALL;
+
+  public static final String PROPERTY = "butler.role";
+
+  /** Parses the value of the {@value #PROPERTY} property, case-insensitively. */
+  public static RuntimeRole fromString(String value) {
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          String.format("Invalid %s '%s', should be one of api, worker or all", PROPERTY, value));
+    }
+  }
+
+  /** Whether this instance serves the UI and the REST API. */
+  public boolean servesApi() {
+    return this != WORKER;
+  }
+
+  /** Whether this instance runs the bulk loads. */
+  public boolean runsIngestion() {
+    return this != API;
+  }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RuntimeRoleConfig {
+  private static final Logger logger = LogManager.getLogger();
+
+  /** The role of this instance, from the {@value RuntimeRole#PROPERTY} property. */
+  @Bean
+  public RuntimeRole runtimeRole(@Value("${" + RuntimeRole.PROPERTY + ":all}") String role) {
+    var runtimeRole = RuntimeRole.fromString(role);
+    logger.info("Starting butler instance with role {}", runtimeRole);
+    return runtimeRole;
+  }
+}
@@ -57,7 +57,9 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         .csrf()
         .disable()
         .addFilter(new JwtAuthenticationFilter(authenticationManager(), jwtConfig))
-        .addFilter(new JwtAuthorizationFilter(authenticationManager(), jwtConfig, authoritiesDb))
+        .addFilter(
+            new JwtAuthorizationFilter(
+                authenticationManager(), jwtConfig, authoritiesDb::grantedAuthorities))
         .authorizeRequests(authorizeRequests -> authorizeRequests.anyRequest().permitAll())
         .sessionManagement()
         .sessionCreationPolicy(SessionCreationPolicy.STATELESS);
@@ -5,7 +5,11 @@
  */
 package com.datastax.butler.server.db;
 
+import com.datastax.butler.server.cache.ButlerCache;
+import com.datastax.butler.server.cache.CacheRegistry;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -15,18 +19,29 @@ import org.springframework.stereotype.Repository;
 /**
  * Handles accesses to the user authorities in the database (so maintenance of the {@link
  * AuthoritiesDb#TABLE}).
+ *
+ * <p>Authorities are checked on every authenticated request, so they are cached. Changes made
+ * through this class (or {@link UsersDb}) invalidate the cached authorities of the user, other
+ * changes are picked up when the cached authorities expire.
  */
 @Repository
 public class AuthoritiesDb extends DbTableService {
   public static final String TABLE = "authorities";
 
   private final TableMapper<StoredAuthority, StoredAuthority> authoritiesMapper;
+  private final ButlerCache<String, List<SimpleGrantedAuthority>> authoritiesCache;
 
   /** Creates the repository (Auto-wired by Spring). */
   @Autowired
-  public AuthoritiesDb(NamedParameterJdbcTemplate template) {
+  public AuthoritiesDb(NamedParameterJdbcTemplate template, CacheRegistry caches) {
     super(template, TABLE);
     this.authoritiesMapper = tableMapper(StoredAuthority.class, StoredAuthority.class);
+    this.authoritiesCache =
+        caches
+            .<String, List<SimpleGrantedAuthority>>builder("authorities")
+            .maximumSize(1_000)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build(this::load);
   }
 
   /**
@@ -36,6 +51,7 @@ public class AuthoritiesDb extends DbTableService {
    */
   public void setAdmin(String username) {
     authoritiesMapper.insertOrUpdate(new StoredAuthority(username, "ROLE_ADMIN"));
+    invalidate(username);
   }
 
   /**
@@ -45,7 +61,16 @@ public class AuthoritiesDb extends DbTableService {
    * @return a list of {@code username} authorities. This will be empty if the user does not exists.
    */
   public List<SimpleGrantedAuthority> grantedAuthorities(String username) {
-    return authoritiesMapper.getAll().stream()
+    return authoritiesCache.get(username);
+  }
+
+  /** Drops the cached authorities of the provided user, for when they have changed. */
+  public void invalidate(String username) {
+    authoritiesCache.invalidate(username);
+  }
+
+  private List<SimpleGrantedAuthority> load(String username) {
+    return authoritiesMapper.getWhere("username=:username", Map.of("username", username)).stream()
         .map(a -> new SimpleGrantedAuthority(a.authority()))
         .collect(Collectors.toUnmodifiableList());
   }
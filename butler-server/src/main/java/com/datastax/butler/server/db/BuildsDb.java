@@ -7,34 +7,83 @@ package com.datastax.butler.server.db;
 
 import com.datastax.butler.api.ci.BuildImportRequest;
 import com.datastax.butler.commons.jenkins.JenkinsBuild;
+import com.datastax.butler.server.cache.CacheRegistry;
+import com.datastax.butler.server.events.IngestEvent.BuildDeleted;
+import com.datastax.butler.server.events.IngestEventBus;
+import com.datastax.butler.server.service.ClusterService;
+import com.google.common.collect.Iterables;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import lombok.Value;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Handles accesses to the Jenkins jobs known of the database (so mostly maintenance of the {@link
  * JobsDb#TABLE} table).
+ *
+ * <p>Recent builds are kept in memory and updated by the changes done through this class. Builds
+ * may also be stored by other instances (see {@link ClusterService}), whatever their role: workers
+ * load and import builds, and API instances still run the synchronous imports. So unless this is
+ * the only live instance, the builds kept in memory are dropped every minute to pick up the builds
+ * stored by other instances.
  */
 @Repository
 public class BuildsDb extends DbTableService {
   public static final String TABLE = "builds";
 
+  /** Number of most recent builds of each job kept in memory. */
+  static final int CACHED_BUILDS = 128;
+
+  /** Max number of builds kept in memory, over all jobs. */
+  private static final long MAX_CACHED_BUILDS = 50_000;
+
+  /** Max number of builds read or inserted by a single statement. */
+  private static final int BATCH_SIZE = 500;
+
   private final Mapper<BuildDbId> buildDbIdMapper =
       Mapper.create(BuildDbId.class, "job_id", "build_number");
 
   private final TableMapper<StoredBuild, Long> buildsMapper;
+  private final RecentBuildsCache recentBuilds;
+  private final IngestEventBus events;
+  private final ClusterService cluster;
 
   /** Creates the repository (Auto-wired by Spring). */
   @Autowired
-  public BuildsDb(NamedParameterJdbcTemplate template) {
+  public BuildsDb(
+      NamedParameterJdbcTemplate template,
+      IngestEventBus events,
+      ClusterService cluster,
+      CacheRegistry caches) {
     super(template, TABLE);
+    this.events = events;
+    this.cluster = cluster;
     this.buildsMapper = tableMapper(StoredBuild.class, Long.class);
+    this.recentBuilds =
+        new RecentBuildsCache(caches, CACHED_BUILDS, MAX_CACHED_BUILDS, this::queryRecentOf);
+  }
+
+  /**
+   * Drops the recent builds kept in memory, unless this is the only live instance.
+   *
+   * <p>This is called periodically by Spring.
+   */
+  @Scheduled(fixedDelay = 1000 * 60, initialDelay = 1000 * 60) // every minute
+  public void dropRecentBuildsOfOtherInstances() {
+    if (cluster.isOnlyNode()) return;
+    recentBuilds.invalidateAll();
   }
 
   /**
@@ -45,23 +94,61 @@ public class BuildsDb extends DbTableService {
    * @return the BUILDS::ID of the newly inserted build.
    */
   public long insert(long jobDbId, JenkinsBuild build) {
-    return buildsMapper.insert(StoredBuild.from(jobDbId, build));
+    long buildDbId = buildsMapper.insert(StoredBuild.from(jobDbId, build));
+    changed(jobDbId, buildDbId, recentBuilds::added);
+    return buildDbId;
   }
 
   public long insert(long jobDbId, BuildImportRequest build) {
-    return buildsMapper.insert(StoredBuild.from(jobDbId, build));
+    long buildDbId = buildsMapper.insert(StoredBuild.from(jobDbId, build));
+    changed(jobDbId, buildDbId, recentBuilds::added);
+    return buildDbId;
+  }
+
+  /**
+   * Inserts the provided imported builds of a job, with batched statements.
+   *
+   * @param jobDbId the JOBS::ID of the job these are builds of (which imply said job row exists).
+   * @param builds the builds to insert, which must not be stored yet.
+   * @return the newly inserted builds, by build number.
+   */
+  @Transactional
+  public Map<Integer, StoredBuild> insertAll(long jobDbId, Collection<BuildImportRequest> builds) {
+    if (builds.isEmpty()) return Map.of();
+    buildsMapper.insert(
+        builds.stream().map(b -> StoredBuild.from(jobDbId, b)).collect(Collectors.toList()));
+    var numbers = builds.stream().map(BuildImportRequest::buildNumber).collect(Collectors.toList());
+    var inserted = getByBuildNumbers(jobDbId, numbers);
+    afterCommit(() -> inserted.values().forEach(recentBuilds::added));
+    return inserted;
+  }
+
+  /**
+   * Applies the change of a build to the recent builds kept in memory, once committed.
+   *
+   * <p>The build is only read back if builds of its job are kept in memory. Otherwise builds of the
+   * job which may be loaded meanwhile are dropped after the commit, as they may miss the change.
+   */
+  private void changed(long jobDbId, long buildDbId, Consumer<StoredBuild> change) {
+    if (recentBuilds.isCached(jobDbId)) {
+      get(buildDbId).ifPresent(b -> afterCommit(() -> change.accept(b)));
+    } else {
+      afterCommit(() -> recentBuilds.changed(jobDbId));
+    }
   }
 
   /**
    * Sets the 'fully_stored' column to true for the provided build.
    *
+   * @param jobDbId the JOBS::ID of the job of the build.
    * @param buildId the database ID of the build to update (that build must exists, which is usually
    *     implied by the fact that we have it's database ID, but it shouldn't have been deleted).
    */
-  public void markBuildStored(long buildId) {
+  public void markBuildStored(long jobDbId, long buildId) {
     template.update(
         String.format("UPDATE %s SET fully_stored=true WHERE id=:id", TABLE),
         Map.of("id", buildId));
+    changed(jobDbId, buildId, recentBuilds::updated);
   }
 
   /**
@@ -77,10 +164,20 @@ public class BuildsDb extends DbTableService {
   /**
    * Return a list of recent builds for a job.
    *
+   * <p>The {@link #CACHED_BUILDS} most recent builds of each job are served from memory.
+   *
    * @param jobDbId the JOBS::ID of the job
    * @param limit how many to return
    */
   public List<StoredBuild> recentOf(long jobDbId, int limit) {
+    if (limit <= CACHED_BUILDS) {
+      Optional<List<StoredBuild>> cached = recentBuilds.recent(jobDbId, limit, false);
+      if (cached.isPresent()) return cached.get();
+    }
+    return queryRecentOf(jobDbId, limit);
+  }
+
+  private List<StoredBuild> queryRecentOf(long jobDbId, int limit) {
     String whereClause = "job_id=:id ORDER BY start_time DESC LIMIT " + limit;
     return buildsMapper.getWhere(whereClause, Map.of("id", jobDbId));
   }
@@ -88,11 +185,18 @@ public class BuildsDb extends DbTableService {
   /**
    * Return a list of recent builds for a job.
    *
+   * <p>Usable builds among the {@link #CACHED_BUILDS} most recent builds of each job are served
+   * from memory, the database is only queried if there is not enough of them.
+   *
    * @param jobDbId the JOBS::ID of the job
    * @param limit how many to return
    * @return list of stored builds
    */
   public List<StoredBuild> recentUsableOf(long jobDbId, int limit) {
+    if (limit <= CACHED_BUILDS) {
+      Optional<List<StoredBuild>> cached = recentBuilds.recent(jobDbId, limit, true);
+      if (cached.isPresent()) return cached.get();
+    }
     String whereClause = "job_id=:id AND usable=1 ORDER BY start_time DESC LIMIT " + limit;
     return buildsMapper.getWhere(whereClause, Map.of("id", jobDbId));
   }
@@ -125,6 +229,26 @@ public class BuildsDb extends DbTableService {
     return buildsMapper.getUnique(new BuildDbId(jobDbId, buildNumber), buildDbIdMapper);
   }
 
+  /**
+   * Retrieves the stored builds of a job with the provided numbers.
+   *
+   * @param jobDbId the database ID of the job of the builds to retrieve.
+   * @param buildNumbers the numbers of the builds to retrieve.
+   * @return the stored builds by build number, which does not contain the builds not stored.
+   */
+  public Map<Integer, StoredBuild> getByBuildNumbers(
+      long jobDbId, Collection<Integer> buildNumbers) {
+    Map<Integer, StoredBuild> builds = new HashMap<>();
+    for (List<Integer> batch : Iterables.partition(buildNumbers, BATCH_SIZE)) {
+      buildsMapper
+          .getWhere(
+              "job_id=:job_id AND build_number IN (:numbers)",
+              Map.of("job_id", jobDbId, "numbers", batch))
+          .forEach(b -> builds.put(b.buildNumber(), b));
+    }
+    return builds;
+  }
+
   /** Retrieve using db key. */
   public Optional<StoredBuild> get(long dbId) {
     return buildsMapper.get(dbId);
@@ -149,14 +273,20 @@ public class BuildsDb extends DbTableService {
     getByBuildNumber(jobId, buildNumber).ifPresent(b -> delete(b.id()));
   }
 
-  /** Deletes a build given it's database ID. */
+  /** Deletes a build given it's database ID, publishing {@link BuildDeleted} if it existed. */
   public void delete(long buildDbId) {
+    Optional<StoredBuild> build = get(buildDbId);
     template.update(q("DELETE FROM %s WHERE id=%d", TABLE, buildDbId), Map.of());
+    build.ifPresent(
+        b -> {
+          afterCommit(() -> recentBuilds.removed(b.jobId(), buildDbId));
+          events.publish(new BuildDeleted(b.jobId(), buildDbId));
+        });
   }
 
-  /** Update summary fields for ran, failed, skipped tests in the stored build. */
+  /** Update summary fields for ran, failed, skipped tests in the stored build of given job. */
   public boolean updateBuildSummary(
-      long buildDbId, long ranCount, long failedCount, long skippedCount) {
+      long jobDbId, long buildDbId, long ranCount, long failedCount, long skippedCount) {
     int res =
         template.update(
             q(
@@ -165,9 +295,52 @@ public class BuildsDb extends DbTableService {
                 TABLE),
             Map.of(
                 "id", buildDbId, "ran", ranCount, "failed", failedCount, "skipped", skippedCount));
+    if (res > 0) changed(jobDbId, buildDbId, recentBuilds::updated);
     return res > 0;
   }
 
+  /**
+   * Updates the summary fields of the provided builds to reflect their stored test runs, and marks
+   * them fully stored.
+   *
+   * <p>This is the batch equivalent of {@link #updateBuildSummary} and {@link #markBuildStored},
+   * counting the runs of all the builds with a single query.
+   */
+  public void markBuildsStoredWithSummary(Collection<Long> buildDbIds) {
+    for (List<Long> batch : Iterables.partition(buildDbIds, BATCH_SIZE)) {
+      String ids = idsToInClause(batch);
+      template.update(
+          q(
+              "UPDATE %s b LEFT JOIN (SELECT build_id, COUNT(*) AS ran, SUM(failed) AS failed, "
+                  + "SUM(skipped) AS skipped FROM %s WHERE build_id IN (%s) GROUP BY build_id) r "
+                  + "ON r.build_id=b.id SET b.ran_tests=COALESCE(r.ran, 0), "
+                  + "b.failed_tests=COALESCE(r.failed, 0), b.skipped_tests=COALESCE(r.skipped, 0), "
+                  + "b.fully_stored=true WHERE b.id IN (%s)",
+              TABLE, TestRunsDb.TABLE, ids, ids),
+          Map.of());
+      var updated = buildsMapper.getWhere(q("id IN (%s)", ids), Map.of());
+      afterCommit(() -> updated.forEach(recentBuilds::updated));
+    }
+  }
+
+  /**
+   * Runs a change of the recent builds once the current transaction (if any) commits, so that they
+   * do not reflect changes which are rolled back.
+   */
+  private static void afterCommit(Runnable change) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              change.run();
+            }
+          });
+    } else {
+      change.run();
+    }
+  }
+
   /** Key uniquely identifying a build in the database. */
   @Value
   public static class BuildDbId {
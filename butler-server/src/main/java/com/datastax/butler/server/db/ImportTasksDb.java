@@ -0,0 +1,169 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Maintains IMPORT_TASKS table content: the raw build imports accepted by any instance, with their
+ * payload until they are imported by the instance that claims them.
+ *
+ * <p>As for {@link LoadTasksDb}, a task claimed by an instance which did not finish it for longer
+ * than a given duration (because it died) can be claimed again by another instance. Instances
+ * running tasks record a heartbeat (see {@link #heartbeat}) so that long tasks are not considered
+ * stale.
+ */
+@Repository
+public class ImportTasksDb extends DbTableService {
+  public static final String TABLE = "import_tasks";
+
+  /** Condition on tasks that can be claimed, given a :stale duration in seconds. */
+  private static final String CLAIMABLE =
+      "NOT finished AND (claimed_by IS NULL"
+          + " OR updated_at < TIMESTAMPADD(SECOND, -:stale, UTC_TIMESTAMP(3)))";
+
+  @Autowired
+  public ImportTasksDb(NamedParameterJdbcTemplate template) {
+    super(template, TABLE);
+  }
+
+  /** Inserts a new task, claimed by the provided node or queued if it is null. */
+  public void insert(UUID taskId, BuildId buildId, String payload, @Nullable String claimedBy) {
+    var params = new HashMap<String, Object>();
+    params.put("taskId", taskId.toString());
+    params.put("workflow", buildId.jobId().workflow().name());
+    params.put("jobName", buildId.jobId().jobName().toString());
+    params.put("buildNumber", buildId.buildNumber());
+    params.put("payload", payload);
+    params.put("claimedBy", claimedBy);
+    template.update(
+        q(
+            "INSERT INTO %s(task_id, workflow, job_name, build_number, payload, claimed_by, "
+                + "created_at, updated_at) VALUES (:taskId, :workflow, :jobName, :buildNumber, "
+                + ":payload, :claimedBy, UTC_TIMESTAMP(3), UTC_TIMESTAMP(3))",
+            table),
+        params);
+  }
+
+  /** Claims the task for the node, if it is not claimed by a live node already. */
+  public boolean claim(UUID taskId, String node, Duration staleAfter) {
+    return template.update(
+            q(
+                "UPDATE %s SET claimed_by=:node, updated_at=UTC_TIMESTAMP(3) "
+                    + "WHERE task_id=:taskId AND %s",
+                table, CLAIMABLE),
+            Map.of("taskId", taskId.toString(), "node", node, "stale", staleAfter.toSeconds()))
+        > 0;
+  }
+
+  /**
+   * Records that the tasks are still run by the node, so that they do not become claimable again.
+   *
+   * <p>Tasks finished, or claimed again by another node in the meantime, are left unchanged.
+   */
+  public void heartbeat(Collection<UUID> taskIds, String node) {
+    if (taskIds.isEmpty()) return;
+    template.update(
+        q(
+            "UPDATE %s SET updated_at=UTC_TIMESTAMP(3) "
+                + "WHERE task_id IN (:taskIds) AND claimed_by=:node AND NOT finished",
+            table),
+        Map.of(
+            "taskIds",
+            taskIds.stream().map(UUID::toString).collect(Collectors.toList()),
+            "node",
+            node));
+  }
+
+  /** Tasks which can be claimed, oldest first. */
+  public List<StoredImportTask> claimable(Duration staleAfter, int limit) {
+    return template.query(
+        q("SELECT * FROM %s WHERE %s ORDER BY updated_at LIMIT :limit", table, CLAIMABLE),
+        Map.of("stale", staleAfter.toSeconds(), "limit", limit),
+        (rs, i) -> task(rs));
+  }
+
+  /** The payload of the task, empty once it is finished. */
+  public Optional<String> payload(UUID taskId) {
+    return template
+        .query(
+            q("SELECT payload FROM %s WHERE task_id=:taskId AND NOT finished", table),
+            Map.of("taskId", taskId.toString()),
+            (rs, i) -> rs.getString("payload"))
+        .stream()
+        .findFirst();
+  }
+
+  /** Marks the task finished, with the error that made it fail if any, and drops its payload. */
+  public void finish(UUID taskId, @Nullable String error) {
+    var params = new HashMap<String, Object>();
+    params.put("taskId", taskId.toString());
+    params.put("error", error);
+    template.update(
+        q(
+            "UPDATE %s SET finished=TRUE, error=:error, payload=NULL, "
+                + "updated_at=UTC_TIMESTAMP(3) WHERE task_id=:taskId",
+            table),
+        params);
+  }
+
+  public Optional<StoredImportTask> get(UUID taskId) {
+    return template
+        .query(
+            q(
+                "SELECT task_id, workflow, job_name, build_number, claimed_by, finished, error, "
+                    + "created_at, updated_at FROM %s WHERE task_id=:taskId",
+                table),
+            Map.of("taskId", taskId.toString()),
+            (rs, i) -> task(rs))
+        .stream()
+        .findFirst();
+  }
+
+  /** Number of tasks not finished yet, whether they are claimed or not. */
+  public int countUnfinished() {
+    Integer count =
+        template.queryForObject(
+            q("SELECT COUNT(*) FROM %s WHERE NOT finished", table), Map.of(), Integer.class);
+    return count == null ? 0 : count;
+  }
+
+  /** Deletes the finished tasks whose status was last updated before the threshold. */
+  public int deleteFinishedBefore(Instant threshold) {
+    return template.update(
+        q("DELETE FROM %s WHERE finished AND updated_at < :threshold", table),
+        Map.of("threshold", Timestamp.from(threshold)));
+  }
+
+  private static StoredImportTask task(ResultSet rs) throws SQLException {
+    var jobId = JobId.forWorkflowAndBranch(rs.getString("workflow"), rs.getString("job_name"));
+    return new StoredImportTask(
+        UUID.fromString(rs.getString("task_id")),
+        jobId.build(rs.getInt("build_number")),
+        rs.getString("claimed_by"),
+        rs.getBoolean("finished"),
+        rs.getString("error"),
+        rs.getTimestamp("created_at").toInstant(),
+        rs.getTimestamp("updated_at").toInstant());
+  }
+}
@@ -24,7 +24,7 @@ import org.apache.logging.log4j.Logger;
 public class InterestingTests {
   JobsDb jobsDb;
   BuildsDb buildsDb;
-  TestRunsDb testRunsDb;
+  RecentResultsIndex recentResults;
   JobId jobId;
   int numBuilds;
   List<StoredBuild> builds = new ArrayList<>();
@@ -33,16 +33,21 @@ public class InterestingTests {
   private static final Logger logger = LogManager.getLogger();
 
   InterestingTests(
-      JobsDb jobsDb, BuildsDb buildsDb, TestRunsDb testRunsDb, JobId jobId, int numBuilds) {
+      JobsDb jobsDb,
+      BuildsDb buildsDb,
+      RecentResultsIndex recentResults,
+      JobId jobId,
+      int numBuilds) {
     this.jobsDb = jobsDb;
     this.buildsDb = buildsDb;
-    this.testRunsDb = testRunsDb;
+    this.recentResults = recentResults;
     this.jobId = jobId;
     this.numBuilds = numBuilds;
   }
 
-  InterestingTests(JobsDb jobsDb, BuildsDb buildsDb, TestRunsDb testRunsDb, JobId jobId) {
-    this(jobsDb, buildsDb, testRunsDb, jobId, 16);
+  InterestingTests(
+      JobsDb jobsDb, BuildsDb buildsDb, RecentResultsIndex recentResults, JobId jobId) {
+    this(jobsDb, buildsDb, recentResults, jobId, 16);
   }
 
   /**
@@ -76,13 +81,7 @@ public class InterestingTests {
 
     if (testIds.isEmpty()) {
       logger.info("populating testIds from builds: {}", builds);
-      this.testIds.addAll(
-          testRunsDb
-              .getFailuresForBuilds(
-                  builds().stream().map(StoredBuild::id).collect(Collectors.toList()))
-              .stream()
-              .map(StoredTestRun::testId)
-              .collect(Collectors.toUnmodifiableList()));
+      this.testIds.addAll(recentResults.failedTests(builds()));
     }
     return testIds;
   }
@@ -9,6 +9,8 @@ import com.datastax.butler.commons.dev.Branch;
 import com.datastax.butler.commons.dev.Workflow;
 import com.datastax.butler.commons.jenkins.JobId;
 import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.server.cache.ButlerCache;
+import com.datastax.butler.server.cache.CacheRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import java.util.HashSet;
 import java.util.List;
@@ -16,8 +18,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,20 +41,29 @@ public class JobsDb extends DbTableService {
           .column("job_name", Branch.class, Branch::toString, Branch::fromString)
           .build();
 
-  /** Use this to cache jobs we look up by ID during results processing. */
-  private final Map<Long, Optional<JobId>> jobsCache;
+  /**
+   * Use this to cache jobs we look up by ID during results processing. Unknown ids are not cached,
+   * as they may be those of jobs inserted later.
+   */
+  private final ButlerCache<Long, JobId> jobsCache;
 
   private final TableMapper<JobIdDto, Long> jobsMapper;
 
   private final UpstreamWorflowsDb upstreamWorflowsDb;
 
+  /** Configured upstream jobs, keyed by the version of the workflows they are computed from. */
+  private volatile Map.Entry<Long, Set<JobId>> configuredUpstreamJobs = Map.entry(-1L, Set.of());
+
   /** Creates the repository (Auto-wired by Spring). */
   @Autowired
-  public JobsDb(NamedParameterJdbcTemplate template, UpstreamWorflowsDb upstreamWorflowsDb) {
+  public JobsDb(
+      NamedParameterJdbcTemplate template,
+      UpstreamWorflowsDb upstreamWorflowsDb,
+      CacheRegistry caches) {
     super(template, JOBS_TABLE);
     this.upstreamWorflowsDb = upstreamWorflowsDb;
     this.jobsMapper = tableMapper(JobIdDto.class, Long.class);
-    this.jobsCache = new ConcurrentHashMap<>();
+    this.jobsCache = caches.<Long, JobId>builder("jobs").maximumSize(10_000).build(this::loadJob);
   }
 
   /**
@@ -91,12 +102,12 @@ public class JobsDb extends DbTableService {
    * @return an optional actual jobid object
    */
   public Optional<JobId> getById(long jobId) {
-    return jobsCache.computeIfAbsent(
-        jobId,
-        j -> {
-          Optional<JobIdDto> item = jobsMapper.get(jobId);
-          return item.map(Id::value);
-        });
+    return Optional.ofNullable(jobsCache.get(jobId));
+  }
+
+  @Nullable
+  private JobId loadJob(long jobId) {
+    return jobsMapper.get(jobId).map(Id::value).orElse(null);
   }
 
   /**
@@ -128,13 +139,20 @@ public class JobsDb extends DbTableService {
 
   /** Return "potential" upstream jobs based on the configured workflows. */
   public Set<JobId> getConfiguredUpstreamJobs() {
+    var workflows = upstreamWorflowsDb.snapshot();
+    var cached = configuredUpstreamJobs;
+    if (cached.getKey() == workflows.version()) {
+      return cached.getValue();
+    }
     Set<JobId> res = new HashSet<>();
-    for (Workflow w : upstreamWorflowsDb.upstreamWorkflows()) {
+    for (Workflow w : workflows.upstream()) {
       w.upstreamBranches().stream()
           .map(b -> w.workflowId().job(Branch.fromString(b)))
           .forEach(res::add);
     }
-    return res;
+    Set<JobId> jobs = Set.copyOf(res);
+    configuredUpstreamJobs = Map.entry(workflows.version(), jobs);
+    return jobs;
   }
 
   /**
@@ -155,6 +173,7 @@ public class JobsDb extends DbTableService {
   public void dropAllJobsForWorkflow(WorkflowId workflowId) {
     var params = Map.of("workflow", workflowId.name());
     template.update(q("DELETE FROM %s WHERE workflow=:workflow", JOBS_TABLE), params);
+    jobsCache.invalidateAll();
   }
 
   /**
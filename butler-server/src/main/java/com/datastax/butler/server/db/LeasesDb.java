@@ -0,0 +1,103 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Maintains LEASES table content.
+ *
+ * <p>A lease is a named lock held by an owner until it expires, which lets multiple butler-server
+ * instances sharing the database coordinate. Expiration times are computed and compared using the
+ * database clock, and every operation is a single atomic statement, so that no transaction is
+ * needed.
+ */
+@Repository
+public class LeasesDb extends DbTableService {
+  public static final String TABLE = "leases";
+
+  private static final String EXPIRES_AT = "TIMESTAMPADD(MICROSECOND, :ttl, UTC_TIMESTAMP(3))";
+
+  @Autowired
+  public LeasesDb(NamedParameterJdbcTemplate template) {
+    super(template, TABLE);
+  }
+
+  private static Map<String, Object> params(String name, String owner, Duration ttl) {
+    return Map.of("name", name, "owner", owner, "ttl", ttl.toNanos() / 1000);
+  }
+
+  /**
+   * Acquires the lease if it is free, expired or already held by the owner.
+   *
+   * @param name name of the lease
+   * @param owner unique identifier of the owner
+   * @param ttl time after which the lease expires if not renewed
+   * @return whether the owner now holds the lease
+   */
+  public boolean tryAcquire(String name, String owner, Duration ttl) {
+    var params = params(name, owner, ttl);
+    int taken =
+        template.update(
+            q(
+                "UPDATE %s SET owner=:owner, expires_at=%s "
+                    + "WHERE name=:name AND (owner=:owner OR expires_at < UTC_TIMESTAMP(3))",
+                table, EXPIRES_AT),
+            params);
+    if (taken > 0) return true;
+    // no row, or one held by another owner, in which case the insert is ignored
+    return template.update(
+            q("INSERT IGNORE INTO %s(name, owner, expires_at) VALUES (:name, :owner, %s)",
+                table, EXPIRES_AT),
+            params)
+        > 0;
+  }
+
+  /**
+   * Extends the lease if it is still held by the owner (even if expired, as long as no one else
+   * acquired it in the meantime).
+   *
+   * @return whether the owner still holds the lease
+   */
+  public boolean renew(String name, String owner, Duration ttl) {
+    return template.update(
+            q("UPDATE %s SET expires_at=%s WHERE name=:name AND owner=:owner", table, EXPIRES_AT),
+            params(name, owner, ttl))
+        > 0;
+  }
+
+  /** Releases the lease if it is held by the owner. */
+  public void release(String name, String owner) {
+    template.update(
+        q("DELETE FROM %s WHERE name=:name AND owner=:owner", table),
+        Map.of("name", name, "owner", owner));
+  }
+
+  /** Returns the owners of the unexpired leases whose name starts with the prefix. */
+  public List<String> owners(String namePrefix) {
+    return template.queryForList(
+        q(
+            "SELECT owner FROM %s WHERE name LIKE :prefix AND expires_at >= UTC_TIMESTAMP(3)",
+            table),
+        Map.of("prefix", namePrefix.replace("%", "\\%").replace("_", "\\_") + "%"),
+        String.class);
+  }
+
+  /** Deletes the leases expired for longer than given duration. */
+  public int purgeExpired(Duration expiredFor) {
+    return template.update(
+        q(
+            "DELETE FROM %s WHERE expires_at < TIMESTAMPADD(MICROSECOND, -:expiredFor,"
+                + " UTC_TIMESTAMP(3))",
+            table),
+        Map.of("expiredFor", expiredFor.toNanos() / 1000));
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.json.Json;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Maintains LOAD_TASKS table content: the bulk load tasks queued by any instance and run by the
+ * instances that claim them.
+ *
+ * <p>A task claimed by an instance which stopped updating its status for longer than a given
+ * duration (because it died) can be claimed again by another instance.
+ */
+@Repository
+public class LoadTasksDb extends DbTableService {
+  public static final String TABLE = "load_tasks";
+
+  /** Condition on tasks that can be claimed, given a :stale duration in seconds. */
+  private static final String CLAIMABLE =
+      "(claimed_by IS NULL OR (NOT finished"
+          + " AND updated_at < TIMESTAMPADD(SECOND, -:stale, UTC_TIMESTAMP(3))))";
+
+  /** Messages are stored as a JSON array, as a message may span several lines. */
+  private static final TypeReference<List<String>> MESSAGES = new TypeReference<>() {};
+
+  @Autowired
+  public LoadTasksDb(NamedParameterJdbcTemplate template) {
+    super(template, TABLE);
+  }
+
+  /** Inserts a new task, claimed by the provided node or queued if it is null. */
+  public void insert(UUID taskId, JobId jobId, int maxBuilds, @Nullable String claimedBy) {
+    var params = new HashMap<String, Object>();
+    params.put("taskId", taskId.toString());
+    params.put("workflow", jobId.workflow().name());
+    params.put("jobName", jobId.jobName().toString());
+    params.put("maxBuilds", maxBuilds);
+    params.put("claimedBy", claimedBy);
+    template.update(
+        q(
+            "INSERT INTO %s(task_id, workflow, job_name, max_builds, claimed_by, updated_at) "
+                + "VALUES (:taskId, :workflow, :jobName, :maxBuilds, :claimedBy, UTC_TIMESTAMP(3))",
+            table),
+        params);
+  }
+
+  /** Claims the task for the node, if it is not claimed by a live node already. */
+  public boolean claim(UUID taskId, String node, Duration staleAfter) {
+    return template.update(
+            q(
+                "UPDATE %s SET claimed_by=:node, updated_at=UTC_TIMESTAMP(3) "
+                    + "WHERE task_id=:taskId AND %s",
+                table, CLAIMABLE),
+            Map.of("taskId", taskId.toString(), "node", node, "stale", staleAfter.toSeconds()))
+        > 0;
+  }
+
+  /** Tasks which can be claimed, oldest first. */
+  public List<StoredLoadTask> claimable(Duration staleAfter, int limit) {
+    return template.query(
+        q("SELECT * FROM %s WHERE %s ORDER BY updated_at LIMIT :limit", table, CLAIMABLE),
+        Map.of("stale", staleAfter.toSeconds(), "limit", limit),
+        (rs, i) -> task(rs));
+  }
+
+  /** Updates the status of the task. */
+  public void updateStatus(
+      UUID taskId,
+      boolean started,
+      boolean finished,
+      int progress,
+      Duration duration,
+      @Nullable String error,
+      List<String> messages,
+      int messageCount) {
+    var params = new HashMap<String, Object>();
+    params.put("taskId", taskId.toString());
+    params.put("started", started);
+    params.put("finished", finished);
+    params.put("progress", progress);
+    params.put("durationMs", duration.toMillis());
+    params.put("error", error);
+    params.put("messages", Json.toJson(messages));
+    params.put("messageCount", messageCount);
+    template.update(
+        q(
+            "UPDATE %s SET started=:started, finished=:finished, progress=:progress, "
+                + "duration_ms=:durationMs, error=:error, messages=:messages, "
+                + "message_count=:messageCount, updated_at=UTC_TIMESTAMP(3) WHERE task_id=:taskId",
+            table),
+        params);
+  }
+
+  public Optional<StoredLoadTask> get(UUID taskId) {
+    return template
+        .query(
+            q("SELECT * FROM %s WHERE task_id=:taskId", table),
+            Map.of("taskId", taskId.toString()),
+            (rs, i) -> task(rs))
+        .stream()
+        .findFirst();
+  }
+
+  /** The unfinished task of the job, if any. */
+  public Optional<StoredLoadTask> unfinished(JobId jobId) {
+    return template
+        .query(
+            q(
+                "SELECT * FROM %s WHERE workflow=:workflow AND job_name=:jobName AND NOT finished"
+                    + " ORDER BY updated_at DESC LIMIT 1",
+                table),
+            Map.of("workflow", jobId.workflow().name(), "jobName", jobId.jobName().toString()),
+            (rs, i) -> task(rs))
+        .stream()
+        .findFirst();
+  }
+
+  /** All the tasks, whether finished or not. */
+  public List<StoredLoadTask> all() {
+    return template.query(q("SELECT * FROM %s", table), (rs, i) -> task(rs));
+  }
+
+  /** Deletes the finished tasks whose status was last updated before the threshold. */
+  public int deleteFinishedBefore(Instant threshold) {
+    return template.update(
+        q("DELETE FROM %s WHERE finished AND updated_at < :threshold", table),
+        Map.of("threshold", Timestamp.from(threshold)));
+  }
+
+  private static StoredLoadTask task(ResultSet rs) throws SQLException {
+    var messages = rs.getString("messages");
+    return new StoredLoadTask(
+        UUID.fromString(rs.getString("task_id")),
+        JobId.forWorkflowAndBranch(rs.getString("workflow"), rs.getString("job_name")),
+        rs.getInt("max_builds"),
+        rs.getString("claimed_by"),
+        rs.getBoolean("started"),
+        rs.getBoolean("finished"),
+        rs.getInt("progress"),
+        Duration.ofMillis(rs.getLong("duration_ms")),
+        rs.getString("error"),
+        StringUtils.isEmpty(messages) ? List.of() : Json.fromJson(messages, MESSAGES),
+        rs.getInt("message_count"),
+        rs.getTimestamp("updated_at").toInstant());
+  }
+}
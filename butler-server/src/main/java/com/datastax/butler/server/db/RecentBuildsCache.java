@@ -0,0 +1,193 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.server.cache.ButlerCache;
+import com.datastax.butler.server.cache.CacheRegistry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import lombok.Value;
+
+/**
+ * Most recent builds of every job, kept in memory so that listing recent builds does not query the
+ * database.
+ *
+ * <p>For each job the cache holds its {@code capacity} most recent builds (by start time), loaded
+ * lazily on first access. Changes done through {@link BuildsDb} are applied to the cached builds
+ * instead of reloading them.
+ *
+ * <p>Builds of a job are an immutable snapshot replaced atomically. Every change of a job bumps its
+ * version, and a snapshot loaded concurrently with a change is not installed (it may have been read
+ * before the change), so the cache never goes back to stale builds. Versions are striped by job, so
+ * that they take a bounded space: a change of a job may also prevent the install of a snapshot of
+ * another job of the same stripe, which is then loaded again on next access.
+ *
+ * <p>Snapshots are kept in the "recent_builds" cache of the {@link CacheRegistry}, bounded by the
+ * total number of builds of the jobs, the least recently used jobs being evicted first.
+ */
+class RecentBuildsCache {
+  private static final Comparator<StoredBuild> NEWEST_FIRST =
+      Comparator.comparing(StoredBuild::startTime).reversed();
+  private static final int VERSION_STRIPES = 1024;
+
+  private final int capacity;
+  private final BiFunction<Long, Integer, List<StoredBuild>> loader;
+  private final ButlerCache<Long, Snapshot> jobs;
+  private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+  /**
+   * Creates the cache.
+   *
+   * @param caches the registry of the caches of the server
+   * @param capacity max number of builds kept per job
+   * @param maxBuilds max number of builds kept over all jobs
+   * @param loader loads given number of most recent builds of the job (by JOBS::ID), newest first
+   */
+  RecentBuildsCache(
+      CacheRegistry caches,
+      int capacity,
+      long maxBuilds,
+      BiFunction<Long, Integer, List<StoredBuild>> loader) {
+    this.capacity = capacity;
+    this.loader = loader;
+    this.jobs =
+        caches
+            .<Long, Snapshot>builder("recent_builds")
+            .maximumWeight(maxBuilds, (jobDbId, snapshot) -> snapshot.builds().size() + 1)
+            .build();
+  }
+
+  @Value
+  private static class Snapshot {
+    /** Most recent builds of the job, newest first. */
+    List<StoredBuild> builds;
+    /** Whether these are all the builds of the job. */
+    boolean complete;
+  }
+
+  /**
+   * Most recent builds of the job.
+   *
+   * @param jobDbId the JOBS::ID of the job
+   * @param limit max number of builds to return
+   * @param usableOnly if true, only usable builds are returned
+   * @return builds, newest first, or empty if there are not enough builds in the cache to answer
+   */
+  Optional<List<StoredBuild>> recent(long jobDbId, int limit, boolean usableOnly) {
+    Snapshot snapshot = snapshot(jobDbId);
+    List<StoredBuild> result = new ArrayList<>(Math.min(limit, snapshot.builds().size()));
+    for (StoredBuild build : snapshot.builds()) {
+      if (result.size() >= limit) break;
+      if (!usableOnly || build.usable()) result.add(build);
+    }
+    if (result.size() >= limit || snapshot.complete()) return Optional.of(result);
+    if (snapshot.builds().size() < capacity) {
+      // some of the builds were deleted, load the job again on next access
+      update(jobDbId, s -> s == snapshot ? null : s);
+    }
+    return Optional.empty();
+  }
+
+  /** Whether builds of the job are kept in memory, so that its changes should be recorded. */
+  boolean isCached(long jobDbId) {
+    return jobs.containsKey(jobDbId);
+  }
+
+  /** Record newly inserted build. */
+  void added(StoredBuild build) {
+    update(
+        build.jobId(),
+        snapshot -> {
+          List<StoredBuild> builds = new ArrayList<>(snapshot.builds());
+          builds.removeIf(b -> b.id() == build.id());
+          if (!snapshot.complete()) {
+            // unless we know all the builds, we only know where the build goes if it is not older
+            // than the oldest one we have
+            if (builds.isEmpty()) return null;
+            if (build.startTime().isBefore(builds.get(builds.size() - 1).startTime())) {
+              return snapshot;
+            }
+          }
+          builds.add(build);
+          builds.sort(NEWEST_FIRST);
+          boolean complete = snapshot.complete() && builds.size() <= capacity;
+          int size = Math.min(capacity, builds.size());
+          return new Snapshot(List.copyOf(builds.subList(0, size)), complete);
+        });
+  }
+
+  /** Record new state of the build. */
+  void updated(StoredBuild build) {
+    update(
+        build.jobId(),
+        snapshot ->
+            new Snapshot(
+                snapshot.builds().stream()
+                    .map(b -> b.id() == build.id() ? build : b)
+                    .collect(Collectors.toUnmodifiableList()),
+                snapshot.complete()));
+  }
+
+  /** Record deletion of the build. */
+  void removed(long jobDbId, long buildDbId) {
+    update(
+        jobDbId,
+        snapshot ->
+            new Snapshot(
+                snapshot.builds().stream()
+                    .filter(b -> b.id() != buildDbId)
+                    .collect(Collectors.toUnmodifiableList()),
+                snapshot.complete()));
+  }
+
+  /** Record a change of a build of the job whose new state is unknown: it is loaded again. */
+  void changed(long jobDbId) {
+    update(jobDbId, snapshot -> null);
+  }
+
+  /** Drop all the cached builds. */
+  void invalidateAll() {
+    for (int i = 0; i < VERSION_STRIPES; i++) {
+      versions.incrementAndGet(i);
+    }
+    jobs.invalidateAll();
+  }
+
+  private Snapshot snapshot(long jobDbId) {
+    Snapshot cached = jobs.getIfPresent(jobDbId);
+    if (cached != null) return cached;
+    int stripe = stripe(jobDbId);
+    long version = versions.get(stripe);
+    List<StoredBuild> loaded = loader.apply(jobDbId, capacity);
+    Snapshot snapshot = new Snapshot(List.copyOf(loaded), loaded.size() < capacity);
+    jobs.compute(
+        jobDbId,
+        (k, current) -> {
+          if (current != null) return current;
+          return versions.get(stripe) == version ? snapshot : null;
+        });
+    return snapshot;
+  }
+
+  private void update(long jobDbId, UnaryOperator<Snapshot> change) {
+    jobs.compute(
+        jobDbId,
+        (k, current) -> {
+          versions.incrementAndGet(stripe(k));
+          return current == null ? null : change.apply(current);
+        });
+  }
+
+  private static int stripe(long jobDbId) {
+    return Math.floorMod(Long.hashCode(jobDbId), VERSION_STRIPES);
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.server.events.IngestEvent.BuildDeleted;
+import com.datastax.butler.server.events.IngestEvent.BuildStored;
+import com.datastax.butler.server.events.IngestEventBus;
+import com.datastax.butler.server.service.ClusterService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of the results of the recent builds of the configured upstream jobs (see {@link
+ * JobsDb#getConfiguredUpstreamJobs()}), one {@link ResultsMatrix} per job.
+ *
+ * <p>Matrices are populated in the background at startup and updated when builds are stored or
+ * deleted, through the {@link IngestEventBus}: outdated results are dropped inline, so before other
+ * subscribers like baselines are notified, and the stored builds are then reloaded by a regular
+ * subscriber, one job at a time for all the builds of a batch. They answer "which tests failed in
+ * those builds" without scanning the test runs. If some of the asked builds are not indexed (not
+ * loaded yet, too old or not of an upstream job) the test runs are queried instead, so the index is
+ * never required to be complete.
+ *
+ * <p>Instances are not notified of the builds stored by other instances (see {@link
+ * ClusterService}), so unless this is the only live instance the index is compared with the recent
+ * builds every minute.
+ */
+@Component
+public class RecentResultsIndex {
+  private static final Logger logger = LogManager.getLogger();
+
+  /** Number of recent builds indexed per job, twice the number of builds of the deepest views. */
+  static final int INDEXED_BUILDS = 64;
+
+  private final JobsDb jobsDb;
+  private final BuildsDb buildsDb;
+  private final TestRunsDb testRunsDb;
+  private final ClusterService cluster;
+  /** Indexes the jobs in the background, each job being submitted only once. */
+  private final ExecutorService loader;
+  private final ConcurrentMap<Long, ResultsMatrix> matrices = Maps.newConcurrentMap();
+  /** Indexed builds by BUILDS::ID, as they were when their results were loaded. */
+  private final ConcurrentMap<Long, StoredBuild> indexedBuilds = Maps.newConcurrentMap();
+
+  /** Creates the index (Autowired by Spring). */
+  @Autowired
+  public RecentResultsIndex(
+      JobsDb jobsDb,
+      BuildsDb buildsDb,
+      TestRunsDb testRunsDb,
+      ClusterService cluster,
+      IngestEventBus events) {
+    this(jobsDb, buildsDb, testRunsDb, cluster, Executors.newSingleThreadExecutor());
+    events
+        .subscriber("recent_results_stored")
+        .inline()
+        .subscribe(BuildStored.class, b -> b.forEach(e -> buildStored(e.jobDbId(), e.buildDbId())));
+    events.subscriber("recent_results_reload").subscribe(BuildStored.class, this::reload);
+    events
+        .subscriber("recent_results_deleted")
+        .inline()
+        .subscribe(
+            BuildDeleted.class, b -> b.forEach(e -> buildDeleted(e.jobDbId(), e.buildDbId())));
+  }
+
+  @VisibleForTesting
+  RecentResultsIndex(
+      JobsDb jobsDb,
+      BuildsDb buildsDb,
+      TestRunsDb testRunsDb,
+      ClusterService cluster,
+      ExecutorService loader) {
+    this.jobsDb = jobsDb;
+    this.buildsDb = buildsDb;
+    this.testRunsDb = testRunsDb;
+    this.cluster = cluster;
+    this.loader = loader;
+  }
+
+  /**
+   * Starts populating the index for the configured upstream jobs.
+   *
+   * <p>This is called automatically post-construction by Spring.
+   */
+  @PostConstruct
+  public void populate() {
+    for (JobId jobId : jobsDb.getConfiguredUpstreamJobs()) {
+      jobsDb.dbIdIfExists(jobId).ifPresent(this::index);
+    }
+  }
+
+  /**
+   * Update the index after the build has been stored.
+   *
+   * <p>Results of a build that is already indexed are dropped until they are reloaded (see {@link
+   * #reload}), as more test runs may have been imported for it.
+   *
+   * @param jobDbId the JOBS::ID of the job of the build
+   * @param buildDbId the BUILDS::ID of the stored build
+   */
+  public void buildStored(long jobDbId, long buildDbId) {
+    ResultsMatrix matrix = matrices.get(jobDbId);
+    if (matrix != null) matrix.remove(buildDbId);
+    indexedBuilds.remove(buildDbId);
+  }
+
+  /**
+   * Loads the results of stored builds, after {@link #buildStored} dropped their outdated results.
+   *
+   * <p>Each job of the builds is synced once with its recent builds, which loads the builds of the
+   * job no longer indexed. Configured upstream jobs not indexed yet are indexed.
+   *
+   * @param stored the stored builds
+   */
+  public void reload(List<BuildStored> stored) {
+    for (long jobDbId : stored.stream().map(BuildStored::jobDbId).collect(Collectors.toSet())) {
+      try {
+        if (matrices.containsKey(jobDbId)) {
+          resync(jobDbId);
+        } else if (isConfiguredUpstream(jobDbId)) {
+          index(jobDbId);
+        }
+      } catch (RuntimeException e) {
+        logger.error("Indexing results of job {} failed", jobDbId, e);
+      }
+    }
+  }
+
+  /**
+   * Update the index after the build has been deleted.
+   *
+   * @param jobDbId the JOBS::ID of the job of the build
+   * @param buildDbId the BUILDS::ID of the deleted build
+   */
+  public void buildDeleted(long jobDbId, long buildDbId) {
+    ResultsMatrix matrix = matrices.get(jobDbId);
+    if (matrix != null) matrix.remove(buildDbId);
+    indexedBuilds.remove(buildDbId);
+  }
+
+  /**
+   * Catches up with the builds stored and deleted by other instances, unless this is the only live
+   * instance.
+   *
+   * <p>Indexed builds which are no longer recent are dropped, and recent builds which are new or
+   * changed since they were indexed (e.g. more of their test runs were stored) are loaded. Jobs
+   * configured as upstream since the last call are indexed. This is called periodically by Spring.
+   */
+  @Scheduled(fixedDelay = 1000 * 60, initialDelay = 1000 * 60) // every minute
+  public void resync() {
+    if (cluster.isOnlyNode()) return;
+    populate();
+    for (long jobDbId : matrices.keySet()) {
+      try {
+        resync(jobDbId);
+      } catch (RuntimeException e) {
+        logger.error("Syncing indexed results of job {} failed", jobDbId, e);
+      }
+    }
+  }
+
+  /**
+   * Ids of the tests that failed at least once in given builds.
+   *
+   * @param builds builds of a single job
+   * @return ids of the failed tests, from the index if all the builds are indexed or from the test
+   *     runs otherwise
+   */
+  public List<Long> failedTests(List<StoredBuild> builds) {
+    if (builds.isEmpty()) return List.of();
+    List<Long> buildIds = builds.stream().map(StoredBuild::id).collect(Collectors.toList());
+    long jobDbId = builds.get(0).jobId();
+    ResultsMatrix matrix = matrices.get(jobDbId);
+    if (matrix != null && builds.stream().allMatch(b -> b.jobId() == jobDbId)) {
+      List<Long> failed = matrix.failedInAny(buildIds);
+      if (failed != null) return failed;
+    }
+    return testRunsDb.getFailuresForBuilds(buildIds).stream()
+        .map(StoredTestRun::testId)
+        .distinct()
+        .collect(Collectors.toList());
+  }
+
+  private boolean isConfiguredUpstream(long jobDbId) {
+    return jobsDb.getById(jobDbId).map(jobsDb.getConfiguredUpstreamJobs()::contains).orElse(false);
+  }
+
+  private void index(long jobDbId) {
+    if (matrices.putIfAbsent(jobDbId, new ResultsMatrix(INDEXED_BUILDS)) != null) return;
+    loader.submit(
+        () -> {
+          try {
+            long start = System.nanoTime();
+            int loaded = resync(jobDbId);
+            logger.info(
+                "Indexed results of {} builds of job {} in {} ms",
+                loaded,
+                jobDbId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+          } catch (RuntimeException e) {
+            logger.error("Indexing results of job {} failed", jobDbId, e);
+            matrices.remove(jobDbId);
+          }
+        });
+  }
+
+  /** Syncs the index of the job with its recent builds, returning the number of loaded builds. */
+  private int resync(long jobDbId) {
+    ResultsMatrix matrix = matrices.get(jobDbId);
+    if (matrix == null) return 0;
+    // a job is synced by a single thread at a time, so that an outdated build is never loaded last
+    synchronized (matrix) {
+      List<StoredBuild> builds = buildsDb.recentUsableOf(jobDbId, INDEXED_BUILDS);
+      Set<Long> recent = builds.stream().map(StoredBuild::id).collect(Collectors.toSet());
+      for (long buildDbId : matrix.buildIds()) {
+        if (!recent.contains(buildDbId)) buildDeleted(jobDbId, buildDbId);
+      }
+      int loaded = 0;
+      for (StoredBuild build : builds) {
+        if (!build.equals(indexedBuilds.get(build.id()))) {
+          load(build);
+          loaded++;
+        }
+      }
+      return loaded;
+    }
+  }
+
+  private void load(StoredBuild build) {
+    ResultsMatrix matrix = matrices.get(build.jobId());
+    if (matrix == null) return;
+    var results = new ResultsMatrix.BuildResults();
+    testRunsDb.streamResultsOfBuild(
+        build.id(),
+        rs ->
+            results.add(rs.getLong("test_id"), rs.getBoolean("failed"), rs.getBoolean("skipped")));
+    matrix.put(build.id(), build.startTime(), results);
+    indexedBuilds.put(build.id(), build);
+    // the oldest build is dropped once the matrix is full
+    var kept = Set.copyOf(matrix.buildIds());
+    indexedBuilds.values().removeIf(b -> b.jobId() == build.jobId() && !kept.contains(b.id()));
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.collections.Long2LongHashMap;
+
+/**
+ * Results of the tests in the recent builds of a single job, stored column-wise.
+ *
+ * <p>Each column is one build and holds a 2-bit cell per test ({@link #MISSING}, {@link #PASSED},
+ * {@link #FAILED} or {@link #SKIPPED}), tests being indexed by dense ordinals assigned the first
+ * time a test is seen. Columns are kept off-heap, 32 cells per long word, so that questions like
+ * "which tests failed in any of those builds" are answered by OR-ing the columns word by word.
+ *
+ * <p>At most {@code capacity} most recent builds (by start time) are kept. Reads run concurrently,
+ * updates are exclusive.
+ */
+class ResultsMatrix {
+  static final int MISSING = 0;
+  static final int PASSED = 1;
+  static final int FAILED = 2;
+  static final int SKIPPED = 3;
+
+  private static final int CELLS_PER_WORD = Long.SIZE / 2;
+  // low bit of every cell
+  private static final long LOW_BITS = 0x5555555555555555L;
+
+  private final int capacity;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Long2LongHashMap ordinals = new Long2LongHashMap(-1L);
+  private long[] testIds = new long[1024];
+  private int numTests;
+  // newest first
+  private final List<Column> columns = new ArrayList<>();
+
+  ResultsMatrix(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Collects results of a build before they are added to the matrix, so that the matrix is not
+   * locked while they are read.
+   */
+  static class BuildResults {
+    private final Long2LongHashMap cells = new Long2LongHashMap(MISSING);
+
+    /** Record result of a run, a test that failed in any variant is failed in the build. */
+    void add(long testId, boolean failed, boolean skipped) {
+      int result = failed ? FAILED : (skipped ? SKIPPED : PASSED);
+      int previous = (int) cells.get(testId);
+      if (rank(result) > rank(previous)) {
+        cells.put(testId, result);
+      }
+    }
+
+    private static int rank(int result) {
+      switch (result) {
+        case FAILED:
+          return 3;
+        case PASSED:
+          return 2;
+        case SKIPPED:
+          return 1;
+        default:
+          return 0;
+      }
+    }
+  }
+
+  /**
+   * Add (or replace) the column of given build.
+   *
+   * <p>If the matrix is full, the column of the oldest build is dropped, which may be the added
+   * one.
+   */
+  void put(long buildDbId, Instant startTime, BuildResults results) {
+    lock.writeLock().lock();
+    try {
+      int words = Math.max(1, wordsFor(numTests + results.cells.size()));
+      var column =
+          new Column(buildDbId, startTime, new ExpandableDirectByteBuffer(words * Long.BYTES));
+      for (Map.Entry<Long, Long> cell : results.cells.entrySet()) {
+        column.set(ordinal(cell.getKey()), cell.getValue().intValue());
+      }
+      columns.removeIf(c -> c.buildDbId == buildDbId);
+      columns.add(column);
+      columns.sort(Comparator.comparing((Column c) -> c.startTime).reversed());
+      while (columns.size() > capacity) {
+        columns.remove(columns.size() - 1);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Drop the column of given build, if present. */
+  void remove(long buildDbId) {
+    lock.writeLock().lock();
+    try {
+      columns.removeIf(c -> c.buildDbId == buildDbId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  boolean contains(long buildDbId) {
+    lock.readLock().lock();
+    try {
+      return column(buildDbId) != null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** The BUILDS::ID of the builds in the matrix, newest first. */
+  List<Long> buildIds() {
+    lock.readLock().lock();
+    try {
+      return columns.stream().map(c -> c.buildDbId).collect(Collectors.toList());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Result of the test in the build, {@link #MISSING} if the build is not in the matrix. */
+  int result(long testId, long buildDbId) {
+    lock.readLock().lock();
+    try {
+      Column column = column(buildDbId);
+      long ordinal = ordinals.get(testId);
+      return column == null || ordinal < 0 ? MISSING : column.get((int) ordinal);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Ids of the tests that failed in any of given builds.
+   *
+   * @param buildDbIds the BUILDS::ID of the builds
+   * @return ids of the failed tests, or null if some of the builds are not in the matrix
+   */
+  List<Long> failedInAny(Collection<Long> buildDbIds) {
+    lock.readLock().lock();
+    try {
+      List<Column> selected = new ArrayList<>(buildDbIds.size());
+      for (long buildDbId : buildDbIds) {
+        Column column = column(buildDbId);
+        if (column == null) return null;
+        selected.add(column);
+      }
+      List<Long> failed = new ArrayList<>();
+      int words = wordsFor(numTests);
+      for (int word = 0; word < words; word++) {
+        long failedCells = 0;
+        for (Column column : selected) {
+          long cells = column.word(word);
+          // a cell is FAILED (0b10) if its high bit is set and its low bit is not
+          failedCells |= (cells >>> 1) & ~cells & LOW_BITS;
+        }
+        while (failedCells != 0) {
+          int bit = Long.numberOfTrailingZeros(failedCells);
+          failed.add(testIds[word * CELLS_PER_WORD + bit / 2]);
+          failedCells &= failedCells - 1;
+        }
+      }
+      return failed;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  int numBuilds() {
+    lock.readLock().lock();
+    try {
+      return columns.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Column column(long buildDbId) {
+    for (Column column : columns) {
+      if (column.buildDbId == buildDbId) return column;
+    }
+    return null;
+  }
+
+  private int ordinal(long testId) {
+    long ordinal = ordinals.get(testId);
+    if (ordinal < 0) {
+      if (numTests == testIds.length) {
+        long[] grown = new long[testIds.length * 2];
+        System.arraycopy(testIds, 0, grown, 0, numTests);
+        testIds = grown;
+      }
+      ordinal = numTests++;
+      testIds[(int) ordinal] = testId;
+      ordinals.put(testId, ordinal);
+    }
+    return (int) ordinal;
+  }
+
+  private static int wordsFor(int cells) {
+    return (cells + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+  }
+
+  private static class Column {
+    private final long buildDbId;
+    private final Instant startTime;
+    private final ExpandableDirectByteBuffer cells;
+
+    private Column(long buildDbId, Instant startTime, ExpandableDirectByteBuffer cells) {
+      this.buildDbId = buildDbId;
+      this.startTime = startTime;
+      this.cells = cells;
+    }
+
+    /** Word of the cells, words past the buffer are all {@link #MISSING}. */
+    private long word(int word) {
+      int index = word * Long.BYTES;
+      return index + Long.BYTES <= cells.capacity() ? cells.getLong(index) : 0L;
+    }
+
+    private int get(int ordinal) {
+      int shift = (ordinal % CELLS_PER_WORD) * 2;
+      return (int) (word(ordinal / CELLS_PER_WORD) >>> shift) & 0b11;
+    }
+
+    private void set(int ordinal, int result) {
+      int word = ordinal / CELLS_PER_WORD;
+      int shift = (ordinal % CELLS_PER_WORD) * 2;
+      long cleared = word(word) & ~(0b11L << shift);
+      cells.putLong(word * Long.BYTES, cleared | ((long) result << shift));
+    }
+  }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.BuildId;
+import java.time.Instant;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import lombok.Value;
+
+/** An asynchronous raw build import stored in the IMPORT_TASKS table, without its payload. */
+@Value
+public class StoredImportTask {
+  UUID taskId;
+  BuildId buildId;
+  /** Node importing the build, null while it is queued. */
+  @Nullable String claimedBy;
+
+  boolean finished;
+  @Nullable String error;
+  Instant createdAt;
+  Instant updatedAt;
+}
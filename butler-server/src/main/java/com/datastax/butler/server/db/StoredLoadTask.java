@@ -0,0 +1,36 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.JobId;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import lombok.Value;
+
+/** A bulk load task stored in the LOAD_TASKS table, with its last known status. */
+@Value
+public class StoredLoadTask {
+  UUID taskId;
+  JobId jobId;
+  int maxBuilds;
+  /** Node running the task, null while it is queued. */
+  @Nullable String claimedBy;
+
+  boolean started;
+  boolean finished;
+  int progress;
+  Duration duration;
+  @Nullable String error;
+  /** The most recent messages of the task. */
+  List<String> messages;
+  /** Number of messages logged by the task, including the ones no longer kept. */
+  int messageCount;
+
+  Instant updatedAt;
+}
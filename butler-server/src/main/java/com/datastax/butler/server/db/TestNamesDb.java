@@ -7,18 +7,22 @@ package com.datastax.butler.server.db;
 
 import com.datastax.butler.commons.jenkins.TestCategory;
 import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.server.cache.ButlerCache;
+import com.datastax.butler.server.cache.CacheRegistry;
+import com.google.common.collect.Lists;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
-import org.agrona.collections.Object2LongHashMap;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -28,11 +32,16 @@ import org.springframework.transaction.annotation.Transactional;
  * TestNamesDb#TABLE} table).
  */
 @Repository
-@CacheConfig(cacheNames = {"test_names"})
 public class TestNamesDb extends DbTableService {
 
   public static final String TABLE = "tests";
 
+  /** Max number of test ids (and of test names) kept in memory. */
+  static final int CACHED_TESTS = 200_000;
+
+  /** Max number of classes looked up, or of tests inserted, by a single statement. */
+  private static final int BATCH_SIZE = 500;
+
   /**
    * Caches TEST_NAMES::ID for the stored test names.
    *
@@ -43,8 +52,13 @@ public class TestNamesDb extends DbTableService {
    * <p>This is probably not an essential optimization (because database still has to enforce
    * integrity constraints, we don't necessarily save "that" much), but it's easy enough to
    * implement and probably simplify things overall.
+   *
+   * <p>The cache is bounded, so tests that are not in it may still be in the database.
    */
-  private final Object2LongHashMap<TestName> testIdCache = new Object2LongHashMap<>(-1L);
+  private final ButlerCache<TestName, Long> testIdCache;
+
+  /** Caches test names looked up by their TEST_NAMES::ID. */
+  private final ButlerCache<Long, TestName> testNameCache;
 
   private final Mapper<TestName> testNameMapper =
       Mapper.create(TestName.class, "path", "class_name", "test_name");
@@ -52,9 +66,12 @@ public class TestNamesDb extends DbTableService {
 
   /** Creates the repository (Auto-wired by Spring). */
   @Autowired
-  public TestNamesDb(NamedParameterJdbcTemplate template) {
+  public TestNamesDb(NamedParameterJdbcTemplate template, CacheRegistry caches) {
     super(template, TABLE);
     this.testsMapper = tableMapper(TestNameDto.class, Long.class);
+    this.testIdCache = caches.<TestName, Long>builder("test_ids").maximumSize(CACHED_TESTS).build();
+    this.testNameCache =
+        caches.<Long, TestName>builder("test_names").maximumSize(CACHED_TESTS).build(this::load);
   }
 
   Mapper<TestName> testNameMapper() {
@@ -62,13 +79,15 @@ public class TestNamesDb extends DbTableService {
   }
 
   /**
-   * Populates the internal cache of test names to their database id.
+   * Populates the internal cache of test names to their database id with the most recently inserted
+   * tests.
    *
    * <p>This is called automatically post-construction by Spring.
    */
   @PostConstruct
   public void populateIdCache() {
-    List<TestNameDto> knowTests = testsMapper.getAll();
+    List<TestNameDto> knowTests =
+        testsMapper.getWhere("TRUE", Map.of(), "id DESC LIMIT " + CACHED_TESTS);
     logger.info("Loading {} names into the tests cache", knowTests.size());
     knowTests.forEach(withId -> testIdCache.put(withId.value(), withId.id()));
   }
@@ -83,14 +102,116 @@ public class TestNamesDb extends DbTableService {
    */
   @Transactional
   public long dbId(TestName name) {
-    long id = testIdCache.getValue(name);
-    if (id >= 0) {
-      return id;
+    return testIdCache.get(name, n -> getId(n).orElseGet(() -> insertTest(n)));
+  }
+
+  /**
+   * Gets the database IDs of the provided test names, storing the unknown ones.
+   *
+   * <p>This is the batch equivalent of {@link #dbId(TestName)}: the names which are not cached are
+   * looked up by class, and the ones still missing are inserted, with a few statements for the
+   * whole batch rather than a couple per name.
+   *
+   * @param names the test names for which to get the database ids.
+   * @return the database ID of each name.
+   */
+  @Transactional
+  public Map<TestName, Long> dbIds(Collection<TestName> names) {
+    Map<TestName, Long> ids = new HashMap<>();
+    List<TestName> missing = new ArrayList<>();
+    for (TestName name : new HashSet<>(names)) {
+      Long id = testIdCache.getIfPresent(name);
+      if (id != null) {
+        ids.put(name, id);
+      } else {
+        missing.add(name);
+      }
+    }
+    if (missing.isEmpty()) return ids;
+    lookUp(missing, ids);
+    List<TestName> toInsert =
+        missing.stream().filter(n -> !ids.containsKey(n)).collect(Collectors.toList());
+    if (!toInsert.isEmpty()) {
+      logger.info("Inserting {} new tests", toInsert.size());
+      insertAll(toInsert);
+      lookUp(toInsert, ids);
     }
+    for (TestName name : missing) {
+      Long id = ids.get(name);
+      if (id == null) {
+        throw new IllegalStateException(String.format("Test %s was not inserted", name));
+      }
+      testIdCache.put(name, id);
+    }
+    return ids;
+  }
 
-    id = getId(name).orElseGet(() -> insertTest(name));
-    testIdCache.put(name, id);
-    return id;
+  /**
+   * Adds the ids of the provided names which are stored, looking them up by the unique key of the
+   * table (so through its index).
+   */
+  private void lookUp(List<TestName> names, Map<TestName, Long> ids) {
+    Map<List<String>, List<TestName>> byKey =
+        names.stream().collect(Collectors.groupingBy(TestNamesDb::uniqueKey));
+    for (List<List<String>> batch : Lists.partition(new ArrayList<>(byKey.keySet()), BATCH_SIZE)) {
+      var keys = new StringBuilder();
+      var params = new HashMap<String, Object>();
+      for (int i = 0; i < batch.size(); i++) {
+        var key = batch.get(i);
+        if (i > 0) keys.append(", ");
+        keys.append(String.format("(:path%d, :class%d, SHA1(:test%d))", i, i, i));
+        params.put("path" + i, key.get(0));
+        params.put("class" + i, key.get(1));
+        params.put("test" + i, key.get(2));
+      }
+      template
+          .query(
+              q("SELECT * FROM %s WHERE (path, class_name, test_name_hash) IN (%s)", TABLE, keys),
+              params,
+              testsMapper.mapper().rowMapper())
+          .forEach(
+              stored -> {
+                var requested = byKey.get(uniqueKey(stored.value()));
+                if (requested != null) requested.forEach(n -> ids.put(n, stored.id()));
+              });
+    }
+  }
+
+  /** The columns of the unique key of the table (the category is not part of it). */
+  private static List<String> uniqueKey(TestName name) {
+    return List.of(name.path(), name.className(), name.testName());
+  }
+
+  private void insertAll(List<TestName> names) {
+    for (List<TestName> batch : Lists.partition(names, BATCH_SIZE)) {
+      var values = new StringBuilder();
+      var params = new HashMap<String, Object>();
+      for (int i = 0; i < batch.size(); i++) {
+        var name = batch.get(i);
+        if (i > 0) values.append(", ");
+        values.append(String.format("(:category%d, :path%d, :class%d, :test%d)", i, i, i, i));
+        params.put("category" + i, name.category().toString());
+        params.put("path" + i, name.path());
+        params.put("class" + i, name.className());
+        params.put("test" + i, name.testName());
+      }
+      // ignoring the tests concurrently inserted by another import
+      template.update(
+          q(
+              "INSERT IGNORE INTO %s(category, path, class_name, test_name) VALUES %s",
+              TABLE, values),
+          params);
+    }
+  }
+
+  /**
+   * Gets the database ID of the provided test name if it is stored, without storing it otherwise.
+   *
+   * @param name the test name for which to get the database id.
+   * @return the database ID of {@code name}, or empty if it is not stored.
+   */
+  public Optional<Long> findId(TestName name) {
+    return Optional.ofNullable(testIdCache.get(name, n -> getId(n).orElse(null)));
   }
 
   private Optional<Long> getId(TestName name) {
@@ -146,8 +267,12 @@ public class TestNamesDb extends DbTableService {
    * @param id The db id of the test
    * @return a optional test name
    */
-  @Cacheable("test_names")
   public Optional<TestName> find(long id) {
+    return Optional.ofNullable(testNameCache.get(id));
+  }
+
+  @Nullable
+  private TestName load(long id) {
     return template
         .query(
             q("SELECT * FROM %s WHERE id=:id", TABLE),
@@ -155,7 +280,8 @@ public class TestNamesDb extends DbTableService {
             testsMapper.mapper().rowMapper())
         .stream()
         .map(TestNameDto::value)
-        .findFirst();
+        .findFirst()
+        .orElse(null);
   }
 
   /**
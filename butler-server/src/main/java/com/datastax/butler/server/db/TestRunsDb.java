@@ -16,6 +16,7 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 
@@ -50,6 +51,22 @@ public class TestRunsDb extends DbTableService {
     return testRunsMapper.getWhere(whereClause, Map.of("build_id", buildDbId));
   }
 
+  /**
+   * Stream test id, failed and skipped flags of all the runs of given build.
+   *
+   * <p>Used to index results of the builds without loading full test runs.
+   *
+   * @param buildDbId the BUILDS::ID of the build
+   * @param handler handler called for every run, with {@code test_id}, {@code failed} and {@code
+   *     skipped} columns
+   */
+  public void streamResultsOfBuild(long buildDbId, RowCallbackHandler handler) {
+    template.query(
+        String.format("SELECT test_id, failed, skipped FROM %s WHERE build_id=:build_id", TABLE),
+        Map.of("build_id", buildDbId),
+        handler);
+  }
+
   /**
    * Get a list of failed runs for a set of builds.
    *
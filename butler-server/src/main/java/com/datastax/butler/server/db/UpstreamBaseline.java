@@ -0,0 +1,40 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.dev.TestRunHistory;
+import com.datastax.butler.commons.dev.UpstreamFailures;
+import com.datastax.butler.commons.jenkins.JobId;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * Failures of the upstream job over its recent builds, precomputed so that the PR gate and the
+ * compare views only have to load the branch side of the comparison.
+ *
+ * <p>Failures are kept without test runs output, they are shared between requests and must not be
+ * modified.
+ */
+@Value
+public class UpstreamBaseline {
+  JobId jobId;
+  int numBuilds;
+  /** Recent usable builds of the job, newest first. */
+  List<StoredBuild> builds;
+  /** Ids of the tests that failed at least once in the builds. */
+  List<Long> testIds;
+
+  UpstreamFailures failures;
+  /**
+   * Run histories of the tests, by test id, used to update the baseline when new builds are stored
+   * instead of recomputing it. Only the baseline refresh may use them.
+   */
+  Map<Long, TestRunHistory> histories;
+
+  Instant computedAt;
+}
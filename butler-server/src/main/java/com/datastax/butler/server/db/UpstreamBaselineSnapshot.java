@@ -0,0 +1,64 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.TestVariant;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import lombok.Value;
+
+/**
+ * On-disk form of the {@link UpstreamBaseline}: compact run history of every test, without any of
+ * the data that can be cheaply looked up when restoring (test names, builds, issue links).
+ */
+@Value
+class UpstreamBaselineSnapshot {
+  List<Long> buildIds;
+  List<Run> runs;
+
+  @Value
+  static class Run {
+    long testId;
+    long buildId;
+    String variant;
+    boolean failed;
+    boolean skipped;
+    @Nullable String url;
+  }
+
+  static UpstreamBaselineSnapshot of(List<StoredBuild> builds, List<StoredTestRun> testRuns) {
+    return new UpstreamBaselineSnapshot(
+        builds.stream().map(StoredBuild::id).collect(Collectors.toList()),
+        testRuns.stream()
+            .map(
+                r ->
+                    new Run(
+                        r.testId(),
+                        r.buildId(),
+                        r.variant().toString(),
+                        r.failed(),
+                        r.skipped(),
+                        r.runUrl()))
+            .collect(Collectors.toList()));
+  }
+
+  List<StoredTestRun> testRuns() {
+    return runs.stream()
+        .map(
+            r ->
+                new StoredTestRun(
+                    r.testId(),
+                    TestVariant.fromString(r.variant()),
+                    r.buildId(),
+                    null,
+                    r.failed(),
+                    r.skipped(),
+                    0,
+                    r.url()))
+        .collect(Collectors.toList());
+  }
+}
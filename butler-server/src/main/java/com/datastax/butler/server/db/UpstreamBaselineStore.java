@@ -0,0 +1,171 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.json.Json;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps {@link UpstreamBaseline}s in memory, per upstream job and number of builds.
+ *
+ * <p>If {@code butlerBaselineSnapshotDir} is configured every baseline is also written to disk in
+ * its compact form ({@link UpstreamBaselineSnapshot}), so that after restart it can be restored
+ * without scanning all the test runs of the upstream builds. Snapshot is used only if it was made
+ * for exactly the same builds as the current recent builds of the job.
+ *
+ * <p>Changes are serialized, so that a baseline computed before {@link #invalidateAll} is not
+ * stored after it: callers read the {@link #generation} before computing a baseline and pass it to
+ * {@link #put}.
+ */
+@Component
+public class UpstreamBaselineStore {
+  private static final Logger logger = LogManager.getLogger();
+  private static final int MAX_BASELINES = 64;
+  private static final String SNAPSHOT_SUFFIX = ".baseline.json";
+
+  private final ConcurrentMap<JobId, ConcurrentMap<Integer, UpstreamBaseline>> baselines =
+      Maps.newConcurrentMap();
+  private final @Nullable Path snapshotDir;
+  /** Number of invalidations so far, guarded by this. */
+  private long generation;
+
+  /** Creates the store (Autowired by Spring). */
+  @Autowired
+  public UpstreamBaselineStore(@Value("${butlerBaselineSnapshotDir:}") String snapshotDir) {
+    this.snapshotDir = StringUtils.isBlank(snapshotDir) ? null : Path.of(snapshotDir);
+  }
+
+  public Optional<UpstreamBaseline> get(JobId jobId, int numBuilds) {
+    return Optional.ofNullable(baselines.getOrDefault(jobId, Map.of()).get(numBuilds));
+  }
+
+  /** Current generation of the baselines, which changes whenever they are all invalidated. */
+  public synchronized long generation() {
+    return generation;
+  }
+
+  /**
+   * Store baseline, replacing previous one for the same job and number of builds.
+   *
+   * @param baseline the baseline to store
+   * @param generation the {@link #generation} read before computing the baseline: if baselines were
+   *     invalidated since, the baseline may be stale and it is not stored
+   * @return whether the baseline was stored
+   */
+  public synchronized boolean put(UpstreamBaseline baseline, long generation) {
+    if (generation != this.generation) {
+      logger.debug("Not storing upstream baseline of {}, invalidated meanwhile", baseline.jobId());
+      return false;
+    }
+    baselines
+        .computeIfAbsent(baseline.jobId(), k -> Maps.newConcurrentMap())
+        .put(baseline.numBuilds(), baseline);
+    evictOldest();
+    return true;
+  }
+
+  /** Numbers of builds for which baselines of given job are kept. */
+  public Set<Integer> depthsOf(JobId jobId) {
+    return Set.copyOf(baselines.getOrDefault(jobId, Map.of()).keySet());
+  }
+
+  /** Jobs for which baselines are kept. */
+  public Set<JobId> jobs() {
+    return baselines.entrySet().stream()
+        .filter(e -> !e.getValue().isEmpty())
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toUnmodifiableSet());
+  }
+
+  /**
+   * Drop all the baselines kept in memory, e.g. when linked issues change.
+   *
+   * <p>Snapshots are kept: they do not include issue links, so restoring from them is still valid
+   * and much cheaper than computing baselines from scratch.
+   */
+  public synchronized void invalidateAll() {
+    logger.info("Invalidating all upstream baselines");
+    generation++;
+    baselines.clear();
+  }
+
+  private void evictOldest() {
+    while (size() > MAX_BASELINES) {
+      baselines.values().stream()
+          .flatMap(m -> m.values().stream())
+          .min(Comparator.comparing(UpstreamBaseline::computedAt))
+          .ifPresent(
+              b -> baselines.computeIfPresent(b.jobId(), (k, m) -> removed(m, b.numBuilds(), b)));
+    }
+  }
+
+  private static ConcurrentMap<Integer, UpstreamBaseline> removed(
+      ConcurrentMap<Integer, UpstreamBaseline> jobBaselines, int numBuilds, UpstreamBaseline b) {
+    jobBaselines.remove(numBuilds, b);
+    return jobBaselines.isEmpty() ? null : jobBaselines;
+  }
+
+  private int size() {
+    return baselines.values().stream().mapToInt(Map::size).sum();
+  }
+
+  void saveSnapshot(
+      JobId jobId, int numBuilds, List<StoredBuild> builds, List<StoredTestRun> testRuns) {
+    if (snapshotDir == null) return;
+    Path file = snapshotFile(jobId, numBuilds);
+    try {
+      Files.createDirectories(snapshotDir);
+      Path tmp = Files.createTempFile(snapshotDir, file.getFileName().toString(), ".tmp");
+      Json.mapper().writeValue(tmp.toFile(), UpstreamBaselineSnapshot.of(builds, testRuns));
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Cannot write upstream baseline snapshot {}", file, e);
+    }
+  }
+
+  Optional<List<StoredTestRun>> loadSnapshot(
+      JobId jobId, int numBuilds, List<StoredBuild> builds) {
+    if (snapshotDir == null) return Optional.empty();
+    Path file = snapshotFile(jobId, numBuilds);
+    if (!Files.isRegularFile(file)) return Optional.empty();
+    try (var in = Files.newInputStream(file)) {
+      var snapshot = Json.fromJson(in, UpstreamBaselineSnapshot.class);
+      var buildIds = builds.stream().map(StoredBuild::id).collect(Collectors.toList());
+      if (!buildIds.equals(snapshot.buildIds())) {
+        logger.info("Upstream baseline snapshot {} is outdated, ignoring it", file);
+        return Optional.empty();
+      }
+      return Optional.of(snapshot.testRuns());
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Cannot read upstream baseline snapshot {}", file, e);
+      return Optional.empty();
+    }
+  }
+
+  private Path snapshotFile(JobId jobId, int numBuilds) {
+    String name = String.format("%s__%s__%d", jobId.workflow().name(), jobId.jobName(), numBuilds);
+    return snapshotDir.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + SNAPSHOT_SUFFIX);
+  }
+}
@@ -9,26 +9,24 @@ import com.datastax.butler.commons.dev.Branch;
 import com.datastax.butler.commons.dev.FailureDetails;
 import com.datastax.butler.commons.dev.RunDetails;
 import com.datastax.butler.commons.dev.TestFailure;
+import com.datastax.butler.commons.dev.TestRunHistory;
 import com.datastax.butler.commons.dev.UpstreamFailures;
 import com.datastax.butler.commons.dev.Workflow;
 import com.datastax.butler.commons.issues.IssueId;
 import com.datastax.butler.commons.issues.IssueLink;
 import com.datastax.butler.commons.jenkins.BuildId;
 import com.datastax.butler.commons.jenkins.JobId;
-import com.datastax.butler.commons.jenkins.TestCategory;
 import com.datastax.butler.commons.jenkins.TestName;
 import com.datastax.butler.commons.jenkins.WorkflowId;
 import com.datastax.butler.server.service.issues.IssueTrackersService;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -37,6 +35,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -58,6 +57,8 @@ public class UpstreamFailuresDb extends DbTableService {
   private final UpstreamWorflowsDb upstreamWorkflowsDb;
   private final TestLinkedIssuesDb testLinkedIssuesDb;
   private final IssueTrackersService issuesService;
+  private final UpstreamBaselineStore baselineStore;
+  private final RecentResultsIndex recentResults;
 
   /** Creates the repository (Auto-wired by Spring). */
   @Autowired
@@ -69,7 +70,9 @@ public class UpstreamFailuresDb extends DbTableService {
       TestRunsDb testRunsDb,
       UpstreamWorflowsDb upstreamWorkflowsDb,
       TestLinkedIssuesDb testLinkedIssuesDb,
-      IssueTrackersService jiraService) {
+      IssueTrackersService jiraService,
+      UpstreamBaselineStore baselineStore,
+      RecentResultsIndex recentResults) {
     super(template, TestRunsDb.TABLE);
     this.testNamesDb = testNamesDb;
     this.jobsDb = jobsDb;
@@ -78,6 +81,8 @@ public class UpstreamFailuresDb extends DbTableService {
     this.upstreamWorkflowsDb = upstreamWorkflowsDb;
     this.testLinkedIssuesDb = testLinkedIssuesDb;
     this.issuesService = jiraService;
+    this.baselineStore = baselineStore;
+    this.recentResults = recentResults;
   }
 
   /**
@@ -91,7 +96,12 @@ public class UpstreamFailuresDb extends DbTableService {
       String workflowName, String jobName, Optional<TestName> testName) {
 
     QueryParameters qp = makeFailureDetailsQueryForJob(workflowName, jobName, testName);
-    return template.query(qp.query(), qp.source(), this::extractUpstreamFailureDetails);
+    var handler = new UpstreamFailuresRowHandler(false, false);
+    template.query(qp.query(), qp.source(), handler);
+    // without a test return us any test that failed that we know about
+    return handler.failures().stream()
+        .filter(f -> testName.isPresent() || f.failureDetails().failures() > 0)
+        .findFirst();
   }
 
   /**
@@ -280,9 +290,7 @@ public class UpstreamFailuresDb extends DbTableService {
     logger.info("Comparing {} to {} with {} builds", branch, upstream, numBuildsToShow);
 
     InterestingTests branchFailures =
-        new InterestingTests(jobsDb, buildsDb, testRunsDb, branch, numBuildsToShow);
-    InterestingTests upstreamFailures =
-        new InterestingTests(jobsDb, buildsDb, testRunsDb, upstream, numBuildsToShow);
+        new InterestingTests(jobsDb, buildsDb, recentResults, branch, numBuildsToShow);
 
     List<Long> branchFailedTestIds = branchFailures.testIds();
     Set<Long> allInterestingTestIds = Sets.newHashSet(branchFailedTestIds);
@@ -293,10 +301,12 @@ public class UpstreamFailuresDb extends DbTableService {
     // that actually show only upstream workflow
     boolean branchVsUpstreamComparison = (branch.compareTo(upstream) != 0);
 
+    // upstream side comes from the precomputed baseline
+    UpstreamBaseline baseline = null;
     if (branchVsUpstreamComparison) {
-      List<Long> upstreamFailedTestIds = upstreamFailures.testIds();
-      logger.info("Found {} interesting upstream failed tests", upstreamFailedTestIds.size());
-      allInterestingTestIds.addAll(upstreamFailedTestIds);
+      baseline = upstreamBaseline(upstream, numBuildsToShow);
+      logger.info("Found {} interesting upstream failed tests", baseline.testIds().size());
+      allInterestingTestIds.addAll(baseline.testIds());
     }
 
     List<UpstreamFailures> uFailures = new ArrayList<>();
@@ -304,12 +314,259 @@ public class UpstreamFailuresDb extends DbTableService {
 
     uFailures.add(findAllResults(branchFailures.builds(), testIdsToLoad));
     if (branchVsUpstreamComparison) {
-      uFailures.add(findAllResults(upstreamFailures.builds(), testIdsToLoad));
+      uFailures.add(baselineResults(baseline, branchFailedTestIds));
     }
 
     return uFailures;
   }
 
+  /**
+   * Return baseline of the upstream job.
+   *
+   * <p>Baseline is taken from the {@link UpstreamBaselineStore}, on a miss it is restored from the
+   * snapshot if there is one for current builds or computed from the test runs.
+   *
+   * @param upstream the upstream job
+   * @param numBuilds number of recent builds to include
+   * @return the baseline
+   */
+  public UpstreamBaseline upstreamBaseline(JobId upstream, int numBuilds) {
+    long generation = baselineStore.generation();
+    var cached = baselineStore.get(upstream, numBuilds);
+    if (cached.isPresent()) return cached.get();
+    var builds = recentBuilds(upstream, numBuilds);
+    var snapshot = baselineStore.loadSnapshot(upstream, numBuilds, builds);
+    UpstreamBaseline baseline;
+    if (snapshot.isPresent()) {
+      logger.info("Restoring upstream baseline for {} from snapshot", upstream);
+      baseline = baselineFromRuns(upstream, numBuilds, builds, snapshot.get());
+    } else {
+      baseline = computeBaseline(upstream, numBuilds, builds);
+    }
+    baselineStore.put(baseline, generation);
+    return baseline;
+  }
+
+  /**
+   * Bring baseline of the upstream job up to date, e.g. after storing its build.
+   *
+   * <p>If the kept baseline covers the same builds as the current recent builds of the job, except
+   * for the newest ones, runs of the new builds are appended to the run histories of its tests and
+   * runs of the builds that fell out of the window are dropped. Otherwise the baseline is
+   * recomputed from the test runs.
+   *
+   * @param upstream the upstream job
+   * @param numBuilds number of recent builds to include
+   * @return the refreshed baseline
+   */
+  public UpstreamBaseline refreshBaseline(JobId upstream, int numBuilds) {
+    long generation = baselineStore.generation();
+    var builds = recentBuilds(upstream, numBuilds);
+    UpstreamBaseline baseline = null;
+    var previous = baselineStore.get(upstream, numBuilds);
+    if (previous.isPresent()) {
+      try {
+        baseline = appendBuilds(previous.get(), builds).orElse(null);
+      } catch (RuntimeException e) {
+        logger.warn("Cannot update upstream baseline for {}, recomputing it", upstream, e);
+      }
+    }
+    if (baseline == null) {
+      baseline = computeBaseline(upstream, numBuilds, builds);
+    }
+    baselineStore.put(baseline, generation);
+    return baseline;
+  }
+
+  private UpstreamBaseline computeBaseline(
+      JobId upstream, int numBuilds, List<StoredBuild> builds) {
+    List<StoredTestRun> testRuns = Collections.emptyList();
+    if (!builds.isEmpty()) {
+      List<Long> testIds = recentResults.failedTests(builds);
+      testRuns = testRunsDb.getAllResultsForTestsInBuilds(testIds, buildIds(builds));
+    }
+    baselineStore.saveSnapshot(upstream, numBuilds, builds, testRuns);
+    return baselineFromRuns(upstream, numBuilds, builds, testRuns);
+  }
+
+  private UpstreamBaseline baselineFromRuns(
+      JobId upstream, int numBuilds, List<StoredBuild> builds, List<StoredTestRun> testRuns) {
+    Map<Long, StoredBuild> buildCache =
+        builds.stream().collect(Collectors.toMap(StoredBuild::id, Function.identity()));
+    Map<Long, TestRunHistory> histories = new HashMap<>();
+    testRuns.stream()
+        .collect(Collectors.groupingBy(StoredTestRun::testId))
+        .forEach(
+            (testId, testResults) ->
+                histories.put(
+                    testId, TestRunHistory.of(buildRunDetailsFromRuns(buildCache, testResults))));
+    histories.values().removeIf(history -> history.failures() == 0);
+    return baselineFromHistories(upstream, numBuilds, builds, histories);
+  }
+
+  /**
+   * Update the previous baseline to cover given builds, see {@link #refreshBaseline(JobId, int)}.
+   *
+   * <p>Only runs of the new builds are loaded, plus older runs of the tests that failed for the
+   * first time in them. Returns empty if the builds are not the previous builds shifted by some
+   * newer ones.
+   */
+  private Optional<UpstreamBaseline> appendBuilds(
+      UpstreamBaseline previous, List<StoredBuild> builds) {
+    List<StoredBuild> kept = previous.builds();
+    if (kept.isEmpty()) return Optional.empty();
+    Set<Long> keptIds = kept.stream().map(StoredBuild::id).collect(Collectors.toSet());
+    int added = 0;
+    while (added < builds.size() && !keptIds.contains(builds.get(added).id())) {
+      added++;
+    }
+    List<StoredBuild> newBuilds = builds.subList(0, added);
+    List<StoredBuild> remaining = builds.subList(added, builds.size());
+    if (!buildIds(remaining).equals(buildIds(kept.subList(0, remaining.size())))) {
+      return Optional.empty();
+    }
+    Instant newestKept = kept.get(0).startTime();
+    if (newBuilds.stream().anyMatch(b -> b.startTime().isBefore(newestKept))) {
+      return Optional.empty();
+    }
+    if (newBuilds.isEmpty() && remaining.size() == kept.size()) return Optional.of(previous);
+
+    JobId upstream = previous.jobId();
+    // The histories are still served as part of the previous baseline, so they are copied before
+    // they are changed (and the previous baseline is left as is if this bails out).
+    Map<Long, TestRunHistory> histories = new HashMap<>(previous.histories());
+    Set<Long> copied = new HashSet<>();
+    for (StoredBuild dropped : Lists.reverse(kept.subList(remaining.size(), kept.size()))) {
+      BuildId droppedId = upstream.build(dropped.buildNumber());
+      for (var entry : histories.entrySet()) {
+        if (entry.getValue().startsWith(droppedId)) {
+          if (copied.add(entry.getKey())) entry.setValue(entry.getValue().copy());
+          entry.getValue().dropBuild(droppedId);
+        }
+      }
+    }
+
+    if (!newBuilds.isEmpty()) {
+      List<Long> newBuildIds = buildIds(newBuilds);
+      Set<Long> firstFailed =
+          recentResults.failedTests(newBuilds).stream()
+              .filter(testId -> !histories.containsKey(testId))
+              .collect(Collectors.toSet());
+      List<StoredTestRun> testRuns = new ArrayList<>();
+      if (!firstFailed.isEmpty() && !remaining.isEmpty()) {
+        testRuns.addAll(testRunsDb.getAllResultsForTestsInBuilds(firstFailed, buildIds(remaining)));
+      }
+      Set<Long> testIds = Sets.union(histories.keySet(), firstFailed).immutableCopy();
+      testRuns.addAll(testRunsDb.getAllResultsForTestsInBuilds(testIds, newBuildIds));
+
+      Map<Long, StoredBuild> buildCache =
+          builds.stream().collect(Collectors.toMap(StoredBuild::id, Function.identity()));
+      Map<Long, List<StoredTestRun>> runsByTest =
+          testRuns.stream().collect(Collectors.groupingBy(StoredTestRun::testId));
+      for (var entry : runsByTest.entrySet()) {
+        List<RunDetails> details = buildRunDetailsFromRuns(buildCache, entry.getValue());
+        details.sort(TestRunHistory.CHRONOLOGICAL);
+        var history = writableHistory(histories, copied, entry.getKey());
+        for (RunDetails run : details) {
+          if (!history.append(run)) return Optional.empty();
+        }
+      }
+    }
+    histories.values().removeIf(history -> history.failures() == 0);
+
+    logger.info("Updated upstream baseline for {} with {} new builds", upstream, newBuilds.size());
+    baselineStore.saveSnapshot(
+        upstream, previous.numBuilds(), builds, snapshotRuns(builds, histories));
+    return Optional.of(baselineFromHistories(upstream, previous.numBuilds(), builds, histories));
+  }
+
+  /** Gets the history of a test to change, copying it first if it is still a previous one. */
+  private static TestRunHistory writableHistory(
+      Map<Long, TestRunHistory> histories, Set<Long> copied, long testId) {
+    if (copied.add(testId)) {
+      var previous = histories.get(testId);
+      histories.put(testId, previous == null ? new TestRunHistory() : previous.copy());
+    }
+    return histories.get(testId);
+  }
+
+  private UpstreamBaseline baselineFromHistories(
+      JobId upstream,
+      int numBuilds,
+      List<StoredBuild> builds,
+      Map<Long, TestRunHistory> histories) {
+    List<Long> testIds = List.copyOf(histories.keySet());
+    Map<Long, TestName> testNameCache = testNamesDb.find(testIds);
+    List<TestFailure> failures = new ArrayList<>();
+    histories.forEach(
+        (testId, history) -> {
+          var failureDetails = history.failureDetails();
+          // baseline is shared between requests, keep it compact
+          failureDetails.clearTestRunsOutput();
+          failures.add(
+              testFailure(
+                  testId,
+                  testNameCache.get(testId),
+                  failureDetails,
+                  upstream.workflow(),
+                  history.size(),
+                  history.lastWeekRunsCount(),
+                  history.lastMonthRunsCount()));
+        });
+    return new UpstreamBaseline(
+        upstream,
+        numBuilds,
+        List.copyOf(builds),
+        testIds,
+        new UpstreamFailures(failures),
+        Map.copyOf(histories),
+        Instant.now());
+  }
+
+  /** Test runs kept in the histories, in the form stored in baseline snapshots. */
+  private static List<StoredTestRun> snapshotRuns(
+      List<StoredBuild> builds, Map<Long, TestRunHistory> histories) {
+    Map<Integer, Long> buildDbIds =
+        builds.stream().collect(Collectors.toMap(StoredBuild::buildNumber, StoredBuild::id));
+    List<StoredTestRun> testRuns = new ArrayList<>();
+    histories.forEach(
+        (testId, history) ->
+            history
+                .runs()
+                .forEach(
+                    run ->
+                        testRuns.add(
+                            new StoredTestRun(
+                                testId,
+                                run.variant(),
+                                buildDbIds.get(run.id().buildNumber()),
+                                null,
+                                run.failed(),
+                                run.skipped(),
+                                0,
+                                run.url()))));
+    return testRuns;
+  }
+
+  private static List<Long> buildIds(List<StoredBuild> builds) {
+    return builds.stream().map(StoredBuild::id).collect(Collectors.toList());
+  }
+
+  /**
+   * Upstream results of the comparison: all the baseline failures plus results of the given (branch
+   * failed) tests that did not fail on upstream.
+   */
+  private UpstreamFailures baselineResults(UpstreamBaseline baseline, List<Long> testIds) {
+    Set<Long> inBaseline = Sets.newHashSet(baseline.testIds());
+    List<Long> missing =
+        testIds.stream().filter(id -> !inBaseline.contains(id)).collect(Collectors.toList());
+    List<TestFailure> results = new ArrayList<>(baseline.failures().failures());
+    if (!missing.isEmpty()) {
+      results.addAll(findAllResults(baseline.builds(), missing).failures());
+    }
+    return new UpstreamFailures(results);
+  }
+
   /**
    * Find the recent set of results for a specific test. This looks at all the "NIGHTLY" type jobs,
    * a maximum of 10 back.
@@ -328,7 +585,7 @@ public class UpstreamFailuresDb extends DbTableService {
     List<StoredBuild> latestBuilds = new ArrayList<>();
     for (JobId job : jobs) {
       latestBuilds.addAll(
-          new InterestingTests(jobsDb, buildsDb, testRunsDb, job, numBuildsToShow).builds());
+          new InterestingTests(jobsDb, buildsDb, recentResults, job, numBuildsToShow).builds());
     }
 
     UpstreamFailures failures =
@@ -365,10 +622,46 @@ public class UpstreamFailuresDb extends DbTableService {
   public UpstreamFailures findInterestingFailures(String workflowName, String jobName) {
     WorkflowId workflowId = WorkflowId.of(workflowName);
     JobId jobId = workflowId.job(Branch.fromString(jobName));
-    InterestingTests interesting = new InterestingTests(jobsDb, buildsDb, testRunsDb, jobId);
+    InterestingTests interesting = new InterestingTests(jobsDb, buildsDb, recentResults, jobId);
     return findAllResults(interesting.builds(), interesting.testIds());
   }
 
+  /**
+   * Recent usable builds of the job, skipping builds with too many failures (see {@link
+   * InterestingTests}).
+   */
+  public List<StoredBuild> recentBuilds(JobId jobId, int numBuilds) {
+    return new InterestingTests(jobsDb, buildsDb, recentResults, jobId, numBuilds).builds();
+  }
+
+  /**
+   * Find all results of the tests that failed at least once in the given builds.
+   *
+   * @param builds builds to look into, usually {@link #recentBuilds(JobId, int)}
+   * @return an UpstreamFailure object, potentially empty
+   */
+  public UpstreamFailures findFailures(List<StoredBuild> builds) {
+    if (builds.isEmpty()) {
+      return new UpstreamFailures(Collections.emptyList());
+    }
+    return findAllResults(builds, recentResults.failedTests(builds));
+  }
+
+  /**
+   * Find all results of the given tests in the given builds.
+   *
+   * @param builds builds to look into
+   * @param tests tests to look for, tests that did not run in the builds are not returned
+   * @return an UpstreamFailure object, potentially empty
+   */
+  public UpstreamFailures findResults(List<StoredBuild> builds, Collection<TestName> tests) {
+    if (builds.isEmpty() || tests.isEmpty()) {
+      return new UpstreamFailures(Collections.emptyList());
+    }
+    List<Long> testIds = tests.stream().map(testNamesDb::dbId).collect(Collectors.toList());
+    return findAllResults(builds, testIds);
+  }
+
   /**
    * Find all failures for given test on all workflows and branches.
    *
@@ -389,6 +682,21 @@ public class UpstreamFailuresDb extends DbTableService {
       return new UpstreamFailures(Collections.emptyList());
     }
 
+    long start = System.nanoTime();
+    Set<Long> buildIds = builds.stream().map(StoredBuild::id).collect(Collectors.toSet());
+    List<StoredTestRun> testRuns = testRunsDb.getAllResultsForTestsInBuilds(testIds, buildIds);
+    logger.info(
+        "UpstreamFailuresDb::findAllResults got all results for analysis after {} ms",
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return resultsFromRuns(builds, testIds, testRuns);
+  }
+
+  private UpstreamFailures resultsFromRuns(
+      List<StoredBuild> builds, List<Long> testIds, List<StoredTestRun> testRuns) {
+    if (builds.isEmpty()) {
+      return new UpstreamFailures(Collections.emptyList());
+    }
+
     long start = System.nanoTime();
 
     // we will use first build workflow id as upstream workflow used
@@ -403,31 +711,16 @@ public class UpstreamFailuresDb extends DbTableService {
 
     final List<TestFailure> failures = new ArrayList<>();
 
-    testRunsDb.getAllResultsForTestsInBuilds(testIds, buildCache.keySet()).stream()
+    testRuns.stream()
         .collect(Collectors.groupingBy(StoredTestRun::testId))
         .forEach(
             (testId, testResults) -> {
-              if (failures.isEmpty()) {
-                logger.info(
-                    "UpstreamFailuresDb::findAllResults got all results for analysis after {} ms",
-                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
-              }
-              TestName testName = testNameCache.get(testId);
-              if (testName == null) {
-                logger.warn("Something went wrong, TestName not found for id: {}", testId);
-                testName = testNamesDb.find(testId).orElseThrow();
-              }
               List<RunDetails> details = buildRunDetailsFromRuns(buildCache, testResults);
               var failureDetails = FailureDetails.build(details);
-              String recentLinkedIssue =
-                  testLinkedIssuesDb
-                      .recentLinkedIssue(testId)
-                      .map(StoredTestLinkedIssue::linkedIssue)
-                      .orElse(null);
               failures.add(
-                  new TestFailure(
-                      testName,
-                      jiraLink(recentLinkedIssue),
+                  testFailure(
+                      testId,
+                      testNameCache.get(testId),
                       failureDetails,
                       workflowId,
                       testResults.size(),
@@ -442,6 +735,33 @@ public class UpstreamFailuresDb extends DbTableService {
     return new UpstreamFailures(failures);
   }
 
+  private TestFailure testFailure(
+      long testId,
+      @Nullable TestName testName,
+      FailureDetails failureDetails,
+      WorkflowId workflowId,
+      long runs,
+      long lastWeekRuns,
+      long lastMonthRuns) {
+    if (testName == null) {
+      logger.warn("Something went wrong, TestName not found for id: {}", testId);
+      testName = testNamesDb.find(testId).orElseThrow();
+    }
+    String recentLinkedIssue =
+        testLinkedIssuesDb
+            .recentLinkedIssue(testId)
+            .map(StoredTestLinkedIssue::linkedIssue)
+            .orElse(null);
+    return new TestFailure(
+        testName,
+        jiraLink(recentLinkedIssue),
+        failureDetails,
+        workflowId,
+        runs,
+        lastWeekRuns,
+        lastMonthRuns);
+  }
+
   private IssueLink jiraLink(String issueId) {
     if (issueId != null) return issuesService.issueLink(IssueId.fromString(issueId));
     else return null;
@@ -478,7 +798,7 @@ public class UpstreamFailuresDb extends DbTableService {
    */
   private QueryParameters makeFailureDetailsQueryForJob(
       String workflowName, String jobName, Optional<TestName> testName) {
-    final UpstreamFailuresSummaryQuery query = new UpstreamFailuresSummaryQuery(false);
+    final UpstreamFailuresSummaryQuery query = new UpstreamFailuresSummaryQuery();
 
     for (String j : new ArrayList<>(query.joins())) {
       if (j.contains(JobsDb.JOBS_TABLE)) {
@@ -508,10 +828,6 @@ public class UpstreamFailuresDb extends DbTableService {
         () -> source.set(upstreamFailureDetailsParameterSource(params)));
 
     String strQuery = query.toString();
-    if (testName.isEmpty()) {
-      // Return us any tests that failed that we know about
-      strQuery = strQuery + " HAVING failed_count > 0";
-    }
     logger.trace(strQuery);
     return new QueryParameters(strQuery, source.get());
   }
@@ -525,10 +841,9 @@ public class UpstreamFailuresDb extends DbTableService {
   public UpstreamFailures getFailuresDetails(String className) {
     SqlParameterSource params =
         upstreamFailureDetailsParameterSource(Map.of("className", className));
-    return template.query(
-        makeUpstreamFailuresQuery("t.class_name = :className"),
-        params,
-        this::extractUpstreamFailures);
+    var handler = new UpstreamFailuresRowHandler(true, true);
+    template.query(makeUpstreamFailuresQuery("t.class_name = :className"), params, handler);
+    return new UpstreamFailures(handler.failures());
   }
 
   public Optional<TestFailure> getFailureDetails(TestName testName) {
@@ -545,20 +860,44 @@ public class UpstreamFailuresDb extends DbTableService {
    */
   Optional<TestFailure> getFailureDetails(TestName testName, boolean limitToFailed) {
     Mapper<TestName> mapper = testNamesDb.testNameMapper();
-    String select = makeUpstreamFailuresQuery(mapper.whereClause(), limitToFailed);
+    String select = makeUpstreamFailuresQuery(mapper.whereClause());
     logger.debug(select);
-    return template.query(
-        select,
-        mapper.source(upstreamFailureDetailsParameterSource(), testName),
-        this::extractUpstreamFailureDetails);
+    var handler = new UpstreamFailuresRowHandler(limitToFailed, false);
+    template.query(
+        select, mapper.source(upstreamFailureDetailsParameterSource(), testName), handler);
+    return handler.failures().stream().findFirst();
   }
 
-  private String makeUpstreamFailuresQuery(String additionalWhere) {
-    return makeUpstreamFailuresQuery(additionalWhere, true);
+  /**
+   * Retrieve detailed information on many known upstream failures at once, with a single query.
+   *
+   * @param testNames the names of the known failures for which to retrieve details.
+   * @return details on the known failures by test name, the tests that are not recorded upstream
+   *     failures being omitted. As for {@link #getFailureDetails(TestName)}, last failed run output
+   *     is missing.
+   */
+  public Map<TestName, TestFailure> getFailureDetails(Collection<TestName> testNames) {
+    Map<Long, TestName> byId = new HashMap<>();
+    testNames.forEach(name -> testNamesDb.findId(name).ifPresent(id -> byId.put(id, name)));
+    if (byId.isEmpty()) return Map.of();
+    String select = makeUpstreamFailuresQuery("r.test_id IN (:testIds)");
+    logger.debug(select);
+    var handler = new UpstreamFailuresRowHandler(true, false);
+    var params = upstreamFailureDetailsParameterSource(Map.of("testIds", byId.keySet()));
+    template.query(select, params, handler);
+    // keyed by the requested names, which may not be spelled exactly like the stored ones
+    Map<TestName, TestFailure> details = new HashMap<>();
+    for (TestFailure failure : handler.failures()) {
+      testNamesDb
+          .findId(failure.test())
+          .map(byId::get)
+          .ifPresent(name -> details.put(name, failure));
+    }
+    return details;
   }
 
-  private String makeUpstreamFailuresQuery(String additionalWhere, boolean limitToFailed) {
-    UpstreamFailuresSummaryQuery query = new UpstreamFailuresSummaryQuery(limitToFailed);
+  private String makeUpstreamFailuresQuery(String additionalWhere) {
+    UpstreamFailuresSummaryQuery query = new UpstreamFailuresSummaryQuery();
     // Note: without the STRAIGHT_JOIN, that goes from less than 100ms to about 1 minute.
     if (additionalWhere != null && !additionalWhere.isEmpty()) {
       query.add("where", additionalWhere);
@@ -570,58 +909,14 @@ public class UpstreamFailuresDb extends DbTableService {
     return query.toString();
   }
 
-  private UpstreamFailures extractUpstreamFailures(ResultSet rs) throws SQLException {
-    List<TestFailure> failures = new ArrayList<>();
-    while (rs.next()) {
-      failures.add(parseUpstreamBoardFailure(rs, true));
-    }
-    return new UpstreamFailures(failures);
-  }
-
-  private TestFailure parseUpstreamBoardFailure(ResultSet rs, boolean keepOnlyLastFailures)
-      throws SQLException {
-    TestName testName =
-        new TestName(
-            TestCategory.valueOf(rs.getString("category")),
-            rs.getString("path"),
-            rs.getString("class_name"),
-            rs.getString("test_name"));
-    long ranCount = rs.getLong("ran_count");
-    long lastWeekRanCount = rs.getLong("week_ran_count");
-    long lastMonthRanCount = rs.getLong("month_ran_count");
-    var parser = new FailureDetailsParser();
-    FailureDetails failureDetails = parser.parseFailureData(rs.getString("builds"));
-    if (keepOnlyLastFailures) {
-      // This is potentially a *lot* of data, so only keep it if the caller asks
-      failureDetails.allByVariants().clear();
-      failureDetails.allByVersions().clear();
-    }
-
-    // we do not set this issue link here as it should be set by service if needed
-    IssueLink issueLink = null;
-
-    return new TestFailure(
-        testName, issueLink, failureDetails, null, ranCount, lastWeekRanCount, lastMonthRanCount);
-  }
-
   private SqlParameterSource upstreamFailureDetailsParameterSource() {
     return upstreamFailureDetailsParameterSource(Collections.emptyMap());
   }
 
   private SqlParameterSource upstreamFailureDetailsParameterSource(
       Map<String, Object> extraParams) {
-    Timestamp oneWeekAgo = Timestamp.from(Instant.now().minus(7, ChronoUnit.DAYS));
-    Timestamp oneMonthAgo = Timestamp.from(Instant.now().minus(30, ChronoUnit.DAYS));
-    MapSqlParameterSource source =
-        new MapSqlParameterSource()
-            .addValue("aWeekAgo", oneWeekAgo)
-            .addValue("aMonthAgo", oneMonthAgo);
+    MapSqlParameterSource source = new MapSqlParameterSource();
     extraParams.forEach(source::addValue);
     return source;
   }
-
-  private Optional<TestFailure> extractUpstreamFailureDetails(ResultSet rs) throws SQLException {
-    if (!rs.first()) return Optional.empty();
-    return Optional.of(parseUpstreamBoardFailure(rs, false));
-  }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.dev.FailureDetails;
+import com.datastax.butler.commons.dev.RunDetails;
+import com.datastax.butler.commons.dev.TestFailure;
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestCategory;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.commons.jenkins.TestRunOutput;
+import com.datastax.butler.commons.jenkins.TestVariant;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+/**
+ * Collects {@link TestFailure}s from the rows of the {@link UpstreamFailuresSummaryQuery}.
+ *
+ * <p>Rows are test runs ordered by test, so runs of a test are accumulated until the first row of
+ * the next test and then turned into its {@link TestFailure}. Jobs and builds are shared between
+ * the runs instead of being created for every row.
+ */
+class UpstreamFailuresRowHandler implements RowCallbackHandler {
+  private final boolean limitToFailed;
+  private final boolean keepOnlyLastFailures;
+  private final long weekAgo = Instant.now().minus(7, ChronoUnit.DAYS).getEpochSecond();
+  private final long monthAgo = Instant.now().minus(30, ChronoUnit.DAYS).getEpochSecond();
+
+  private final Map<Long, JobId> jobs = new HashMap<>();
+  private final Map<Long, BuildId> builds = new HashMap<>();
+  private final List<TestFailure> failures = new ArrayList<>();
+  private Accumulator current;
+
+  /**
+   * Creates the handler.
+   *
+   * @param limitToFailed if true, only failed runs are kept in the failure details, but all of them
+   *     are counted
+   * @param keepOnlyLastFailures if true, runs by variant and version are not kept in the failure
+   *     details, as it is potentially a *lot* of data
+   */
+  UpstreamFailuresRowHandler(boolean limitToFailed, boolean keepOnlyLastFailures) {
+    this.limitToFailed = limitToFailed;
+    this.keepOnlyLastFailures = keepOnlyLastFailures;
+  }
+
+  @Override
+  public void processRow(ResultSet rs) throws SQLException {
+    long testId = rs.getLong("test_id");
+    if (current == null || current.testId != testId) {
+      finishCurrent();
+      current = new Accumulator(testId, testName(rs));
+    }
+    current.add(runDetails(rs));
+  }
+
+  /** Failures of all the tests read so far, in the order of rows. */
+  List<TestFailure> failures() {
+    finishCurrent();
+    return failures;
+  }
+
+  private void finishCurrent() {
+    if (current != null) {
+      failures.add(current.testFailure());
+      current = null;
+    }
+  }
+
+  private static TestName testName(ResultSet rs) throws SQLException {
+    return new TestName(
+        TestCategory.valueOf(rs.getString("category")),
+        rs.getString("path"),
+        rs.getString("class_name"),
+        rs.getString("test_name"));
+  }
+
+  private RunDetails runDetails(ResultSet rs) throws SQLException {
+    long buildDbId = rs.getLong("build_id");
+    BuildId buildId = builds.get(buildDbId);
+    if (buildId == null) {
+      buildId = job(rs).build(rs.getInt("build_number"));
+      builds.put(buildDbId, buildId);
+    }
+    return new RunDetails(
+        buildId,
+        TestVariant.fromString(rs.getString("variant")),
+        rs.getString("run_url"),
+        rs.getLong("start_time"),
+        rs.getBoolean("failed"),
+        rs.getBoolean("skipped"),
+        TestRunOutput.EMPTY_OUTPUT);
+  }
+
+  private JobId job(ResultSet rs) throws SQLException {
+    long jobDbId = rs.getLong("job_id");
+    JobId jobId = jobs.get(jobDbId);
+    if (jobId == null) {
+      jobId =
+          WorkflowId.of(rs.getString("workflow")).job(Branch.fromString(rs.getString("job_name")));
+      jobs.put(jobDbId, jobId);
+    }
+    return jobId;
+  }
+
+  private class Accumulator {
+    private final long testId;
+    private final TestName testName;
+    private final List<RunDetails> runs = new ArrayList<>();
+    private long ranCount;
+    private long lastWeekRanCount;
+    private long lastMonthRanCount;
+
+    private Accumulator(long testId, TestName testName) {
+      this.testId = testId;
+      this.testName = testName;
+    }
+
+    private void add(RunDetails run) {
+      ranCount++;
+      lastWeekRanCount += run.timestamp() >= weekAgo ? 1 : 0;
+      lastMonthRanCount += run.timestamp() >= monthAgo ? 1 : 0;
+      if (run.failed() || !limitToFailed) {
+        runs.add(run);
+      }
+    }
+
+    private TestFailure testFailure() {
+      FailureDetails failureDetails = FailureDetails.build(runs);
+      if (keepOnlyLastFailures) {
+        failureDetails.allByVariants().clear();
+        failureDetails.allByVersions().clear();
+      }
+      // we do not set this issue link here as it should be set by service if needed
+      return new TestFailure(
+          testName, null, failureDetails, null, ranCount, lastWeekRanCount, lastMonthRanCount);
+    }
+  }
+}
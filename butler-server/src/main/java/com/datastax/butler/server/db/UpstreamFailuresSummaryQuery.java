@@ -13,35 +13,29 @@ import java.util.List;
 /**
  * This is a crappy little query builder that's _very specific_ the huge unified upstream failures
  * query.
+ *
+ * <p>The query returns one row per test run, ordered by test, so that the whole history of a test
+ * is read from consecutive rows (see {@link UpstreamFailuresRowHandler}) and not from a single
+ * {@code GROUP_CONCAT} column which gets truncated at {@code group_concat_max_len}.
  */
 public class UpstreamFailuresSummaryQuery {
-  private static final String GROUP_CONCAT_FORMAT =
-      "GROUP_CONCAT(IF(%s,"
-          + "  CONCAT_WS('|',"
-          + "    j.workflow,"
-          + "    j.job_name,"
-          + "    b.build_number,"
-          + "    UNIX_TIMESTAMP(b.start_time),"
-          + "    r.variant,"
-          + "    r.run_blocks,"
-          + "    r.failed,"
-          + "    r.skipped,"
-          + "    r.run_url),"
-          + "  null)) AS builds"; // , limitToFailed ? "r.failed" : "true"),
-
   private static final List<String> SELECTS =
       Arrays.asList(
+          "r.test_id",
           "t.category",
           "t.path",
           "t.class_name",
           "t.test_name",
-          null, // group concat placeholder
-          "SUM(r.failed) AS failed_count",
-          "COUNT(*) AS ran_count",
-          "SUM(IF(r.failed AND b.start_time >= :aWeekAgo, 1, 0)) AS week_failed_count",
-          "COUNT(IF(b.start_time >= :aWeekAgo, 1, null)) AS week_ran_count",
-          "SUM(IF(r.failed AND b.start_time >= :aMonthAgo, 1, 0)) AS month_failed_count",
-          "COUNT(IF(b.start_time >= :aMonthAgo, 1, null)) AS month_ran_count");
+          "b.job_id",
+          "j.workflow",
+          "j.job_name",
+          "r.build_id",
+          "b.build_number",
+          "UNIX_TIMESTAMP(b.start_time) AS start_time",
+          "r.variant",
+          "r.failed",
+          "r.skipped",
+          "r.run_url");
 
   private static final List<String> FROMS = List.of(TestRunsDb.TABLE + " r");
 
@@ -60,17 +54,9 @@ public class UpstreamFailuresSummaryQuery {
   private final List<String> joins;
   private final List<String> wheres;
 
-  /**
-   * Builds the base query optionally limiting it only failures, or all results.
-   *
-   * @param limitToFailed if true, only return failed results, all if false
-   */
-  public UpstreamFailuresSummaryQuery(boolean limitToFailed) {
-
+  /** Builds the base query returning all the (not skipped) runs. */
+  public UpstreamFailuresSummaryQuery() {
     selects = new ArrayList<>(SELECTS);
-    selects.set(
-        selects.indexOf(null),
-        String.format(GROUP_CONCAT_FORMAT, limitToFailed ? "r.failed" : "true"));
     froms = new ArrayList<>(FROMS);
     joins = new ArrayList<>(JOINS);
     wheres = new ArrayList<>(WHERES);
@@ -94,7 +80,7 @@ public class UpstreamFailuresSummaryQuery {
         + String.join(" ", joins)
         + " WHERE "
         + String.join(" AND ", wheres)
-        + " GROUP BY r.test_id";
+        + " ORDER BY r.test_id";
   }
 
   public void add(String where, String what) {
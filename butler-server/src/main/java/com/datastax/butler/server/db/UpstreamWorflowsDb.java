@@ -13,11 +13,16 @@ import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import lombok.Value;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Defined which {@link Workflow}s are supported (configured) and "observable" in the application.
@@ -25,6 +30,11 @@ import org.springframework.transaction.annotation.Transactional;
  * <p>All supported workflows are configured in this class. For all the projects that are
  * potentially supported: DSE, OSS, Stargazer. Then in the database table UPSTREAM_WORKFLOWS we keep
  * a list of what is interesting. So {UpstreamWorkflows} = {code defined} x {db configured}
+ *
+ * <p>The result of that product is kept in memory as an immutable {@link Snapshot}, replaced as a
+ * whole when workflows are registered or the table is updated, so that reading the configuration
+ * never queries the database. The table is also re-read periodically to pick up changes done
+ * outside of this instance.
  */
 @Repository
 public class UpstreamWorflowsDb extends DbTableService {
@@ -32,6 +42,7 @@ public class UpstreamWorflowsDb extends DbTableService {
 
   private final TableMapper<WorkflowId, WorkflowId> workflowMapper;
   private final WorkflowRegistry workflows = new WorkflowRegistry();
+  private volatile Snapshot snapshot = new Snapshot(0, Set.of(), Set.of(), Set.of());
 
   /** OMG. */
   @Autowired
@@ -40,10 +51,44 @@ public class UpstreamWorflowsDb extends DbTableService {
     this.workflowMapper = tableMapper(WorkflowId.class, WorkflowId.class);
   }
 
+  /** Immutable view of the configured workflows at some point in time. */
+  @Value
+  public static class Snapshot {
+    /** Incremented every time the configuration changes. */
+    long version;
+    /** Workflows stored in the {@link #TABLE} table. */
+    Set<WorkflowId> stored;
+    /** Registered workflows that are also stored. */
+    Set<Workflow> all;
+    /** Registered and stored workflows that run as CI. */
+    Set<Workflow> upstream;
+  }
+
   /** Register workflow(s) so that their definitions can be used in api calls. */
-  public void registerWorkflows(Collection<Workflow> workflows) {
+  public synchronized void registerWorkflows(Collection<Workflow> workflows) {
     logger.info("registering workflows: {}", StringUtils.join(workflows, ","));
     this.workflows.addAll(workflows);
+    swap(snapshot.stored());
+  }
+
+  /**
+   * Re-reads the {@link #TABLE} table, replacing the current snapshot if it changed.
+   *
+   * <p>This is called post-construction and periodically by Spring, to notice changes made by other
+   * instances (changes made through {@link #update} are applied as soon as they are committed).
+   */
+  @PostConstruct
+  @Scheduled(fixedDelay = 1000 * 60, initialDelay = 1000 * 60) // every minute
+  public synchronized void refresh() {
+    Set<WorkflowId> stored = Set.copyOf(workflowMapper.getAll());
+    if (!stored.equals(snapshot.stored())) {
+      swap(stored);
+    }
+  }
+
+  /** The current configuration. */
+  public Snapshot snapshot() {
+    return snapshot;
   }
 
   /**
@@ -53,27 +98,22 @@ public class UpstreamWorflowsDb extends DbTableService {
    * CI.
    */
   public Set<Workflow> upstreamWorkflows() {
-    return workflows.stream()
-        .filter(Workflow::runsAsCI)
-        .filter(x -> databaseWorkflows().contains(x.workflowId()))
-        .collect(Collectors.toSet());
+    return snapshot.upstream();
   }
 
   /** Return list of ALL workflows configured for the application that are also in the database. */
   public Set<Workflow> allWorkflows() {
-    return workflows.stream()
-        .filter(x -> databaseWorkflows().contains(x.workflowId()))
-        .collect(Collectors.toSet());
+    return snapshot.all();
   }
 
   public Set<WorkflowId> databaseWorkflows() {
-    return Sets.newHashSet(workflowMapper.getAll());
+    return snapshot.stored();
   }
 
   /** Updates the set of stored workflows to match the provided ones. */
   @Transactional
   public synchronized void update(Set<WorkflowId> workflows) {
-    var current = databaseWorkflows();
+    var current = Sets.newHashSet(workflowMapper.getAll());
     Set<WorkflowId> toAdd = Sets.difference(workflows, current);
     Set<WorkflowId> toRemove = Sets.difference(current, workflows);
     logger.info("Requested new upstream workflows to be: {}", toString(workflows));
@@ -81,6 +121,19 @@ public class UpstreamWorflowsDb extends DbTableService {
     logger.info("Workflows to remove: {}", toString(toRemove));
     workflowMapper.insert(toAdd);
     workflowMapper.delete(toRemove);
+    // Readers must not see workflows whose insertion or removal could still be rolled back.
+    Set<WorkflowId> stored = Set.copyOf(workflows);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              swap(stored);
+            }
+          });
+    } else {
+      swap(stored);
+    }
   }
 
   public Optional<Workflow> getWorkflow(String name) {
@@ -91,6 +144,16 @@ public class UpstreamWorflowsDb extends DbTableService {
     return workflows.getWorkflow(id);
   }
 
+  private synchronized void swap(Set<WorkflowId> stored) {
+    Set<Workflow> all =
+        workflows.stream()
+            .filter(x -> stored.contains(x.workflowId()))
+            .collect(Collectors.toUnmodifiableSet());
+    Set<Workflow> upstream =
+        all.stream().filter(Workflow::runsAsCI).collect(Collectors.toUnmodifiableSet());
+    snapshot = new Snapshot(snapshot.version() + 1, stored, all, upstream);
+  }
+
   private Collection<String> toString(Set<WorkflowId> ids) {
     return StringSanitizer.sanitize(
         ids.stream().map(WorkflowId::toString).collect(Collectors.toList()));
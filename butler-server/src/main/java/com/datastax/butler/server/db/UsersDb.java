@@ -19,13 +19,18 @@ public class UsersDb extends DbTableService {
   public static final String TABLE = "users";
 
   private final PasswordEncoder passwordEncoder;
+  private final AuthoritiesDb authoritiesDb;
   private final TableMapper<StoredUser, String> usersMapper;
 
   /** Creates the repository (Auto-wired by Spring). */
   @Autowired
-  public UsersDb(NamedParameterJdbcTemplate template, PasswordEncoder passwordEncoder) {
+  public UsersDb(
+      NamedParameterJdbcTemplate template,
+      PasswordEncoder passwordEncoder,
+      AuthoritiesDb authoritiesDb) {
     super(template, TABLE);
     this.passwordEncoder = passwordEncoder;
+    this.authoritiesDb = authoritiesDb;
     this.usersMapper = tableMapper(StoredUser.class, String.class);
   }
 
@@ -37,5 +42,7 @@ public class UsersDb extends DbTableService {
   /** Adds a new user to the database. */
   public void add(String username, String password) {
     usersMapper.insert(new StoredUser(username, passwordEncoder.encode(password), true));
+    // a previous user with the same name may have had other authorities
+    authoritiesDb.invalidate(username);
   }
 }
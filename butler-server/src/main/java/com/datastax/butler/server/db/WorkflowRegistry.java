@@ -7,34 +7,46 @@ package com.datastax.butler.server.db;
 
 import com.datastax.butler.commons.dev.Workflow;
 import com.datastax.butler.commons.jenkins.WorkflowId;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
-/** A registry of workflows definitions. */
+/**
+ * A registry of workflows definitions, by name.
+ *
+ * <p>Workflows are registered rarely (mostly at startup) but looked up on most requests, so the
+ * registry is copy-on-write: lookups read an immutable map without locking. If several workflows
+ * with the same name are registered, the first one is kept.
+ */
 public class WorkflowRegistry {
 
-  private final List<Workflow> workflows = new ArrayList<>();
+  private volatile Map<String, Workflow> workflows = Map.of();
 
+  /** The registered workflows, in registration order. */
   public Stream<Workflow> stream() {
-    return workflows.stream();
+    return workflows.values().stream();
   }
 
   public void add(Workflow w) {
-    workflows.add(w);
+    addAll(List.of(w));
   }
 
-  public void addAll(Collection<Workflow> ws) {
-    workflows.addAll(ws);
+  /** Registers the provided workflows, ignoring those whose name is already registered. */
+  public synchronized void addAll(Collection<Workflow> ws) {
+    Map<String, Workflow> updated = new LinkedHashMap<>(workflows);
+    ws.forEach(w -> updated.putIfAbsent(w.name(), w));
+    workflows = Collections.unmodifiableMap(updated);
   }
 
   public Optional<Workflow> getWorkflow(String name) {
-    return workflows.stream().filter(x -> x.name().equals(name)).findFirst();
+    return Optional.ofNullable(workflows.get(name));
   }
 
   public Optional<Workflow> getWorkflow(WorkflowId id) {
-    return workflows.stream().filter(x -> x.name().equals(id.name())).findFirst();
+    return getWorkflow(id.name());
   }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.events;
+
+import com.datastax.butler.commons.issues.IssueId;
+import com.datastax.butler.commons.jenkins.TestName;
+import java.util.List;
+import lombok.Value;
+
+/** Changes of the stored builds and tests published on the {@link IngestEventBus}. */
+public interface IngestEvent {
+
+  /** A build has been fully stored, either new or with more test runs imported for it. */
+  @Value
+  class BuildStored implements IngestEvent {
+    /** JOBS::ID of the job of the build. */
+    long jobDbId;
+    /** BUILDS::ID of the build. */
+    long buildDbId;
+  }
+
+  /** A build and its test runs have been deleted. */
+  @Value
+  class BuildDeleted implements IngestEvent {
+    /** JOBS::ID of the job of the build. */
+    long jobDbId;
+    /** BUILDS::ID of the build. */
+    long buildDbId;
+  }
+
+  /** Tests have been linked to an issue. */
+  @Value
+  class TestLinked implements IngestEvent {
+    List<TestName> tests;
+    IssueId issueId;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.events;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-process bus delivering {@link IngestEvent}s to the consumers of derived data (indexes,
+ * baselines, caches...), so that ingestion does not need to know about them.
+ *
+ * <p>Events published within a transaction are only delivered after it commits (and dropped if it
+ * rolls back). Each subscriber has its own bounded queue, drained in batches by its own executor (a
+ * dedicated thread by default), in publication order. When the queue of a subscriber is full
+ * publishing blocks until the subscriber catches up, so a slow consumer slows down ingestion rather
+ * than growing memory without bounds. Subscribers can also be {@link Builder#inline()}, receiving
+ * events in the publishing thread, which is meant for cheap updates that must happen before the
+ * publisher returns.
+ */
+@Component
+public class IngestEventBus {
+  private static final Logger logger = LogManager.getLogger();
+
+  private final List<Subscriber<?>> subscribers = new CopyOnWriteArrayList<>();
+
+  /**
+   * Starts configuring a new subscriber.
+   *
+   * @param name the name of the subscriber, used in logs and thread names.
+   * @return a builder for the subscriber, which is subscribed when built.
+   */
+  public Builder subscriber(String name) {
+    return new Builder(name);
+  }
+
+  /**
+   * Publishes the event, after the commit of the current transaction if any.
+   *
+   * <p>This blocks while the queue of an asynchronous subscriber of the event is full.
+   */
+  public void publish(IngestEvent event) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+              deliver(event);
+            }
+          });
+    } else {
+      deliver(event);
+    }
+  }
+
+  private void deliver(IngestEvent event) {
+    // inline subscribers first, so they are up to date when asynchronous ones get the event
+    for (Subscriber<?> subscriber : subscribers) {
+      if (subscriber.executor == null) subscriber.offer(event);
+    }
+    for (Subscriber<?> subscriber : subscribers) {
+      if (subscriber.executor != null) subscriber.offer(event);
+    }
+  }
+
+  /** Configures a subscriber, see {@link IngestEventBus#subscriber}. */
+  public class Builder {
+    private final String name;
+    private int batchSize = 100;
+    private int capacity = 10_000;
+    @Nullable private Executor executor;
+    private boolean inline;
+
+    private Builder(String name) {
+      this.name = name;
+    }
+
+    /** Maximum number of events delivered at once (100 by default). */
+    public Builder batchSize(int batchSize) {
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /** Number of undelivered events after which publishing blocks (10 000 by default). */
+    public Builder capacity(int capacity) {
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Executor delivering the events. Batches of a subscriber are never delivered concurrently,
+     * even if the executor has multiple threads.
+     */
+    public Builder executor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /** Delivers every event in the publishing thread, as soon as it is published. */
+    public Builder inline() {
+      this.inline = true;
+      return this;
+    }
+
+    /**
+     * Subscribes to the events of given type.
+     *
+     * @param type the type of events delivered to the handler.
+     * @param handler called with batches of events, in publication order.
+     */
+    public <E extends IngestEvent> void subscribe(Class<E> type, Consumer<List<E>> handler) {
+      if (batchSize <= 0 || capacity < batchSize) {
+        throw new IllegalArgumentException(
+            String.format("Invalid batch size %d or capacity %d of %s", batchSize, capacity, name));
+      }
+      Executor deliveryExecutor = null;
+      if (!inline) {
+        deliveryExecutor =
+            executor != null
+                ? executor
+                : Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder()
+                        .setNameFormat("ingest-events-" + name)
+                        .setDaemon(true)
+                        .build());
+      }
+      subscribers.add(new Subscriber<>(name, type, handler, batchSize, capacity, deliveryExecutor));
+    }
+  }
+
+  private static class Subscriber<E extends IngestEvent> {
+    private final String name;
+    private final Class<E> type;
+    private final Consumer<List<E>> handler;
+    private final int batchSize;
+    @Nullable private final Executor executor;
+    @Nullable private final BlockingQueue<E> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private Subscriber(
+        String name,
+        Class<E> type,
+        Consumer<List<E>> handler,
+        int batchSize,
+        int capacity,
+        @Nullable Executor executor) {
+      this.name = name;
+      this.type = type;
+      this.handler = handler;
+      this.batchSize = batchSize;
+      this.executor = executor;
+      this.queue = executor == null ? null : new ArrayBlockingQueue<>(capacity);
+    }
+
+    private void offer(IngestEvent event) {
+      if (!type.isInstance(event)) return;
+      E typed = type.cast(event);
+      if (executor == null) {
+        handle(List.of(typed));
+        return;
+      }
+      if (!queue.offer(typed)) {
+        logger.warn("Events queue of {} is full, waiting for it to catch up", name);
+        try {
+          queue.put(typed);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          logger.error("Interrupted while publishing {}, it is not delivered to {}", event, name);
+          return;
+        }
+      }
+      if (draining.compareAndSet(false, true)) executor.execute(this::drain);
+    }
+
+    private void drain() {
+      while (true) {
+        List<E> batch = new ArrayList<>(batchSize);
+        queue.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+          draining.set(false);
+          // an event may have been queued after the queue was found empty but before the flag
+          // was reset, in which case its publisher did not schedule a drain
+          if (queue.isEmpty() || !draining.compareAndSet(false, true)) return;
+          continue;
+        }
+        handle(batch);
+      }
+    }
+
+    private void handle(List<E> batch) {
+      try {
+        handler.accept(batch);
+      } catch (RuntimeException e) {
+        logger.error("Handling {} events by {} failed", batch.size(), name, e);
+      }
+    }
+  }
+}
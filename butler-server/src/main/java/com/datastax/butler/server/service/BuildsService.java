@@ -10,12 +10,25 @@ import com.datastax.butler.commons.jenkins.JenkinsBuild;
 import com.datastax.butler.commons.jenkins.JenkinsBuild.Status;
 import com.datastax.butler.commons.jenkins.TestName;
 import com.datastax.butler.commons.jenkins.TestReport;
+import com.datastax.butler.commons.jenkins.TestRun;
 import com.datastax.butler.commons.jenkins.TestVariant;
 import com.datastax.butler.server.db.BuildsDb;
 import com.datastax.butler.server.db.StoredBuild;
 import com.datastax.butler.server.db.StoredTestRun;
 import com.datastax.butler.server.db.TestNamesDb;
 import com.datastax.butler.server.db.TestRunsDb;
+import com.datastax.butler.server.events.IngestEvent.BuildStored;
+import com.datastax.butler.server.events.IngestEventBus;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -25,16 +38,25 @@ import org.springframework.stereotype.Service;
 @Service
 public class BuildsService {
   private final Logger logger = LogManager.getLogger();
+  /** Number of streamed test runs written at once, as many as a multi-row insert of test runs. */
+  private static final int STREAM_BATCH_SIZE = 1024;
+
   private final BuildsDb buildsDb;
   private final TestNamesDb testNamesDb;
   private final TestRunsDb testRunsDb;
+  private final IngestEventBus events;
 
   /** Creates the service (Auto-wired by Spring). */
   @Autowired
-  public BuildsService(BuildsDb buildsDb, TestNamesDb testNamesDb, TestRunsDb testRunsDb) {
+  public BuildsService(
+      BuildsDb buildsDb,
+      TestNamesDb testNamesDb,
+      TestRunsDb testRunsDb,
+      IngestEventBus events) {
     this.buildsDb = buildsDb;
     this.testNamesDb = testNamesDb;
     this.testRunsDb = testRunsDb;
+    this.events = events;
   }
 
   /**
@@ -58,12 +80,14 @@ public class BuildsService {
 
     if (report == null) {
       logger.info("Build {} did not run all the tests and tests results are skipped", build);
-      buildsDb.markBuildStored(buildId);
+      buildsDb.markBuildStored(jobDbId, buildId);
+      buildStored(jobDbId, buildId);
       return false;
     }
 
     testRunsDb.insert(buildId, report);
-    buildsDb.markBuildStored(buildId);
+    buildsDb.markBuildStored(jobDbId, buildId);
+    buildStored(jobDbId, buildId);
     return true;
   }
 
@@ -85,16 +109,150 @@ public class BuildsService {
     // add test results
     var testRunsToStore =
         buildData.tests().stream()
-            .map(r -> fromRawBuildTestRun(storedBuild.id(), r))
+            .map(r -> fromRawBuildTestRun(storedBuild.id(), r, testNamesDb.dbId(testName(r))))
             .collect(Collectors.toList());
     testRunsDb.deleteRuns(testRunsToStore);
     testRunsDb.insertRuns(testRunsToStore);
     // update summary and mark it as stored
-    updateBuildSummary(storedBuild.id());
-    buildsDb.markBuildStored(storedBuild.id());
+    updateBuildSummary(jobDbId, storedBuild.id());
+    buildsDb.markBuildStored(jobDbId, storedBuild.id());
+    buildStored(jobDbId, storedBuild.id());
     return storedBuild.id();
   }
 
+  /**
+   * Gets the database ids of the tests run by the provided raw builds, storing the unknown ones.
+   *
+   * @param builds raw builds, e.g. of a batch import.
+   * @return the database id of every test of the builds, to be passed to {@link
+   *     #importRawBuildsForJob}.
+   */
+  public Map<TestName, Long> testDbIds(Collection<BuildImportRequest> builds) {
+    var names =
+        builds.stream()
+            .flatMap(b -> b.tests().stream())
+            .map(BuildsService::testName)
+            .collect(Collectors.toSet());
+    return testNamesDb.dbIds(names);
+  }
+
+  /**
+   * Import many raw builds of a job into butler database.
+   *
+   * <p>Builds are imported as by {@link #importRawBuildForJob}, but the builds and test runs of all
+   * the builds are read and written with batched statements.
+   *
+   * @param jobDbId database job id (for JOBS) table.
+   * @param builds builds of the job, including information about test runs, with distinct numbers.
+   * @param testDbIds database ids of the tests run by the builds, see {@link #testDbIds}.
+   * @return database ids of created or updated builds, by build number.
+   */
+  public Map<Integer, Long> importRawBuildsForJob(
+      long jobDbId, List<BuildImportRequest> builds, Map<TestName, Long> testDbIds) {
+    var numbers = builds.stream().map(BuildImportRequest::buildNumber).collect(Collectors.toList());
+    Map<Integer, StoredBuild> stored = new HashMap<>(buildsDb.getByBuildNumbers(jobDbId, numbers));
+    var existing = Set.copyOf(stored.keySet());
+    var toInsert =
+        builds.stream()
+            .filter(b -> !existing.contains(b.buildNumber()))
+            .collect(Collectors.toList());
+    stored.putAll(buildsDb.insertAll(jobDbId, toInsert));
+
+    List<StoredTestRun> runsToInsert = new ArrayList<>();
+    List<StoredTestRun> runsToDelete = new ArrayList<>();
+    for (BuildImportRequest build : builds) {
+      long buildDbId = stored.get(build.buildNumber()).id();
+      for (BuildImportRequest.TestRun run : build.tests()) {
+        var storedRun = fromRawBuildTestRun(buildDbId, run, testDbIds.get(testName(run)));
+        runsToInsert.add(storedRun);
+        // runs can only be re-imported in builds which were already stored
+        if (existing.contains(build.buildNumber())) runsToDelete.add(storedRun);
+      }
+    }
+    testRunsDb.deleteRuns(runsToDelete);
+    testRunsDb.insertRuns(runsToInsert);
+
+    Map<Integer, Long> buildDbIds = new HashMap<>();
+    stored.forEach((number, build) -> buildDbIds.put(number, build.id()));
+    buildsDb.markBuildsStoredWithSummary(buildDbIds.values());
+    buildDbIds.values().forEach(id -> buildStored(jobDbId, id));
+    return buildDbIds;
+  }
+
+  /**
+   * Import a raw build whose test runs are streamed, e.g. as they are read from the request.
+   *
+   * <p>The build is imported as by {@link #importRawBuildForJob}, but only a batch of test runs is
+   * held in memory at any time: test names are resolved and runs are written batch by batch, as
+   * they are consumed from the provided iterator.
+   *
+   * @param jobDbId database job id (for JOBS) table.
+   * @param header build data, whose test runs (if any) are ignored.
+   * @param testRuns the test runs of the build.
+   * @return database id of created or updated build.
+   */
+  public long importRawBuildStreamForJob(
+      long jobDbId, BuildImportRequest header, Iterator<BuildImportRequest.TestRun> testRuns) {
+    return importTestRunStream(
+        jobDbId, header, testRuns, BuildsService::testName, this::fromRawBuildTestRun);
+  }
+
+  /**
+   * Import a build whose test runs are streamed from test reports, e.g. JUnit XML reports.
+   *
+   * <p>As for {@link #importRawBuildStreamForJob}, test runs are written batch by batch as they are
+   * consumed. If a test is run more than once in the reports, its last run is kept.
+   *
+   * @param jobDbId database job id (for JOBS) table.
+   * @param header build data, whose test runs (if any) are ignored.
+   * @param testRuns the test runs of the build, read from its reports.
+   * @return database id of created or updated build.
+   */
+  public long importReportStreamForJob(
+      long jobDbId, BuildImportRequest header, Iterator<TestRun> testRuns) {
+    return importTestRunStream(
+        jobDbId, header, testRuns, r -> r.id().name(), BuildsService::fromReportTestRun);
+  }
+
+  private <T> long importTestRunStream(
+      long jobDbId,
+      BuildImportRequest header,
+      Iterator<T> testRuns,
+      Function<T, TestName> testName,
+      StoredRunFactory<T> storedRun) {
+    var found = buildsDb.getByBuildNumber(jobDbId, header.buildNumber());
+    boolean existed = found.isPresent();
+    long buildDbId = found.orElseGet(() -> getOrCreateBuild(jobDbId, withoutTests(header))).id();
+    // keys of the runs written so far, to replace rather than duplicate runs of the same test
+    Set<Map.Entry<Long, TestVariant>> written = new HashSet<>();
+    List<T> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+    while (testRuns.hasNext()) {
+      batch.add(testRuns.next());
+      if (batch.size() >= STREAM_BATCH_SIZE || !testRuns.hasNext()) {
+        var testDbIds = testNamesDb.dbIds(batch.stream().map(testName).collect(Collectors.toSet()));
+        Map<Map.Entry<Long, TestVariant>, StoredTestRun> runs = new LinkedHashMap<>();
+        for (T run : batch) {
+          var stored = storedRun.create(buildDbId, run, testDbIds.get(testName.apply(run)));
+          runs.put(Map.entry(stored.testId(), stored.variant()), stored);
+        }
+        // runs can only be re-imported in builds which were already stored
+        var toDelete =
+            runs.entrySet().stream()
+                .filter(e -> existed || written.contains(e.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+        if (!toDelete.isEmpty()) testRunsDb.deleteRuns(toDelete);
+        testRunsDb.insertRuns(runs.values());
+        written.addAll(runs.keySet());
+        batch.clear();
+      }
+    }
+    logger.info("Imported {} streamed test runs in build with id {}", written.size(), buildDbId);
+    buildsDb.markBuildsStoredWithSummary(List.of(buildDbId));
+    buildStored(jobDbId, buildDbId);
+    return buildDbId;
+  }
+
   /**
    * Update fields such as failed_tests, ran_tests, skipped_tests so that they reflect linked test
    * runs.
@@ -103,15 +261,24 @@ public class BuildsService {
    *
    * <p>Implementation could be more efficient, but let's optimize when it will become a problem.
    */
-  public StoredBuild updateBuildSummary(long buildDbId) {
+  public StoredBuild updateBuildSummary(long jobDbId, long buildDbId) {
     var testRuns = testRunsDb.getTestRunsForBuild(buildDbId);
     var ranCount = testRuns.stream().count();
     var failedCount = testRuns.stream().filter(StoredTestRun::failed).count();
     var skippedCount = testRuns.stream().filter(StoredTestRun::skipped).count();
-    buildsDb.updateBuildSummary(buildDbId, ranCount, failedCount, skippedCount);
+    buildsDb.updateBuildSummary(jobDbId, buildDbId, ranCount, failedCount, skippedCount);
     return buildsDb.get(buildDbId).orElseThrow();
   }
 
+  private void buildStored(long jobDbId, long buildDbId) {
+    events.publish(new BuildStored(jobDbId, buildDbId));
+  }
+
+  /** Creates the row to store for a streamed test run, once the id of its test is known. */
+  private interface StoredRunFactory<T> {
+    StoredTestRun create(long buildDbId, T testRun, long testDbId);
+  }
+
   private StoredBuild getOrCreateBuild(long jobDbId, BuildImportRequest buildData) {
     var found = buildsDb.getByBuildNumber(jobDbId, buildData.buildNumber());
     if (found.isEmpty()) {
@@ -121,13 +288,45 @@ public class BuildsService {
     return found.orElseThrow();
   }
 
-  private StoredTestRun fromRawBuildTestRun(long buildDbId, BuildImportRequest.TestRun testRun) {
-    // find test name
-    var testName =
-        TestName.ofSuiteAndTestWithCategory(
-            testRun.testSuite(), testRun.testCase(), testRun.category());
-    long testDbId = testNamesDb.dbId(testName);
-    // and create object
+  private static BuildImportRequest withoutTests(BuildImportRequest build) {
+    return new BuildImportRequest(
+        build.workflow(),
+        build.branch(),
+        build.buildNumber(),
+        build.startTime(),
+        build.durationMs(),
+        build.url(),
+        List.of());
+  }
+
+  private static TestName testName(BuildImportRequest.TestRun testRun) {
+    return TestName.ofSuiteAndTestWithCategory(
+        testRun.testSuite(), testRun.testCase(), testRun.category());
+  }
+
+  private static StoredTestRun fromReportTestRun(long buildDbId, TestRun testRun, long testDbId) {
+    StoredTestRun storedRun =
+        new StoredTestRun(
+            testDbId,
+            testRun.id().variant(),
+            buildDbId,
+            null,
+            testRun.failed(),
+            testRun.skipped(),
+            testRun.duration().toMillis(),
+            null);
+    if (testRun.failed()) {
+      storedRun.addFailureDetails(
+          testRun.output().errorDetails(),
+          testRun.output().errorStackTrace(),
+          testRun.output().stdout(),
+          testRun.output().stderr());
+    }
+    return storedRun;
+  }
+
+  private StoredTestRun fromRawBuildTestRun(
+      long buildDbId, BuildImportRequest.TestRun testRun, long testDbId) {
     StoredTestRun storedRun =
         new StoredTestRun(
             testDbId,
@@ -0,0 +1,220 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.datastax.butler.server.config.RuntimeRole;
+import com.datastax.butler.server.db.LeasesDb;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Coordinates the butler-server instances (nodes) sharing the same database, through the leases of
+ * the {@link LeasesDb}.
+ *
+ * <p>Every node periodically renews a lease named after itself, the nodes running ingestion (see
+ * {@link RuntimeRole}) and holding such a lease being the live nodes. Work identified by a key
+ * (e.g. loading a job) is partitioned between the live nodes with rendezvous hashing, so that
+ * adding or removing a node only moves the keys assigned to that node. As the view of the live
+ * nodes may briefly differ between nodes, work that must not run concurrently should also be
+ * guarded by a {@link Lease}, which expires if the node holding it dies.
+ */
+@Service
+public class ClusterService {
+  private static final Logger logger = LogManager.getLogger();
+
+  private static final String NODE_LEASE_PREFIX = "node:";
+  private static final String API_NODE_LEASE_PREFIX = "api-node:";
+  @VisibleForTesting static final Duration NODE_TTL = Duration.ofSeconds(90);
+  private static final Duration PURGE_AFTER = Duration.ofDays(1);
+
+  private final LeasesDb leasesDb;
+  private final RuntimeRole role;
+  private final String nodeId;
+  private final AtomicLong leaseCounter = new AtomicLong();
+  private volatile List<String> liveNodes;
+  /** Unknown until the first heartbeat, so other nodes are assumed to exist until then. */
+  private volatile boolean onlyNode;
+
+  /** Creates the service (Autowired by Spring). */
+  @Autowired
+  public ClusterService(LeasesDb leasesDb, RuntimeRole role) {
+    this(leasesDb, role, hostName() + "-" + UUID.randomUUID().toString().substring(0, 8));
+  }
+
+  @VisibleForTesting
+  public ClusterService(LeasesDb leasesDb, RuntimeRole role, String nodeId) {
+    this.leasesDb = leasesDb;
+    this.role = role;
+    this.nodeId = nodeId;
+    this.liveNodes = List.of(nodeId);
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "butler";
+    }
+  }
+
+  /** Unique identifier of this node, changing on restart. */
+  public String nodeId() {
+    return nodeId;
+  }
+
+  /**
+   * The nodes running ingestion alive as of the last heartbeat, sorted, always including this node
+   * (which is the only one on nodes not running ingestion).
+   */
+  public List<String> liveNodes() {
+    return liveNodes;
+  }
+
+  /**
+   * Whether no other node, whatever its role, was alive as of the last heartbeat.
+   *
+   * <p>All the changes to the database are then done by this node, so the state it keeps in memory
+   * need not be reloaded periodically to pick up the changes done by other nodes.
+   */
+  public boolean isOnlyNode() {
+    return onlyNode;
+  }
+
+  private String leaseName() {
+    return (role.runsIngestion() ? NODE_LEASE_PREFIX : API_NODE_LEASE_PREFIX) + nodeId;
+  }
+
+  /** Renews the lease of this node and refreshes the live nodes. */
+  @PostConstruct
+  @Scheduled(fixedDelay = 1000 * 30, initialDelay = 1000 * 30) // every 30 seconds
+  public void heartbeat() {
+    try {
+      leasesDb.tryAcquire(leaseName(), nodeId, NODE_TTL);
+      var nodes = new TreeSet<>(leasesDb.owners(NODE_LEASE_PREFIX));
+      var allNodes = new TreeSet<>(nodes);
+      allNodes.addAll(leasesDb.owners(API_NODE_LEASE_PREFIX));
+      allNodes.add(nodeId);
+      onlyNode = allNodes.size() == 1;
+      if (role.runsIngestion()) {
+        nodes.add(nodeId);
+        if (!nodes.equals(new TreeSet<>(liveNodes))) {
+          logger.info("Live butler nodes: {} (this node is {})", nodes, nodeId);
+        }
+        liveNodes = List.copyOf(nodes);
+      }
+      leasesDb.purgeExpired(PURGE_AFTER);
+    } catch (DataAccessException e) {
+      logger.warn("Cannot renew lease of node {}, keeping live nodes {}", nodeId, liveNodes, e);
+    }
+  }
+
+  /** Releases the lease of this node on shutdown, so that its work is reassigned right away. */
+  @PreDestroy
+  public void leave() {
+    try {
+      leasesDb.release(leaseName(), nodeId);
+    } catch (DataAccessException e) {
+      logger.warn("Cannot release lease of node {}", nodeId, e);
+    }
+  }
+
+  /**
+   * Whether the work identified by the key is assigned to this node.
+   *
+   * <p>The key is assigned to the live node with the highest hash of node and key.
+   */
+  public boolean isAssigned(String key) {
+    return nodeId.equals(assignedNode(liveNodes, key));
+  }
+
+  @VisibleForTesting
+  static String assignedNode(List<String> nodes, String key) {
+    String assigned = null;
+    long highest = Long.MIN_VALUE;
+    for (String node : nodes) {
+      long weight =
+          Hashing.murmur3_128()
+              .newHasher()
+              .putString(node, UTF_8)
+              .putString(key, UTF_8)
+              .hash()
+              .asLong();
+      if (assigned == null || weight > highest) {
+        assigned = node;
+        highest = weight;
+      }
+    }
+    return assigned;
+  }
+
+  /**
+   * Tries to acquire the named lease for this node.
+   *
+   * <p>Each acquisition has its own owner, so a lease also excludes other threads of this node.
+   *
+   * @param name name of the lease
+   * @param ttl time after which the lease expires if not renewed
+   * @return the lease, or empty if it is held by someone else
+   */
+  public Optional<Lease> tryAcquire(String name, Duration ttl) {
+    var owner = nodeId + "/" + leaseCounter.incrementAndGet();
+    if (!leasesDb.tryAcquire(name, owner, ttl)) return Optional.empty();
+    return Optional.of(new Lease(name, owner, ttl));
+  }
+
+  /** A lease held by this node, released on close. */
+  public class Lease implements AutoCloseable {
+    private final String name;
+    private final String owner;
+    private final Duration ttl;
+
+    private Lease(String name, String owner, Duration ttl) {
+      this.name = name;
+      this.owner = owner;
+      this.ttl = ttl;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    /**
+     * Extends the lease by its ttl.
+     *
+     * @return false if the lease expired and was acquired by someone else
+     */
+    public boolean renew() {
+      return leasesDb.renew(name, owner, ttl);
+    }
+
+    @Override
+    public void close() {
+      try {
+        leasesDb.release(name, owner);
+      } catch (DataAccessException e) {
+        logger.warn("Cannot release lease {}, it will expire in {}", name, ttl, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service;
+
+import com.datastax.butler.api.ci.BuildImportRequest;
+import com.datastax.butler.api.ci.BuildImportResult;
+import com.datastax.butler.api.client.ButlerClient;
+import com.datastax.butler.commons.dev.Workflow;
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.server.config.RuntimeRole;
+import com.datastax.butler.server.db.ImportTasksDb;
+import com.datastax.butler.server.db.JobsDb;
+import com.datastax.butler.server.db.StoredImportTask;
+import com.datastax.butler.server.db.UpstreamWorflowsDb;
+import com.datastax.butler.server.tools.JunitReportReader;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.util.UuidUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Imports raw builds asynchronously.
+ *
+ * <p>An import is accepted by storing its payload in the IMPORT_TASKS table, and is then processed
+ * by a bounded pool of threads of an instance running ingestion (see {@link RuntimeRole}): right
+ * away by the accepting instance if it has an idle thread, or later by the first instance claiming
+ * it. So bursts of imports are queued in the database rather than holding servlet threads and
+ * database connections, and no accepted import is lost if an instance dies: its tasks are claimed
+ * again once stale. Instances record a heartbeat of the imports they run, so that long imports are
+ * not considered stale.
+ *
+ * <p>Imports are refused when the number of unfinished imports reaches a threshold, so that clients
+ * retry later instead of growing the backlog without bound.
+ *
+ * <p>Many builds can also be imported synchronously in a single batch (see {@link #importBatch}),
+ * in which case the database is accessed with batched statements for the whole batch, and a very
+ * large build can be streamed (see {@link #importStream}) so that its test runs are never all held
+ * in memory. Builds can also be imported from JUnit XML reports (see {@link #importJunit}).
+ */
+@Service
+public class RawImportService {
+  private static final Logger logger = LogManager.getLogger();
+
+  /** Time after which clients are told to retry when the backlog is full. */
+  public static final Duration RETRY_AFTER = Duration.ofSeconds(30);
+  /** Time after which a claimed but unfinished import can be claimed again. */
+  private static final Duration STALE_TASK = Duration.ofMinutes(10);
+
+  private static final int IMPORT_THREADS = 4;
+  /** Maximum number of builds of a batch import, never exceeded by {@link ButlerClient}. */
+  public static final int MAX_BATCH_BUILDS = ButlerClient.MAX_BATCH_SIZE;
+
+  private final ImportTasksDb importTasksDb;
+  private final JobsDb jobsDb;
+  private final UpstreamWorflowsDb workflowsDb;
+  private final BuildsService buildsService;
+  private final ClusterService cluster;
+  private final ObjectMapper mapper;
+  private final int maxBacklog;
+  /** Runs the imports, null on instances which do not run ingestion. */
+  @Nullable private final ExecutorService executor;
+
+  private final Set<UUID> inProgress = Sets.newConcurrentHashSet();
+
+  /** Creates the service (Autowired by Spring). */
+  @Autowired
+  public RawImportService(
+      ImportTasksDb importTasksDb,
+      JobsDb jobsDb,
+      UpstreamWorflowsDb workflowsDb,
+      BuildsService buildsService,
+      ClusterService cluster,
+      ObjectMapper mapper,
+      RuntimeRole role,
+      @Value("${butler.import.maxBacklog:500}") int maxBacklog) {
+    this(
+        importTasksDb,
+        jobsDb,
+        workflowsDb,
+        buildsService,
+        cluster,
+        mapper,
+        maxBacklog,
+        role.runsIngestion() ? Executors.newFixedThreadPool(IMPORT_THREADS) : null);
+  }
+
+  @VisibleForTesting
+  public RawImportService(
+      ImportTasksDb importTasksDb,
+      JobsDb jobsDb,
+      UpstreamWorflowsDb workflowsDb,
+      BuildsService buildsService,
+      ClusterService cluster,
+      ObjectMapper mapper,
+      int maxBacklog,
+      @Nullable ExecutorService executor) {
+    this.importTasksDb = importTasksDb;
+    this.jobsDb = jobsDb;
+    this.workflowsDb = workflowsDb;
+    this.buildsService = buildsService;
+    this.cluster = cluster;
+    this.mapper = mapper;
+    this.maxBacklog = maxBacklog;
+    this.executor = executor;
+  }
+
+  /** The build imported by the request. */
+  public static BuildId buildId(BuildImportRequest request) {
+    var jobId = JobId.forWorkflowAndBranch(request.workflow(), request.branch());
+    return jobId.build(request.buildNumber());
+  }
+
+  /**
+   * Accepts the import of a raw build, to be processed asynchronously.
+   *
+   * @param request the build to import
+   * @return the id of the import task, or empty if the backlog of imports is full
+   */
+  public Optional<UUID> submit(BuildImportRequest request) {
+    if (importTasksDb.countUnfinished() >= maxBacklog) {
+      logger.warn(
+          "Refusing import of build {}: {} imports are pending", buildId(request), maxBacklog);
+      return Optional.empty();
+    }
+    String payload;
+    try {
+      payload = mapper.writeValueAsString(request);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Cannot serialize import request: " + e.getMessage(), e);
+    }
+    UUID taskId = UuidUtil.getTimeBasedUuid();
+    boolean runHere = reserveThread(taskId);
+    try {
+      importTasksDb.insert(taskId, buildId(request), payload, runHere ? cluster.nodeId() : null);
+    } catch (RuntimeException e) {
+      if (runHere) inProgress.remove(taskId);
+      throw e;
+    }
+    if (runHere) {
+      executor.execute(() -> run(taskId, request));
+    } else {
+      logger.info("Queued import of build {} with id {}", buildId(request), taskId);
+    }
+    return Optional.of(taskId);
+  }
+
+  /**
+   * Imports many raw builds, possibly of different jobs, synchronously.
+   *
+   * <p>Jobs and test names are resolved once for the whole batch, and the builds of each job are
+   * imported together (see {@link BuildsService#importRawBuildsForJob}). A build which is invalid,
+   * or whose job cannot be imported, fails on its own: the other builds are still imported.
+   *
+   * @param builds the builds to import, at most {@link #MAX_BATCH_BUILDS}
+   * @return the result of the import of each build, in the order of the provided builds
+   */
+  public List<BuildImportResult> importBatch(List<BuildImportRequest> builds) {
+    if (builds.size() > MAX_BATCH_BUILDS) {
+      throw new IllegalArgumentException(
+          String.format("Cannot import more than %d builds at once", MAX_BATCH_BUILDS));
+    }
+    var results = new BuildImportResult[builds.size()];
+    Map<JobId, List<Integer>> byJob = new LinkedHashMap<>();
+    Set<BuildId> seen = new HashSet<>();
+    for (int i = 0; i < builds.size(); i++) {
+      var request = builds.get(i);
+      BuildId buildId;
+      try {
+        buildId = buildId(request);
+      } catch (IllegalArgumentException e) {
+        results[i] = BuildImportResult.failed(null, e.getMessage());
+        continue;
+      }
+      if (request.tests() == null) {
+        results[i] = BuildImportResult.failed(buildId, "Missing tests");
+      } else if (workflowsDb.getWorkflow(request.workflow()).isEmpty()) {
+        results[i] = BuildImportResult.failed(buildId, "Unknown workflow " + request.workflow());
+      } else if (!seen.add(buildId)) {
+        results[i] = BuildImportResult.failed(buildId, "Build is imported twice in the batch");
+      } else {
+        byJob.computeIfAbsent(buildId.jobId(), j -> new ArrayList<>()).add(i);
+      }
+    }
+
+    List<BuildImportRequest> valid = new ArrayList<>();
+    byJob.values().forEach(indexes -> indexes.forEach(i -> valid.add(builds.get(i))));
+    Map<TestName, Long> testDbIds;
+    try {
+      testDbIds = buildsService.testDbIds(valid);
+    } catch (RuntimeException e) {
+      logger.error("Error when storing the tests of a batch of {} builds", valid.size(), e);
+      String error = String.format("Error when storing tests: %s", e);
+      byJob.values().forEach(indexes -> fail(results, builds, indexes, error));
+      return Arrays.asList(results);
+    }
+
+    for (var entry : byJob.entrySet()) {
+      var indexes = entry.getValue();
+      List<BuildImportRequest> jobBuilds = new ArrayList<>(indexes.size());
+      indexes.forEach(i -> jobBuilds.add(builds.get(i)));
+      try {
+        long jobDbId = jobsDb.dbId(entry.getKey());
+        buildsService.importRawBuildsForJob(jobDbId, jobBuilds, testDbIds);
+        indexes.forEach(i -> results[i] = BuildImportResult.imported(buildId(builds.get(i))));
+        logger.info("Imported {} builds of job {}", jobBuilds.size(), entry.getKey());
+      } catch (RuntimeException e) {
+        logger.error("Error when importing {} builds of {}", jobBuilds.size(), entry.getKey(), e);
+        fail(results, builds, indexes, String.format("Error when importing build: %s", e));
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  private static void fail(
+      BuildImportResult[] results,
+      List<BuildImportRequest> builds,
+      List<Integer> indexes,
+      String error) {
+    indexes.forEach(i -> results[i] = BuildImportResult.failed(buildId(builds.get(i)), error));
+  }
+
+  /**
+   * Imports a raw build streamed as NDJSON, synchronously.
+   *
+   * <p>The first JSON value of the stream is the build, as a {@link BuildImportRequest} whose tests
+   * are ignored, and each following value is a {@link BuildImportRequest.TestRun} of the build.
+   * Values are parsed one at a time as they are read, and written by batches.
+   *
+   * @param body the NDJSON stream
+   * @return the imported build
+   * @throws IOException if the stream cannot be read or is not valid JSON
+   * @throws IllegalArgumentException if the build or one of its test runs is invalid
+   */
+  public BuildId importStream(InputStream body) throws IOException {
+    try (JsonParser parser = mapper.getFactory().createParser(body)) {
+      BuildImportRequest header = mapper.readValue(parser, BuildImportRequest.class);
+      parser.clearCurrentToken();
+      var buildId = buildId(header);
+      if (workflowsDb.getWorkflow(header.workflow()).isEmpty()) {
+        throw new IllegalArgumentException("Unknown workflow " + header.workflow());
+      }
+      MappingIterator<BuildImportRequest.TestRun> testRuns =
+          mapper.readerFor(BuildImportRequest.TestRun.class).readValues(parser);
+      try {
+        long jobDbId = jobsDb.dbId(buildId.jobId());
+        long buildDbId = buildsService.importRawBuildStreamForJob(jobDbId, header, testRuns);
+        logger.info("Imported streamed build {} with id {}", buildId, buildDbId);
+      } catch (RuntimeJsonMappingException e) {
+        throw new IllegalArgumentException(
+            String.format("Invalid test run in build %s: %s", buildId, e.getMessage()), e);
+      }
+      return buildId;
+    }
+  }
+
+  /**
+   * Imports a build from JUnit XML reports, synchronously.
+   *
+   * <p>Test cases are mapped to tests by the test name schemes of the workflow of the build, and
+   * streamed to the database as the reports are parsed (see {@link JunitReportReader}).
+   *
+   * @param header the build, whose tests are ignored
+   * @param reports JUnit XML reports, or tar.gz archives of reports
+   * @return the imported build
+   * @throws IOException if a report cannot be read
+   * @throws IllegalArgumentException if the build or one of the reports is invalid
+   */
+  public BuildId importJunit(BuildImportRequest header, List<? extends Resource> reports)
+      throws IOException {
+    var buildId = buildId(header);
+    Workflow workflow =
+        workflowsDb
+            .getWorkflow(header.workflow())
+            .orElseThrow(
+                () -> new IllegalArgumentException("Unknown workflow " + header.workflow()));
+    try (var testRuns = new JunitReportReader(workflow, reports)) {
+      long jobDbId = jobsDb.dbId(buildId.jobId());
+      long buildDbId = buildsService.importReportStreamForJob(jobDbId, header, testRuns);
+      logger.info("Imported build {} with id {} from JUnit reports", buildId, buildDbId);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return buildId;
+  }
+
+  /** Status of the import task, whichever instance runs it. */
+  public Optional<StoredImportTask> status(UUID taskId) {
+    return importTasksDb.get(taskId);
+  }
+
+  /** Reserves an idle import thread of this instance for the task, if any. */
+  private synchronized boolean reserveThread(UUID taskId) {
+    if (executor == null || inProgress.size() >= IMPORT_THREADS) return false;
+    inProgress.add(taskId);
+    return true;
+  }
+
+  /**
+   * Periodically claim the imports queued by other instances, or left unfinished by an instance
+   * which died, as long as this instance has idle import threads.
+   */
+  @SuppressWarnings("unused")
+  @Scheduled(fixedDelay = 1000 * 2, initialDelay = 1000 * 10) // every 2 seconds
+  public void claimQueuedImports() {
+    if (executor == null) return;
+    int idle = IMPORT_THREADS - inProgress.size();
+    if (idle <= 0) return;
+    for (StoredImportTask task : importTasksDb.claimable(STALE_TASK, idle)) {
+      if (!reserveThread(task.taskId())) return;
+      if (!importTasksDb.claim(task.taskId(), cluster.nodeId(), STALE_TASK)) {
+        inProgress.remove(task.taskId());
+        continue;
+      }
+      logger.info("Claimed import of build {} with id {}", task.buildId(), task.taskId());
+      executor.execute(() -> runStored(task.taskId()));
+    }
+  }
+
+  /**
+   * Periodically record that the imports run by this instance are still running, so that they are
+   * not claimed again by another instance after {@link #STALE_TASK}, however long they take.
+   */
+  @SuppressWarnings("unused")
+  @Scheduled(fixedDelay = 1000 * 60, initialDelay = 1000 * 60) // every minute
+  public void heartbeatRunningImports() {
+    if (executor == null) return;
+    var running = Set.copyOf(inProgress);
+    if (running.isEmpty()) return;
+    try {
+      importTasksDb.heartbeat(running, cluster.nodeId());
+    } catch (DataAccessException e) {
+      logger.warn("Cannot record heartbeat of {} running imports", running.size(), e);
+    }
+  }
+
+  /** Remove imports finished more than 1h ago, so that clients have time to retrieve them. */
+  @SuppressWarnings("unused")
+  @Scheduled(fixedDelay = 1000 * 60 * 15) // every 15 minutes
+  public void cleanupFinishedImports() {
+    try {
+      int deleted = importTasksDb.deleteFinishedBefore(Instant.now().minusSeconds(60 * 60L));
+      logger.info("Deleted {} finished import tasks from the database", deleted);
+    } catch (DataAccessException e) {
+      logger.warn("Cannot delete finished import tasks", e);
+    }
+  }
+
+  private void runStored(UUID taskId) {
+    Optional<String> payload;
+    try {
+      payload = importTasksDb.payload(taskId);
+    } catch (DataAccessException e) {
+      logger.warn("Cannot read payload of import task {}, it will be claimed again", taskId, e);
+      inProgress.remove(taskId);
+      return;
+    }
+    if (payload.isEmpty()) {
+      // finished in the meantime by an instance we believed dead
+      inProgress.remove(taskId);
+      return;
+    }
+    BuildImportRequest request;
+    try {
+      request = mapper.readValue(payload.get(), BuildImportRequest.class);
+    } catch (JsonProcessingException e) {
+      finish(taskId, String.format("Cannot read import request: %s", e.getMessage()));
+      return;
+    }
+    run(taskId, request);
+  }
+
+  private void run(UUID taskId, BuildImportRequest request) {
+    var buildId = buildId(request);
+    try {
+      long jobDbId = jobsDb.dbId(buildId.jobId());
+      long buildDbId = buildsService.importRawBuildForJob(jobDbId, request);
+      logger.info("Imported build {} with id {} (task {})", buildId, buildDbId, taskId);
+      finish(taskId, null);
+    } catch (Exception e) {
+      logger.error("Error when importing build {} (task {})", buildId, taskId, e);
+      finish(taskId, String.format("Error when importing build %s: %s", buildId, e));
+    }
+  }
+
+  private void finish(UUID taskId, @Nullable String error) {
+    try {
+      importTasksDb.finish(taskId, error);
+    } catch (DataAccessException e) {
+      // the task will be claimed again once stale, and imported again (which is idempotent)
+      logger.warn("Cannot mark import task {} finished", taskId, e);
+    } finally {
+      inProgress.remove(taskId);
+    }
+  }
+}
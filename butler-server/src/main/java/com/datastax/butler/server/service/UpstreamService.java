@@ -17,11 +17,13 @@ import com.datastax.butler.server.db.StoredTestLinkedIssue;
 import com.datastax.butler.server.db.TestLinkedIssuesDb;
 import com.datastax.butler.server.db.UpstreamFailuresDb;
 import com.datastax.butler.server.db.UpstreamWorflowsDb;
+import com.datastax.butler.server.events.IngestEvent.TestLinked;
+import com.datastax.butler.server.events.IngestEventBus;
 import com.datastax.butler.server.service.issues.IssueContent;
 import com.datastax.butler.server.service.issues.IssueTrackersService;
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
@@ -44,6 +46,7 @@ public class UpstreamService {
   private final UpstreamFailuresDb upstreamFailuresDb;
   private final TestLinkedIssuesDb testLinkedIssuesDb;
   private final IssueTrackersService issuesService;
+  private final IngestEventBus events;
 
   /** Creates the service (Auto-wired by Spring). */
   @Autowired
@@ -51,11 +54,13 @@ public class UpstreamService {
       UpstreamWorflowsDb upstreamWorflowsDb,
       UpstreamFailuresDb upstreamFailuresDb,
       TestLinkedIssuesDb testLinkedIssuesDb,
-      IssueTrackersService issuesService) {
+      IssueTrackersService issuesService,
+      IngestEventBus events) {
     this.upstreamWorflowsDb = upstreamWorflowsDb;
     this.upstreamFailuresDb = upstreamFailuresDb;
     this.testLinkedIssuesDb = testLinkedIssuesDb;
     this.issuesService = issuesService;
+    this.events = events;
   }
 
   /** Get links to all issues linked for particular test. */
@@ -93,6 +98,7 @@ public class UpstreamService {
           "Unable to find issue " + ticketId + " in project " + issueProject);
     }
     names.forEach(name -> testLinkedIssuesDb.linkIssueToTest(name, issueId));
+    events.publish(new TestLinked(List.copyOf(names), issueId));
     return new Msg<>(issueProject.getLink(issueId), issue.toDetailedString());
   }
 
@@ -108,10 +114,12 @@ public class UpstreamService {
     var newIssue = project.newIssue();
 
     var issueContent = new IssueContent(project.markdown());
+    var failureDetails = upstreamFailuresDb.getFailureDetails(names);
     var testFailures =
         names.stream()
-            .map(upstreamFailuresDb::getFailureDetails)
-            .flatMap(Optional::stream)
+            .distinct()
+            .map(failureDetails::get)
+            .filter(Objects::nonNull)
             .collect(Collectors.toList());
     if (testFailures.isEmpty()) {
       throw new IllegalArgumentException(
@@ -133,6 +141,7 @@ public class UpstreamService {
 
     // at the very end we need to update database and link newly created issue to failures
     names.forEach(name -> testLinkedIssuesDb.linkIssueToTest(name, issueLink.id()));
+    events.publish(new TestLinked(List.copyOf(names), issueLink.id()));
 
     return new Msg<>(issueLink, newIssue.toDetailedString());
   }
@@ -5,26 +5,38 @@
  */
 package com.datastax.butler.server.service.issues;
 
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
 import com.datastax.butler.commons.issues.IssueId;
 import com.datastax.butler.commons.issues.IssueLink;
 import com.datastax.butler.commons.issues.IssueTrackingProject;
 import com.datastax.butler.commons.issues.jira.JiraProject;
 import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.server.cache.ButlerCache;
+import com.datastax.butler.server.cache.CacheRegistry;
+import com.datastax.butler.server.config.RuntimeRole;
 import com.datastax.butler.server.db.TestLinkedIssuesDb;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.cache.MultiTemplateLoader;
 import freemarker.cache.TemplateLoader;
 import freemarker.template.Configuration;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,17 +56,71 @@ import org.springframework.stereotype.Service;
 @Service
 public class IssueTrackersService {
   private static final Logger logger = LogManager.getLogger();
+  /** Max number of issues whose status is refreshed with a single request to the issue tracker. */
+  private static final int REFRESH_BATCH_SIZE = 100;
+
+  private static final int REFRESH_THREADS = 4;
+  /**
+   * Time between the complete refreshes of the links, which drop the links of the issues deleted
+   * since (incremental refreshes only fetch the issues updated since the previous refresh).
+   */
+  @VisibleForTesting static final Duration COMPLETE_REFRESH_INTERVAL = Duration.ofHours(1);
+
   private final TestLinkedIssuesDb testLinkedIssuesDb;
+  private final RuntimeRole role;
+  private final Executor refreshExecutor;
 
   private final Map<String, IssueTrackingProject> projects = new HashMap<>();
+  /** Local copies of the open issues of the jira projects, by project name. */
+  private final Map<String, JiraIssuesIndex> issueIndexes = new ConcurrentHashMap<>();
+
+  /**
+   * Links of the issues by issue id. Links of the issues linked to tests are kept up to date in
+   * batches by {@link #refreshIssueLinks()}, others are refreshed in the background when accessed
+   * 30 minutes after they have been loaded.
+   *
+   * <p>Entries must expire within a day, see {@link JiraProject#getLinks}.
+   */
+  private final ButlerCache<String, IssueLink> issueLinkCache;
+  /** Start of the last successful refresh of the links, null if there was none. */
+  @Nullable private volatile Instant lastRefresh;
+  /** Start of the last successful complete refresh of the links, null if there was none. */
+  @Nullable private volatile Instant lastCompleteRefresh;
 
-  private final Cache<String, IssueLink> issueLinkCache;
   private final Configuration templateConfiguration;
 
   @Autowired
-  IssueTrackersService(TestLinkedIssuesDb testLinkedIssuesDb) {
+  IssueTrackersService(
+      TestLinkedIssuesDb testLinkedIssuesDb, CacheRegistry caches, RuntimeRole role) {
+    this(testLinkedIssuesDb, caches, role, Executors.newFixedThreadPool(REFRESH_THREADS));
+  }
+
+  @VisibleForTesting
+  IssueTrackersService(TestLinkedIssuesDb testLinkedIssuesDb, CacheRegistry caches) {
+    this(testLinkedIssuesDb, caches, RuntimeRole.ALL);
+  }
+
+  @VisibleForTesting
+  IssueTrackersService(
+      TestLinkedIssuesDb testLinkedIssuesDb, CacheRegistry caches, Executor refreshExecutor) {
+    this(testLinkedIssuesDb, caches, RuntimeRole.ALL, refreshExecutor);
+  }
+
+  private IssueTrackersService(
+      TestLinkedIssuesDb testLinkedIssuesDb,
+      CacheRegistry caches,
+      RuntimeRole role,
+      Executor refreshExecutor) {
     this.testLinkedIssuesDb = testLinkedIssuesDb;
-    issueLinkCache = CacheBuilder.newBuilder().expireAfterWrite(Duration.ofMinutes(15)).build();
+    this.role = role;
+    this.refreshExecutor = refreshExecutor;
+    issueLinkCache =
+        caches
+            .<String, IssueLink>builder("issue_links")
+            .maximumSize(50_000)
+            .refreshAfterWrite(Duration.ofMinutes(30))
+            .expireAfterWrite(Duration.ofHours(2))
+            .build(this::loadLink);
     templateConfiguration = prepareTemplateEngine();
   }
 
@@ -78,6 +144,7 @@ public class IssueTrackersService {
       var jiraProject = (JiraProject) project;
       jiraProject.withTemplateConfiguration(templateConfiguration);
       projects.put(key, jiraProject);
+      issueIndexes.put(key, new JiraIssuesIndex(jiraProject));
     } else {
       projects.put(key, project);
     }
@@ -106,18 +173,21 @@ public class IssueTrackersService {
 
   /** Return link to the issue. */
   public IssueLink issueLink(IssueId issueId) {
-    try {
-      var project = getProject(issueId);
-      return issueLinkCache.get(issueId.toString(), () -> project.getLink(issueId));
-    } catch (ExecutionException e) {
-      logger.warn("Problem loading issue link for {}", issueId, e);
-      return null;
-    }
+    // keyed by the full id, the string representation of github issues omits their repository
+    return issueLinkCache.get(issueId.id());
+  }
+
+  private IssueLink loadLink(String issueId) {
+    IssueId id = IssueId.fromString(issueId);
+    return getProject(id).getLink(id);
   }
 
   /**
    * Search for issues related to the test name in selected (registered) projects.
    *
+   * <p>Jira projects are searched in their local index (see {@link #syncIssueIndexes()}) once it
+   * has been synced, other projects are searched remotely.
+   *
    * @param projects list of issue tracking projects
    * @param testName test name
    * @return set of issue ids found
@@ -126,22 +196,119 @@ public class IssueTrackersService {
     boolean onlyOpen = true;
     return projects.stream()
         .map(this::getProject)
-        .map(p -> p.searchIssuesForTest(testName, onlyOpen))
+        .map(
+            p ->
+                Optional.ofNullable(issueIndexes.get(p.projectName()))
+                    .flatMap(index -> index.search(testName))
+                    .orElseGet(() -> p.searchIssuesForTest(testName, onlyOpen)))
         .flatMap(Collection::stream)
         .collect(Collectors.toSet());
   }
 
-  /** Periodically refresh status for all known linked issues so that UI reacts faster. */
+  /**
+   * Periodically sync the local indexes of the open issues of jira projects, on instances serving
+   * the API which are the only ones searching them.
+   */
+  @SuppressWarnings("unused")
+  @Scheduled(fixedDelay = 1000 * 60 * 5) // every 5 minutes
+  void syncIssueIndexes() {
+    if (!role.servesApi()) return;
+    for (JiraIssuesIndex index : issueIndexes.values()) {
+      try {
+        index.sync();
+      } catch (RuntimeException e) {
+        logger.warn("Error syncing issues of jira project {}", index.project(), e);
+      }
+    }
+  }
+
+  /**
+   * Periodically refresh status for all known linked issues so that UI reacts faster.
+   *
+   * <p>Statuses are fetched in batches (concurrently), and after a complete refresh only the issues
+   * updated since the previous refresh are fetched again, the other ones being assumed unchanged.
+   * As deleted issues are not reported as updated, a complete refresh is done again every {@link
+   * #COMPLETE_REFRESH_INTERVAL}. Links are only displayed by instances serving the API, so other
+   * ones do not refresh them.
+   */
   @SuppressWarnings("unused")
   @Scheduled(fixedDelay = 1000 * 60 * 10) // every 10 minutes
   void refreshIssueLinks() {
-    if (testLinkedIssuesDb != null) {
-      final Set<IssueId> knownIssues = testLinkedIssuesDb.allKnownIssues();
-      logger.info("Refreshing status of {} known linked issues started", knownIssues.size());
-      knownIssues.forEach(this::issueLink);
-      logger.info("Refreshing status of {} known linked issues finished", knownIssues.size());
-    } else {
+    refreshIssueLinks(Instant.now());
+  }
+
+  @VisibleForTesting
+  void refreshIssueLinks(Instant started) {
+    if (!role.servesApi()) return;
+    if (testLinkedIssuesDb == null) {
       logger.warn("Configuration error, cannot refresh issue links");
+      return;
+    }
+    final Set<IssueId> knownIssues = testLinkedIssuesDb.allKnownIssues();
+    logger.info("Refreshing status of {} known linked issues started", knownIssues.size());
+    var lastComplete = lastCompleteRefresh;
+    boolean incremental =
+        lastComplete != null && started.isBefore(lastComplete.plus(COMPLETE_REFRESH_INTERVAL));
+    var since = incremental ? lastRefresh : null;
+    List<CompletableFuture<Boolean>> batches = new ArrayList<>();
+    var byProject = knownIssues.stream().collect(Collectors.groupingBy(IssueId::projectName));
+    byProject.forEach(
+        (projectName, issueIds) -> {
+          var project = projects.get(projectName);
+          if (project == null) {
+            logger.warn("Cannot refresh issues of unregistered project {}", projectName);
+            return;
+          }
+          // issues not cached are fetched whether or not they have been updated recently
+          var cached = issueIds.stream().collect(Collectors.partitioningBy(this::isCached));
+          for (var batch : Lists.partition(cached.get(true), REFRESH_BATCH_SIZE)) {
+            batches.add(supplyAsync(() -> refreshBatch(project, batch, since), refreshExecutor));
+          }
+          for (var batch : Lists.partition(cached.get(false), REFRESH_BATCH_SIZE)) {
+            batches.add(supplyAsync(() -> refreshBatch(project, batch, null), refreshExecutor));
+          }
+        });
+    CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+    boolean succeeded = batches.stream().allMatch(CompletableFuture::join);
+    if (succeeded) {
+      lastRefresh = started;
+      if (since == null) lastCompleteRefresh = started;
+    }
+    logger.info(
+        "Refreshing status of {} known linked issues finished in {} batches{}",
+        knownIssues.size(),
+        batches.size(),
+        succeeded ? "" : " (some of which failed)");
+  }
+
+  private boolean isCached(IssueId issueId) {
+    return issueLinkCache.getIfPresent(issueId.id()) != null;
+  }
+
+  /** Refreshes the cached links of the issues, returning false if that failed. */
+  private boolean refreshBatch(
+      IssueTrackingProject project, List<IssueId> issueIds, @Nullable Instant updatedSince) {
+    Map<IssueId, IssueLink> links;
+    try {
+      links = project.getLinks(issueIds, updatedSince);
+    } catch (RuntimeException e) {
+      logger.warn("Error refreshing status of {} issues of {}", issueIds.size(), project, e);
+      return false;
+    }
+    for (IssueId issueId : issueIds) {
+      var link = links.get(issueId);
+      // issues omitted from an incremental refresh have not changed, putting them back resets
+      // their expiration, while those omitted from a complete refresh no longer exist
+      if (link == null && updatedSince != null) {
+        link = issueLinkCache.getIfPresent(issueId.id());
+      }
+      if (link != null) {
+        issueLinkCache.put(issueId.id(), link);
+      } else {
+        // deleted or no longer readable, it is loaded again (if still linked) when accessed
+        issueLinkCache.invalidate(issueId.id());
+      }
     }
+    return true;
   }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service.issues;
+
+import com.datastax.butler.commons.issues.IssueLink;
+import com.datastax.butler.commons.issues.jira.JiraIssue;
+import com.datastax.butler.commons.issues.jira.JiraProject;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.google.common.annotations.VisibleForTesting;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import lombok.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Local copy of the open issues of a jira project, so that searching issues related to tests does
+ * not run a full-text search in jira for each test.
+ *
+ * <p>Only the words (tokens) of the summary and description of the issues are kept. A test matches
+ * an issue if all the words of its full name are in the summary or in the description of the issue,
+ * which is how the {@code ~} operator of JQL used by {@link JiraProject#searchIssuesForTest} works.
+ *
+ * <p>The first {@link #sync()} fetches all the open issues of the project, following ones only the
+ * issues updated since the previous sync. The issues are an immutable snapshot replaced on sync.
+ */
+class JiraIssuesIndex {
+  private static final Logger logger = LogManager.getLogger();
+  private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}_]+");
+
+  private final JiraProject project;
+  /** Null until the first sync. */
+  @Nullable private volatile Snapshot snapshot;
+
+  JiraIssuesIndex(JiraProject project) {
+    this.project = project;
+  }
+
+  @Value
+  private static class Snapshot {
+    /** Start of the sync that created this snapshot. */
+    Instant syncedAt;
+    /** Open issues by key. */
+    Map<String, IndexedIssue> issues;
+  }
+
+  @Value
+  private static class IndexedIssue {
+    IssueLink link;
+    Set<String> summary;
+    Set<String> description;
+
+    boolean matches(Set<String> words) {
+      return summary.containsAll(words) || description.containsAll(words);
+    }
+  }
+
+  JiraProject project() {
+    return project;
+  }
+
+  /** Whether the index has been synced at least once, and so can be searched. */
+  boolean isSynced() {
+    return snapshot != null;
+  }
+
+  /** Number of open issues in the index. */
+  int size() {
+    var current = snapshot;
+    return current == null ? 0 : current.issues().size();
+  }
+
+  /**
+   * Search for the open issues related to the test.
+   *
+   * @return links of the matching issues, or empty if the index has not been synced yet.
+   */
+  Optional<Set<IssueLink>> search(TestName test) {
+    var current = snapshot;
+    if (current == null) return Optional.empty();
+    var words = words(test.fullName());
+    if (words.isEmpty()) return Optional.of(Set.of());
+    return Optional.of(
+        current.issues().values().stream()
+            .filter(issue -> issue.matches(words))
+            .map(IndexedIssue::link)
+            .collect(Collectors.toUnmodifiableSet()));
+  }
+
+  /** Fetches the issues of the project updated since the previous sync (all on first sync). */
+  synchronized void sync() {
+    var started = Instant.now();
+    var previous = snapshot;
+    List<JiraIssue> fetched;
+    Map<String, IndexedIssue> issues;
+    if (previous == null) {
+      fetched = project.fetchOpenIssues();
+      issues = new HashMap<>();
+    } else {
+      fetched = project.fetchIssuesUpdatedSince(previous.syncedAt());
+      issues = new HashMap<>(previous.issues());
+    }
+    for (JiraIssue issue : fetched) {
+      var key = issue.id().toString();
+      if (project.isOpen(issue)) {
+        issues.put(key, index(issue));
+      } else {
+        issues.remove(key);
+      }
+    }
+    snapshot = new Snapshot(started, Map.copyOf(issues));
+    logger.info(
+        "Synced {} issues of jira project {}, {} open issues indexed",
+        fetched.size(),
+        project,
+        issues.size());
+  }
+
+  private IndexedIssue index(JiraIssue issue) {
+    var link = IssueLink.withClosed(project.jira().link(issue.id()), project.isClosed(issue));
+    return new IndexedIssue(link, words(issue.title()), words(issue.body()));
+  }
+
+  /** Lower-cased words of the text, split on anything but letters, digits and underscores. */
+  @VisibleForTesting
+  static Set<String> words(@Nullable String text) {
+    if (text == null) return Set.of();
+    return Arrays.stream(NON_WORD.split(text.toLowerCase(Locale.ROOT)))
+        .filter(w -> !w.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+  }
+}
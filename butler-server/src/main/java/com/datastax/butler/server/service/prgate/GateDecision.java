@@ -13,6 +13,8 @@ import java.util.List;
 
 public class GateDecision {
 
+  private static final TestRunsStory NO_STORY = new TestRunsStory("");
+
   private final boolean approved;
   private final String explanation;
   private final List<String> details;
@@ -61,12 +63,12 @@ public class GateDecision {
    */
   public static GateDecision check(TestFailure result, UpstreamFailures upstream) {
     if (!result.hasFailed()) return GateDecision.approved("Test did not fail at all.");
-    var branchStory = new TestRunsStory(encode(result));
-    var testName = result.test();
-    var upstreamFailure = upstream.findTest(testName);
+    var branchStory = TestRunsStory.of(result.failureDetails().allRuns());
     var upstreamStory =
-        new TestRunsStory(
-            upstreamFailure.stream().map(GateDecision::encode).findFirst().orElse(""));
+        upstream.findTest(result.test()).stream()
+            .findFirst()
+            .map(x -> TestRunsStory.of(x.failureDetails().allRuns()))
+            .orElse(NO_STORY);
     return checkStory(branchStory, upstreamStory);
   }
 
@@ -92,22 +94,21 @@ public class GateDecision {
     if (branchStory.tail().alwaysPassing().orElse(false)) {
       return checkStory(branchStory.head(), upstreamStory);
     }
-    var results = branchStory.results();
     // if no failures then we approve
     if (!branchStory.hasFailures()) {
       return approved("no failures in test run: " + branchStory.story());
     }
     // approve if not run in the last build
-    if (branchStory.story().startsWith(" ")) {
+    if (branchStory.lastRunMissing()) {
       return approved("test removed or skipped?: " + branchStory.story());
     }
     // if upstream does not have any failures (all passed or it is a new test)
     if (!upstreamStory.hasFailures() || upstreamStory.noResults()) {
       if (branchStory.alwaysFailing().orElse(false))
         return rejected(failureMsg("test is constantly failing", branchStory, upstreamStory));
-      if (results.startsWith("PFP") || results.startsWith("FPF"))
+      if (branchStory.resultsStartWith("PFP") || branchStory.resultsStartWith("FPF"))
         return rejected(failureMsg("test looks flaky", branchStory, upstreamStory));
-      if (results.startsWith("F"))
+      if (branchStory.resultsStartWith("F"))
         return rejected(failureMsg("test failed in the recent build", branchStory, upstreamStory));
     }
     // in other case we approve but provide context
@@ -122,8 +123,6 @@ public class GateDecision {
 
   /** Return one letter S(kipped) P(assed) or F(ailed) for given test run. */
   static Character encode(RunDetails runDetails) {
-    if (runDetails.failed()) return 'F';
-    if (runDetails.skipped()) return 'S';
-    return 'P';
+    return TestRunsStory.encode(runDetails);
   }
 }
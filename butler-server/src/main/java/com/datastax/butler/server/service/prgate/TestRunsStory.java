@@ -5,20 +5,145 @@
  */
 package com.datastax.butler.server.service.prgate;
 
+import com.datastax.butler.commons.dev.RunDetails;
+import java.util.Collection;
 import java.util.Optional;
-import org.apache.commons.lang3.StringUtils;
 
-/** A Story of test runs from recent to oldest: PFPPF SPF. */
+/**
+ * A Story of test runs from recent to oldest: PFPPF SPF.
+ *
+ * <p>Runs are bit-packed into two bit planes (2 bits per run) so that stories are cheap to build
+ * from {@link RunDetails} and all the counts are computed once, at construction. The textual form
+ * is only materialized when asked for (e.g. for explanation messages).
+ */
 public class TestRunsStory {
 
-  private String story;
+  private static final char PASSED = 'P';
+  private static final char FAILED = 'F';
+  private static final char SKIPPED = 'S';
+  private static final char MISSING = ' ';
+
+  // Encoding of a single run using the (high, low) bits: P=01, F=10, S=11, missing=00.
+  private final long[] high;
+  private final long[] low;
+  private final int length;
+
+  private final int numFailed;
+  private final int numPassed;
+
+  private TestRunsStory(long[] high, long[] low, int length) {
+    this.high = high;
+    this.low = low;
+    this.length = length;
+    int failed = 0;
+    int passed = 0;
+    for (int i = 0; i < high.length; i++) {
+      failed += Long.bitCount(high[i] & ~low[i]);
+      passed += Long.bitCount(low[i] & ~high[i]);
+    }
+    this.numFailed = failed;
+    this.numPassed = passed;
+  }
 
   public TestRunsStory(String story) {
-    this.story = story;
+    this(pack(story), story.length());
+  }
+
+  private TestRunsStory(long[][] planes, int length) {
+    this(planes[0], planes[1], length);
+  }
+
+  /** Creates a story directly from the runs, without going through the textual encoding. */
+  public static TestRunsStory of(Collection<RunDetails> runs) {
+    int length = runs.size();
+    long[] high = new long[words(length)];
+    long[] low = new long[words(length)];
+    int i = 0;
+    for (RunDetails run : runs) {
+      set(high, low, i++, encode(run));
+    }
+    return new TestRunsStory(high, low, length);
   }
 
+  private static long[][] pack(String story) {
+    long[] high = new long[words(story.length())];
+    long[] low = new long[words(story.length())];
+    for (int i = 0; i < story.length(); i++) {
+      set(high, low, i, story.charAt(i));
+    }
+    return new long[][] {high, low};
+  }
+
+  /** Return one letter S(kipped) P(assed) or F(ailed) for given test run. */
+  static char encode(RunDetails runDetails) {
+    if (runDetails.failed()) return FAILED;
+    if (runDetails.skipped()) return SKIPPED;
+    return PASSED;
+  }
+
+  private static int words(int length) {
+    return (length + Long.SIZE - 1) / Long.SIZE;
+  }
+
+  private static long bit(int pos) {
+    return 1L << (pos % Long.SIZE);
+  }
+
+  private static void set(long[] high, long[] low, int pos, char run) {
+    long bit = bit(pos);
+    int word = pos / Long.SIZE;
+    switch (run) {
+      case PASSED:
+        low[word] |= bit;
+        break;
+      case FAILED:
+        high[word] |= bit;
+        break;
+      case SKIPPED:
+        high[word] |= bit;
+        low[word] |= bit;
+        break;
+      default:
+        // anything else is considered a missing run
+        break;
+    }
+  }
+
+  private char get(int pos) {
+    int word = pos / Long.SIZE;
+    boolean h = (high[word] & bit(pos)) != 0;
+    boolean l = (low[word] & bit(pos)) != 0;
+    if (h && l) return SKIPPED;
+    if (h) return FAILED;
+    if (l) return PASSED;
+    return MISSING;
+  }
+
+  private boolean isResult(int pos) {
+    int word = pos / Long.SIZE;
+    // results are runs with exactly one bit set (passed or failed)
+    return ((high[word] ^ low[word]) & bit(pos)) != 0;
+  }
+
+  private TestRunsStory slice(int from, int to) {
+    int start = Math.min(Math.max(from, 0), length);
+    int end = Math.min(Math.max(to, start), length);
+    int sliceLength = end - start;
+    long[] sliceHigh = new long[words(sliceLength)];
+    long[] sliceLow = new long[words(sliceLength)];
+    for (int i = 0; i < sliceLength; i++) {
+      set(sliceHigh, sliceLow, i, get(start + i));
+    }
+    return new TestRunsStory(sliceHigh, sliceLow, sliceLength);
+  }
+
+  /** Textual form of the story, one letter per run. */
   public String story() {
-    return story;
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(get(i));
+    }
+    return sb.toString();
   }
 
   public Optional<Boolean> alwaysPassing() {
@@ -31,7 +156,7 @@ public class TestRunsStory {
 
   @Override
   public String toString() {
-    return story.replace("P", "+");
+    return story().replace(PASSED, '+');
   }
 
   public boolean hasFailures() {
@@ -39,33 +164,53 @@ public class TestRunsStory {
   }
 
   public int numRuns() {
-    return story.length();
+    return length;
   }
 
   public int numFailed() {
-    return StringUtils.countMatches(story, 'F');
+    return numFailed;
   }
 
   public int numPassed() {
-    return StringUtils.countMatches(story, 'P');
+    return numPassed;
+  }
+
+  /** Whether the most recent run is missing (test not run at all, e.g. removed). */
+  public boolean lastRunMissing() {
+    return length > 0 && get(0) == MISSING;
   }
 
   /** Only "run" results, no skipped no missing runs. */
   public String results() {
-    return story.replaceAll("[S ]+", "");
+    StringBuilder sb = new StringBuilder(numFailed + numPassed);
+    for (int i = 0; i < length; i++) {
+      if (isResult(i)) sb.append(get(i));
+    }
+    return sb.toString();
+  }
+
+  /** Whether the "run" results (see {@link #results()}) starts with given prefix. */
+  public boolean resultsStartWith(String prefix) {
+    int matched = 0;
+    for (int i = 0; i < length && matched < prefix.length(); i++) {
+      if (!isResult(i)) continue;
+      if (get(i) != prefix.charAt(matched)) return false;
+      matched++;
+    }
+    return matched == prefix.length();
   }
 
   public boolean noResults() {
-    return results().length() == 0;
+    return numFailed + numPassed == 0;
   }
 
   /** Return up to 4 latests results. */
   public TestRunsStory head() {
-    return new TestRunsStory(StringUtils.left(story, 4));
+    return slice(0, 4);
   }
 
   /** Return anything that is older than 4 latest results. */
   public TestRunsStory tail() {
-    return new TestRunsStory(StringUtils.substring(story, 4));
+    return slice(4, length);
   }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service.prgate;
+
+import com.datastax.butler.commons.dev.TestFailure;
+import com.datastax.butler.commons.dev.UpstreamFailures;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.server.db.JobsDb;
+import com.datastax.butler.server.db.UpstreamBaseline;
+import com.datastax.butler.server.db.UpstreamBaselineStore;
+import com.datastax.butler.server.db.UpstreamFailuresDb;
+import com.datastax.butler.server.events.IngestEvent;
+import com.datastax.butler.server.events.IngestEvent.BuildDeleted;
+import com.datastax.butler.server.events.IngestEvent.BuildStored;
+import com.datastax.butler.server.events.IngestEvent.TestLinked;
+import com.datastax.butler.server.events.IngestEventBus;
+import com.datastax.butler.server.service.ClusterService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps {@link UpstreamBaseline}s for upstream jobs up to date.
+ *
+ * <p>Baselines are refreshed in the background every time a build of the job is stored: all kept
+ * baselines of the job are refreshed, and for configured upstream jobs the baseline used by the PR
+ * gate is built even if nobody asked for it yet. Refreshes are coalesced: if several builds of the
+ * same job are stored before refresh starts it is computed only once. Until the refreshed baseline
+ * is ready the previous one is served.
+ *
+ * <p>Builds stored and deleted are notified through the {@link IngestEventBus}, as well as tests
+ * linked to issues, which drop all baselines since they keep the issues linked to failing tests.
+ * Instances are not notified of the builds stored by other instances (see {@link ClusterService}),
+ * so unless this is the only live instance all the kept baselines are refreshed every minute.
+ */
+@Service
+public class UpstreamBaselineService {
+  private static final Logger logger = LogManager.getLogger();
+
+  /** Number of builds the PR gate analysis is done on. */
+  public static final int GATE_ANALYSIS_DEPTH = 16;
+
+  private final JobsDb jobsDb;
+  private final UpstreamFailuresDb upstreamFailuresDb;
+  private final UpstreamBaselineStore baselineStore;
+  private final ClusterService cluster;
+  private final ExecutorService refresher;
+  private final Set<JobId> refreshQueued = Sets.newConcurrentHashSet();
+
+  /** Creates the service (Autowired by Spring). */
+  @Autowired
+  public UpstreamBaselineService(
+      JobsDb jobsDb,
+      UpstreamFailuresDb upstreamFailuresDb,
+      UpstreamBaselineStore baselineStore,
+      ClusterService cluster,
+      IngestEventBus events) {
+    this(jobsDb, upstreamFailuresDb, baselineStore, cluster, Executors.newSingleThreadExecutor());
+    events.subscriber("upstream_baselines").subscribe(IngestEvent.class, this::buildsChanged);
+    events
+        .subscriber("upstream_baselines_links")
+        .inline()
+        .subscribe(TestLinked.class, linked -> baselineStore.invalidateAll());
+  }
+
+  @VisibleForTesting
+  UpstreamBaselineService(
+      JobsDb jobsDb,
+      UpstreamFailuresDb upstreamFailuresDb,
+      UpstreamBaselineStore baselineStore,
+      ClusterService cluster,
+      ExecutorService refresher) {
+    this.jobsDb = jobsDb;
+    this.upstreamFailuresDb = upstreamFailuresDb;
+    this.baselineStore = baselineStore;
+    this.cluster = cluster;
+    this.refresher = refresher;
+  }
+
+  /**
+   * Return baseline for given upstream job, computing it if not yet known.
+   *
+   * @param upstream upstream job
+   * @param numBuilds number of recent upstream builds the baseline should cover
+   * @return baseline
+   */
+  public UpstreamBaseline baseline(JobId upstream, int numBuilds) {
+    return upstreamFailuresDb.upstreamBaseline(upstream, numBuilds);
+  }
+
+  /**
+   * Return upstream results for given tests.
+   *
+   * <p>Tests that failed on upstream come from the baseline. Remaining ones (passing on upstream or
+   * not run there) are loaded for the baseline builds, so the result is the same as comparing the
+   * branch with upstream directly.
+   */
+  public UpstreamFailures resultsFor(JobId upstream, int numBuilds, Collection<TestName> tests) {
+    var baseline = baseline(upstream, numBuilds);
+    List<TestFailure> results = new ArrayList<>();
+    List<TestName> missing = new ArrayList<>();
+    for (TestName test : tests) {
+      var found = baseline.failures().findTest(test);
+      if (found.isEmpty()) {
+        missing.add(test);
+      } else {
+        results.addAll(found);
+      }
+    }
+    if (!missing.isEmpty()) {
+      results.addAll(upstreamFailuresDb.findResults(baseline.builds(), missing).failures());
+    }
+    return new UpstreamFailures(results);
+  }
+
+  private void buildsChanged(List<IngestEvent> events) {
+    // a refresh per job of the batch is enough
+    Set<Long> jobDbIds = Sets.newLinkedHashSet();
+    for (IngestEvent event : events) {
+      if (event instanceof BuildStored) jobDbIds.add(((BuildStored) event).jobDbId());
+      if (event instanceof BuildDeleted) jobDbIds.add(((BuildDeleted) event).jobDbId());
+    }
+    jobDbIds.forEach(this::buildStored);
+  }
+
+  /** Schedule refresh of the baselines of given job after storing its build. */
+  public void buildStored(long jobDbId) {
+    Optional<JobId> jobId = jobsDb.getById(jobDbId);
+    jobId.ifPresent(this::buildStored);
+  }
+
+  /** Schedule refresh of the baselines of given job after storing its build. */
+  public void buildStored(JobId jobId) {
+    if (refreshQueued.add(jobId)) {
+      refresher.submit(() -> refresh(jobId));
+    }
+  }
+
+  /**
+   * Schedule refresh of all the kept baselines, to pick up the builds stored by other instances,
+   * unless this is the only live instance.
+   *
+   * <p>This is called periodically by Spring. Refreshing a baseline whose builds did not change is
+   * cheap, see {@link UpstreamFailuresDb#refreshBaseline}.
+   */
+  @Scheduled(fixedDelay = 1000 * 60, initialDelay = 1000 * 60) // every minute
+  public void refreshBaselinesOfOtherInstances() {
+    if (cluster.isOnlyNode()) return;
+    baselineStore.jobs().forEach(this::buildStored);
+  }
+
+  /** Jobs for which baseline is currently kept. */
+  public Set<JobId> knownBaselines() {
+    return baselineStore.jobs();
+  }
+
+  private void refresh(JobId jobId) {
+    refreshQueued.remove(jobId);
+    Set<Integer> depths = Sets.newHashSet(baselineStore.depthsOf(jobId));
+    if (depths.isEmpty() && jobsDb.getConfiguredUpstreamJobs().contains(jobId)) {
+      depths.add(GATE_ANALYSIS_DEPTH);
+    }
+    for (int numBuilds : depths) {
+      try {
+        upstreamFailuresDb.refreshBaseline(jobId, numBuilds);
+      } catch (Exception e) {
+        logger.error("Refreshing upstream baseline for {} failed", jobId, e);
+      }
+    }
+  }
+}
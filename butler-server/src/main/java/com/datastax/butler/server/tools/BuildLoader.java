@@ -12,29 +12,38 @@ import com.datastax.butler.commons.jenkins.JenkinsException;
 import com.datastax.butler.commons.jenkins.JenkinsJob;
 import com.datastax.butler.commons.jenkins.JenkinsWorkflow;
 import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.server.config.RuntimeRole;
 import com.datastax.butler.server.db.BuildsDb;
 import com.datastax.butler.server.db.JobsDb;
+import com.datastax.butler.server.db.LoadTasksDb;
 import com.datastax.butler.server.db.StoredBuild;
+import com.datastax.butler.server.db.StoredLoadTask;
 import com.datastax.butler.server.db.UpstreamWorflowsDb;
 import com.datastax.butler.server.service.BuildsService;
+import com.datastax.butler.server.service.ClusterService;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.errorprone.annotations.FormatMethod;
 import java.net.UnknownHostException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -45,6 +54,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.util.UuidUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -55,21 +65,45 @@ import org.springframework.stereotype.Component;
  * uses executors to download multiple jobs concurrently, with the limitation that there can be only
  * one download per JobId in progress (single submitted LoadTask per JobId).
  *
+ * <p>When multiple butler-server instances share the database, a load also holds a lease on its
+ * JobId (see {@link ClusterService}) so that a job is only loaded by one instance at a time, and
+ * the periodic load of upstream jobs is partitioned between the instances. The lease expires if the
+ * instance dies in the middle of a load, letting another instance load the job on its next run.
+ *
  * <p>Loading tasks are identified by UUIDs. Status for every task is kept during loading and after
  * it when loading is already finished, so that a status api call can be done also for finished
- * tasks.
+ * tasks. Only the most recent messages of a task are kept in its status, and status listeners are
+ * notified of every change of the status of the tasks run by this instance.
+ *
+ * <p>Tasks and their status are stored in the LOAD_TASKS table, so that the loads submitted to an
+ * API instance (see {@link RuntimeRole}) are queued until a worker instance claims them, and their
+ * status can be retrieved from any instance. Worker instances also claim the tasks of workers which
+ * stopped updating them, presumably because they died.
  */
 @Component
 public class BuildLoader {
   private static final Logger logger = LogManager.getLogger();
+  /** Time after which the lease on a job expires if it is not renewed (after each build). */
+  private static final Duration LOAD_LEASE_TTL = Duration.ofMinutes(10);
+  /** Time after which a claimed task whose status was not updated can be claimed again. */
+  private static final Duration STALE_TASK = Duration.ofMinutes(20);
+
+  private static final int LOAD_THREADS = 5;
+  /** Number of most recent messages kept in the status of a task. */
+  @VisibleForTesting static final int MAX_MESSAGES = 200;
 
   private final JobsDb jobsDb;
   private final BuildsDb buildsDb;
   private final UpstreamWorflowsDb workflowsDb;
   private final BuildsService buildsService;
-  private final ExecutorService executors;
+  private final LoadTasksDb loadTasksDb;
+  private final ClusterService cluster;
+  private final RuntimeRole role;
+  /** Runs the load tasks, null on instances which do not run ingestion. */
+  @Nullable private final ExecutorService executors;
   private final ConcurrentMap<JobId, UUID> inProgress = Maps.newConcurrentMap();
   private final ConcurrentMap<UUID, Status> statuses = Maps.newConcurrentMap();
+  private final List<Consumer<Status>> statusListeners = new CopyOnWriteArrayList<>();
 
   /** Creates a new {@link BuildLoader} instance (Autowired by Spring). */
   @Autowired
@@ -77,12 +111,19 @@ public class BuildLoader {
       JobsDb jobsDb,
       BuildsDb buildsDb,
       BuildsService buildsService,
-      UpstreamWorflowsDb workflowsDb) {
-    this.jobsDb = jobsDb;
-    this.buildsDb = buildsDb;
-    this.buildsService = buildsService;
-    this.workflowsDb = workflowsDb;
-    this.executors = Executors.newFixedThreadPool(5);
+      UpstreamWorflowsDb workflowsDb,
+      LoadTasksDb loadTasksDb,
+      ClusterService cluster,
+      RuntimeRole role) {
+    this(
+        jobsDb,
+        buildsDb,
+        buildsService,
+        workflowsDb,
+        loadTasksDb,
+        cluster,
+        role,
+        role.runsIngestion() ? Executors.newFixedThreadPool(LOAD_THREADS) : null);
   }
 
   /** Creates a new new {@link BuildLoader} instance. */
@@ -92,11 +133,17 @@ public class BuildLoader {
       BuildsDb buildsDb,
       BuildsService buildsService,
       UpstreamWorflowsDb workflowsDb,
-      ExecutorService executors) {
+      LoadTasksDb loadTasksDb,
+      ClusterService cluster,
+      RuntimeRole role,
+      @Nullable ExecutorService executors) {
     this.jobsDb = jobsDb;
     this.buildsDb = buildsDb;
     this.workflowsDb = workflowsDb;
     this.buildsService = buildsService;
+    this.loadTasksDb = loadTasksDb;
+    this.cluster = cluster;
+    this.role = role;
     this.executors = executors;
   }
 
@@ -115,38 +162,94 @@ public class BuildLoader {
   /**
    * Submits load for given jobId if such load is not in progress.
    *
+   * <p>On instances running ingestion the load starts right away, on other ones it is queued until
+   * a worker instance claims it.
+   *
    * @param jobToLoad JobId to load
    * @param maxBuilds max number of recent builds to load
    * @return loadTaskId (Instant)
    */
   public UUID submitLoad(JobId jobToLoad, int maxBuilds) {
+    UUID running = inProgress.get(jobToLoad);
+    if (running != null) return running;
+    Optional<StoredLoadTask> pending = loadTasksDb.unfinished(jobToLoad);
+    if (pending.isPresent()) return pending.get().taskId();
+    if (executors == null) {
+      UUID taskId = UuidUtil.getTimeBasedUuid();
+      loadTasksDb.insert(taskId, jobToLoad, maxBuilds, null);
+      logger.info("Queued load of job {} with id {} for worker instances", jobToLoad, taskId);
+      return taskId;
+    }
     return inProgress.computeIfAbsent(
         jobToLoad,
         k -> {
           UUID taskId = UuidUtil.getTimeBasedUuid();
-          statuses.put(taskId, Status.notStarted(taskId, jobToLoad));
-          LoadTask task = new LoadTask(taskId, jobToLoad, maxBuilds);
-          executors.submit(task);
+          loadTasksDb.insert(taskId, jobToLoad, maxBuilds, cluster.nodeId());
+          start(taskId, jobToLoad, maxBuilds);
           return taskId;
         });
   }
 
+  private void start(UUID taskId, JobId jobToLoad, int maxBuilds) {
+    statuses.put(taskId, Status.notStarted(taskId, jobToLoad));
+    LoadTask task = new LoadTask(taskId, jobToLoad, maxBuilds);
+    executors.submit(task);
+  }
+
+  /**
+   * Periodically claim the load tasks queued by API instances, or left unfinished by a worker
+   * instance which died, as long as this instance has idle loading threads.
+   */
+  @SuppressWarnings("unused")
+  @Scheduled(fixedDelay = 1000 * 10, initialDelay = 1000 * 10) // every 10 seconds
+  public void claimQueuedLoads() {
+    if (executors == null) return;
+    int idle = LOAD_THREADS - inProgress.size();
+    if (idle <= 0) return;
+    for (StoredLoadTask task : loadTasksDb.claimable(STALE_TASK, idle)) {
+      // a load of the same job already runs here, the task is left for later
+      if (inProgress.putIfAbsent(task.jobId(), task.taskId()) != null) continue;
+      if (loadTasksDb.claim(task.taskId(), cluster.nodeId(), STALE_TASK)) {
+        logger.info("Claimed load of job {} with id {}", task.jobId(), task.taskId());
+        start(task.taskId(), task.jobId(), task.maxBuilds());
+      } else {
+        inProgress.remove(task.jobId(), task.taskId());
+      }
+    }
+  }
+
   /**
    * Periodically fetch builds for jobs considered UPSTREAM. with whatever jenkins knows about.
    *
-   * <p>Based on the content of the JOBS table in the database.
+   * <p>Based on the content of the JOBS table in the database. Only the jobs assigned to this
+   * instance by the {@link ClusterService} are fetched, the other ones being fetched by the other
+   * live instances.
    */
   @SuppressWarnings("unused")
   @Scheduled(fixedDelay = 1000 * 60 * 30) // 30 minutes
   public void fetchUpstreamJobs() {
-    logger.info("Fetching upstream jobs");
-    var toFetch = jobsDb.getConfiguredUpstreamJobs();
+    if (!role.runsIngestion()) return;
+    var upstreamJobs = jobsDb.getConfiguredUpstreamJobs();
+    var toFetch =
+        upstreamJobs.stream()
+            .filter(job -> cluster.isAssigned(leaseName(job)))
+            .collect(Collectors.toList());
+    logger.info(
+        "Fetching {} of {} upstream jobs ({} live nodes)",
+        toFetch.size(),
+        upstreamJobs.size(),
+        cluster.liveNodes().size());
     for (JobId job : toFetch) {
       UUID id = submitLoad(job, defaultMaxBuildsPerJob());
       logger.info("Submitted fetch for {} with id {}", job, id);
     }
   }
 
+  /** Name of the lease held while loading the job, also the key partitioning upstream jobs. */
+  public static String leaseName(JobId jobId) {
+    return "load:" + jobId;
+  }
+
   /**
    * Remove task statuses updated more than 1h ago
    *
@@ -160,6 +263,8 @@ public class BuildLoader {
     Instant updateThreshold = Instant.now().minusSeconds(60 * 60L);
     try {
       logger.info("Cleaning up finished loading task statuses. Size before = {}", statuses.size());
+      int deleted = loadTasksDb.deleteFinishedBefore(updateThreshold);
+      logger.info("Deleted {} finished loading tasks from the database", deleted);
       boolean removed =
           statuses
               .entrySet()
@@ -184,15 +289,53 @@ public class BuildLoader {
    * periodically pruned to not keep old ones.
    */
   public List<Status> allStatus() {
-    return new ArrayList<>(statuses.values());
+    Map<UUID, Status> all = new LinkedHashMap<>();
+    for (StoredLoadTask task : loadTasksDb.all()) {
+      all.put(task.taskId(), Status.of(task));
+    }
+    // statuses of the tasks run by this instance are the most recent ones
+    all.putAll(statuses);
+    return new ArrayList<>(all.values());
   }
 
+  /** Status of the task, whichever instance runs it. */
   public Optional<Status> taskStatus(UUID taskId) {
-    return Optional.ofNullable(statuses.get(taskId));
+    return Optional.ofNullable(statuses.get(taskId))
+        .or(() -> loadTasksDb.get(taskId).map(Status::of));
+  }
+
+  /**
+   * Registers a listener called with the new status of the tasks run by this instance, every time
+   * it changes.
+   *
+   * <p>The listener is called on the thread running the task, so it should return quickly.
+   */
+  public void addStatusListener(Consumer<Status> listener) {
+    statusListeners.add(listener);
   }
 
   private void updateStatus(UUID taskId, Status status) {
     statuses.put(taskId, status);
+    for (Consumer<Status> listener : statusListeners) {
+      try {
+        listener.accept(status);
+      } catch (RuntimeException e) {
+        logger.warn("Status listener failed on status of loading task {}", taskId, e);
+      }
+    }
+    try {
+      loadTasksDb.updateStatus(
+          taskId,
+          status.started(),
+          status.finished(),
+          status.progressPercentage(),
+          status.duration(),
+          status.error(),
+          status.messages(),
+          status.messageCount());
+    } catch (DataAccessException e) {
+      logger.warn("Cannot store status of loading task {}", taskId, e);
+    }
   }
 
   /** Status of a single loading task. */
@@ -206,7 +349,11 @@ public class BuildLoader {
     private final int progressPercentage;
     private final Duration duration;
     private final @Nullable String error;
+    /** The last {@link #MAX_MESSAGES} messages logged by the task. */
     private final List<String> messages;
+    /** Number of messages logged by the task since it started, including the discarded ones. */
+    private final int messageCount;
+
     private final Instant updateTimestamp;
 
     private Status(
@@ -218,6 +365,7 @@ public class BuildLoader {
         Duration duration,
         @Nullable String error,
         List<String> messages,
+        int messageCount,
         Instant updateTimestamp) {
       this.taskId = taskId;
       this.jobId = jobId;
@@ -227,6 +375,7 @@ public class BuildLoader {
       this.duration = duration;
       this.error = error;
       this.messages = messages;
+      this.messageCount = messageCount;
       this.updateTimestamp = updateTimestamp;
     }
 
@@ -241,8 +390,36 @@ public class BuildLoader {
           Duration.ZERO,
           null,
           Collections.emptyList(),
+          0,
           Instant.now());
     }
+
+    /** Return the last status stored for the task. */
+    public static Status of(StoredLoadTask task) {
+      return new Status(
+          task.taskId(),
+          task.jobId(),
+          task.started(),
+          task.finished(),
+          task.progress(),
+          task.duration(),
+          task.error(),
+          task.messages(),
+          task.messageCount(),
+          task.updatedAt());
+    }
+
+    /**
+     * The messages logged after the first given number of messages, as far as they are still kept.
+     *
+     * @param count number of messages already known, typically the {@link #messageCount()} of a
+     *     previous status of the same task
+     */
+    public List<String> messagesAfter(int count) {
+      int added = Math.min(messageCount - count, messages.size());
+      if (added <= 0) return List.of();
+      return messages.subList(messages.size() - added, messages.size());
+    }
   }
 
   /**
@@ -266,7 +443,8 @@ public class BuildLoader {
 
     private volatile boolean finished = false;
     private volatile String error;
-    private final List<String> messages = Lists.newArrayList();
+    private final Deque<String> messages = new ArrayDeque<>();
+    private int messageCount = 0;
 
     private LoadTask(UUID taskId, JobId jobToLoad, int maxBuilds) {
       this.taskId = taskId;
@@ -285,6 +463,13 @@ public class BuildLoader {
       updateStatus(taskId, currentStatus());
     }
 
+    private void finishAsLoadedElsewhere() {
+      logger.info("Not loading job {}: it is being loaded by another node", jobToLoad);
+      addMessage("Job is already being loaded by another butler node");
+      finished = true;
+      updateStatus(taskId, currentStatus());
+    }
+
     private void finishWithError(String error) {
       logger.error("Problem when loading job {}: {}", jobToLoad, error);
       addMessage("Problem when loading: %s", error);
@@ -302,33 +487,14 @@ public class BuildLoader {
     public void run() {
       try {
         startTimeNanos = System.nanoTime();
-        // retrieve list of builds to fetch, if empty exist with status NOOP
-        List<BuildId> buildIds = retrieveBuildsToFetch();
-        if (buildIds.isEmpty()) {
-          finishWithNoBuilds();
+        var lease = cluster.tryAcquire(leaseName(jobToLoad), LOAD_LEASE_TTL);
+        if (lease.isEmpty()) {
+          finishAsLoadedElsewhere();
           return;
         }
-        logger.debug("Recent builds for job {}: {}", jobToLoad, buildIds);
-
-        // make sure that job is already created in the database
-        long jobDbId = jobsDb.dbId(jobToLoad);
-        if (jobDbId <= 0) {
-          finishWithError("Cannot find job db id for jenkins job");
-          return;
-        }
-        // start work
-        totalBuildsCount = buildIds.size();
-        for (BuildId build : buildIds) {
-          long startTime = System.currentTimeMillis();
-          addMessage("downloading build #%s", build);
-          updateStatus(taskId, currentStatus());
-          loadBuild(jobDbId, build);
-          long duration = System.currentTimeMillis() - startTime;
-          addMessage(
-              "downlading build #%s finished in %d seconds",
-              build, TimeUnit.MILLISECONDS.toSeconds(duration));
+        try (var heldLease = lease.get()) {
+          load(heldLease);
         }
-        finishWithSuccess();
       } catch (JenkinsException e) {
         if (e.getCause() instanceof UnknownHostException) {
           finishWithError("Cannot find Jenkins host. Are you within the DataStax VPN?");
@@ -347,10 +513,48 @@ public class BuildLoader {
       }
     }
 
+    private void load(ClusterService.Lease lease) {
+      // retrieve list of builds to fetch, if empty exist with status NOOP
+      List<BuildId> buildIds = retrieveBuildsToFetch();
+      if (buildIds.isEmpty()) {
+        finishWithNoBuilds();
+        return;
+      }
+      logger.debug("Recent builds for job {}: {}", jobToLoad, buildIds);
+
+      // make sure that job is already created in the database
+      long jobDbId = jobsDb.dbId(jobToLoad);
+      if (jobDbId <= 0) {
+        finishWithError("Cannot find job db id for jenkins job");
+        return;
+      }
+      // start work
+      totalBuildsCount = buildIds.size();
+      for (BuildId build : buildIds) {
+        long startTime = System.currentTimeMillis();
+        addMessage("downloading build #%s", build);
+        updateStatus(taskId, currentStatus());
+        loadBuild(jobDbId, build);
+        long duration = System.currentTimeMillis() - startTime;
+        addMessage(
+            "downlading build #%s finished in %d seconds",
+            build, TimeUnit.MILLISECONDS.toSeconds(duration));
+        if (!lease.renew()) {
+          finishWithError("Lease on the job expired, it is now loaded by another node");
+          return;
+        }
+      }
+      finishWithSuccess();
+    }
+
     @FormatMethod
     private void addMessage(String fmt, Object... args) {
       String msg = String.format(fmt, args);
-      this.messages.add(msg);
+      if (messages.size() == MAX_MESSAGES) {
+        messages.removeFirst();
+      }
+      messages.addLast(msg);
+      messageCount++;
     }
 
     private List<BuildId> retrieveBuildsToFetch() {
@@ -484,6 +688,7 @@ public class BuildLoader {
           Duration.ofNanos(System.nanoTime() - startTimeNanos),
           error,
           List.copyOf(messages),
+          messageCount,
           Instant.now());
     }
   }
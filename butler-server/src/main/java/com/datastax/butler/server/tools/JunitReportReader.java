@@ -0,0 +1,274 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.tools;
+
+import com.datastax.butler.commons.dev.TestNameScheme;
+import com.datastax.butler.commons.dev.Workflow;
+import com.datastax.butler.commons.jenkins.TestId;
+import com.datastax.butler.commons.jenkins.TestResult;
+import com.datastax.butler.commons.jenkins.TestRun;
+import com.datastax.butler.commons.jenkins.TestRunOutput;
+import com.google.common.collect.AbstractIterator;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.io.Resource;
+
+/**
+ * Reads the test runs of JUnit XML reports, one test case at a time.
+ *
+ * <p>Reports are parsed with a StAX reader as the test runs are consumed, so that only the current
+ * test case is held in memory, whatever the size of the reports. Reports can be provided as plain
+ * XML files, or as tar.gz archives of XML files (whose other files are ignored).
+ *
+ * <p>Test cases are mapped to tests through the {@link TestNameScheme} of the workflow matching
+ * their class name, as for Jenkins test reports; test cases that cannot be mapped are ignored.
+ */
+public class JunitReportReader extends AbstractIterator<TestRun> implements Closeable {
+  private static final Logger logger = LogManager.getLogger();
+  /** Maximum length of the texts of a test case, as for Jenkins test reports. */
+  static final int MAX_TEXT_LENGTH = 10000;
+
+  private static final XMLInputFactory xmlFactory = xmlFactory();
+
+  private final Workflow workflow;
+  private final Iterator<? extends Resource> files;
+
+  /** The tar.gz archive whose reports are read, if any. */
+  @Nullable private TarArchiveInputStream archive;
+  @Nullable private String archiveName;
+  /** The report being read, if any. */
+  @Nullable private XMLStreamReader report;
+  /** The stream of the report being read, unless it is an entry of the archive. */
+  @Nullable private InputStream reportStream;
+  private String reportName;
+  /** Name of the test suite being read, for test cases without class name. */
+  @Nullable private String suiteName;
+
+  /**
+   * Creates a reader of the provided reports.
+   *
+   * @param workflow the workflow of the build of the reports.
+   * @param files JUnit XML reports, or tar.gz archives of such reports (when their name ends with
+   *     .tar.gz or .tgz).
+   */
+  public JunitReportReader(Workflow workflow, List<? extends Resource> files) {
+    this.workflow = workflow;
+    this.files = files.iterator();
+  }
+
+  private static XMLInputFactory xmlFactory() {
+    var factory = XMLInputFactory.newFactory();
+    // reports never need them, and they would allow to read local files or urls
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  private static boolean isArchive(String name) {
+    return name.endsWith(".tar.gz") || name.endsWith(".tgz");
+  }
+
+  @Override
+  protected TestRun computeNext() {
+    try {
+      while (report != null || openNextReport()) {
+        var run = nextTestRun();
+        if (run != null) return run;
+      }
+      return endOfData();
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException(
+          String.format("Invalid JUnit report %s: %s", reportName, e.getMessage()), e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private boolean openNextReport() throws IOException, XMLStreamException {
+    while (true) {
+      if (archive != null) {
+        TarArchiveEntry entry = archive.getNextTarEntry();
+        if (entry == null) {
+          archive.close();
+          archive = null;
+        } else if (entry.isFile() && entry.getName().endsWith(".xml")) {
+          // closing the XML reader does not close the archive, so that the next entry can be read
+          openReport(archive, String.format("%s:%s", archiveName, entry.getName()));
+          return true;
+        }
+        continue;
+      }
+      if (!files.hasNext()) return false;
+      var file = files.next();
+      String name = Optional.ofNullable(file.getFilename()).orElse("report");
+      if (isArchive(name)) {
+        archive =
+            new TarArchiveInputStream(
+                new GzipCompressorInputStream(new BufferedInputStream(file.getInputStream())));
+        archiveName = name;
+      } else {
+        reportStream = file.getInputStream();
+        openReport(reportStream, name);
+        return true;
+      }
+    }
+  }
+
+  private void openReport(InputStream in, String name) throws XMLStreamException {
+    reportName = name;
+    suiteName = null;
+    report = xmlFactory.createXMLStreamReader(in);
+  }
+
+  private void closeReport() throws IOException, XMLStreamException {
+    if (report != null) {
+      report.close();
+      report = null;
+    }
+    if (reportStream != null) {
+      reportStream.close();
+      reportStream = null;
+    }
+  }
+
+  /** The next test run of the current report, or null (and the report is closed) if none. */
+  @Nullable
+  private TestRun nextTestRun() throws IOException, XMLStreamException {
+    while (report.hasNext()) {
+      if (report.next() != XMLStreamConstants.START_ELEMENT) continue;
+      if (report.getLocalName().equals("testsuite")) {
+        suiteName = report.getAttributeValue(null, "name");
+      } else if (report.getLocalName().equals("testcase")) {
+        var run = readTestCase();
+        if (run != null) return run;
+      }
+    }
+    closeReport();
+    return null;
+  }
+
+  /** Reads the current test case element, returning null if it cannot be mapped to a test. */
+  @Nullable
+  private TestRun readTestCase() throws XMLStreamException {
+    String className =
+        Optional.ofNullable(report.getAttributeValue(null, "classname")).orElse(suiteName);
+    String name = report.getAttributeValue(null, "name");
+    Duration duration = parseDuration(report.getAttributeValue(null, "time"));
+    TestResult result = TestResult.PASSED;
+    String errorDetails = null;
+    String errorStackTrace = null;
+    String stdout = null;
+    String stderr = null;
+    while (report.hasNext()) {
+      int event = report.next();
+      if (event == XMLStreamConstants.END_ELEMENT && report.getLocalName().equals("testcase")) {
+        break;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT) continue;
+      switch (report.getLocalName()) {
+        case "failure":
+        case "error":
+          result = TestResult.FAILED;
+          errorDetails = report.getAttributeValue(null, "message");
+          errorStackTrace = readText();
+          break;
+        case "skipped":
+          if (result != TestResult.FAILED) result = TestResult.SKIPPED;
+          readText();
+          break;
+        case "system-out":
+          stdout = readText();
+          break;
+        case "system-err":
+          stderr = readText();
+          break;
+        default:
+          // e.g. reruns of flaky tests, whose outcome is the one of the test case
+          readText();
+      }
+    }
+
+    if (className == null || name == null) {
+      logger.error("Test case without class or name in {}. Test run will be ignored.", reportName);
+      return null;
+    }
+    Optional<TestId> testId = workflow.matchTestNameScheme(className).createTestId(className, name);
+    if (testId.isEmpty()) {
+      logger.error("Cannot create TestID for {}::{}. Test run will be ignored.", className, name);
+      return null;
+    }
+    TestRunOutput output = TestRunOutput.EMPTY_OUTPUT;
+    if (result == TestResult.FAILED) {
+      output = new TestRunOutput(errorDetails, errorStackTrace, stdout, stderr);
+    }
+    return new TestRun(testId.get(), result, duration, output, className, name);
+  }
+
+  /**
+   * Reads the text of the current element, including nested elements, up to {@link
+   * #MAX_TEXT_LENGTH} characters: the rest is skipped without being held in memory.
+   */
+  private String readText() throws XMLStreamException {
+    var text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      switch (report.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          int length = Math.min(report.getTextLength(), MAX_TEXT_LENGTH - text.length());
+          if (length > 0) text.append(report.getTextCharacters(), report.getTextStart(), length);
+          break;
+        default:
+          break;
+      }
+    }
+    return text.toString();
+  }
+
+  private static Duration parseDuration(@Nullable String seconds) {
+    if (seconds == null) return Duration.ZERO;
+    try {
+      return Duration.ofMillis(Math.round(Double.parseDouble(seconds) * 1000));
+    } catch (NumberFormatException e) {
+      return Duration.ZERO;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      closeReport();
+    } catch (XMLStreamException e) {
+      logger.warn("Cannot close JUnit report {}", reportName, e);
+    } finally {
+      if (archive != null) archive.close();
+    }
+  }
+}
@@ -103,3 +103,50 @@ CREATE TABLE authorities (
     FOREIGN KEY (username) REFERENCES users(username) ON DELETE CASCADE,
     PRIMARY KEY (username, authority)
 );
+
+-- Leases coordinating the butler-server instances sharing this database: which instances are alive
+-- ('node:' leases, renewed by every instance) and which instance currently loads a given job.
+-- Expiration uses the database clock so that instances do not need synchronized clocks.
+CREATE TABLE leases (
+    name VARCHAR(255) PRIMARY KEY,
+    owner VARCHAR(255) NOT NULL,
+    expires_at DATETIME(3) NOT NULL,
+    INDEX leases_expires_at_idx (expires_at)
+);
+
+-- Bulk load tasks and their status, so that loads submitted to any instance are run by worker
+-- instances (claimed_by) and their progress can be followed from any instance.
+CREATE TABLE load_tasks (
+    task_id CHAR(36) PRIMARY KEY,
+    workflow VARCHAR(255) NOT NULL,
+    job_name VARCHAR(255) NOT NULL,
+    max_builds INT NOT NULL,
+    claimed_by VARCHAR(255),
+    started BOOLEAN NOT NULL DEFAULT FALSE,
+    finished BOOLEAN NOT NULL DEFAULT FALSE,
+    progress INT NOT NULL DEFAULT 0,
+    duration_ms BIGINT NOT NULL DEFAULT 0,
+    error TEXT,
+    messages MEDIUMTEXT,
+    updated_at DATETIME(3) NOT NULL,
+    INDEX load_tasks_job_idx (workflow, job_name, finished),
+    INDEX load_tasks_updated_at_idx (finished, updated_at)
+);
+
+ALTER TABLE load_tasks ADD message_count INT NOT NULL DEFAULT 0;
+
+-- Raw build imports accepted asynchronously: the payload is stored until an instance running
+-- ingestion (claimed_by) imports it, and then dropped.
+CREATE TABLE import_tasks (
+    task_id CHAR(36) PRIMARY KEY,
+    workflow VARCHAR(255) NOT NULL,
+    job_name VARCHAR(255) NOT NULL,
+    build_number INT NOT NULL,
+    payload LONGTEXT,
+    claimed_by VARCHAR(255),
+    finished BOOLEAN NOT NULL DEFAULT FALSE,
+    error TEXT,
+    created_at DATETIME(3) NOT NULL,
+    updated_at DATETIME(3) NOT NULL,
+    INDEX import_tasks_pending_idx (finished, updated_at)
+);
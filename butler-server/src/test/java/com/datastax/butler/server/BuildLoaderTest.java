@@ -10,17 +10,26 @@ import static org.junit.jupiter.api.Assertions.*;
 import com.datastax.butler.commons.dev.Branch;
 import com.datastax.butler.commons.jenkins.JobId;
 import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.server.config.RuntimeRole;
 import com.datastax.butler.server.db.BuildsDb;
 import com.datastax.butler.server.db.JobsDb;
+import com.datastax.butler.server.db.LeasesDb;
+import com.datastax.butler.server.db.LoadTasksDb;
+import com.datastax.butler.server.db.StoredLoadTask;
 import com.datastax.butler.server.db.UpstreamWorflowsDb;
 import com.datastax.butler.server.service.BuildsService;
+import com.datastax.butler.server.service.ClusterService;
 import com.datastax.butler.server.tools.BuildLoader;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
@@ -31,9 +40,54 @@ class BuildLoaderTest {
   private final BuildsDb buildsDb = Mockito.mock(BuildsDb.class);
   private final BuildsService buildsService = Mockito.mock(BuildsService.class);
   private final UpstreamWorflowsDb upstreamWorkflowsDb = Mockito.mock(UpstreamWorflowsDb.class);
+  private final LoadTasksDb loadTasksDb = Mockito.mock(LoadTasksDb.class);
+  private final LeasesDb leasesDb = Mockito.mock(LeasesDb.class);
+  private final ClusterService cluster = new ClusterService(leasesDb, RuntimeRole.ALL, "node-1");
+
+  BuildLoaderTest() {
+    Mockito.when(
+            leasesDb.tryAcquire(
+                ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
+        .thenReturn(true);
+  }
 
   private BuildLoader createBuildLoader(ExecutorService executors) {
-    return new BuildLoader(jobsDb, buildsDb, buildsService, upstreamWorkflowsDb, executors);
+    return new BuildLoader(
+        jobsDb,
+        buildsDb,
+        buildsService,
+        upstreamWorkflowsDb,
+        loadTasksDb,
+        cluster,
+        RuntimeRole.ALL,
+        executors);
+  }
+
+  private StoredLoadTask queuedTask(UUID taskId) {
+    return new StoredLoadTask(
+        taskId,
+        mainCI(),
+        3,
+        null,
+        false,
+        false,
+        0,
+        Duration.ZERO,
+        null,
+        List.of(),
+        0,
+        Instant.now());
+  }
+
+  private static ExecutorService pausedExecutor(List<Runnable> scheduledTasks) {
+    ExecutorService executor = Mockito.mock(ExecutorService.class);
+    Mockito.when(executor.submit(ArgumentMatchers.any(Runnable.class)))
+        .then(
+            i -> {
+              scheduledTasks.add(i.getArgument(0));
+              return null;
+            });
+    return executor;
   }
 
   private JobId mainCI() {
@@ -79,4 +133,142 @@ class BuildLoaderTest {
     // finally status should include only 1 entry
     assertEquals(1, loader.allStatus().size());
   }
+
+  @Test
+  void shouldNotLoadJobLeasedByAnotherNode() {
+    Mockito.when(
+            leasesDb.tryAcquire(
+                ArgumentMatchers.eq(BuildLoader.leaseName(mainCI())),
+                ArgumentMatchers.any(),
+                ArgumentMatchers.any()))
+        .thenReturn(false);
+    List<Runnable> scheduledTasks = new ArrayList<>();
+    BuildLoader loader = createBuildLoader(pausedExecutor(scheduledTasks));
+
+    UUID taskId = loader.submitLoad(mainCI(), 1);
+    scheduledTasks.forEach(Runnable::run);
+    var status = loader.taskStatus(taskId).orElseThrow();
+    assertTrue(status.finished());
+    assertNull(status.error());
+    assertEquals(List.of("Job is already being loaded by another butler node"), status.messages());
+    Mockito.verifyNoInteractions(upstreamWorkflowsDb);
+  }
+
+  @Test
+  void shouldOnlyFetchUpstreamJobsAssignedToThisNode() {
+    var jobs = new ArrayList<JobId>();
+    for (int i = 0; i < 20; i++) {
+      jobs.add(new JobId(WorkflowId.of("ci"), Branch.fromString("branch-" + i)));
+    }
+    Mockito.when(jobsDb.getConfiguredUpstreamJobs()).thenReturn(Set.copyOf(jobs));
+    Mockito.when(leasesDb.owners(ArgumentMatchers.any())).thenReturn(List.of("node-1", "node-2"));
+    cluster.heartbeat();
+    ExecutorService executor = Mockito.mock(ExecutorService.class);
+    BuildLoader loader = createBuildLoader(executor);
+
+    loader.fetchUpstreamJobs();
+    var submitted = loader.allStatus().stream().map(BuildLoader.Status::jobId);
+    var expected = jobs.stream().filter(j -> cluster.isAssigned(BuildLoader.leaseName(j)));
+    assertEquals(expected.collect(Collectors.toSet()), submitted.collect(Collectors.toSet()));
+    // the jobs are spread over both nodes
+    assertTrue(loader.allStatus().size() > 0);
+    assertTrue(loader.allStatus().size() < jobs.size());
+  }
+
+  @Test
+  void shouldQueueLoadsOnApiInstances() {
+    var loader =
+        new BuildLoader(
+            jobsDb,
+            buildsDb,
+            buildsService,
+            upstreamWorkflowsDb,
+            loadTasksDb,
+            cluster,
+            RuntimeRole.API,
+            null);
+    UUID taskId = loader.submitLoad(mainCI(), 3);
+    Mockito.verify(loadTasksDb).insert(taskId, mainCI(), 3, null);
+
+    var queued = queuedTask(taskId);
+    Mockito.when(loadTasksDb.unfinished(mainCI())).thenReturn(Optional.of(queued));
+    Mockito.when(loadTasksDb.get(taskId)).thenReturn(Optional.of(queued));
+    assertEquals(taskId, loader.submitLoad(mainCI(), 3));
+    assertFalse(loader.taskStatus(taskId).orElseThrow().started());
+    loader.claimQueuedLoads();
+    Mockito.verify(loadTasksDb, Mockito.never())
+        .claim(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+  }
+
+  @Test
+  void shouldRunLoadsClaimedFromQueue() {
+    UUID taskId = UUID.randomUUID();
+    var queued = queuedTask(taskId);
+    Mockito.when(loadTasksDb.claimable(ArgumentMatchers.any(), ArgumentMatchers.anyInt()))
+        .thenReturn(List.of(queued));
+    Mockito.when(
+            loadTasksDb.claim(
+                ArgumentMatchers.eq(taskId), ArgumentMatchers.eq("node-1"), ArgumentMatchers.any()))
+        .thenReturn(true);
+    List<Runnable> scheduledTasks = new ArrayList<>();
+    BuildLoader loader = createBuildLoader(pausedExecutor(scheduledTasks));
+
+    loader.claimQueuedLoads();
+    assertEquals(1, scheduledTasks.size());
+    // the job is now in progress here, so submitting it again returns the claimed task
+    assertEquals(taskId, loader.submitLoad(mainCI(), 3));
+    scheduledTasks.forEach(Runnable::run);
+    assertTrue(loader.taskStatus(taskId).orElseThrow().finished());
+    Mockito.verify(loadTasksDb, Mockito.atLeastOnce())
+        .updateStatus(
+            ArgumentMatchers.eq(taskId),
+            ArgumentMatchers.eq(true),
+            ArgumentMatchers.eq(true),
+            ArgumentMatchers.anyInt(),
+            ArgumentMatchers.any(),
+            ArgumentMatchers.any(),
+            ArgumentMatchers.any(),
+            ArgumentMatchers.anyInt());
+  }
+
+  @Test
+  void shouldNotifyStatusListeners() {
+    List<Runnable> scheduledTasks = new ArrayList<>();
+    BuildLoader loader = createBuildLoader(pausedExecutor(scheduledTasks));
+    List<BuildLoader.Status> notified = new ArrayList<>();
+    loader.addStatusListener(notified::add);
+    UUID taskId = loader.submitLoad(mainCI(), 1);
+
+    scheduledTasks.forEach(Runnable::run);
+    assertFalse(notified.isEmpty());
+    var last = notified.get(notified.size() - 1);
+    assertEquals(taskId, last.taskId());
+    assertTrue(last.finished());
+    assertEquals(last.messages().size(), last.messageCount());
+  }
+
+  @Test
+  void shouldReturnMessagesLoggedAfterGivenCount() {
+    var messages = List.of("m3", "m4", "m5");
+    var stored =
+        new StoredLoadTask(
+            UUID.randomUUID(),
+            mainCI(),
+            3,
+            "node-1",
+            true,
+            false,
+            50,
+            Duration.ZERO,
+            null,
+            messages,
+            5,
+            Instant.now());
+    var status = BuildLoader.Status.of(stored);
+    assertEquals(List.of("m5"), status.messagesAfter(4));
+    assertEquals(List.of("m4", "m5"), status.messagesAfter(3));
+    // the first messages are no longer kept
+    assertEquals(messages, status.messagesAfter(0));
+    assertEquals(List.of(), status.messagesAfter(5));
+  }
 }
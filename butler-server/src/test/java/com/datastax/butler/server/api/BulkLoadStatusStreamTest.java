@@ -0,0 +1,201 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.api;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.api.ci.BulkLoadStatus;
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.commons.json.Json;
+import com.datastax.butler.server.db.StoredLoadTask;
+import com.datastax.butler.server.tools.BuildLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class BulkLoadStatusStreamTest {
+  private static final UUID TASK_ID = UUID.randomUUID();
+  private static final Instant START = Instant.parse("2021-03-01T10:00:00Z");
+
+  private final BuildLoader buildLoader = Mockito.mock(BuildLoader.class);
+  private final ObjectMapper mapper = Mockito.spy(Json.mapper());
+
+  private static BuildLoader.Status status(int progress, boolean finished, String... messages) {
+    return BuildLoader.Status.of(
+        new StoredLoadTask(
+            TASK_ID,
+            new JobId(WorkflowId.of("ci"), Branch.fromString("main")),
+            3,
+            "node-1",
+            true,
+            finished,
+            progress,
+            Duration.ofSeconds(progress),
+            null,
+            List.of(messages),
+            messages.length,
+            START.plusSeconds(progress)));
+  }
+
+  /** Emitter counting the events sent to it, whose sends wait until it is released. */
+  private static class CountingEmitter extends SseEmitter {
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final AtomicInteger sent = new AtomicInteger();
+    private final boolean failing;
+    private volatile boolean completed;
+
+    private CountingEmitter(boolean released, boolean failing) {
+      if (released) this.released.countDown();
+      this.failing = failing;
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+      if (failing) throw new IOException("watcher went away");
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      sent.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void complete() {
+      completed = true;
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline, "timed out");
+      Thread.sleep(10);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Consumer<BuildLoader.Status> listener() {
+    ArgumentCaptor<Consumer<BuildLoader.Status>> listener =
+        ArgumentCaptor.forClass(Consumer.class);
+    Mockito.verify(buildLoader).addStatusListener(listener.capture());
+    return listener.getValue();
+  }
+
+  private List<BulkLoadStatus> serialized() throws Exception {
+    ArgumentCaptor<BulkLoadStatus> sent = ArgumentCaptor.forClass(BulkLoadStatus.class);
+    Mockito.verify(mapper, Mockito.atLeast(0)).writeValueAsString(sent.capture());
+    return sent.getAllValues();
+  }
+
+  @Test
+  void shouldSerializeEachChangeOnceForAllWatchers() throws Exception {
+    var stream = new BulkLoadStatusStream(buildLoader, mapper, Runnable::run, Runnable::run);
+    var initial = status(10, false, "m1");
+    for (int i = 0; i < 10; i++) {
+      stream.open(initial);
+    }
+    assertEquals(1, stream.watchedTasks());
+    Mockito.clearInvocations(mapper);
+
+    listener().accept(status(50, false, "m1", "m2", "m3"));
+    var sent = serialized();
+    assertEquals(1, sent.size());
+    assertEquals(50, sent.get(0).progress());
+    assertEquals(List.of("m2", "m3"), sent.get(0).messages());
+
+    // an unchanged status is not sent again
+    listener().accept(status(50, false, "m1", "m2", "m3"));
+    assertEquals(1, serialized().size());
+  }
+
+  @Test
+  void shouldCloseWatchOnceTaskIsFinished() throws Exception {
+    var stream = new BulkLoadStatusStream(buildLoader, mapper, Runnable::run, Runnable::run);
+    stream.open(status(10, false, "m1"));
+
+    listener().accept(status(100, true, "m1", "done"));
+    assertEquals(0, stream.watchedTasks());
+    var sent = serialized();
+    var last = sent.get(sent.size() - 1);
+    assertTrue(last.finished());
+    assertEquals(List.of("done"), last.messages());
+  }
+
+  @Test
+  void shouldPollStatusOfTasksRunElsewhere() throws Exception {
+    var stream = new BulkLoadStatusStream(buildLoader, mapper, Runnable::run, Runnable::run);
+    stream.open(status(10, false, "m1"));
+    Mockito.clearInvocations(mapper);
+
+    Mockito.when(buildLoader.taskStatus(TASK_ID))
+        .thenReturn(Optional.of(status(30, false, "m1", "m2")));
+    stream.pollWatchedTasks();
+    assertEquals(List.of("m2"), serialized().get(0).messages());
+    Mockito.verify(buildLoader).taskStatus(ArgumentMatchers.eq(TASK_ID));
+
+    Mockito.when(buildLoader.taskStatus(TASK_ID)).thenReturn(Optional.empty());
+    stream.pollWatchedTasks();
+    assertEquals(0, stream.watchedTasks());
+  }
+
+  @Test
+  void shouldDropStalledWatchersWithoutBlockingOthers() throws Exception {
+    var sender = Executors.newCachedThreadPool();
+    try {
+      var stream = new BulkLoadStatusStream(buildLoader, mapper, Runnable::run, sender);
+      var stalled = new CountingEmitter(false, false);
+      var watching = new CountingEmitter(true, false);
+      stream.open(status(1, false, "m1"), stalled);
+      stream.open(status(1, false, "m1"), watching);
+
+      int updates = BulkLoadStatusStream.MAX_PENDING_EVENTS + 4;
+      for (int i = 0; i < updates; i++) {
+        listener().accept(status(2 + i, false, "m1"));
+      }
+      await(() -> watching.sent.get() == 1 + updates);
+      assertFalse(watching.completed);
+      assertEquals(1, stream.watchedTasks());
+
+      stalled.released.countDown();
+      await(() -> stalled.completed);
+      assertTrue(stalled.sent.get() <= BulkLoadStatusStream.MAX_PENDING_EVENTS);
+    } finally {
+      sender.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldRemoveWatchIfFirstStatusCannotBeSent() {
+    var stream = new BulkLoadStatusStream(buildLoader, mapper, Runnable::run, Runnable::run);
+    stream.open(status(10, false, "m1"), new CountingEmitter(true, true));
+    assertEquals(0, stream.watchedTasks());
+  }
+
+  @Test
+  void shouldNotWatchFinishedTask() {
+    var stream = new BulkLoadStatusStream(buildLoader, mapper, Runnable::run, Runnable::run);
+    stream.open(status(100, true, "done"));
+    assertEquals(0, stream.watchedTasks());
+  }
+}
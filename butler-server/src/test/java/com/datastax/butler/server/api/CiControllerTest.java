@@ -7,6 +7,8 @@ package com.datastax.butler.server.api;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.datastax.butler.api.ci.BuildBatchImportRequest;
+import com.datastax.butler.api.ci.BuildImportRequest;
 import com.datastax.butler.commons.dev.Branch;
 import com.datastax.butler.commons.dev.Workflow;
 import com.datastax.butler.commons.jenkins.JobId;
@@ -15,11 +17,19 @@ import com.datastax.butler.server.db.BuildsDb;
 import com.datastax.butler.server.db.JobsDb;
 import com.datastax.butler.server.db.UpstreamWorflowsDb;
 import com.datastax.butler.server.service.BuildsService;
+import com.datastax.butler.server.service.ClusterService;
+import com.datastax.butler.server.service.RawImportService;
 import com.datastax.butler.server.tools.BuildLoader;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
 class CiControllerTest {
 
@@ -28,13 +38,25 @@ class CiControllerTest {
   private final UpstreamWorflowsDb workflowsDb = Mockito.mock(UpstreamWorflowsDb.class);
   private final BuildsService buildService = Mockito.mock(BuildsService.class);
   private final BuildLoader buildLoader = Mockito.mock(BuildLoader.class);
+  private final ClusterService cluster = Mockito.mock(ClusterService.class);
+  private final BulkLoadStatusStream bulkLoadStatusStream =
+      Mockito.mock(BulkLoadStatusStream.class);
+  private final RawImportService rawImports = Mockito.mock(RawImportService.class);
 
   private static final WorkflowId FAST_CI = WorkflowId.of("fast-ci");
   private static final WorkflowId NIGHTLY_CI = WorkflowId.of("nightly-ci");
   private static final WorkflowId WEEKLY_CI = WorkflowId.of("weekly-ci");
 
   CiController controller() {
-    return new CiController(jobsDb, buildsDb, workflowsDb, buildService, buildLoader);
+    return new CiController(
+        jobsDb,
+        buildsDb,
+        workflowsDb,
+        buildService,
+        buildLoader,
+        cluster,
+        bulkLoadStatusStream,
+        rawImports);
   }
 
   @Test
@@ -84,6 +106,35 @@ class CiControllerTest {
     checkJobInfo(nightly10, out.get(1));
   }
 
+  @Test
+  void shouldAcceptRawImportsUntilBacklogIsFull() {
+    Mockito.when(workflowsDb.getWorkflow(FAST_CI))
+        .thenReturn(Optional.of(new Workflow(FAST_CI.name(), false)));
+    var request = new BuildImportRequest(FAST_CI.name(), "main", 3, 0, 10, null, List.of());
+    var taskId = UUID.randomUUID();
+    Mockito.when(rawImports.submit(request)).thenReturn(Optional.of(taskId));
+    var accepted = controller().submitRawBuildImport(request);
+    assertEquals(HttpStatus.ACCEPTED, accepted.getStatusCode());
+    assertEquals(taskId, accepted.getBody().taskId());
+
+    Mockito.when(rawImports.submit(request)).thenReturn(Optional.empty());
+    var rejected = controller().submitRawBuildImport(request);
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getStatusCode());
+    assertNotNull(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+  }
+
+  @Test
+  void shouldRejectEmptyOrOversizedBatchImports() {
+    var empty = new BuildBatchImportRequest(List.of());
+    assertThrows(ResponseStatusException.class, () -> controller().importRawBuilds(empty));
+    var build = new BuildImportRequest(FAST_CI.name(), "main", 3, 0, 10, null, List.of());
+    var oversized =
+        new BuildBatchImportRequest(
+            Collections.nCopies(RawImportService.MAX_BATCH_BUILDS + 1, build));
+    assertThrows(ResponseStatusException.class, () -> controller().importRawBuilds(oversized));
+    Mockito.verifyNoInteractions(rawImports);
+  }
+
   private void checkJobInfo(JobId jobId, JobInfo info) {
     assertEquals(jobId.workflow().name(), info.workflow());
     assertEquals(jobId.jobName().toString(), info.jobName().toString());
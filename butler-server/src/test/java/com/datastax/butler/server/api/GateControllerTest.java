@@ -6,11 +6,17 @@
 package com.datastax.butler.server.api;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.datastax.butler.api.gate.JenkinsBuildApprovalRequest;
+import com.datastax.butler.api.gate.JenkinsBuildApprovalResponse;
+import com.datastax.butler.api.gate.JenkinsBuildApprovalStatus;
 import com.datastax.butler.commons.dev.Branch;
 import com.datastax.butler.commons.dev.FailuresTestData;
 import com.datastax.butler.commons.dev.UpstreamFailures;
@@ -25,14 +31,26 @@ import com.datastax.butler.server.db.StoredBuild;
 import com.datastax.butler.server.db.UpstreamFailuresDb;
 import com.datastax.butler.server.service.BuildsService;
 import com.datastax.butler.server.service.prgate.GateDecision;
+import com.datastax.butler.server.service.prgate.UpstreamBaselineService;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import okhttp3.HttpUrl;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
 class GateControllerTest {
 
@@ -41,9 +59,59 @@ class GateControllerTest {
   private final BuildsService buildService = Mockito.mock(BuildsService.class);
   private final CiController ciController = Mockito.mock(CiController.class);
   private final UpstreamFailuresDb upstreamFailuresDb = Mockito.mock(UpstreamFailuresDb.class);
+  private final UpstreamBaselineService upstreamBaselines =
+      Mockito.mock(UpstreamBaselineService.class);
+
+  /** Executor of the asynchronous approvals: one running and one queued at most. */
+  private final ExecutorService approvals =
+      new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+  /** Released to let the asynchronous approvals complete. */
+  private final CountDownLatch approvalsReleased = new CountDownLatch(1);
+
+  @AfterEach
+  void tearDown() {
+    approvals.shutdownNow();
+  }
 
   GateController gate() {
-    return new GateController(jobsDb, buildsDb, buildService, ciController, upstreamFailuresDb);
+    return new GateController(
+        jobsDb, buildsDb, buildService, ciController, upstreamFailuresDb, upstreamBaselines);
+  }
+
+  /** Gate whose asynchronous approvals are approved once {@link #approvalsReleased}. */
+  GateController asyncGate() {
+    var gate =
+        Mockito.spy(
+            new GateController(
+                jobsDb,
+                buildsDb,
+                buildService,
+                ciController,
+                upstreamFailuresDb,
+                upstreamBaselines,
+                approvals));
+    doAnswer(
+            invocation -> {
+              approvalsReleased.await();
+              return JenkinsBuildApprovalResponse.approved("Approved by butler", "link");
+            })
+        .when(gate)
+        .approveBuild(any());
+    return gate;
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline, "timed out");
+      Thread.sleep(10);
+    }
+  }
+
+  private static JenkinsBuildApprovalStatus status(GateController gate, UUID decisionId) {
+    var result = gate.decisionStatus(decisionId, 0);
+    assertTrue(result.hasResult());
+    return (JenkinsBuildApprovalStatus) result.getResult();
   }
 
   JenkinsBuild jenkinsBuild(BuildId buildId, JenkinsBuild.Status status) {
@@ -244,15 +312,103 @@ class GateControllerTest {
   private GateDecision gateDecision(String branchStory, String upstreamStory) {
     var onBranch = new UpstreamFailures(List.of(FailuresTestData.createFailure(branchStory)));
     var onUpstream = new UpstreamFailures(List.of(FailuresTestData.createFailure(upstreamStory)));
-    List<UpstreamFailures> failures = List.of(onBranch, onUpstream);
     var req = approvalRequest();
-    when(upstreamFailuresDb.compareJobs(
-            req.pipeline(),
-            req.branch(),
-            req.upstreamWorkflow(),
-            req.upstreamBranch(),
-            Optional.of(16)))
-        .thenReturn(failures);
+    var branchJob = new JobId(WorkflowId.of(req.pipeline()), Branch.fromString(req.branch()));
+    var upstreamJob =
+        new JobId(WorkflowId.of(req.upstreamWorkflow()), Branch.fromString(req.upstreamBranch()));
+    when(upstreamFailuresDb.recentBuilds(branchJob, 16)).thenReturn(List.of());
+    when(upstreamFailuresDb.findFailures(any())).thenReturn(onBranch);
+    when(upstreamBaselines.resultsFor(eq(upstreamJob), eq(16), anyCollection()))
+        .thenReturn(onUpstream);
     return gate().makeDecision(req);
   }
+
+  @Test
+  void shouldAnswerPendingThenDoneDecision() throws Exception {
+    var gate = asyncGate();
+    var submitted = gate.submitApproval(approvalRequest());
+    assertEquals(HttpStatus.ACCEPTED, submitted.getStatusCode());
+    var decisionId = submitted.getBody().decisionId();
+    assertEquals(
+        "/api/gate/decisions/" + decisionId, submitted.getHeaders().getLocation().toString());
+
+    assertFalse(status(gate, decisionId).finished());
+
+    approvalsReleased.countDown();
+    await(() -> status(gate, decisionId).finished());
+    var done = status(gate, decisionId);
+    assertNull(done.error());
+    assertTrue(done.response().approval());
+  }
+
+  @Test
+  void shouldAnswerLongPollOnceDecided() throws Exception {
+    var gate = asyncGate();
+    var decisionId = gate.submitApproval(approvalRequest()).getBody().decisionId();
+
+    var result = gate.decisionStatus(decisionId, 30);
+    assertFalse(result.hasResult());
+
+    approvalsReleased.countDown();
+    await(result::hasResult);
+    assertTrue(((JenkinsBuildApprovalStatus) result.getResult()).finished());
+  }
+
+  @Test
+  void shouldAnswerPendingWhenLongPollTimesOut() throws Exception {
+    var gate = asyncGate();
+    var decisionId = gate.submitApproval(approvalRequest()).getBody().decisionId();
+
+    var result = gate.decisionStatus(decisionId, 1);
+    assertFalse(result.hasResult());
+
+    await(result::hasResult);
+    var status = (JenkinsBuildApprovalStatus) result.getResult();
+    assertEquals(decisionId, status.decisionId());
+    assertFalse(status.finished());
+  }
+
+  @Test
+  void shouldNotFindUnknownDecision() {
+    var gate = asyncGate();
+    var e =
+        assertThrows(
+            ResponseStatusException.class, () -> gate.decisionStatus(UUID.randomUUID(), 0));
+    assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+  }
+
+  @Test
+  void shouldRefuseApprovalsWhenTooManyArePending() {
+    var gate = asyncGate();
+    // one approval is running and the next one is queued
+    assertEquals(HttpStatus.ACCEPTED, gate.submitApproval(approvalRequest()).getStatusCode());
+    assertEquals(HttpStatus.ACCEPTED, gate.submitApproval(approvalRequest()).getStatusCode());
+
+    var refused = gate.submitApproval(approvalRequest());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, refused.getStatusCode());
+    assertEquals(
+        String.valueOf(GateController.RETRY_AFTER.toSeconds()),
+        refused.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+  }
+
+  @Test
+  void shouldKeepDecisionsForSomeTimeOnceFinished() throws Exception {
+    var gate = asyncGate();
+    var decisionId = gate.submitApproval(approvalRequest()).getBody().decisionId();
+
+    // pending decisions are kept however old they are
+    gate.cleanupDecisionsFinishedBefore(Instant.now().plus(Duration.ofDays(1)));
+    assertFalse(status(gate, decisionId).finished());
+
+    approvalsReleased.countDown();
+    await(() -> status(gate, decisionId).finished());
+    // kept for clients which were not yet told, even if submitted long before the threshold
+    var finished = Instant.now();
+    gate.cleanupDecisionsFinishedBefore(finished.minusSeconds(1));
+    assertTrue(status(gate, decisionId).finished());
+
+    gate.cleanupDecisionsFinishedBefore(finished.plusSeconds(1));
+    var e = assertThrows(ResponseStatusException.class, () -> status(gate, decisionId));
+    assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+  }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ButlerCacheTest {
+
+  private final CacheRegistry registry = new CacheRegistry(Runnable::run);
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private String load(int key) {
+    loads.incrementAndGet();
+    return key < 0 ? null : "v" + key;
+  }
+
+  @Test
+  void shouldLoadOnceAndCountHits() {
+    ButlerCache<Integer, String> cache =
+        registry.<Integer, String>builder("test").maximumSize(10).build(this::load);
+    assertEquals("v1", cache.get(1));
+    assertEquals("v1", cache.get(1));
+    assertEquals(1, loads.get());
+
+    var stats = cache.statistics();
+    assertEquals("test", stats.name());
+    assertEquals(1, stats.size());
+    assertEquals(1, stats.hits());
+    assertEquals(1, stats.misses());
+    assertEquals(1, stats.loads());
+  }
+
+  @Test
+  void shouldNotCacheMissingValues() {
+    ButlerCache<Integer, String> cache =
+        registry.<Integer, String>builder("test").maximumSize(10).build(this::load);
+    assertNull(cache.get(-1));
+    assertNull(cache.get(-1));
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void shouldEvictPastMaximumWeight() {
+    ButlerCache<Integer, String> cache =
+        registry.<Integer, String>builder("test").maximumWeight(10, (k, v) -> v.length()).build();
+    cache.put(1, "a".repeat(11));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.statistics().evictions());
+  }
+
+  @Test
+  void shouldComputeWithoutCountingAccesses() {
+    ButlerCache<Integer, String> cache =
+        registry.<Integer, String>builder("test").maximumSize(10).build();
+    assertFalse(cache.containsKey(1));
+    assertNull(cache.compute(1, (k, v) -> v == null ? null : v + "b"));
+    cache.put(1, "a");
+    assertEquals("ab", cache.compute(1, (k, v) -> v == null ? null : v + "b"));
+    assertTrue(cache.containsKey(1));
+    assertNull(cache.compute(1, (k, v) -> null));
+    assertFalse(cache.containsKey(1));
+    assertEquals(0, cache.statistics().hits());
+    assertEquals(0, cache.statistics().misses());
+  }
+
+  @Test
+  void shouldUseProvidedLoader() {
+    ButlerCache<Integer, String> cache =
+        registry.<Integer, String>builder("test").maximumSize(10).build();
+    assertEquals("v2", cache.get(2, this::load));
+    assertEquals("v2", cache.get(2, this::load));
+    assertNull(cache.get(-2, this::load));
+    assertEquals(2, loads.get());
+    assertThrows(IllegalStateException.class, () -> cache.get(3));
+  }
+
+  @Test
+  void shouldRethrowLoadingFailures() {
+    ButlerCache<Integer, String> cache =
+        registry
+            .<Integer, String>builder("test")
+            .maximumSize(10)
+            .build(
+                k -> {
+                  throw new IllegalArgumentException("boom");
+                });
+    assertThrows(IllegalArgumentException.class, () -> cache.get(1));
+    assertEquals(1, cache.statistics().loadFailures());
+  }
+
+  @Test
+  void shouldRequireBoundsAndUniqueNames() {
+    assertThrows(
+        IllegalArgumentException.class, () -> registry.<Integer, String>builder("test").build());
+    registry.<Integer, String>builder("test").maximumSize(1).build();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> registry.<Integer, String>builder("test").maximumSize(1).build());
+  }
+
+  @Test
+  void shouldInvalidateAllCaches() {
+    ButlerCache<Integer, String> first =
+        registry.<Integer, String>builder("first").maximumSize(10).build();
+    ButlerCache<Integer, String> second =
+        registry.<Integer, String>builder("second").maximumSize(10).build();
+    first.put(1, "a");
+    second.put(1, "b");
+    assertEquals(2, registry.statistics().size());
+    assertEquals("first", registry.statistics().get(0).name());
+
+    registry.invalidateAll();
+    assertNull(first.getIfPresent(1));
+    assertNull(second.getIfPresent(1));
+  }
+}
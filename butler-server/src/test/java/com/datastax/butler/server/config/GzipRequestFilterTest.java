@@ -0,0 +1,178 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+class GzipRequestFilterTest {
+  private static final String BODY = "{\"workflow\":\"ci\"}\n{\"test_suite\":\"Suite\"}\n";
+
+  private static final String IMPORT_URI = "/api/ci/builds/import/raw/stream";
+
+  private static byte[] gzip(byte[] body) throws IOException {
+    var compressed = new ByteArrayOutputStream();
+    try (var out = new GZIPOutputStream(compressed)) {
+      out.write(body);
+    }
+    return compressed.toByteArray();
+  }
+
+  private static MockHttpServletRequest request(String encoding, byte[] body) {
+    return request(IMPORT_URI, encoding, body);
+  }
+
+  private static MockHttpServletRequest request(String uri, String encoding, byte[] body) {
+    var request = new MockHttpServletRequest("POST", uri);
+    if (encoding != null) {
+      request.addHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+    }
+    request.setContent(body);
+    return request;
+  }
+
+  private static GzipRequestFilter filter() {
+    return new GzipRequestFilter(DataSize.ofKilobytes(1));
+  }
+
+  private static HttpServletRequest filter(MockHttpServletRequest request)
+      throws ServletException, IOException {
+    var chain = new MockFilterChain();
+    filter().doFilter(request, new MockHttpServletResponse(), chain);
+    return (HttpServletRequest) chain.getRequest();
+  }
+
+  @Test
+  void shouldDecompressGzippedBodies() throws Exception {
+    var filtered = filter(request("gzip", gzip(BODY.getBytes(StandardCharsets.UTF_8))));
+
+    var body = filtered.getInputStream().readAllBytes();
+    assertEquals(BODY, new String(body, StandardCharsets.UTF_8));
+    // the body is already decompressed for what follows
+    assertNull(filtered.getHeader(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(-1, filtered.getContentLength());
+    assertFalse(Collections.list(filtered.getHeaderNames()).contains(HttpHeaders.CONTENT_ENCODING));
+  }
+
+  @Test
+  void shouldPassOtherBodiesThrough() throws Exception {
+    var request = request(null, BODY.getBytes(StandardCharsets.UTF_8));
+    assertSame(request, filter(request));
+    var identity = request("identity", BODY.getBytes(StandardCharsets.UTF_8));
+    assertSame(identity, filter(identity));
+  }
+
+  @Test
+  void shouldOnlyFilterImports() throws Exception {
+    var compressed = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+    var request = request("/api/upstream/failures", "gzip", compressed);
+    assertSame(request, filter(request));
+    var unsupported = request("/api/ci/builds/load", "br", new byte[0]);
+    assertSame(unsupported, filter(unsupported));
+  }
+
+  @Test
+  void shouldRejectUnsupportedEncodings() throws Exception {
+    var response = new MockHttpServletResponse();
+    var chain = new MockFilterChain();
+    filter().doFilter(request("br", new byte[0]), response, chain);
+    assertEquals(415, response.getStatus());
+    assertNull(chain.getRequest());
+  }
+
+  @Test
+  void shouldRejectBodiesDecompressingBeyondMaximumSize() throws Exception {
+    var atMax = filter(request("gzip", gzip(new byte[1024])));
+    assertEquals(1024, atMax.getInputStream().readAllBytes().length);
+
+    var beyondMax = filter(request("gzip", gzip(new byte[1025])));
+    var e =
+        assertThrows(
+            ResponseStatusException.class, () -> beyondMax.getInputStream().readAllBytes());
+    assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatus());
+  }
+
+  @Test
+  void shouldDelegateNonBlockingReads() throws Exception {
+    var compressed = new ByteArrayInputStream(gzip(BODY.getBytes(StandardCharsets.UTF_8)));
+    var body = new ListenedInputStream(compressed);
+    var request =
+        new MockHttpServletRequest("POST", IMPORT_URI) {
+          @Override
+          public ServletInputStream getInputStream() {
+            return body;
+          }
+        };
+    request.addHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    var listener = new NoopReadListener();
+
+    var decompressed = filter(request).getInputStream();
+    decompressed.setReadListener(listener);
+    assertSame(listener, body.listener);
+    assertTrue(decompressed.isReady());
+    assertEquals(BODY, new String(decompressed.readAllBytes(), StandardCharsets.UTF_8));
+    assertTrue(decompressed.isFinished());
+  }
+
+  /** A request body recording the listener of its non-blocking reads. */
+  private static class ListenedInputStream extends ServletInputStream {
+    private final ByteArrayInputStream in;
+    private ReadListener listener;
+
+    private ListenedInputStream(ByteArrayInputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public int read() {
+      return in.read();
+    }
+
+    @Override
+    public boolean isFinished() {
+      return in.available() == 0;
+    }
+
+    @Override
+    public boolean isReady() {
+      return listener != null;
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      listener = readListener;
+    }
+  }
+
+  private static class NoopReadListener implements ReadListener {
+    @Override
+    public void onDataAvailable() {}
+
+    @Override
+    public void onAllDataRead() {}
+
+    @Override
+    public void onError(Throwable t) {}
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.api.ci.BuildImportRequest;
+import com.datastax.butler.commons.json.Json;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+class JsonConfigTest {
+  private static final BuildImportRequest BUILD =
+      new BuildImportRequest(
+          "ci",
+          "main",
+          12,
+          1000,
+          20,
+          null,
+          List.of(
+              new BuildImportRequest.TestRun(
+                  "com.example.Suite", "test", null, "UNIT", true, false, 5, null, null)));
+
+  @Test
+  void shouldMapBinaryFormatsAsJson() throws Exception {
+    for (ObjectMapper binary : List.of(Json.smileMapper(), Json.cborMapper())) {
+      byte[] bytes = binary.writeValueAsBytes(BUILD);
+      assertEquals(BUILD, binary.readValue(bytes, BuildImportRequest.class));
+      // same property names as JSON
+      assertTrue(binary.readTree(bytes).has("build_number"));
+    }
+  }
+
+  @Test
+  void shouldNegotiateBinaryFormatsAfterJson() {
+    List<HttpMessageConverter<?>> converters = new ArrayList<>();
+    converters.add(new MappingJackson2HttpMessageConverter(Json.mapper()));
+    converters.add(new MappingJackson2SmileHttpMessageConverter());
+    new JsonConfig().extendMessageConverters(converters);
+
+    assertEquals(3, converters.size());
+    assertTrue(converters.get(0).canWrite(BuildImportRequest.class, MediaType.ALL));
+    assertTrue(converters.get(0).getSupportedMediaTypes().contains(MediaType.APPLICATION_JSON));
+    var smile = (MappingJackson2SmileHttpMessageConverter) converters.get(1);
+    assertSame(Json.smileMapper(), smile.getObjectMapper());
+    assertTrue(
+        converters.get(2).canRead(BuildImportRequest.class, MediaType.valueOf("application/cbor")));
+  }
+}
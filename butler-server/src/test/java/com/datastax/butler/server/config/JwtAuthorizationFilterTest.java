@@ -0,0 +1,72 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+class JwtAuthorizationFilterTest {
+  /** Long enough for HS512 (at least 64 bytes). */
+  private static final String SECRET = "test-secret-".repeat(6);
+
+  private final JwtConfig config = new JwtConfig(SECRET);
+  /** Authorities of each user, as stored. */
+  private final Map<String, List<SimpleGrantedAuthority>> stored = new ConcurrentHashMap<>();
+
+  private final JwtAuthorizationFilter filter =
+      new JwtAuthorizationFilter(
+          authentication -> null, config, user -> stored.getOrDefault(user, List.of()));
+
+  private String header(String username) {
+    return JwtConfig.HEADER_PREFIX
+        + Jwts.builder()
+            .signWith(config.secretKey(), SignatureAlgorithm.HS512)
+            .setSubject(username)
+            .compact();
+  }
+
+  private Set<String> authorities(String username) {
+    var authentication = filter.authenticate(header(username));
+    assertEquals(username, authentication.getPrincipal());
+    return authentication.getAuthorities().stream()
+        .map(GrantedAuthority::getAuthority)
+        .collect(Collectors.toSet());
+  }
+
+  @Test
+  void shouldGrantOnlyAuthoritiesOfTheTokenUser() {
+    stored.put("admin", List.of(new SimpleGrantedAuthority("ROLE_ADMIN")));
+    stored.put("user", List.of(new SimpleGrantedAuthority("ROLE_USER")));
+
+    assertEquals(Set.of("ROLE_ADMIN"), authorities("admin"));
+    assertEquals(Set.of("ROLE_USER"), authorities("user"));
+    assertEquals(Set.of(), authorities("other"));
+  }
+
+  @Test
+  void shouldLookUpAuthoritiesOnEveryRequest() {
+    assertEquals(Set.of(), authorities("user"));
+    stored.put("user", List.of(new SimpleGrantedAuthority("ROLE_ADMIN")));
+    assertEquals(Set.of("ROLE_ADMIN"), authorities("user"));
+  }
+
+  @Test
+  void shouldNotAuthenticateInvalidTokens() {
+    assertNull(filter.authenticate(null));
+    assertNull(filter.authenticate("Basic dXNlcjpwYXNzd29yZA=="));
+    assertNull(filter.authenticate(JwtConfig.HEADER_PREFIX + "not-a-token"));
+  }
+}
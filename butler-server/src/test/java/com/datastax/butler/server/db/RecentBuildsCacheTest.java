@@ -0,0 +1,177 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.commons.jenkins.JenkinsBuild;
+import com.datastax.butler.server.cache.CacheRegistry;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+class RecentBuildsCacheTest {
+
+  private static final long JOB = 1;
+
+  private final Instant now = Instant.now();
+  /** Builds "in the database", for the fake loader. */
+  private final List<StoredBuild> stored = new ArrayList<>();
+
+  private int loads;
+
+  private StoredBuild build(long id, boolean usable) {
+    return build(id, usable, 0);
+  }
+
+  private StoredBuild build(long id, boolean usable, long failed) {
+    return new StoredBuild(
+        id,
+        JOB,
+        (int) id,
+        null,
+        JenkinsBuild.Status.SUCCESS,
+        now.plusSeconds(id),
+        1000,
+        usable,
+        true,
+        failed,
+        10,
+        0);
+  }
+
+  private RecentBuildsCache cache(int capacity) {
+    return cache(capacity, 1000);
+  }
+
+  private RecentBuildsCache cache(int capacity, long maxBuilds) {
+    return new RecentBuildsCache(
+        new CacheRegistry(),
+        capacity,
+        maxBuilds,
+        (jobDbId, limit) -> {
+          loads++;
+          return stored.stream()
+              .filter(b -> b.jobId() == jobDbId)
+              .sorted(Comparator.comparing(StoredBuild::startTime).reversed())
+              .limit(limit)
+              .collect(Collectors.toList());
+        });
+  }
+
+  private static List<Long> ids(Optional<List<StoredBuild>> builds) {
+    return builds.orElseThrow().stream().map(StoredBuild::id).collect(Collectors.toList());
+  }
+
+  @Test
+  void shouldLoadJobOnce() {
+    stored.add(build(1, true));
+    stored.add(build(2, false));
+    stored.add(build(3, true));
+    var cache = cache(4);
+
+    assertEquals(List.of(3L, 2L), ids(cache.recent(JOB, 2, false)));
+    assertEquals(List.of(3L, 1L), ids(cache.recent(JOB, 5, true)));
+    assertEquals(1, loads);
+    assertEquals(List.of(), ids(cache.recent(2, 5, false)));
+  }
+
+  @Test
+  void shouldNotAnswerBeyondCachedBuilds() {
+    for (long id = 1; id <= 4; id++) {
+      stored.add(build(id, id == 1));
+    }
+    var cache = cache(3);
+
+    assertEquals(List.of(4L, 3L, 2L), ids(cache.recent(JOB, 3, false)));
+    assertTrue(cache.recent(JOB, 1, true).isEmpty());
+  }
+
+  @Test
+  void shouldApplyChanges() {
+    stored.add(build(1, true));
+    stored.add(build(2, true));
+    var cache = cache(3);
+    cache.recent(JOB, 1, false);
+
+    cache.added(build(4, true));
+    cache.added(build(3, false));
+    assertEquals(List.of(4L, 3L, 2L), ids(cache.recent(JOB, 3, false)));
+
+    cache.updated(build(2, true, 5));
+    assertEquals(5, cache.recent(JOB, 3, false).orElseThrow().get(2).failedTests());
+
+    cache.removed(JOB, 4);
+    assertEquals(List.of(3L, 2L), ids(cache.recent(JOB, 2, false)));
+    assertEquals(1, loads);
+  }
+
+  @Test
+  void shouldReloadAfterDeletionsOfFullJob() {
+    for (long id = 1; id <= 3; id++) {
+      stored.add(build(id, true));
+    }
+    var cache = cache(2);
+    assertEquals(List.of(3L, 2L), ids(cache.recent(JOB, 2, false)));
+
+    stored.removeIf(b -> b.id() == 3);
+    cache.removed(JOB, 3);
+    assertTrue(cache.recent(JOB, 2, false).isEmpty());
+    assertEquals(List.of(2L, 1L), ids(cache.recent(JOB, 2, false)));
+    assertEquals(2, loads);
+  }
+
+  @Test
+  void shouldIgnoreChangesOfJobsNotLoaded() {
+    stored.add(build(1, true));
+    var cache = cache(2);
+    cache.added(build(1, true));
+    cache.removed(JOB, 1);
+    assertEquals(0, loads);
+    assertEquals(List.of(1L), ids(cache.recent(JOB, 2, false)));
+
+    cache.invalidateAll();
+    cache.recent(JOB, 2, false);
+    assertEquals(2, loads);
+  }
+
+  @Test
+  void shouldReloadJobWhoseBuildChangedUnseen() {
+    stored.add(build(1, true));
+    var cache = cache(2);
+    assertFalse(cache.isCached(JOB));
+    cache.recent(JOB, 2, false);
+    assertTrue(cache.isCached(JOB));
+
+    stored.add(build(2, true));
+    cache.changed(JOB);
+    assertFalse(cache.isCached(JOB));
+    assertEquals(List.of(2L, 1L), ids(cache.recent(JOB, 2, false)));
+    assertEquals(2, loads);
+  }
+
+  @Test
+  void shouldBoundBuildsOfAllJobs() {
+    for (long job = 1; job <= 10; job++) {
+      stored.add(
+          new StoredBuild(
+              job, job, 1, null, JenkinsBuild.Status.SUCCESS, now, 1000, true, true, 0, 10, 0));
+    }
+    // each job weighs its single build plus one
+    var cache = cache(2, 6);
+    for (long job = 1; job <= 10; job++) {
+      assertEquals(List.of(job), ids(cache.recent(job, 2, false)));
+    }
+    long cachedJobs = LongStream.rangeClosed(1, 10).filter(cache::isCached).count();
+    assertTrue(cachedJobs <= 3, cachedJobs + " jobs cached");
+    assertTrue(cache.isCached(10));
+  }
+}
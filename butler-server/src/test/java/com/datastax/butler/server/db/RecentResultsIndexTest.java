@@ -0,0 +1,151 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.jenkins.JenkinsBuild;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.server.events.IngestEvent.BuildStored;
+import com.datastax.butler.server.service.ClusterService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+class RecentResultsIndexTest {
+  private static final long JOB = 7;
+
+  private final JobsDb jobsDb = Mockito.mock(JobsDb.class);
+  private final BuildsDb buildsDb = Mockito.mock(BuildsDb.class);
+  private final TestRunsDb testRunsDb = Mockito.mock(TestRunsDb.class);
+  private final Instant now = Instant.now();
+  /** Ids of the tests failed by each build, as stored in the database. */
+  private final Map<Long, List<Long>> failures = new ConcurrentHashMap<>();
+
+  @BeforeEach
+  void setUp() {
+    var upstream = new JobId(WorkflowId.of("ci"), Branch.fromString("main"));
+    when(jobsDb.getConfiguredUpstreamJobs()).thenReturn(Set.of(upstream));
+    when(jobsDb.dbIdIfExists(upstream)).thenReturn(OptionalLong.of(JOB));
+    doAnswer(
+            invocation -> {
+              RowCallbackHandler handler = invocation.getArgument(1);
+              for (long testId : failures.get(invocation.<Long>getArgument(0))) {
+                var row = Mockito.mock(ResultSet.class);
+                when(row.getLong("test_id")).thenReturn(testId);
+                when(row.getBoolean("failed")).thenReturn(true);
+                handler.processRow(row);
+              }
+              return null;
+            })
+        .when(testRunsDb)
+        .streamResultsOfBuild(anyLong(), any());
+  }
+
+  private RecentResultsIndex index(boolean onlyNode) {
+    var cluster = Mockito.mock(ClusterService.class);
+    when(cluster.isOnlyNode()).thenReturn(onlyNode);
+    return new RecentResultsIndex(
+        jobsDb, buildsDb, testRunsDb, cluster, MoreExecutors.newDirectExecutorService());
+  }
+
+  private StoredBuild build(long id, boolean fullyStored, Long... failedTests) {
+    failures.put(id, List.of(failedTests));
+    return new StoredBuild(
+        id,
+        JOB,
+        (int) id,
+        null,
+        JenkinsBuild.Status.UNSTABLE,
+        now.plusSeconds(id),
+        10,
+        true,
+        fullyStored,
+        failedTests.length,
+        failedTests.length,
+        0);
+  }
+
+  @Test
+  void shouldCatchUpWithBuildsStoredByOtherNodes() {
+    var index = index(false);
+    var first = build(1, false, 10L);
+    var deleted = build(2, true, 11L);
+    when(buildsDb.recentUsableOf(JOB, RecentResultsIndex.INDEXED_BUILDS))
+        .thenReturn(List.of(deleted, first));
+    index.populate();
+    assertEquals(Set.of(10L, 11L), Set.copyOf(index.failedTests(List.of(deleted, first))));
+
+    // the first build is fully stored and another build replaces the deleted one
+    var completed = build(1, true, 10L, 12L);
+    var added = build(3, true, 13L);
+    when(buildsDb.recentUsableOf(JOB, RecentResultsIndex.INDEXED_BUILDS))
+        .thenReturn(List.of(added, completed));
+    index.resync();
+    assertEquals(Set.of(10L, 12L, 13L), Set.copyOf(index.failedTests(List.of(added, completed))));
+    verify(testRunsDb, never()).getFailuresForBuilds(anyList());
+    verify(testRunsDb, times(4)).streamResultsOfBuild(anyLong(), any());
+
+    // the deleted build is no longer indexed
+    index.failedTests(List.of(deleted));
+    verify(testRunsDb).getFailuresForBuilds(List.of(2L));
+  }
+
+  @Test
+  void shouldReloadStoredBuildsOncePerJob() {
+    var index = index(true);
+    var first = build(1, false, 10L);
+    when(buildsDb.recentUsableOf(JOB, RecentResultsIndex.INDEXED_BUILDS))
+        .thenReturn(List.of(first));
+    index.populate();
+
+    // the first build is fully stored and another build is added, in the same batch
+    var completed = build(1, true, 10L, 12L);
+    var added = build(2, true, 13L);
+    when(buildsDb.recentUsableOf(JOB, RecentResultsIndex.INDEXED_BUILDS))
+        .thenReturn(List.of(added, completed));
+    index.buildStored(JOB, 1);
+    index.buildStored(JOB, 2);
+    // outdated results are dropped right away
+    index.failedTests(List.of(first));
+    verify(testRunsDb).getFailuresForBuilds(List.of(1L));
+
+    index.reload(List.of(new BuildStored(JOB, 1), new BuildStored(JOB, 2)));
+    assertEquals(Set.of(10L, 12L, 13L), Set.copyOf(index.failedTests(List.of(added, completed))));
+    verify(buildsDb, times(2)).recentUsableOf(anyLong(), anyInt());
+    verify(testRunsDb, times(3)).streamResultsOfBuild(anyLong(), any());
+  }
+
+  @Test
+  void shouldRelyOnEventsAsOnlyNode() {
+    var index = index(true);
+    when(buildsDb.recentUsableOf(JOB, RecentResultsIndex.INDEXED_BUILDS))
+        .thenReturn(List.of(build(1, true, 10L)));
+    index.populate();
+    index.resync();
+    verify(buildsDb, times(1)).recentUsableOf(anyLong(), anyInt());
+  }
+}
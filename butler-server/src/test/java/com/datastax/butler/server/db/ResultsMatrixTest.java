@@ -0,0 +1,100 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class ResultsMatrixTest {
+
+  private final Instant now = Instant.now();
+
+  /** Results of consecutive tests from firstTest: P(assed), F(ailed), S(kipped) or - (missing). */
+  private static ResultsMatrix.BuildResults results(long firstTest, String story) {
+    var results = new ResultsMatrix.BuildResults();
+    for (int i = 0; i < story.length(); i++) {
+      char c = story.charAt(i);
+      if (c != '-') results.add(firstTest + i, c == 'F', c == 'S');
+    }
+    return results;
+  }
+
+  @Test
+  void shouldFindTestsFailedInAnyOfTheBuilds() {
+    var matrix = new ResultsMatrix(8);
+    matrix.put(1, now.minusSeconds(20), results(100, "PFPS"));
+    matrix.put(2, now.minusSeconds(10), results(100, "PPF-"));
+    matrix.put(3, now, results(100, "PPPP"));
+
+    assertEquals(Set.of(101L, 102L), Set.copyOf(matrix.failedInAny(List.of(1L, 2L, 3L))));
+    assertEquals(List.of(102L), matrix.failedInAny(List.of(2L, 3L)));
+    assertEquals(List.of(), matrix.failedInAny(List.of(3L)));
+    assertNull(matrix.failedInAny(List.of(3L, 4L)));
+  }
+
+  @Test
+  void shouldKeepResultsOfManyTests() {
+    var matrix = new ResultsMatrix(8);
+    var many = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      many.append(i % 1000 == 999 ? 'F' : 'P');
+    }
+    matrix.put(1, now, results(0, many.toString()));
+    matrix.put(2, now, results(5000, "F"));
+
+    assertEquals(
+        Set.of(999L, 1999L, 2999L, 3999L, 4999L), Set.copyOf(matrix.failedInAny(List.of(1L))));
+    assertEquals(List.of(5000L), matrix.failedInAny(List.of(2L)));
+    assertEquals(ResultsMatrix.PASSED, matrix.result(998, 1));
+    assertEquals(ResultsMatrix.MISSING, matrix.result(998, 2));
+    assertEquals(ResultsMatrix.MISSING, matrix.result(5000, 1));
+  }
+
+  @Test
+  void shouldPreferFailureOfAnyVariant() {
+    var results = new ResultsMatrix.BuildResults();
+    results.add(1, false, false);
+    results.add(1, true, false);
+    results.add(1, false, true);
+    results.add(2, false, true);
+    results.add(2, false, false);
+    var matrix = new ResultsMatrix(8);
+    matrix.put(1, now, results);
+    assertEquals(ResultsMatrix.FAILED, matrix.result(1, 1));
+    assertEquals(ResultsMatrix.PASSED, matrix.result(2, 1));
+  }
+
+  @Test
+  void shouldKeepOnlyMostRecentBuilds() {
+    var matrix = new ResultsMatrix(2);
+    matrix.put(2, now.minusSeconds(10), results(1, "F"));
+    matrix.put(3, now, results(1, "P"));
+    matrix.put(1, now.minusSeconds(20), results(1, "S"));
+    assertFalse(matrix.contains(1));
+    assertEquals(2, matrix.numBuilds());
+
+    matrix.put(4, now.plusSeconds(10), results(1, "P"));
+    assertFalse(matrix.contains(2));
+    assertNull(matrix.failedInAny(List.of(2L)));
+    assertEquals(List.of(), matrix.failedInAny(List.of(3L, 4L)));
+    assertEquals(List.of(4L, 3L), matrix.buildIds());
+  }
+
+  @Test
+  void shouldReplaceResultsOfBuild() {
+    var matrix = new ResultsMatrix(2);
+    matrix.put(1, now, results(1, "PP"));
+    matrix.put(1, now, results(1, "PF"));
+    assertEquals(1, matrix.numBuilds());
+    assertEquals(List.of(2L), matrix.failedInAny(List.of(1L)));
+    matrix.remove(1);
+    assertNull(matrix.failedInAny(List.of(1L)));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.dev.UpstreamFailures;
+import com.datastax.butler.commons.jenkins.JenkinsBuild;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestVariant;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UpstreamBaselineStoreTest {
+
+  private final JobId upstream = new JobId(WorkflowId.of("ci"), Branch.fromString("main"));
+
+  private StoredBuild build(long id) {
+    return new StoredBuild(
+        id,
+        7L,
+        (int) id,
+        null,
+        JenkinsBuild.Status.SUCCESS,
+        Instant.now(),
+        1000,
+        true,
+        true,
+        0,
+        100,
+        10);
+  }
+
+  private UpstreamBaseline baseline(int numBuilds, Instant computedAt) {
+    return new UpstreamBaseline(
+        upstream,
+        numBuilds,
+        List.of(),
+        List.of(),
+        new UpstreamFailures(List.of()),
+        Map.of(),
+        computedAt);
+  }
+
+  @Test
+  void shouldRestoreSnapshotForSameBuilds(@TempDir Path dir) {
+    var store = new UpstreamBaselineStore(dir.toString());
+    var builds = List.of(build(2), build(1));
+    var runs =
+        List.of(
+            new StoredTestRun(10, TestVariant.DEFAULT, 2, null, true, false, 0, "http://x/2"),
+            new StoredTestRun(10, TestVariant.fromString("v1"), 1, null, false, true, 0, null));
+    store.saveSnapshot(upstream, 16, builds, runs);
+
+    var restored = store.loadSnapshot(upstream, 16, builds).orElseThrow();
+    assertEquals(2, restored.size());
+    assertEquals(runs.get(0).key(), restored.get(0).key());
+    assertTrue(restored.get(0).failed());
+    assertEquals("http://x/2", restored.get(0).runUrl());
+    assertEquals(runs.get(1).key(), restored.get(1).key());
+    assertTrue(restored.get(1).skipped());
+  }
+
+  @Test
+  void shouldIgnoreOutdatedSnapshot(@TempDir Path dir) {
+    var store = new UpstreamBaselineStore(dir.toString());
+    store.saveSnapshot(upstream, 16, List.of(build(1)), List.of());
+    assertTrue(store.loadSnapshot(upstream, 16, List.of(build(2), build(1))).isEmpty());
+    assertTrue(store.loadSnapshot(upstream, 32, List.of(build(1))).isEmpty());
+  }
+
+  @Test
+  void shouldNotUseSnapshotsIfNotConfigured() {
+    var store = new UpstreamBaselineStore("");
+    store.saveSnapshot(upstream, 16, List.of(build(1)), List.of());
+    assertTrue(store.loadSnapshot(upstream, 16, List.of(build(1))).isEmpty());
+  }
+
+  @Test
+  void shouldKeepBaselinesPerNumberOfBuilds() {
+    var store = new UpstreamBaselineStore("");
+    store.put(baseline(16, Instant.now()), store.generation());
+    store.put(baseline(32, Instant.now()), store.generation());
+    assertEquals(16, store.get(upstream, 16).orElseThrow().numBuilds());
+    assertEquals(32, store.get(upstream, 32).orElseThrow().numBuilds());
+    assertTrue(store.get(upstream, 8).isEmpty());
+    store.invalidateAll();
+    assertTrue(store.get(upstream, 16).isEmpty());
+    assertTrue(store.jobs().isEmpty());
+  }
+
+  @Test
+  void shouldNotStoreBaselineComputedBeforeInvalidation() {
+    var store = new UpstreamBaselineStore("");
+    long generation = store.generation();
+    store.invalidateAll();
+    assertFalse(store.put(baseline(16, Instant.now()), generation));
+    assertTrue(store.get(upstream, 16).isEmpty());
+    assertTrue(store.put(baseline(16, Instant.now()), store.generation()));
+    assertTrue(store.get(upstream, 16).isPresent());
+  }
+
+  @Test
+  void shouldEvictOldestBaselines() {
+    var store = new UpstreamBaselineStore("");
+    var oldest = Instant.now().minusSeconds(3600);
+    store.put(baseline(1, oldest), store.generation());
+    for (int i = 2; i <= 64; i++) {
+      store.put(baseline(i, oldest.plusSeconds(i)), store.generation());
+    }
+    assertTrue(store.get(upstream, 1).isPresent());
+    store.put(baseline(65, Instant.now()), store.generation());
+    assertTrue(store.get(upstream, 1).isEmpty());
+    assertEquals(64, store.depthsOf(upstream).size());
+  }
+}
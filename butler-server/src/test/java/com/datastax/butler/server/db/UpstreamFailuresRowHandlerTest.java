@@ -0,0 +1,111 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.db;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+import com.datastax.butler.commons.jenkins.TestVariant;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class UpstreamFailuresRowHandlerTest {
+
+  private final ResultSet rs = Mockito.mock(ResultSet.class);
+
+  private void row(
+      UpstreamFailuresRowHandler handler,
+      long testId,
+      long buildId,
+      int daysAgo,
+      String variant,
+      boolean failed)
+      throws SQLException {
+    when(rs.getLong("test_id")).thenReturn(testId);
+    when(rs.getString("category")).thenReturn("UNKNOWN");
+    when(rs.getString("path")).thenReturn("com.example");
+    when(rs.getString("class_name")).thenReturn("TestClass");
+    when(rs.getString("test_name")).thenReturn("test" + testId);
+    when(rs.getLong("job_id")).thenReturn(7L);
+    when(rs.getString("workflow")).thenReturn("ci-build");
+    when(rs.getString("job_name")).thenReturn("main");
+    when(rs.getLong("build_id")).thenReturn(buildId);
+    when(rs.getInt("build_number")).thenReturn((int) buildId + 1000);
+    when(rs.getLong("start_time"))
+        .thenReturn(Instant.now().minus(daysAgo, ChronoUnit.DAYS).getEpochSecond());
+    when(rs.getString("variant")).thenReturn(variant);
+    when(rs.getBoolean("failed")).thenReturn(failed);
+    when(rs.getBoolean("skipped")).thenReturn(false);
+    when(rs.getString("run_url")).thenReturn(failed ? "https://jenkins.example.com/1" : null);
+    handler.processRow(rs);
+  }
+
+  @Test
+  void shouldAccumulateRunsPerTest() throws SQLException {
+    var handler = new UpstreamFailuresRowHandler(false, false);
+    row(handler, 1, 10, 1, "variant-x", true);
+    row(handler, 1, 11, 10, "", false);
+    row(handler, 1, 12, 40, "variant-x", true);
+    row(handler, 2, 10, 1, null, false);
+
+    var failures = handler.failures();
+    assertEquals(2, failures.size());
+    var first = failures.get(0);
+    assertEquals("test1", first.test().testName());
+    assertEquals(3, first.runs());
+    assertEquals(1, first.lastWeekRuns());
+    assertEquals(2, first.lastMonthRuns());
+    assertEquals(3, first.failureDetails().allRuns().size());
+    assertEquals(2, first.failureDetails().failures());
+    assertEquals(1010, first.failureDetails().lastFailed().id().buildNumber());
+    assertEquals("main", first.failureDetails().last().id().jobId().jobName().toString());
+    assertEquals("ci-build", first.failureDetails().last().id().jobId().workflow().name());
+    assertEquals("variant-x", first.failureDetails().lastFailed().variant().toString());
+    assertEquals(2, first.failureDetails().allByVariants().size());
+
+    var second = failures.get(1);
+    assertEquals(1, second.runs());
+    assertEquals(0, second.failureDetails().failures());
+    assertEquals(TestVariant.DEFAULT, second.failureDetails().last().variant());
+    assertNull(second.failureDetails().last().url());
+  }
+
+  @Test
+  void shouldShareBuildsBetweenTests() throws SQLException {
+    var handler = new UpstreamFailuresRowHandler(false, false);
+    row(handler, 1, 10, 1, "", true);
+    row(handler, 2, 10, 1, "", true);
+    var failures = handler.failures();
+    assertSame(
+        failures.get(0).failureDetails().last().id(),
+        failures.get(1).failureDetails().last().id());
+  }
+
+  @Test
+  void shouldKeepOnlyFailedRunsButCountAll() throws SQLException {
+    var handler = new UpstreamFailuresRowHandler(true, true);
+    row(handler, 1, 10, 1, "", false);
+    row(handler, 1, 11, 2, "", true);
+    row(handler, 1, 12, 3, "", false);
+
+    var failure = handler.failures().get(0);
+    assertEquals(3, failure.runs());
+    assertEquals(3, failure.lastWeekRuns());
+    assertEquals(1, failure.failureDetails().allRuns().size());
+    assertEquals(1, failure.failureDetails().failures());
+    assertTrue(failure.failureDetails().allByVariants().isEmpty());
+    assertTrue(failure.failureDetails().allByVersions().isEmpty());
+  }
+
+  @Test
+  void shouldReturnNoFailuresWithoutRows() {
+    assertTrue(new UpstreamFailuresRowHandler(false, false).failures().isEmpty());
+  }
+}
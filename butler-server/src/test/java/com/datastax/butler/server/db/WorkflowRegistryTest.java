@@ -44,4 +44,14 @@ class WorkflowRegistryTest {
     r.addAll(List.of(x, y));
     assertEquals(List.of(x, y), r.stream().collect(Collectors.toList()));
   }
+
+  @Test
+  void testKeepFirstRegisteredWorkflow() {
+    var r = new WorkflowRegistry();
+    var other = new Workflow("x", true);
+    r.addAll(List.of(x, y));
+    r.add(other);
+    assertSame(x, r.getWorkflow("x").orElseThrow());
+    assertEquals(List.of(x, y), r.stream().collect(Collectors.toList()));
+  }
 }
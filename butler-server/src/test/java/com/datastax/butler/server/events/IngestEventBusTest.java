@@ -0,0 +1,135 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.events;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.server.events.IngestEvent.BuildDeleted;
+import com.datastax.butler.server.events.IngestEvent.BuildStored;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class IngestEventBusTest {
+
+  private final IngestEventBus bus = new IngestEventBus();
+
+  @Test
+  void shouldDeliverEventsOfSubscribedTypeInBatches() {
+    List<Runnable> pending = new ArrayList<>();
+    List<List<BuildStored>> batches = new ArrayList<>();
+    bus.subscriber("test")
+        .batchSize(2)
+        .executor(pending::add)
+        .subscribe(BuildStored.class, batches::add);
+
+    for (int i = 1; i <= 3; i++) {
+      bus.publish(new BuildStored(1, i));
+    }
+    bus.publish(new BuildDeleted(1, 1));
+    // a single drain is scheduled however many events are queued
+    assertEquals(1, pending.size());
+    pending.get(0).run();
+    assertEquals(
+        List.of(
+            List.of(new BuildStored(1, 1), new BuildStored(1, 2)), List.of(new BuildStored(1, 3))),
+        batches);
+  }
+
+  @Test
+  void shouldDeliverToInlineSubscribersFirst() throws Exception {
+    List<String> deliveries = new ArrayList<>();
+    var delivered = new CountDownLatch(1);
+    bus.subscriber("async")
+        .subscribe(
+            BuildStored.class,
+            events -> {
+              synchronized (deliveries) {
+                deliveries.add("async");
+              }
+              delivered.countDown();
+            });
+    bus.subscriber("inline")
+        .inline()
+        .subscribe(
+            BuildStored.class,
+            events -> {
+              synchronized (deliveries) {
+                deliveries.add("inline");
+              }
+            });
+
+    bus.publish(new BuildStored(1, 1));
+    assertTrue(delivered.await(10, TimeUnit.SECONDS));
+    synchronized (deliveries) {
+      assertEquals(List.of("inline", "async"), deliveries);
+    }
+  }
+
+  @Test
+  void shouldDeliverAfterCommit() {
+    List<BuildStored> delivered = new ArrayList<>();
+    bus.subscriber("inline").inline().subscribe(BuildStored.class, delivered::addAll);
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      bus.publish(new BuildStored(1, 1));
+      assertTrue(delivered.isEmpty());
+      for (TransactionSynchronization sync :
+          TransactionSynchronizationManager.getSynchronizations()) {
+        sync.afterCommit();
+      }
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    assertEquals(List.of(new BuildStored(1, 1)), delivered);
+  }
+
+  @Test
+  void shouldBlockPublisherWhenSubscriberIsFull() throws Exception {
+    var release = new CountDownLatch(1);
+    bus.subscriber("slow")
+        .batchSize(1)
+        .capacity(1)
+        .executor(Executors.newSingleThreadExecutor())
+        .subscribe(
+            BuildStored.class,
+            events -> {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+
+    var publisher =
+        new Thread(
+            () -> {
+              for (int i = 1; i <= 3; i++) {
+                bus.publish(new BuildStored(1, i));
+              }
+            });
+    publisher.start();
+    // the first event is being handled and the second one fills the queue
+    publisher.join(200);
+    assertTrue(publisher.isAlive());
+    release.countDown();
+    publisher.join(10_000);
+    assertFalse(publisher.isAlive());
+  }
+
+  @Test
+  void shouldRejectInvalidConfiguration() {
+    var builder = bus.subscriber("invalid").batchSize(10).capacity(5);
+    assertThrows(
+        IllegalArgumentException.class, () -> builder.subscribe(BuildStored.class, e -> {}));
+  }
+}
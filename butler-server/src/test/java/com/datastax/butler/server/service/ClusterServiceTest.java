@@ -0,0 +1,105 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.datastax.butler.server.config.RuntimeRole;
+import com.datastax.butler.server.db.LeasesDb;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.QueryTimeoutException;
+
+class ClusterServiceTest {
+
+  private final LeasesDb leasesDb = Mockito.mock(LeasesDb.class);
+
+  @Test
+  void shouldOnlyMoveKeysToAddedNode() {
+    var twoNodes = List.of("node-1", "node-2");
+    var threeNodes = List.of("node-1", "node-2", "node-3");
+    int moved = 0;
+    for (int i = 0; i < 1000; i++) {
+      var key = "load:job-" + i;
+      var before = ClusterService.assignedNode(twoNodes, key);
+      var after = ClusterService.assignedNode(threeNodes, key);
+      if (!before.equals(after)) {
+        assertEquals("node-3", after);
+        moved++;
+      }
+    }
+    // roughly a third of the keys moves to the new node
+    assertTrue(moved > 250 && moved < 420, "moved " + moved);
+  }
+
+  @Test
+  void shouldTrackLiveNodes() {
+    var cluster = new ClusterService(leasesDb, RuntimeRole.ALL, "node-2");
+    assertEquals(List.of("node-2"), cluster.liveNodes());
+    assertTrue(cluster.isAssigned("load:any"));
+
+    when(leasesDb.owners("node:")).thenReturn(List.of("node-3", "node-1"));
+    cluster.heartbeat();
+    verify(leasesDb).tryAcquire("node:node-2", "node-2", ClusterService.NODE_TTL);
+    assertEquals(List.of("node-1", "node-2", "node-3"), cluster.liveNodes());
+    assertFalse(cluster.isOnlyNode());
+
+    // nodes are kept as they are if the database cannot be reached
+    when(leasesDb.owners("node:")).thenThrow(new QueryTimeoutException("timeout"));
+    cluster.heartbeat();
+    assertEquals(List.of("node-1", "node-2", "node-3"), cluster.liveNodes());
+  }
+
+  @Test
+  void shouldAcquireLeasesWithDistinctOwners() {
+    var cluster = new ClusterService(leasesDb, RuntimeRole.ALL, "node-1");
+    var ttl = Duration.ofMinutes(1);
+    when(leasesDb.tryAcquire(eq("load:a"), any(), eq(ttl))).thenReturn(true, false);
+
+    var lease = cluster.tryAcquire("load:a", ttl).orElseThrow();
+    verify(leasesDb).tryAcquire("load:a", "node-1/1", ttl);
+    assertTrue(cluster.tryAcquire("load:a", ttl).isEmpty());
+    verify(leasesDb).tryAcquire("load:a", "node-1/2", ttl);
+
+    lease.close();
+    verify(leasesDb).release("load:a", "node-1/1");
+  }
+
+  @Test
+  void shouldKnowWhenOnlyNode() {
+    var cluster = new ClusterService(leasesDb, RuntimeRole.ALL, "node-1");
+    assertFalse(cluster.isOnlyNode());
+
+    when(leasesDb.owners("node:")).thenReturn(List.of("node-1"));
+    cluster.heartbeat();
+    assertTrue(cluster.isOnlyNode());
+
+    // API nodes store builds too, even though they take no work
+    when(leasesDb.owners("api-node:")).thenReturn(List.of("node-2"));
+    cluster.heartbeat();
+    assertFalse(cluster.isOnlyNode());
+    assertEquals(List.of("node-1"), cluster.liveNodes());
+  }
+
+  @Test
+  void shouldJoinAsApiInstanceWithoutTakingWork() {
+    var cluster = new ClusterService(leasesDb, RuntimeRole.API, "node-1");
+    when(leasesDb.owners("node:")).thenReturn(List.of("node-2"));
+    cluster.heartbeat();
+    verify(leasesDb).tryAcquire("api-node:node-1", "node-1", ClusterService.NODE_TTL);
+    assertEquals(List.of("node-1"), cluster.liveNodes());
+    assertFalse(cluster.isOnlyNode());
+
+    cluster.leave();
+    verify(leasesDb).release("api-node:node-1", "node-1");
+  }
+}
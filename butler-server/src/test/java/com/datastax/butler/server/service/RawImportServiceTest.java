@@ -0,0 +1,296 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.datastax.butler.api.ci.BuildImportRequest;
+import com.datastax.butler.api.ci.BuildImportResult;
+import com.datastax.butler.commons.dev.Workflow;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestRun;
+import com.datastax.butler.commons.json.Json;
+import com.datastax.butler.server.config.RuntimeRole;
+import com.datastax.butler.server.db.ImportTasksDb;
+import com.datastax.butler.server.db.JobsDb;
+import com.datastax.butler.server.db.LeasesDb;
+import com.datastax.butler.server.db.StoredImportTask;
+import com.datastax.butler.server.db.UpstreamWorflowsDb;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.core.io.ByteArrayResource;
+
+class RawImportServiceTest {
+  private static final int MAX_BACKLOG = 10;
+
+  private final ImportTasksDb importTasksDb = Mockito.mock(ImportTasksDb.class);
+  private final JobsDb jobsDb = Mockito.mock(JobsDb.class);
+  private final UpstreamWorflowsDb workflowsDb = Mockito.mock(UpstreamWorflowsDb.class);
+  private final BuildsService buildsService = Mockito.mock(BuildsService.class);
+  private final ClusterService cluster =
+      new ClusterService(Mockito.mock(LeasesDb.class), RuntimeRole.ALL, "node-1");
+  private final List<Runnable> scheduled = new ArrayList<>();
+
+  private RawImportService service(boolean runsIngestion) {
+    ExecutorService executor = null;
+    if (runsIngestion) {
+      executor = Mockito.mock(ExecutorService.class);
+      Mockito.doAnswer(i -> scheduled.add(i.getArgument(0))).when(executor).execute(any());
+    }
+    return new RawImportService(
+        importTasksDb,
+        jobsDb,
+        workflowsDb,
+        buildsService,
+        cluster,
+        Json.mapper(),
+        MAX_BACKLOG,
+        executor);
+  }
+
+  private static BuildImportRequest request(int buildNumber) {
+    return request("main", buildNumber);
+  }
+
+  private static BuildImportRequest request(String branch, int buildNumber) {
+    return new BuildImportRequest("ci", branch, buildNumber, 0, 10, null, List.of());
+  }
+
+  @Test
+  void shouldStoreAndRunImportWithIdleThread() {
+    var service = service(true);
+    var request = request(3);
+    UUID taskId = service.submit(request).orElseThrow();
+    var buildId = RawImportService.buildId(request);
+    verify(importTasksDb).insert(eq(taskId), eq(buildId), anyString(), eq("node-1"));
+    assertEquals(1, scheduled.size());
+
+    var jobId = JobId.forWorkflowAndBranch("ci", "main");
+    when(jobsDb.dbId(jobId)).thenReturn(42L);
+    scheduled.get(0).run();
+    verify(buildsService).importRawBuildForJob(42L, request);
+    verify(importTasksDb).finish(taskId, null);
+  }
+
+  @Test
+  void shouldQueueImportsBeyondIdleThreads() {
+    var service = service(true);
+    for (int i = 1; i <= 6; i++) {
+      service.submit(request(i));
+    }
+    assertEquals(4, scheduled.size());
+    verify(importTasksDb, Mockito.times(2)).insert(any(), any(), anyString(), isNull());
+  }
+
+  @Test
+  void shouldOnlyQueueImportsOnApiInstances() {
+    var service = service(false);
+    service.submit(request(3));
+    verify(importTasksDb).insert(any(), any(), anyString(), isNull());
+    service.claimQueuedImports();
+    verify(importTasksDb, never()).claimable(any(), anyInt());
+  }
+
+  @Test
+  void shouldRejectImportsWhenBacklogIsFull() {
+    var service = service(true);
+    when(importTasksDb.countUnfinished()).thenReturn(MAX_BACKLOG);
+    assertTrue(service.submit(request(3)).isEmpty());
+    verify(importTasksDb, never()).insert(any(), any(), any(), any());
+  }
+
+  @Test
+  void shouldRecordHeartbeatOfRunningImports() {
+    var service = service(true);
+    service.heartbeatRunningImports();
+    verify(importTasksDb, never()).heartbeat(any(), any());
+
+    UUID taskId = service.submit(request(3)).orElseThrow();
+    service.heartbeatRunningImports();
+    verify(importTasksDb).heartbeat(Set.of(taskId), "node-1");
+
+    scheduled.get(0).run();
+    Mockito.clearInvocations(importTasksDb);
+    service.heartbeatRunningImports();
+    verify(importTasksDb, never()).heartbeat(any(), any());
+  }
+
+  @Test
+  void shouldRunClaimedImportFromStoredPayload() throws Exception {
+    var service = service(true);
+    var request = request(7);
+    var taskId = UUID.randomUUID();
+    var buildId = RawImportService.buildId(request);
+    var now = Instant.now();
+    var task = new StoredImportTask(taskId, buildId, null, false, null, now, now);
+    when(importTasksDb.claimable(any(), anyInt())).thenReturn(List.of(task));
+    when(importTasksDb.claim(eq(taskId), eq("node-1"), any())).thenReturn(true);
+    when(importTasksDb.payload(taskId))
+        .thenReturn(Optional.of(Json.mapper().writeValueAsString(request)));
+
+    service.claimQueuedImports();
+    assertEquals(1, scheduled.size());
+    scheduled.get(0).run();
+    ArgumentCaptor<BuildImportRequest> imported = ArgumentCaptor.forClass(BuildImportRequest.class);
+    verify(buildsService).importRawBuildForJob(Mockito.anyLong(), imported.capture());
+    assertEquals(7, imported.getValue().buildNumber());
+    verify(importTasksDb).finish(taskId, null);
+  }
+
+  @Test
+  void shouldRecordImportError() {
+    var service = service(true);
+    when(buildsService.importRawBuildForJob(Mockito.anyLong(), any()))
+        .thenThrow(new IllegalStateException("boom"));
+    UUID taskId = service.submit(request(3)).orElseThrow();
+    scheduled.get(0).run();
+    ArgumentCaptor<String> error = ArgumentCaptor.forClass(String.class);
+    verify(importTasksDb).finish(eq(taskId), error.capture());
+    assertTrue(error.getValue().contains("boom"));
+  }
+
+  private static byte[] ndjson(Object... values) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    for (Object value : values) {
+      bytes.write(Json.mapper().writeValueAsBytes(value));
+      bytes.write('\n');
+    }
+    return bytes.toByteArray();
+  }
+
+  private static BuildImportRequest.TestRun testRun(String testCase, boolean failed) {
+    return new BuildImportRequest.TestRun(
+        "Suite", testCase, null, null, failed, false, 1, null, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<BuildImportRequest.TestRun> importStream(byte[] body) throws IOException {
+    List<BuildImportRequest.TestRun> imported = new ArrayList<>();
+    when(buildsService.importRawBuildStreamForJob(Mockito.anyLong(), any(), any()))
+        .then(
+            i -> {
+              ((Iterator<BuildImportRequest.TestRun>) i.getArgument(2))
+                  .forEachRemaining(imported::add);
+              return 1L;
+            });
+    service(true).importStream(new ByteArrayInputStream(body));
+    return imported;
+  }
+
+  @Test
+  void shouldImportStreamedBuild() throws IOException {
+    when(workflowsDb.getWorkflow("ci")).thenReturn(Optional.of(new Workflow("ci", false)));
+    var run1 = testRun("t1", false);
+    var run2 = testRun("t2", true);
+    var imported = importStream(ndjson(request(3), run1, run2));
+    assertEquals(List.of(run1, run2), imported);
+    ArgumentCaptor<BuildImportRequest> header = ArgumentCaptor.forClass(BuildImportRequest.class);
+    verify(buildsService).importRawBuildStreamForJob(Mockito.anyLong(), header.capture(), any());
+    assertEquals(3, header.getValue().buildNumber());
+  }
+
+  @Test
+  void shouldRejectInvalidStreamedBuild() throws IOException {
+    when(workflowsDb.getWorkflow("ci")).thenReturn(Optional.of(new Workflow("ci", false)));
+    var unknown = new BuildImportRequest("other", "main", 1, 0, 10, null, null);
+    assertThrows(IllegalArgumentException.class, () -> importStream(ndjson(unknown)));
+    var invalidRun = Map.of("test_suite", "Suite");
+    assertThrows(
+        IllegalArgumentException.class, () -> importStream(ndjson(request(3), invalidRun)));
+    assertThrows(IOException.class, () -> importStream("{\"workflow\":".getBytes()));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldImportJunitReports() throws IOException {
+    when(workflowsDb.getWorkflow("ci")).thenReturn(Optional.of(new Workflow("ci", false)));
+    List<TestRun> imported = new ArrayList<>();
+    when(buildsService.importReportStreamForJob(Mockito.anyLong(), any(), any()))
+        .then(
+            i -> {
+              ((Iterator<TestRun>) i.getArgument(2)).forEachRemaining(imported::add);
+              return 1L;
+            });
+    var xml =
+        "<testsuite name=\"Suite\"><testcase classname=\"Suite\" name=\"t1\"/>"
+            + "<testcase classname=\"Suite\" name=\"t2\"><failure/></testcase></testsuite>";
+    var report = new ByteArrayResource(xml.getBytes(StandardCharsets.UTF_8));
+
+    var buildId = service(true).importJunit(request(3), List.of(report));
+    assertEquals(RawImportService.buildId(request(3)), buildId);
+    assertEquals(2, imported.size());
+    assertTrue(imported.get(1).failed());
+    var unknown = new BuildImportRequest("other", "main", 3, 0, 10, null, List.of());
+    assertThrows(
+        IllegalArgumentException.class, () -> service(true).importJunit(unknown, List.of(report)));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldImportBatchOncePerJob() {
+    var service = service(true);
+    when(workflowsDb.getWorkflow("ci")).thenReturn(Optional.of(new Workflow("ci", false)));
+    var main = JobId.forWorkflowAndBranch("ci", "main");
+    var dev = JobId.forWorkflowAndBranch("ci", "dev");
+    when(jobsDb.dbId(main)).thenReturn(1L);
+    when(jobsDb.dbId(dev)).thenReturn(2L);
+    var builds = List.of(request("main", 1), request("dev", 1), request("main", 2));
+
+    List<BuildImportResult> results = service.importBatch(builds);
+    assertEquals(3, results.size());
+    for (int i = 0; i < builds.size(); i++) {
+      assertTrue(results.get(i).imported());
+      assertEquals(RawImportService.buildId(builds.get(i)), results.get(i).buildId());
+    }
+    verify(buildsService).testDbIds(any());
+    ArgumentCaptor<List<BuildImportRequest>> imported = ArgumentCaptor.forClass(List.class);
+    verify(buildsService).importRawBuildsForJob(eq(1L), imported.capture(), any());
+    assertEquals(List.of(builds.get(0), builds.get(2)), imported.getValue());
+    verify(buildsService).importRawBuildsForJob(eq(2L), eq(List.of(builds.get(1))), any());
+  }
+
+  @Test
+  void shouldReportFailuresOfBatchPerBuild() {
+    var service = service(true);
+    when(workflowsDb.getWorkflow("ci")).thenReturn(Optional.of(new Workflow("ci", false)));
+    var dev = JobId.forWorkflowAndBranch("ci", "dev");
+    when(jobsDb.dbId(dev)).thenThrow(new IllegalStateException("boom"));
+    var unknown = new BuildImportRequest("other", "main", 1, 0, 10, null, List.of());
+    var builds = List.of(request("main", 1), request("main", 1), unknown, request("dev", 1));
+
+    List<BuildImportResult> results = service.importBatch(builds);
+    assertTrue(results.get(0).imported());
+    assertFalse(results.get(1).imported());
+    assertTrue(results.get(1).error().contains("twice"));
+    assertFalse(results.get(2).imported());
+    assertTrue(results.get(2).error().contains("other"));
+    assertFalse(results.get(3).imported());
+    assertTrue(results.get(3).error().contains("boom"));
+    verify(buildsService).importRawBuildsForJob(Mockito.anyLong(), any(), any());
+  }
+}
@@ -6,15 +6,31 @@
 package com.datastax.butler.server.service.issues;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import com.datastax.butler.commons.issues.IssueLink;
+import com.datastax.butler.commons.issues.IssueTrackingProject;
+import com.datastax.butler.commons.issues.jira.JiraIssueId;
 import com.datastax.butler.commons.issues.jira.JiraProject;
 import com.datastax.butler.commons.jenkins.TestCategory;
 import com.datastax.butler.commons.jenkins.TestName;
 import com.datastax.butler.commons.jira.client.JiraClient;
+import com.datastax.butler.server.cache.CacheRegistry;
+import com.datastax.butler.server.db.TestLinkedIssuesDb;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -25,14 +41,14 @@ class IssueTrackersServiceTest {
 
   @Test
   void shouldThrowWhenGettingUnregistredProject() {
-    var service = new IssueTrackersService(null);
+    var service = new IssueTrackersService(null, new CacheRegistry());
     var prj = "NEP";
     assertThrows(IllegalArgumentException.class, () -> service.getProject(prj));
   }
 
   @Test
   void shouldTryToFindMatchingIssuesInSelectedProjects() {
-    var service = new IssueTrackersService(null);
+    var service = new IssueTrackersService(null, new CacheRegistry());
     var jiraClientA = Mockito.mock(JiraClient.class);
     var jiraClientB = Mockito.mock(JiraClient.class);
     var jiraClientC = Mockito.mock(JiraClient.class);
@@ -48,8 +64,70 @@ class IssueTrackersServiceTest {
 
   @Test
   void shouldReturnEmptyMatchingIssuesForEmptyListOfProjects() {
-    var service = new IssueTrackersService(null);
+    var service = new IssueTrackersService(null, new CacheRegistry());
     var testName = new TestName(UNIT_TEST, "com.example", "TestClass", "testA");
     assertTrue(service.searchOpenIssuesForTest(Lists.emptyList(), testName).isEmpty());
   }
+
+  @Test
+  void shouldRefreshLinksInBatchesOfUpdatedIssues() throws Exception {
+    var db = Mockito.mock(TestLinkedIssuesDb.class);
+    var project = Mockito.mock(IssueTrackingProject.class);
+    var service = new IssueTrackersService(db, new CacheRegistry(), Runnable::run);
+    when(project.projectName()).thenReturn("AAA");
+    service.registerProject(project);
+    var aaa1 = new JiraIssueId("AAA-1");
+    var aaa2 = new JiraIssueId("AAA-2");
+    var url = new URL("https://jira.example.com");
+    when(db.allKnownIssues()).thenReturn(Set.of(aaa1, aaa2));
+    var links = Map.of(aaa1, new IssueLink(aaa1, url, true), aaa2, new IssueLink(aaa2, url, false));
+    when(project.getLinks(anyCollection(), isNull())).thenReturn(links);
+
+    service.refreshIssueLinks();
+    assertTrue(service.issueLink(aaa1).closed());
+    assertFalse(service.issueLink(aaa2).closed());
+
+    when(project.getLinks(anyCollection(), notNull()))
+        .thenReturn(Map.of(aaa2, new IssueLink(aaa2, url, true)));
+    service.refreshIssueLinks();
+    assertTrue(service.issueLink(aaa1).closed());
+    assertTrue(service.issueLink(aaa2).closed());
+    verify(project, times(1)).getLinks(anyCollection(), isNull());
+    verify(project, times(1)).getLinks(anyCollection(), notNull());
+    verify(project, never()).getLink(any());
+  }
+
+  @Test
+  void shouldDropLinksOfDeletedIssuesOnCompleteRefresh() throws Exception {
+    var db = Mockito.mock(TestLinkedIssuesDb.class);
+    var project = Mockito.mock(IssueTrackingProject.class);
+    var service = new IssueTrackersService(db, new CacheRegistry(), Runnable::run);
+    when(project.projectName()).thenReturn("AAA");
+    service.registerProject(project);
+    var aaa1 = new JiraIssueId("AAA-1");
+    var aaa2 = new JiraIssueId("AAA-2");
+    var url = new URL("https://jira.example.com");
+    when(db.allKnownIssues()).thenReturn(Set.of(aaa1, aaa2));
+    var links = Map.of(aaa1, new IssueLink(aaa1, url, true), aaa2, new IssueLink(aaa2, url, true));
+    when(project.getLinks(anyCollection(), isNull())).thenReturn(links);
+    var start = Instant.now();
+    service.refreshIssueLinks(start);
+
+    // AAA-2 is deleted, which incremental refreshes do not see: they fetch updated issues only
+    when(project.getLinks(anyCollection(), notNull())).thenReturn(Map.of());
+    service.refreshIssueLinks(start.plus(Duration.ofMinutes(10)));
+    assertTrue(service.issueLink(aaa2).closed());
+    verify(project, times(1)).getLinks(anyCollection(), notNull());
+
+    // until the next complete refresh
+    when(project.getLinks(anyCollection(), isNull())).thenReturn(Map.of(aaa1, links.get(aaa1)));
+    service.refreshIssueLinks(start.plus(IssueTrackersService.COMPLETE_REFRESH_INTERVAL));
+    verify(project, times(2)).getLinks(anyCollection(), isNull());
+    assertTrue(service.issueLink(aaa1).closed());
+    verify(project, never()).getLink(any());
+
+    when(project.getLink(aaa2)).thenReturn(new IssueLink(aaa2, url, false));
+    assertFalse(service.issueLink(aaa2).closed());
+    verify(project, times(1)).getLink(aaa2);
+  }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service.issues;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+import com.datastax.butler.commons.issues.IssueId;
+import com.datastax.butler.commons.issues.IssueLink;
+import com.datastax.butler.commons.issues.jira.JiraIssue;
+import com.datastax.butler.commons.issues.jira.JiraIssueId;
+import com.datastax.butler.commons.issues.jira.JiraProject;
+import com.datastax.butler.commons.jenkins.TestCategory;
+import com.datastax.butler.commons.jenkins.TestName;
+import com.datastax.butler.commons.jira.client.JiraClient;
+import java.net.URL;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class JiraIssuesIndexTest {
+
+  private static final TestCategory UNIT_TEST = TestCategory.valueOf("UNIT");
+  private static final TestName TEST_A =
+      new TestName(UNIT_TEST, "com.example", "TestClass", "testA");
+  private static final TestName TEST_B =
+      new TestName(UNIT_TEST, "com.example", "TestOther", "testB");
+
+  private final JiraClient jiraClient = Mockito.mock(JiraClient.class);
+  private final JiraProject project = Mockito.spy(new JiraProject(jiraClient, "XYZ"));
+
+  JiraIssuesIndexTest() {
+    when(jiraClient.link(any()))
+        .thenAnswer(
+            inv -> new IssueLink(inv.getArgument(0), new URL("https://jira.example.com/browse")));
+  }
+
+  private static JiraIssue issue(
+      String key, String summary, String description, String resolution) {
+    var issue = new JiraIssue(new JiraIssueId(key), summary, description);
+    issue.setResolution(resolution);
+    return issue;
+  }
+
+  private static Set<String> keys(Set<IssueLink> links) {
+    return links.stream().map(IssueLink::id).map(IssueId::toString).collect(Collectors.toSet());
+  }
+
+  @Test
+  void shouldSplitTextInWords() {
+    assertEquals(
+        Set.of("com", "example", "testclass", "test_a", "3"),
+        JiraIssuesIndex.words("Com.example.TestClass.test_a[3] "));
+    assertEquals(Set.of(), JiraIssuesIndex.words(null));
+  }
+
+  @Test
+  void shouldMatchTestsAgainstOpenIssues() {
+    var index = new JiraIssuesIndex(project);
+    assertTrue(index.search(TEST_A).isEmpty());
+    doReturn(
+            List.of(
+                issue("XYZ-1", "Flaky com.example.TestClass.testA", null, null),
+                issue("XYZ-2", "Timeouts", "com.example.TestOther.testB times out", "Won't Fix")))
+        .when(project)
+        .fetchOpenIssues();
+
+    index.sync();
+    assertTrue(index.isSynced());
+    assertEquals(Set.of("XYZ-1"), keys(index.search(TEST_A).orElseThrow()));
+    assertEquals(Set.of("XYZ-2"), keys(index.search(TEST_B).orElseThrow()));
+    var testC = new TestName(UNIT_TEST, "com.example", "TestClass", "testC");
+    assertEquals(Set.of(), index.search(testC).orElseThrow());
+  }
+
+  @Test
+  void shouldApplyUpdatedIssuesOnSync() {
+    var index = new JiraIssuesIndex(project);
+    doReturn(List.of(issue("XYZ-1", "Flaky com.example.TestClass.testA", null, null)))
+        .when(project)
+        .fetchOpenIssues();
+    index.sync();
+    doReturn(
+            List.of(
+                issue("XYZ-1", "Flaky com.example.TestClass.testA", null, "Fixed"),
+                issue("XYZ-3", "com.example.TestClass.testA fails again", null, null)))
+        .when(project)
+        .fetchIssuesUpdatedSince(any(Instant.class));
+
+    index.sync();
+    assertEquals(1, index.size());
+    assertEquals(Set.of("XYZ-3"), keys(index.search(TEST_A).orElseThrow()));
+  }
+}
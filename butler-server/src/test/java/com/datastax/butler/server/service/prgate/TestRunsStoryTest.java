@@ -0,0 +1,89 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service.prgate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.dev.FailuresTestData;
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+class TestRunsStoryTest {
+
+  private static final Random random = new Random(System.currentTimeMillis());
+
+  @Test
+  void shouldKeepStringStory() {
+    var story = new TestRunsStory("PF S P");
+    assertEquals("PF S P", story.story());
+    assertEquals("+F S +", story.toString());
+    assertEquals(6, story.numRuns());
+    assertEquals(1, story.numFailed());
+    assertEquals(2, story.numPassed());
+    assertEquals("PFP", story.results());
+  }
+
+  @Test
+  void shouldHandleEmptyStory() {
+    var story = new TestRunsStory("");
+    assertEquals(0, story.numRuns());
+    assertTrue(story.noResults());
+    assertFalse(story.hasFailures());
+    assertTrue(story.alwaysPassing().isEmpty());
+    assertTrue(story.alwaysFailing().isEmpty());
+    assertFalse(story.lastRunMissing());
+    assertEquals("", story.head().story());
+    assertEquals("", story.tail().story());
+  }
+
+  @Test
+  void shouldMatchResultsPrefix() {
+    var story = new TestRunsStory(" SPSF  PF");
+    assertTrue(story.lastRunMissing());
+    assertTrue(story.resultsStartWith("PFP"));
+    assertTrue(story.resultsStartWith("PFPF"));
+    assertFalse(story.resultsStartWith("PFPFP"));
+    assertFalse(story.resultsStartWith("F"));
+  }
+
+  @Test
+  void shouldBehaveLikeStringStories() {
+    // stories longer than 64 runs span multiple words
+    for (int i = 0; i < 1024; i++) {
+      var text = RandomStringUtils.random(random.nextInt(150), 'S', 'P', 'F', ' ');
+      var story = new TestRunsStory(text);
+      assertEquals(text, story.story());
+      assertEquals(text.length(), story.numRuns());
+      assertEquals(StringUtils.countMatches(text, 'F'), story.numFailed());
+      assertEquals(StringUtils.countMatches(text, 'P'), story.numPassed());
+      assertEquals(text.replaceAll("[S ]+", ""), story.results());
+      assertEquals(StringUtils.left(text, 4), story.head().story());
+      assertEquals(StringUtils.substring(text, 4), story.tail().story());
+      for (String prefix : new String[] {"F", "PFP", "FPF"}) {
+        assertEquals(story.results().startsWith(prefix), story.resultsStartWith(prefix));
+      }
+    }
+  }
+
+  @Test
+  void shouldEncodeRunsDirectly() {
+    var jobId = new JobId(WorkflowId.of("nightly"), Branch.fromString("main"));
+    var buildId = new BuildId(jobId, 1);
+    var text = "PPFSFPSSF";
+    var runs =
+        text.chars()
+            .mapToObj(c -> FailuresTestData.runDetails(buildId, (char) c))
+            .collect(Collectors.toList());
+    assertEquals(text, TestRunsStory.of(runs).story());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.service.prgate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.datastax.butler.commons.dev.Branch;
+import com.datastax.butler.commons.dev.FailuresTestData;
+import com.datastax.butler.commons.dev.UpstreamFailures;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import com.datastax.butler.server.db.JobsDb;
+import com.datastax.butler.server.db.StoredBuild;
+import com.datastax.butler.server.db.UpstreamBaseline;
+import com.datastax.butler.server.db.UpstreamBaselineStore;
+import com.datastax.butler.server.db.UpstreamFailuresDb;
+import com.datastax.butler.server.service.ClusterService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class UpstreamBaselineServiceTest {
+
+  private final JobsDb jobsDb = Mockito.mock(JobsDb.class);
+  private final UpstreamFailuresDb upstreamFailuresDb = Mockito.mock(UpstreamFailuresDb.class);
+  private final UpstreamBaselineStore baselineStore = new UpstreamBaselineStore("");
+  private final JobId upstream = new JobId(WorkflowId.of("nightly"), Branch.fromString("main"));
+  private final List<StoredBuild> builds = List.of();
+
+  private UpstreamBaselineService service() {
+    return service(true);
+  }
+
+  private UpstreamBaselineService service(boolean onlyNode) {
+    var cluster = Mockito.mock(ClusterService.class);
+    when(cluster.isOnlyNode()).thenReturn(onlyNode);
+    return new UpstreamBaselineService(
+        jobsDb,
+        upstreamFailuresDb,
+        baselineStore,
+        cluster,
+        MoreExecutors.newDirectExecutorService());
+  }
+
+  private UpstreamFailures failures(String testCase, String story) {
+    return new UpstreamFailures(
+        List.of(
+            FailuresTestData.testFailure(
+                testCase, FailuresTestData.createFailure(story).failureDetails().allRuns())));
+  }
+
+  private UpstreamBaseline baseline(int numBuilds, UpstreamFailures failures) {
+    return new UpstreamBaseline(
+        upstream, numBuilds, builds, List.of(1L), failures, Map.of(), Instant.now());
+  }
+
+  @Test
+  void shouldRefreshKeptBaselinesWhenBuildIsStored() {
+    var service = service();
+    baselineStore.put(baseline(16, failures("testA", "PFP")), baselineStore.generation());
+    baselineStore.put(baseline(32, failures("testA", "PFP")), baselineStore.generation());
+    when(jobsDb.getById(7L)).thenReturn(Optional.of(upstream));
+    service.buildStored(7L);
+    verify(upstreamFailuresDb).refreshBaseline(upstream, 16);
+    verify(upstreamFailuresDb).refreshBaseline(upstream, 32);
+  }
+
+  @Test
+  void shouldRefreshKeptBaselinesPeriodicallyWithOtherNodes() {
+    baselineStore.put(baseline(16, failures("testA", "PFP")), baselineStore.generation());
+    service().refreshBaselinesOfOtherInstances();
+    verify(upstreamFailuresDb, never()).refreshBaseline(upstream, 16);
+
+    service(false).refreshBaselinesOfOtherInstances();
+    verify(upstreamFailuresDb).refreshBaseline(upstream, 16);
+  }
+
+  @Test
+  void shouldBuildGateBaselineForConfiguredUpstreamJobs() {
+    var service = service();
+    when(jobsDb.getConfiguredUpstreamJobs()).thenReturn(Set.of(upstream));
+    service.buildStored(upstream);
+    verify(upstreamFailuresDb)
+        .refreshBaseline(upstream, UpstreamBaselineService.GATE_ANALYSIS_DEPTH);
+  }
+
+  @Test
+  void shouldNotBuildBaselineForBranchJobs() {
+    var service = service();
+    var branch = new JobId(WorkflowId.of("nightly"), Branch.fromString("PR-1"));
+    when(jobsDb.getConfiguredUpstreamJobs()).thenReturn(Set.of(upstream));
+    service.buildStored(branch);
+    verify(upstreamFailuresDb, never()).refreshBaseline(Mockito.eq(branch), anyInt());
+    assertTrue(service.knownBaselines().isEmpty());
+  }
+
+  @Test
+  void shouldLoadResultsOfTestsMissingInBaseline() {
+    var service = service();
+    var testA = FailuresTestData.testName("testA");
+    var testB = FailuresTestData.testName("testB");
+    when(upstreamFailuresDb.upstreamBaseline(upstream, 16))
+        .thenReturn(baseline(16, failures("testA", "PFP")));
+    when(upstreamFailuresDb.findResults(builds, List.of(testB)))
+        .thenReturn(failures("testB", "PPP"));
+    var results = service.resultsFor(upstream, 16, List.of(testA, testB));
+    assertEquals(1, results.findTest(testA).size());
+    assertEquals(1, results.findTest(testB).size());
+    assertFalse(results.findTest(testB).get(0).hasFailed());
+  }
+}
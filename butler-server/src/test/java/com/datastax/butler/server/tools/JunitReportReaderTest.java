@@ -0,0 +1,136 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.server.tools;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.commons.dev.Workflow;
+import com.datastax.butler.commons.jenkins.TestResult;
+import com.datastax.butler.commons.jenkins.TestRun;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+class JunitReportReaderTest {
+  private static final Workflow WORKFLOW = new Workflow("ci", false);
+
+  private static final String REPORT =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<testsuites>\n"
+          + "  <testsuite name=\"com.example.Suite1\" tests=\"3\">\n"
+          + "    <testcase classname=\"com.example.Suite1\" name=\"testA\" time=\"1.5\"/>\n"
+          + "    <testcase classname=\"com.example.Suite1\" name=\"testB\" time=\"0.25\">\n"
+          + "      <failure message=\"expected 1\" type=\"AssertionError\">"
+          + "<![CDATA[at Suite1.testB]]></failure>\n"
+          + "      <system-out>some output</system-out>\n"
+          + "    </testcase>\n"
+          + "    <testcase name=\"testC\"><skipped/></testcase>\n"
+          + "  </testsuite>\n"
+          + "</testsuites>\n";
+
+  private static Resource file(String name, byte[] content) {
+    return new ByteArrayResource(content) {
+      @Override
+      public String getFilename() {
+        return name;
+      }
+    };
+  }
+
+  private static Resource report(String name, String xml) {
+    return file(name, xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Resource archive(String name, String... entriesAndReports) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    try (var tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+      for (int i = 0; i < entriesAndReports.length; i += 2) {
+        byte[] content = entriesAndReports[i + 1].getBytes(StandardCharsets.UTF_8);
+        var entry = new TarArchiveEntry(entriesAndReports[i]);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+      }
+    }
+    return file(name, bytes.toByteArray());
+  }
+
+  private static List<TestRun> read(Resource... files) throws IOException {
+    List<TestRun> runs = new ArrayList<>();
+    try (var reader = new JunitReportReader(WORKFLOW, List.of(files))) {
+      reader.forEachRemaining(runs::add);
+    }
+    return runs;
+  }
+
+  @Test
+  void shouldReadTestCases() throws IOException {
+    var runs = read(report("TEST-Suite1.xml", REPORT));
+    assertEquals(3, runs.size());
+
+    var passed = runs.get(0);
+    assertEquals("com.example", passed.id().name().path());
+    assertEquals("Suite1", passed.id().name().className());
+    assertEquals("testA", passed.id().name().testName());
+    assertEquals(TestResult.PASSED, passed.result());
+    assertEquals(1500, passed.duration().toMillis());
+
+    var failed = runs.get(1);
+    assertEquals(TestResult.FAILED, failed.result());
+    assertEquals("expected 1", failed.output().errorDetails());
+    assertEquals("at Suite1.testB", failed.output().errorStackTrace());
+    assertEquals("some output", failed.output().stdout());
+
+    // the class name defaults to the name of the suite
+    var skipped = runs.get(2);
+    assertEquals(TestResult.SKIPPED, skipped.result());
+    assertEquals("Suite1", skipped.id().name().className());
+  }
+
+  @Test
+  void shouldReadReportsOfArchives() throws IOException {
+    var other =
+        "<testsuite name=\"Suite2\"><testcase classname=\"Suite2\" name=\"t\"/></testsuite>";
+    var runs =
+        read(
+            archive("reports.tar.gz", "a/TEST-Suite1.xml", REPORT, "a/README", "not a report"),
+            report("TEST-Suite2.xml", other));
+    assertEquals(4, runs.size());
+    assertEquals("Suite2", runs.get(3).id().name().className());
+  }
+
+  @Test
+  void shouldTruncateLongOutput() throws IOException {
+    var output = "x".repeat(JunitReportReader.MAX_TEXT_LENGTH * 3);
+    var xml =
+        "<testsuite name=\"S\"><testcase classname=\"S\" name=\"t\"><error>"
+            + output
+            + "</error></testcase></testsuite>";
+    var runs = read(report("TEST-S.xml", xml));
+    assertEquals(
+        JunitReportReader.MAX_TEXT_LENGTH, runs.get(0).output().errorStackTrace().length());
+  }
+
+  @Test
+  void shouldRejectInvalidReports() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> read(report("TEST-S.xml", "<testsuite><testcase name=\"t\">")));
+    var withEntity =
+        "<!DOCTYPE r [<!ENTITY e SYSTEM \"file:///etc/passwd\">]>"
+            + "<testsuite name=\"S\"><testcase classname=\"S\" name=\"&e;\"/></testsuite>";
+    assertThrows(IllegalArgumentException.class, () -> read(report("TEST-S.xml", withEntity)));
+  }
+}
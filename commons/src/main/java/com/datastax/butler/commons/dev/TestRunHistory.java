@@ -0,0 +1,293 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.commons.dev;
+
+import com.datastax.butler.commons.jenkins.BuildId;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * History of runs of a single test over a window of recent builds, maintained incrementally.
+ *
+ * <p>Runs of new builds are appended as the builds are stored and runs of the oldest builds are
+ * dropped as they fall out of the window. All the aggregates {@link FailureDetails} is made of
+ * (failure counters, last run by variant and version, last failure) are updated in constant time
+ * per appended or dropped run, so producing {@link #failureDetails()} does not go through the whole
+ * history the way {@link FailureDetails#build(List)} does.
+ *
+ * <p>Runs have to be appended in chronological order, see {@link #append(RunDetails)}. Instances
+ * are not thread safe, but the {@link FailureDetails} views they produce do not change when the
+ * history does.
+ */
+public class TestRunHistory {
+  /** Order in which runs are kept: by build start time, then by build. */
+  public static final Comparator<RunDetails> CHRONOLOGICAL =
+      Comparator.comparingLong(RunDetails::timestamp).thenComparing(RunDetails::id);
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // Ring buffer of runs, oldest at `head`. Along with each run we keep the number of failures
+  // appended before it, so that failures of any suffix of the history is a single subtraction.
+  private RunDetails[] runs = new RunDetails[INITIAL_CAPACITY];
+  private long[] failuresBefore = new long[INITIAL_CAPACITY];
+  private int head;
+  private int size;
+  private long appendedFailures;
+
+  // Runs by variant and version, newest first.
+  private final Map<String, Deque<RunDetails>> byVariant = new HashMap<>();
+  private final Map<BranchVersion, Deque<RunDetails>> byVersion = new HashMap<>();
+  private final Map<BranchVersion, RunDetails> lastFailedByVersion = new HashMap<>();
+  private RunDetails lastFailed;
+
+  /** Builds the history from given runs, in any order. */
+  public static TestRunHistory of(Collection<RunDetails> runs) {
+    var sorted = new ArrayList<>(runs);
+    sorted.sort(CHRONOLOGICAL);
+    var history = new TestRunHistory();
+    sorted.forEach(history::append);
+    return history;
+  }
+
+  /**
+   * Copies the history along with its runs, so that changing the copy (including clearing the
+   * output of its runs) does not affect this history nor the details it produced.
+   */
+  public TestRunHistory copy() {
+    var copy = new TestRunHistory();
+    for (int i = 0; i < size; i++) {
+      var run = runs[index(i)];
+      copy.append(
+          new RunDetails(
+              run.id(),
+              run.variant(),
+              run.url(),
+              run.timestamp(),
+              run.failed(),
+              run.skipped(),
+              run.output()));
+    }
+    return copy;
+  }
+
+  /**
+   * Append run of a new build.
+   *
+   * <p>Same as in {@link FailureDetails#build(List)} the output of passed runs and of failures
+   * other than the most recent one is cleared.
+   *
+   * @param run the run, not older than any run already in the history
+   * @return false if the run is older than the newest run in the history, in which case it is not
+   *     appended and history has to be rebuilt with {@link #of(Collection)}
+   */
+  public boolean append(RunDetails run) {
+    if (size > 0 && CHRONOLOGICAL.compare(run, newest()) < 0) {
+      return false;
+    }
+    if (size == runs.length) {
+      grow();
+    }
+    int idx = index(size);
+    runs[idx] = run;
+    failuresBefore[idx] = appendedFailures;
+    size++;
+
+    byVariant.computeIfAbsent(variantOf(run), k -> new ArrayDeque<>()).addFirst(run);
+    byVersion.computeIfAbsent(versionOf(run), k -> new ArrayDeque<>()).addFirst(run);
+    if (run.failed()) {
+      appendedFailures++;
+      if (lastFailed != null) {
+        lastFailed.clearOutput();
+      }
+      lastFailed = run;
+      lastFailedByVersion.put(versionOf(run), run);
+    } else {
+      run.clearOutput();
+    }
+    return true;
+  }
+
+  /**
+   * Drop runs of given build, which has to be the oldest build in the history.
+   *
+   * @param build the build falling out of the window
+   * @return number of dropped runs, 0 if the test did not run in the build
+   */
+  public int dropBuild(BuildId build) {
+    int dropped = 0;
+    while (startsWith(build)) {
+      dropOldest();
+      dropped++;
+    }
+    return dropped;
+  }
+
+  /** Whether the oldest runs of the history are runs of given build. */
+  public boolean startsWith(BuildId build) {
+    return size > 0 && oldest().id().equals(build);
+  }
+
+  private void dropOldest() {
+    RunDetails run = runs[head];
+    runs[head] = null;
+    head = index(1);
+    size--;
+
+    removeOldest(byVariant, variantOf(run));
+    removeOldest(byVersion, versionOf(run));
+    // The run is the oldest one, so if it is the last failure there are no other failures.
+    if (run.failed()) {
+      lastFailedByVersion.remove(versionOf(run), run);
+      if (lastFailed == run) {
+        lastFailed = null;
+      }
+    }
+  }
+
+  private static <K> void removeOldest(Map<K, Deque<RunDetails>> runsByKey, K key) {
+    var keyRuns = runsByKey.get(key);
+    keyRuns.removeLast();
+    if (keyRuns.isEmpty()) {
+      runsByKey.remove(key);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Number of failures in the history. */
+  public long failures() {
+    return size == 0 ? 0 : appendedFailures - failuresBefore[head];
+  }
+
+  public long lastWeekRunsCount() {
+    return size - firstNewerThan(daysAgoTimestampSeconds(7));
+  }
+
+  public long lastMonthRunsCount() {
+    return size - firstNewerThan(daysAgoTimestampSeconds(30));
+  }
+
+  /** All the runs, oldest first. */
+  public List<RunDetails> runs() {
+    List<RunDetails> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(runs[index(i)]);
+    }
+    return result;
+  }
+
+  /**
+   * Current state of the history as {@link FailureDetails}.
+   *
+   * <p>Result is equivalent to {@link FailureDetails#build(List)} over {@link #runs()}. The run
+   * lists and maps of the result are copies, so they are not affected by later changes of the
+   * history, but the {@link RunDetails} are shared.
+   */
+  public FailureDetails failureDetails() {
+    List<RunDetails> allRuns = new ArrayList<>(size);
+    for (int i = size - 1; i >= 0; i--) {
+      allRuns.add(runs[index(i)]);
+    }
+    Map<String, RunDetails> lastByVariant = new HashMap<>();
+    Map<String, List<RunDetails>> allByVariant = new HashMap<>();
+    byVariant.forEach(
+        (variant, variantRuns) -> {
+          lastByVariant.put(variant, variantRuns.peekFirst());
+          allByVariant.put(variant, new ArrayList<>(variantRuns));
+        });
+    Map<BranchVersion, RunDetails> lastByVersion = new HashMap<>();
+    Map<BranchVersion, List<RunDetails>> allByVersion = new HashMap<>();
+    byVersion.forEach(
+        (version, versionRuns) -> {
+          lastByVersion.put(version, versionRuns.peekFirst());
+          allByVersion.put(version, new ArrayList<>(versionRuns));
+        });
+
+    return new FailureDetails(
+        allRuns,
+        lastByVariant,
+        lastByVersion,
+        allByVariant,
+        allByVersion,
+        new HashMap<>(lastFailedByVersion),
+        size == 0 ? null : newest(),
+        size == 0 ? null : oldest(),
+        lastFailed,
+        failures(),
+        failuresNewerThan(daysAgoTimestampSeconds(7)),
+        failuresNewerThan(daysAgoTimestampSeconds(30)));
+  }
+
+  private long failuresNewerThan(long timestamp) {
+    int first = firstNewerThan(timestamp);
+    return first == size ? 0 : appendedFailures - failuresBefore[index(first)];
+  }
+
+  /** Position (from the oldest) of the first run newer than the timestamp, size if none is. */
+  private int firstNewerThan(long timestamp) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (runs[index(mid)].timestamp() > timestamp) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  private RunDetails newest() {
+    return runs[index(size - 1)];
+  }
+
+  private RunDetails oldest() {
+    return runs[head];
+  }
+
+  private int index(int position) {
+    return (head + position) % runs.length;
+  }
+
+  private void grow() {
+    var newRuns = new RunDetails[runs.length * 2];
+    var newFailuresBefore = new long[runs.length * 2];
+    for (int i = 0; i < size; i++) {
+      newRuns[i] = runs[index(i)];
+      newFailuresBefore[i] = failuresBefore[index(i)];
+    }
+    runs = newRuns;
+    failuresBefore = newFailuresBefore;
+    head = 0;
+  }
+
+  private static String variantOf(RunDetails run) {
+    return run.variant().toString();
+  }
+
+  private static BranchVersion versionOf(RunDetails run) {
+    return run.extractVersion().orElse(BranchVersion.fromString("main"));
+  }
+
+  private static long daysAgoTimestampSeconds(int daysAgo) {
+    return Instant.now().minus(daysAgo, ChronoUnit.DAYS).getEpochSecond();
+  }
+}
@@ -6,15 +6,46 @@
 package com.datastax.butler.commons.dev;
 
 import com.datastax.butler.commons.jenkins.TestName;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 
 @Value
 public class UpstreamFailures {
   List<TestFailure> failures;
 
+  /**
+   * Index of the failures by test name, so that lookups done for every test of a compared build
+   * (e.g. by the PR gate) do not need to scan all the failures.
+   */
+  @JsonIgnore
+  @Getter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  Map<TestName, List<TestFailure>> byTestName;
+
+  /** Creates failures object indexing provided failures by their test name. */
+  @JsonCreator
+  public UpstreamFailures(@JsonProperty("failures") List<TestFailure> failures) {
+    this.failures = failures;
+    this.byTestName = new HashMap<>();
+    for (TestFailure failure : failures) {
+      byTestName.computeIfAbsent(failure.test(), k -> new ArrayList<>(1)).add(failure);
+    }
+  }
+
   /**
    * Return list of Failures that has failed runs.
    *
@@ -31,7 +62,7 @@ public class UpstreamFailures {
    * @return hopefully one or zero, but I am not sure about variants.
    */
   public List<TestFailure> findTest(TestName testName) {
-    return failures.stream().filter(x -> x.test().equals(testName)).collect(Collectors.toList());
+    return Collections.unmodifiableList(byTestName.getOrDefault(testName, List.of()));
   }
 
   /** Return UpstreamFailures filtered to builds older than given one. */
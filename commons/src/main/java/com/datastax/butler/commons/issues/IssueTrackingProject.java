@@ -8,9 +8,13 @@ package com.datastax.butler.commons.issues;
 import com.datastax.butler.commons.dev.TestFailure;
 import com.datastax.butler.commons.issues.content.Markdown;
 import com.datastax.butler.commons.jenkins.TestName;
+import java.time.Instant;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /** Issue Tracking Project such as jira project or gh issues project. */
 public interface IssueTrackingProject {
@@ -26,6 +30,26 @@ public interface IssueTrackingProject {
    */
   IssueLink getLink(IssueId issueId);
 
+  /**
+   * Create links for a batch of issues, with their status set.
+   *
+   * <p>Projects able to fetch the status of many issues at once should override this, the default
+   * creates links one by one.
+   *
+   * @param issueIds ids of the issues of this project.
+   * @param updatedSince if not null, issues not updated since then may be omitted from the result
+   *     (their status is unchanged).
+   * @return links by issue id; issues that are unknown to the project may be omitted.
+   */
+  default Map<IssueId, IssueLink> getLinks(
+      Collection<IssueId> issueIds, @Nullable Instant updatedSince) {
+    Map<IssueId, IssueLink> links = new HashMap<>();
+    for (IssueId issueId : issueIds) {
+      links.put(issueId, getLink(issueId));
+    }
+    return links;
+  }
+
   /**
    * Fetches issue content from issue tracking system. There is no guarantee if all the fields are
    * fetched, but at least title and body should be.
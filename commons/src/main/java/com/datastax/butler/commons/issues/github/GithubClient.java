@@ -0,0 +1,368 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.commons.issues.github;
+
+import static com.datastax.butler.commons.issues.github.GithubException.error;
+import static java.lang.String.format;
+
+import com.datastax.butler.commons.web.Credentials;
+import com.datastax.butler.commons.web.CredentialsException;
+import com.datastax.butler.commons.web.WebClient.InvalidRequestException;
+import com.datastax.butler.commons.web.WebClient.NotFoundException;
+import com.google.common.collect.Lists;
+import com.google.errorprone.annotations.FormatMethod;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Client of the Github REST and GraphQL APIs, limited to what butler needs of Github issues.
+ *
+ * <p>The status of many issues is looked up with GraphQL queries of up to {@link
+ * #MAX_ISSUES_PER_QUERY} issues each. The GraphQL API does not support conditional requests, but
+ * the REST API does: the last responses to GET requests are kept with their ETag, and requested
+ * again with {@code If-None-Match}. An unchanged resource is then answered by a 304 (Not Modified)
+ * without body, which does not count against the rate limit of Github.
+ */
+public class GithubClient {
+  private static final Logger logger = LogManager.getLogger();
+  private static final MediaType JSON_TYPE = MediaType.parse("application/json");
+  private static final String API_URL = "https://api.github.com";
+  private static final String SITE_URL = "https://github.com";
+
+  /** Max number of issues looked up by a single GraphQL query (a limit of Github). */
+  public static final int MAX_ISSUES_PER_QUERY = 100;
+  /** Max number of responses kept for conditional requests. */
+  private static final int CACHED_RESPONSES = 1_000;
+
+  private final HttpUrl apiUrl;
+  private final HttpUrl siteUrl;
+  private final OkHttpClient httpClient;
+  @Nullable private final String token;
+
+  private final Moshi moshi = new Moshi.Builder().build();
+  private final JsonAdapter<RestIssue> issueAdapter = moshi.adapter(RestIssue.class);
+  private final JsonAdapter<SearchResult> searchAdapter = moshi.adapter(SearchResult.class);
+  private final JsonAdapter<Map<String, Object>> mapAdapter =
+      moshi.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  /** Last responses of GET requests, by url, in least recently used order. */
+  private final LinkedHashMap<HttpUrl, CachedResponse> responses =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HttpUrl, CachedResponse> eldest) {
+          return size() > CACHED_RESPONSES;
+        }
+      };
+
+  /**
+   * Creates a new Github client.
+   *
+   * @param apiUrl the url of the Github API, e.g. https://api.github.com.
+   * @param siteUrl the url of the Github site, to which issue links point, e.g. https://github.com.
+   * @param httpClient the client to query Github with.
+   * @param token the (personal access) token to authenticate with, null to not authenticate.
+   */
+  public GithubClient(
+      String apiUrl, String siteUrl, OkHttpClient httpClient, @Nullable String token) {
+    this.apiUrl = parse(apiUrl);
+    this.siteUrl = parse(siteUrl);
+    this.httpClient = httpClient;
+    this.token = token;
+  }
+
+  /**
+   * Creates a client of github.com, authenticated if a token is set as password of "api.github.com"
+   * in netrc.
+   */
+  public static GithubClient create() {
+    var httpClient =
+        new OkHttpClient.Builder()
+            .connectTimeout(Duration.ofMinutes(1))
+            .readTimeout(Duration.ofMinutes(1))
+            .build();
+    String token = null;
+    try {
+      token = Credentials.readFromNetrcFile(HttpUrl.get(API_URL).host()).password();
+    } catch (CredentialsException ex) {
+      logger.warn("No github token found, github API will be queried anonymously");
+    }
+    return new GithubClient(API_URL, SITE_URL, httpClient, token);
+  }
+
+  private static HttpUrl parse(String url) {
+    var parsed = HttpUrl.parse(url);
+    if (parsed == null) throw new IllegalArgumentException("Cannot parse " + url);
+    return parsed;
+  }
+
+  static class RestIssue {
+    int number;
+    String title;
+    @Nullable String body;
+    String state;
+  }
+
+  static class SearchResult {
+    List<RestIssue> items;
+  }
+
+  private static class CachedResponse {
+    final String etag;
+    final String body;
+
+    CachedResponse(String etag, String body) {
+      this.etag = etag;
+      this.body = body;
+    }
+  }
+
+  /** The url of the issue on the Github site. */
+  public URL browseUrl(GithubIssueId issueId) {
+    return siteUrl
+        .newBuilder()
+        .addPathSegments(issueId.projectName())
+        .addPathSegment("issues")
+        .addPathSegment(Integer.toString(issueId.issueNumber()))
+        .build()
+        .url();
+  }
+
+  /**
+   * Fetches the provided issue, with a conditional request if it has been fetched before.
+   *
+   * @return the issue, or empty if it does not exist.
+   */
+  public Optional<GithubIssue> fetchIssue(GithubIssueId issueId) {
+    var url =
+        repository(issueId.projectName())
+            .addPathSegment("issues")
+            .addPathSegment(Integer.toString(issueId.issueNumber()))
+            .build();
+    try {
+      return Optional.of(toIssue(issueId.projectName(), issueAdapter.fromJson(get(url))));
+    } catch (NotFoundException e) {
+      return Optional.empty();
+    } catch (InvalidRequestException e) {
+      throw toGithubException(e, "retrieving issue %s", issueId.id());
+    } catch (IOException e) {
+      throw GithubException.ioError(e, "Error parsing issue %s", issueId.id());
+    }
+  }
+
+  /**
+   * Fetches whether the provided issues are closed, with GraphQL queries of up to {@link
+   * #MAX_ISSUES_PER_QUERY} issues.
+   *
+   * @param repoName the repository of the issues, e.g. "datastax/butler".
+   * @param issueNumbers the numbers of the issues (or pull requests) to look up.
+   * @return whether each issue is closed, by issue number. Issues that do not exist are omitted.
+   */
+  public Map<Integer, Boolean> fetchClosed(String repoName, Collection<Integer> issueNumbers) {
+    Map<Integer, Boolean> closed = new HashMap<>();
+    for (List<Integer> batch : Lists.partition(List.copyOf(issueNumbers), MAX_ISSUES_PER_QUERY)) {
+      var repository = graphql(closedQuery(repoName, batch)).get("repository");
+      if (!(repository instanceof Map)) {
+        logger.warn("Github repository {} not found", repoName);
+        return closed;
+      }
+      for (int number : batch) {
+        var issue = ((Map<?, ?>) repository).get("i" + number);
+        if (issue instanceof Map) {
+          // issues are OPEN or CLOSED, pull requests can be MERGED too
+          closed.put(number, !"OPEN".equals(((Map<?, ?>) issue).get("state")));
+        }
+      }
+    }
+    return closed;
+  }
+
+  private String closedQuery(String repoName, List<Integer> issueNumbers) {
+    var parts = repoName.split("/", 2);
+    var stringAdapter = moshi.adapter(String.class);
+    var query = new StringBuilder();
+    query.append(
+        format(
+            "query { repository(owner: %s, name: %s) {",
+            stringAdapter.toJson(parts[0]), stringAdapter.toJson(parts[1])));
+    for (int number : issueNumbers) {
+      query.append(
+          format(
+              " i%d: issueOrPullRequest(number: %d) {"
+                  + " ... on Issue { state } ... on PullRequest { state } }",
+              number, number));
+    }
+    return query.append(" } }").toString();
+  }
+
+  /**
+   * Search for issues of the repository.
+   *
+   * @param repoName the repository to search issues of.
+   * @param terms the search terms, using the Github search syntax (e.g. {@code "x" in:title}).
+   * @return the (first 100) issues found.
+   */
+  public List<GithubIssue> searchIssues(String repoName, String terms) {
+    var query = format("repo:%s is:issue %s", repoName, terms);
+    var url =
+        apiUrl
+            .newBuilder()
+            .addPathSegments("search/issues")
+            .addQueryParameter("q", query)
+            .addQueryParameter("per_page", "100")
+            .build();
+    try {
+      var result = searchAdapter.fromJson(get(url));
+      List<GithubIssue> issues = new ArrayList<>();
+      if (result != null && result.items != null) {
+        result.items.forEach(i -> issues.add(toIssue(repoName, i)));
+      }
+      return issues;
+    } catch (InvalidRequestException e) {
+      throw toGithubException(e, "searching issues (q=%s)", query);
+    } catch (IOException e) {
+      throw GithubException.ioError(e, "Error parsing issues found for %s", query);
+    }
+  }
+
+  /**
+   * Creates a new issue in the repository.
+   *
+   * @return the id of the created issue.
+   */
+  public GithubIssueId createIssue(
+      String repoName, String title, String body, Collection<String> labels) {
+    var url = repository(repoName).addPathSegment("issues").build();
+    var json =
+        mapAdapter.toJson(Map.of("title", title, "body", body, "labels", List.copyOf(labels)));
+    try {
+      var created = issueAdapter.fromJson(post(url, json));
+      return GithubIssueId.of(repoName, Objects.requireNonNull(created).number);
+    } catch (InvalidRequestException e) {
+      throw toGithubException(e, "creating issue in %s", repoName);
+    } catch (IOException e) {
+      throw GithubException.ioError(e, "Error parsing issue created in %s", repoName);
+    }
+  }
+
+  private GithubIssue toIssue(String repoName, @Nullable RestIssue json) {
+    if (json == null) throw error("Got no issue from github for repository %s", repoName);
+    var issue = new GithubIssue(GithubIssueId.of(repoName, json.number), json.title, json.body);
+    issue.setState(json.state);
+    return issue;
+  }
+
+  private Map<?, ?> graphql(String query) {
+    var url = apiUrl.newBuilder().addPathSegment("graphql").build();
+    try {
+      var response = mapAdapter.fromJson(post(url, mapAdapter.toJson(Map.of("query", query))));
+      var data = response == null ? null : response.get("data");
+      if (!(data instanceof Map)) {
+        throw error("GraphQL query failed: %s", response == null ? null : response.get("errors"));
+      }
+      return (Map<?, ?>) data;
+    } catch (InvalidRequestException e) {
+      throw toGithubException(e, "querying %s", url);
+    } catch (IOException e) {
+      throw GithubException.ioError(e, "Error parsing GraphQL response of %s", url);
+    }
+  }
+
+  private HttpUrl.Builder repository(String repoName) {
+    return apiUrl.newBuilder().addPathSegment("repos").addPathSegments(repoName);
+  }
+
+  private Request.Builder request(HttpUrl url) {
+    var builder = new Request.Builder().url(url).header("Accept", "application/vnd.github.v3+json");
+    if (token != null) builder.header("Authorization", "token " + token);
+    return builder;
+  }
+
+  private String get(HttpUrl url) throws InvalidRequestException {
+    CachedResponse cached;
+    synchronized (responses) {
+      cached = responses.get(url);
+    }
+    var request = request(url).get();
+    if (cached != null) request.header("If-None-Match", cached.etag);
+    try (Response response = httpClient.newCall(request.build()).execute()) {
+      if (response.code() == 304 && cached != null) {
+        logger.debug("{} not modified", url);
+        return cached.body;
+      }
+      var body = body(response);
+      var etag = response.header("ETag");
+      if (etag != null) {
+        synchronized (responses) {
+          responses.put(url, new CachedResponse(etag, body));
+        }
+      }
+      return body;
+    } catch (IOException e) {
+      throw GithubException.ioError(e, "I/O error while requesting %s", url);
+    }
+  }
+
+  private String post(HttpUrl url, String json) throws InvalidRequestException {
+    var request = request(url).post(RequestBody.create(json, JSON_TYPE)).build();
+    try (Response response = httpClient.newCall(request).execute()) {
+      return body(response);
+    } catch (IOException e) {
+      throw GithubException.ioError(e, "I/O error while requesting %s", url);
+    }
+  }
+
+  private static String body(Response response) throws InvalidRequestException, IOException {
+    logger.debug("  >> {}", response);
+    if (!response.isSuccessful()) throw InvalidRequestException.create(response.code());
+    ResponseBody body = response.body();
+    // non-null for responses of Call#execute
+    assert body != null;
+    return body.string();
+  }
+
+  @FormatMethod
+  private static GithubException toGithubException(
+      InvalidRequestException exc, String requested, Object... args) {
+    String msg = format(requested, args);
+    switch (exc.statusCode()) {
+      case 401:
+      case 403:
+        return error(
+            "Unauthorized access (or rate limit exceeded) while %s (make sure a github token is "
+                + "available and correct)",
+            msg);
+      default:
+        return error("Unexpected error while %s (status code: %d)", msg, exc.statusCode());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return apiUrl.toString();
+  }
+}
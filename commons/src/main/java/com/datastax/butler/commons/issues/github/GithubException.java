@@ -0,0 +1,28 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.commons.issues.github;
+
+import static java.lang.String.format;
+
+import com.google.errorprone.annotations.FormatMethod;
+import java.io.IOException;
+
+/** Top-level exception thrown when encountering Github related errors. */
+public class GithubException extends RuntimeException {
+  public GithubException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  @FormatMethod
+  static GithubException error(String fmt, Object... args) {
+    return new GithubException(format(fmt, args), null);
+  }
+
+  @FormatMethod
+  static GithubException ioError(IOException cause, String fmt, Object... args) {
+    return new GithubException(format(fmt, args), cause);
+  }
+}
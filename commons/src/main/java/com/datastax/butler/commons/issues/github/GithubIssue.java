@@ -0,0 +1,41 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.commons.issues.github;
+
+import com.datastax.butler.commons.issues.Issue;
+import com.datastax.butler.commons.issues.IssueId;
+import java.util.Map;
+
+/** Github issue, which adds its state (open or closed) to the basic issue. */
+public class GithubIssue extends Issue {
+
+  /** State of the issue as returned by github: "open" or "closed". */
+  private String state;
+
+  /** Construct basic Issue object with id, title and body. */
+  public GithubIssue(IssueId id, String title, String body) {
+    super(id, title, body);
+  }
+
+  public String state() {
+    return state;
+  }
+
+  public void setState(String state) {
+    this.state = state;
+  }
+
+  public boolean isClosed() {
+    return "closed".equalsIgnoreCase(state);
+  }
+
+  @Override
+  public Map<String, String> details() {
+    var res = super.details();
+    res.put("state", state);
+    return res;
+  }
+}
@@ -34,6 +34,15 @@ public class GithubIssueId extends IssueId {
     }
   }
 
+  /** Creates the id of the issue of given number in the repository (e.g. "apache/cassandra"). */
+  public static GithubIssueId of(String repoName, int issueNumber) {
+    return new GithubIssueId(repoName + "#" + issueNumber);
+  }
+
+  public int issueNumber() {
+    return issueNumber;
+  }
+
   @Override
   public String toString() {
     return "#" + issueNumber;
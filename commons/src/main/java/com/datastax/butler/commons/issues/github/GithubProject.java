@@ -0,0 +1,153 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.commons.issues.github;
+
+import static java.lang.String.format;
+
+import com.datastax.butler.commons.StringSanitizer;
+import com.datastax.butler.commons.dev.TestFailure;
+import com.datastax.butler.commons.issues.Issue;
+import com.datastax.butler.commons.issues.IssueId;
+import com.datastax.butler.commons.issues.IssueLink;
+import com.datastax.butler.commons.issues.IssueTrackingProject;
+import com.datastax.butler.commons.issues.content.GithubMarkdown;
+import com.datastax.butler.commons.issues.content.Markdown;
+import com.datastax.butler.commons.jenkins.TestName;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Issues of a Github repository.
+ *
+ * <p>The project name is the name of the repository, e.g. "datastax/butler", which is also the
+ * project name of its {@link GithubIssueId}.
+ */
+public class GithubProject implements IssueTrackingProject {
+  private static final Logger logger = LogManager.getLogger();
+
+  private final GithubClient github;
+  private final String repoName;
+
+  public GithubProject(GithubClient github, String repoName) {
+    this.github = github;
+    this.repoName = repoName;
+  }
+
+  /** Factory method to create the project of given github.com repository. */
+  public static GithubProject forRepository(String repoName) {
+    return new GithubProject(GithubClient.create(), repoName);
+  }
+
+  public GithubClient github() {
+    return github;
+  }
+
+  @Override
+  public String projectName() {
+    return repoName;
+  }
+
+  @Override
+  public IssueLink getLink(IssueId issueId) {
+    return link(githubId(issueId), isClosed(issueId).orElse(false));
+  }
+
+  /**
+   * Create links for a batch of issues with GraphQL queries, which return the state of up to {@link
+   * GithubClient#MAX_ISSUES_PER_QUERY} issues each.
+   */
+  @Override
+  public Map<IssueId, IssueLink> getLinks(
+      Collection<IssueId> issueIds, @Nullable Instant updatedSince) {
+    Map<Integer, GithubIssueId> byNumber = new HashMap<>();
+    for (IssueId id : issueIds) {
+      var githubId = githubId(id);
+      byNumber.put(githubId.issueNumber(), githubId);
+    }
+    Map<IssueId, IssueLink> links = new HashMap<>();
+    github
+        .fetchClosed(repoName, byNumber.keySet())
+        .forEach(
+            (number, closed) -> {
+              var issueId = byNumber.get(number);
+              links.put(issueId, link(issueId, closed));
+            });
+    return links;
+  }
+
+  private IssueLink link(GithubIssueId issueId, boolean closed) {
+    return new IssueLink(issueId, github.browseUrl(issueId), closed);
+  }
+
+  private GithubIssueId githubId(IssueId issueId) {
+    if (issueId instanceof GithubIssueId && issueId.projectName().equals(repoName)) {
+      return (GithubIssueId) issueId;
+    }
+    throw new IllegalArgumentException(
+        format("Issue %s is not an issue of github repository %s", issueId.id(), repoName));
+  }
+
+  @Override
+  public Issue fetchIssue(IssueId issueId) {
+    return fetchGithubIssue(issueId).orElse(null);
+  }
+
+  @Override
+  public Optional<Boolean> isClosed(IssueId issueId) {
+    return fetchGithubIssue(issueId).map(GithubIssue::isClosed);
+  }
+
+  private Optional<GithubIssue> fetchGithubIssue(IssueId issueId) {
+    var issue = github.fetchIssue(githubId(issueId));
+    if (issue.isEmpty()) {
+      logger.warn(
+          "Github issue {} was not found and cannot be fetched",
+          StringSanitizer.sanitize(issueId.id()));
+    }
+    return issue;
+  }
+
+  @Override
+  public Issue newIssue() {
+    return new GithubIssue(null, "", "");
+  }
+
+  @Override
+  public IssueLink createIssue(Issue issue, Collection<TestFailure> failures) {
+    var labels = Set.copyOf(issue.labels());
+    var issueId = github.createIssue(repoName, issue.title(), issue.body(), labels);
+    return link(issueId, false);
+  }
+
+  @Override
+  public Set<IssueLink> searchIssuesForTest(TestName test, boolean onlyOpen) {
+    var terms = format("\"%s\" in:title,body", test.fullName().replace("\"", ""));
+    if (onlyOpen) terms = terms + " is:open";
+    List<GithubIssue> found = github.searchIssues(repoName, terms);
+    return found.stream()
+        .map(i -> link((GithubIssueId) i.id(), i.isClosed()))
+        .collect(Collectors.toSet());
+  }
+
+  @Override
+  public Markdown markdown() {
+    return new GithubMarkdown();
+  }
+
+  @Override
+  public String toString() {
+    return repoName;
+  }
+}
@@ -19,19 +19,27 @@ import com.datastax.butler.commons.jenkins.TestName;
 import com.datastax.butler.commons.jira.client.JiraClient;
 import com.datastax.butler.commons.jira.client.JiraException;
 import com.datastax.butler.commons.jira.client.JiraJsonConverter;
+import com.datastax.butler.commons.jira.client.JiraObject;
 import com.google.common.annotations.VisibleForTesting;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -45,6 +53,7 @@ import org.apache.logging.log4j.Logger;
 public class JiraProject implements IssueTrackingProject {
 
   private static final Logger logger = LogManager.getLogger();
+  private static final String OPEN_JQL = "(resolution != Fixed OR resolution is EMPTY)";
 
   final JiraJsonConverter jsonConverter;
   final JiraClient jiraClient;
@@ -92,6 +101,33 @@ public class JiraProject implements IssueTrackingProject {
     return IssueLink.withClosed(link, isClosed(issueId).orElse(false));
   }
 
+  /**
+   * Create links for a batch of issues with a single search (per page of results), fetching only
+   * the resolution and status of the issues.
+   *
+   * <p>JQL dates are in the time zone of the JIRA user, so the issues updated a day before {@code
+   * updatedSince} are fetched too, to be on the safe side.
+   */
+  @Override
+  public Map<IssueId, IssueLink> getLinks(
+      Collection<IssueId> issueIds, @Nullable Instant updatedSince) {
+    if (issueIds.isEmpty()) return Map.of();
+    Map<String, IssueId> byKey = new LinkedHashMap<>();
+    issueIds.forEach(id -> byKey.put(id.toString().toUpperCase(Locale.ROOT), id));
+    var jql = format("key in (%s)", String.join(", ", byKey.keySet()));
+    if (updatedSince != null) jql = jql + " AND " + updatedSinceJql(updatedSince);
+    Map<IssueId, IssueLink> links = new HashMap<>();
+    for (JiraObject found : jiraClient.search(jql, List.of("resolution", "status"))) {
+      // an issue moved to another project is returned with its new key, it is left to getLink
+      var issueId = byKey.get(found.key().toUpperCase(Locale.ROOT));
+      if (issueId != null) {
+        var closed = isClosed(found.toIssue());
+        links.put(issueId, IssueLink.withClosed(jiraClient.link(issueId), closed));
+      }
+    }
+    return links;
+  }
+
   @Override
   public Issue fetchIssue(IssueId issueId) {
     return fetchJiraIssue(issueId);
@@ -101,8 +137,13 @@ public class JiraProject implements IssueTrackingProject {
   public Optional<Boolean> isClosed(IssueId issueId) {
     var issue = fetchJiraIssue(issueId);
     if (issue == null) return Optional.empty();
-    if (StringUtils.isBlank(issue.resolution())) return Optional.of(Boolean.FALSE);
-    return Optional.of(isResolutionClosed(issue.resolution()));
+    return Optional.of(isClosed(issue));
+  }
+
+  /** Whether the issue is closed, based on its resolution. */
+  public boolean isClosed(JiraIssue issue) {
+    if (StringUtils.isBlank(issue.resolution())) return false;
+    return isResolutionClosed(issue.resolution());
   }
 
   boolean isResolutionClosed(String resolution) {
@@ -181,11 +222,50 @@ public class JiraProject implements IssueTrackingProject {
     var projectJql = format("project in (%s)", this.projectKey());
     var jql = projectJql + " AND " + testNameJql;
     if (onlyOpen) {
-      jql = jql + " AND (resolution != Fixed OR resolution is EMPTY)";
+      jql = jql + " AND " + OPEN_JQL;
     }
     return jiraClient.search(jql).stream().map(this::getLink).collect(Collectors.toSet());
   }
 
+  /**
+   * Whether the issue is "open" in the sense of {@link #searchIssuesForTest}, i.e. not resolved as
+   * fixed.
+   */
+  public boolean isOpen(JiraIssue issue) {
+    return !"Fixed".equals(issue.resolution());
+  }
+
+  /**
+   * Fetches all the open issues (see {@link #isOpen}) of the project, with their summary,
+   * description and resolution.
+   */
+  public List<JiraIssue> fetchOpenIssues() {
+    return fetchIssues(OPEN_JQL);
+  }
+
+  /**
+   * Fetches the issues of the project updated since given time, whether they are open or not, with
+   * their summary, description and resolution.
+   *
+   * <p>Issues updated up to a day before {@code updatedSince} may be returned too, see {@link
+   * #getLinks}.
+   */
+  public List<JiraIssue> fetchIssuesUpdatedSince(Instant updatedSince) {
+    return fetchIssues(updatedSinceJql(updatedSince));
+  }
+
+  private List<JiraIssue> fetchIssues(String conditions) {
+    var jql = format("project in (%s) AND %s", projectKey(), conditions);
+    return jiraClient.search(jql, List.of("summary", "description", "resolution")).stream()
+        .map(JiraObject::toIssue)
+        .collect(Collectors.toList());
+  }
+
+  private static String updatedSinceJql(Instant updatedSince) {
+    var since = updatedSince.minus(1, ChronoUnit.DAYS).atOffset(ZoneOffset.UTC).toLocalDate();
+    return format("updated >= \"%s\"", since);
+  }
+
   @Override
   public Markdown markdown() {
     return new JiraMarkdown();
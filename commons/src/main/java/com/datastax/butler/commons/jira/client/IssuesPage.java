@@ -12,17 +12,12 @@ class IssuesPage {
   final int startAt;
   final int maxResults;
   final int total;
-  final List<Item> issues;
+  final List<JiraObject> issues;
 
-  IssuesPage(int startAt, int maxResults, int total, List<Item> issues) {
+  IssuesPage(int startAt, int maxResults, int total, List<JiraObject> issues) {
     this.startAt = startAt;
     this.maxResults = maxResults;
     this.total = total;
     this.issues = issues;
   }
-
-  static class Item {
-    String id;
-    String key;
-  }
 }
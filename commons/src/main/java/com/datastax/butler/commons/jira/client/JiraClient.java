@@ -17,6 +17,7 @@ import com.datastax.butler.commons.web.OkHttpWebClient;
 import com.datastax.butler.commons.web.WebClient;
 import com.datastax.butler.commons.web.WebClient.InvalidRequestException;
 import com.datastax.butler.commons.web.WebClient.NotFoundException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.errorprone.annotations.FormatMethod;
 import java.io.IOException;
 import java.net.URL;
@@ -28,6 +29,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
@@ -45,6 +50,14 @@ public class JiraClient {
   private static final Logger logger = LogManager.getLogger();
   private static final MediaType JSON_TYPE = MediaType.parse("application/json");
 
+  /** Max number of pages of search results fetched concurrently, by all the clients. */
+  private static final int MAX_PAGES_IN_FLIGHT = 4;
+
+  private static final Executor PAGE_FETCHER =
+      Executors.newFixedThreadPool(
+          MAX_PAGES_IN_FLIGHT,
+          new ThreadFactoryBuilder().setNameFormat("jira-search-%d").setDaemon(true).build());
+
   private final String siteUrl;
   private final WebClient webClient;
   private final String credentials;
@@ -217,34 +230,89 @@ public class JiraClient {
   /**
    * Search for issues using Jira Query Language (JQL).
    *
+   * <p>Only the keys of the issues are fetched. The first page of results tells how many issues
+   * there are, the following pages are then fetched concurrently.
+   *
    * @param jql the JQL query to search for.
    * @return the list of issues returned by JIRA for {@code jql}.
    */
   public List<JiraIssueId> search(String jql) {
+    return searchPages(jql, List.of("key"), true).stream()
+        .map(i -> new JiraIssueId(i.key))
+        .collect(Collectors.toUnmodifiableList());
+  }
+
+  /**
+   * Search for issues using Jira Query Language (JQL), fetching only the provided fields of them.
+   *
+   * <p>The query is not validated strictly by JIRA, so that searching issues by keys (e.g. {@code
+   * key in (XYZ-1, XYZ-2)}) does not fail if one of the issues does not exist (anymore).
+   *
+   * @param jql the JQL query to search for.
+   * @param fields the fields of the issues to fetch, e.g. "resolution".
+   * @return the issues returned by JIRA for {@code jql}, with the requested fields.
+   */
+  public List<JiraObject> search(String jql, Collection<String> fields) {
+    return Collections.unmodifiableList(searchPages(jql, fields, false));
+  }
+
+  private List<JiraObject> searchPages(String jql, Collection<String> fields, boolean validate) {
+    List<CompletableFuture<IssuesPage>> pages = new ArrayList<>();
     try {
-      List<JiraIssueId> allIssues = new ArrayList<>();
-      int startAt = 0;
-      while (true) {
-        HttpUrl.Builder request =
-            restApiRequest()
-                .addPathSegment("search")
-                .addQueryParameter("jql", jql)
-                .addQueryParameter("startAt", Integer.toString(startAt));
-        IssuesPage page = jsonConverter.parseIssuesPage(get(request));
-        allIssues.addAll(
-            page.issues.stream()
-                .map(i -> i.key)
-                .map(JiraIssueId::new)
-                .collect(Collectors.toList()));
-        if (page.total <= startAt + page.maxResults) {
-          return Collections.unmodifiableList(allIssues);
-        }
-        startAt += page.maxResults;
+      IssuesPage first = searchPage(jql, fields, validate, 0);
+      List<JiraObject> allIssues = new ArrayList<>(first.issues);
+      int pageSize = first.maxResults;
+      if (pageSize <= 0) return allIssues;
+      for (int startAt = pageSize; startAt < first.total; startAt += pageSize) {
+        int pageStart = startAt;
+        pages.add(
+            CompletableFuture.supplyAsync(
+                () -> {
+                  try {
+                    return searchPage(jql, fields, validate, pageStart);
+                  } catch (InvalidRequestException e) {
+                    throw new CompletionException(e);
+                  }
+                },
+                PAGE_FETCHER));
+      }
+      for (CompletableFuture<IssuesPage> page : pages) {
+        allIssues.addAll(join(page).issues);
       }
+      return allIssues;
     } catch (NotFoundException e) {
-      return Collections.emptyList();
+      return new ArrayList<>();
     } catch (InvalidRequestException e) {
       throw toJiraException(e, "retrieving issues (jql=%s)", jql);
+    } finally {
+      // no-op for the pages already fetched, stops the others if any page failed
+      pages.forEach(page -> page.cancel(false));
+    }
+  }
+
+  private IssuesPage searchPage(
+      String jql, Collection<String> fields, boolean validate, int startAt)
+      throws InvalidRequestException {
+    HttpUrl.Builder request =
+        restApiRequest()
+            .addPathSegment("search")
+            .addQueryParameter("jql", jql)
+            .addQueryParameter("startAt", Integer.toString(startAt));
+    setFieldsToFetch(request, fields);
+    if (!validate) request.addQueryParameter("validateQuery", "false");
+    return jsonConverter.parseIssuesPage(get(request));
+  }
+
+  private static IssuesPage join(CompletableFuture<IssuesPage> page)
+      throws InvalidRequestException {
+    try {
+      return page.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof InvalidRequestException) {
+        throw (InvalidRequestException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw e;
     }
   }
 
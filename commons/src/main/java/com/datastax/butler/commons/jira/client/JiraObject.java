@@ -8,10 +8,15 @@ package com.datastax.butler.commons.jira.client;
 import com.datastax.butler.commons.issues.jira.JiraIssue;
 import com.datastax.butler.commons.issues.jira.JiraIssueId;
 
+/** An issue as returned by JIRA, with the fields that have been requested. */
 public class JiraObject {
   String key;
   JiraIssueFields fields;
 
+  public String key() {
+    return key;
+  }
+
   public JiraIssue toIssue() {
     var id = new JiraIssueId(key);
     var issue = new JiraIssue(id, fields.summary, fields.description);
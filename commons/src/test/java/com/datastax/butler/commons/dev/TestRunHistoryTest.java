@@ -0,0 +1,151 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.commons.dev;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.commons.jenkins.BuildId;
+import com.datastax.butler.commons.jenkins.JobId;
+import com.datastax.butler.commons.jenkins.TestRunOutput;
+import com.datastax.butler.commons.jenkins.TestVariant;
+import com.datastax.butler.commons.jenkins.WorkflowId;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class TestRunHistoryTest {
+
+  private final JobId jobMain = new JobId(WorkflowId.of("ci"), Branch.fromString("main"));
+  private final JobId job10 = new JobId(WorkflowId.of("ci"), Branch.fromString("1.0"));
+
+  private RunDetails run(JobId job, int build, int daysAgo, String variant, char result) {
+    long timestamp = Instant.now().minus(daysAgo, ChronoUnit.DAYS).getEpochSecond() + build;
+    var output = new TestRunOutput("error details", "stack trace", "stdout", "stderr");
+    return new RunDetails(
+        new BuildId(job, build),
+        TestVariant.fromString(variant),
+        null,
+        timestamp,
+        result == 'F',
+        result == 'S',
+        output);
+  }
+
+  private List<RunDetails> runs() {
+    return List.of(
+        run(jobMain, 1, 40, "default", 'F'),
+        run(job10, 2, 20, "special", 'P'),
+        run(jobMain, 3, 10, "default", 'S'),
+        run(jobMain, 4, 5, "special", 'F'),
+        run(job10, 5, 3, "default", 'F'),
+        run(jobMain, 6, 1, "default", 'P'));
+  }
+
+  private static void assertSameDetails(FailureDetails expected, FailureDetails actual) {
+    assertEquals(expected.allRuns(), actual.allRuns());
+    assertEquals(expected.lastByVariants(), actual.lastByVariants());
+    assertEquals(expected.lastByVersions(), actual.lastByVersions());
+    assertEquals(expected.lastFailedByVersion(), actual.lastFailedByVersion());
+    assertEquals(expected.allByVariants().keySet(), actual.allByVariants().keySet());
+    assertEquals(expected.allByVersions().keySet(), actual.allByVersions().keySet());
+    expected
+        .allByVariants()
+        .forEach((k, v) -> assertEquals(Set.copyOf(v), Set.copyOf(actual.allByVariants().get(k))));
+    assertEquals(expected.last(), actual.last());
+    assertEquals(expected.lastFailed(), actual.lastFailed());
+    assertEquals(expected.failures(), actual.failures());
+    assertEquals(expected.lastWeekFailures(), actual.lastWeekFailures());
+    assertEquals(expected.lastMonthFailures(), actual.lastMonthFailures());
+    assertEquals(expected.lastWeekRunsCount(), actual.lastWeekRunsCount());
+    assertEquals(expected.lastMonthRunsCount(), actual.lastMonthRunsCount());
+  }
+
+  @Test
+  void shouldProduceSameDetailsAsBuildingFromRuns() {
+    var runs = runs();
+    var history = TestRunHistory.of(runs);
+    assertSameDetails(FailureDetails.build(runs), history.failureDetails());
+    assertEquals(6, history.size());
+    assertEquals(3, history.lastWeekRunsCount());
+    assertEquals(5, history.lastMonthRunsCount());
+  }
+
+  @Test
+  void shouldDropRunsOfOldestBuilds() {
+    var all = runs();
+    var history = new TestRunHistory();
+    for (int i = 0; i < all.size(); i++) {
+      assertTrue(history.append(all.get(i)));
+      if (i >= 3) {
+        assertEquals(1, history.dropBuild(all.get(i - 3).id()));
+      }
+      var window = all.subList(Math.max(0, i - 2), i + 1);
+      assertSameDetails(FailureDetails.build(new ArrayList<>(window)), history.failureDetails());
+    }
+    assertEquals(2, history.failures());
+    assertEquals(5, history.failureDetails().lastFailed().id().buildNumber());
+    assertEquals(0, history.dropBuild(all.get(0).id()));
+  }
+
+  @Test
+  void shouldForgetLastFailureWhenItFallsOutOfWindow() {
+    var failed = run(jobMain, 1, 3, "default", 'F');
+    var history = TestRunHistory.of(List.of(failed, run(jobMain, 2, 2, "default", 'P')));
+    assertEquals(failed, history.failureDetails().lastFailed());
+    history.dropBuild(failed.id());
+    assertEquals(0, history.failures());
+    assertNull(history.failureDetails().lastFailed());
+    assertTrue(history.failureDetails().lastFailedByVersion().isEmpty());
+  }
+
+  @Test
+  void shouldKeepOutputOfLastFailureOnly() {
+    var history = TestRunHistory.of(runs());
+    var details = history.failureDetails();
+    assertTrue(details.lastFailed().hasOutput());
+    assertEquals(1, details.allRuns().stream().filter(RunDetails::hasOutput).count());
+  }
+
+  @Test
+  void shouldRejectRunsOlderThanNewest() {
+    var history = TestRunHistory.of(runs());
+    assertFalse(history.append(run(jobMain, 7, 30, "default", 'F')));
+    assertEquals(6, history.size());
+  }
+
+  @Test
+  void shouldNotChangeProducedDetails() {
+    var history = TestRunHistory.of(runs().subList(0, 2));
+    var details = history.failureDetails();
+    history.append(run(jobMain, 3, 1, "default", 'F'));
+    assertEquals(2, details.allRuns().size());
+    assertEquals(1, details.failures());
+  }
+
+  @Test
+  void shouldNotChangeCopiedHistory() {
+    var all = runs();
+    var history = TestRunHistory.of(all.subList(0, 5));
+    var details = history.failureDetails();
+    var copy = history.copy();
+    assertSameDetails(details, copy.failureDetails());
+
+    assertEquals(1, copy.dropBuild(all.get(0).id()));
+    assertTrue(copy.append(all.get(5)));
+    assertTrue(copy.append(run(jobMain, 7, 0, "default", 'F')));
+
+    assertEquals(5, history.size());
+    assertTrue(history.startsWith(all.get(0).id()));
+    assertSameDetails(details, history.failureDetails());
+    // the output of the last failure is only cleared in the copy
+    assertTrue(history.failureDetails().lastFailed().hasOutput());
+    assertFalse(copy.startsWith(all.get(0).id()));
+    assertEquals(7, copy.failureDetails().lastFailed().id().buildNumber());
+  }
+}
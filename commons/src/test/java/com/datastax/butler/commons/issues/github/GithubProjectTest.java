@@ -0,0 +1,157 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Please see the included license file for details.
+ */
+package com.datastax.butler.commons.issues.github;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.datastax.butler.commons.issues.IssueId;
+import com.datastax.butler.commons.issues.IssueLink;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link GithubProject} against a local stub of the Github API.
+ *
+ * <p>The stub knows issues 1 to 1000 of "example/repo", the even ones being closed.
+ */
+class GithubProjectTest {
+  private static final Pattern QUERIED_ISSUE = Pattern.compile("i(\\d+): issueOrPullRequest");
+  private static final String ETAG = "\"v1\"";
+
+  private final AtomicInteger graphqlRequests = new AtomicInteger();
+  private final AtomicInteger issueRequests = new AtomicInteger();
+  private final AtomicInteger notModified = new AtomicInteger();
+  private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+  private HttpServer server;
+  private GithubProject project;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/graphql", this::graphql);
+    server.createContext("/repos/example/repo/issues/", this::issue);
+    server.start();
+    var apiUrl = "http://localhost:" + server.getAddress().getPort();
+    var client =
+        new GithubClient(apiUrl, "https://github.example.com", new OkHttpClient(), "secret");
+    project = new GithubProject(client, "example/repo");
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  private static boolean exists(int number) {
+    return number >= 1 && number <= 1000;
+  }
+
+  private void graphql(HttpExchange exchange) throws IOException {
+    graphqlRequests.incrementAndGet();
+    authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+    var query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    var issues = new StringBuilder();
+    var matcher = QUERIED_ISSUE.matcher(query);
+    while (matcher.find()) {
+      int number = Integer.parseInt(matcher.group(1));
+      if (issues.length() > 0) issues.append(',');
+      issues.append(String.format("\"i%d\":", number));
+      if (!exists(number)) {
+        issues.append("null");
+      } else {
+        issues.append(String.format("{\"state\":\"%s\"}", number % 2 == 0 ? "CLOSED" : "OPEN"));
+      }
+    }
+    respond(exchange, 200, "{\"data\":{\"repository\":{" + issues + "}}}");
+  }
+
+  private void issue(HttpExchange exchange) throws IOException {
+    issueRequests.incrementAndGet();
+    var path = exchange.getRequestURI().getPath();
+    int number = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+    if (!exists(number)) {
+      respond(exchange, 404, "{\"message\":\"Not Found\"}");
+    } else if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      notModified.incrementAndGet();
+      exchange.sendResponseHeaders(304, -1);
+      exchange.close();
+    } else {
+      exchange.getResponseHeaders().add("ETag", ETAG);
+      var state = number % 2 == 0 ? "closed" : "open";
+      respond(
+          exchange,
+          200,
+          String.format(
+              "{\"number\":%d,\"title\":\"Issue %d\",\"body\":\"\",\"state\":\"%s\"}",
+              number, number, state));
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+    var body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+  private static GithubIssueId issue(int number) {
+    return GithubIssueId.of("example/repo", number);
+  }
+
+  @Test
+  void shouldFetchLinksOfManyIssuesInFewQueries() {
+    List<IssueId> issueIds = new ArrayList<>();
+    for (int number = 1; number <= 150; number++) {
+      issueIds.add(issue(number));
+    }
+    issueIds.add(issue(1001));
+
+    var links = project.getLinks(issueIds, null);
+    assertEquals(2, graphqlRequests.get());
+    assertEquals(150, links.size());
+    IssueLink link = links.get(issueIds.get(1));
+    assertTrue(link.closed());
+    assertEquals("https://github.example.com/example/repo/issues/2", link.url().toString());
+    assertFalse(links.get(issueIds.get(0)).closed());
+    assertEquals(List.of("token secret", "token secret"), authorizations);
+  }
+
+  @Test
+  void shouldRevalidateFetchedIssues() {
+    assertEquals(true, project.isClosed(issue(42)).orElseThrow());
+    assertEquals(true, project.isClosed(issue(42)).orElseThrow());
+    assertEquals("Issue 42", project.fetchIssue(issue(42)).title());
+    assertEquals(3, issueRequests.get());
+    assertEquals(2, notModified.get());
+    assertFalse(project.getLink(issue(43)).closed());
+  }
+
+  @Test
+  void shouldNotFindMissingIssue() {
+    assertTrue(project.isClosed(issue(1001)).isEmpty());
+    assertNull(project.fetchIssue(issue(1001)));
+  }
+
+  @Test
+  void shouldRejectIssuesOfOtherRepositories() {
+    var other = GithubIssueId.of("example/other", 1);
+    assertThrows(IllegalArgumentException.class, () -> project.getLink(other));
+  }
+}
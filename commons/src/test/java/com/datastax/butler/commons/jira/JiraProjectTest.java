@@ -7,10 +7,16 @@ package com.datastax.butler.commons.jira;
 
 import static freemarker.template.Configuration.VERSION_2_3_31;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
+import com.datastax.butler.commons.issues.IssueId;
 import com.datastax.butler.commons.issues.jira.JiraIssue;
+import com.datastax.butler.commons.issues.jira.JiraIssueId;
 import com.datastax.butler.commons.issues.jira.JiraProject;
 import com.datastax.butler.commons.jenkins.TestCategory;
 import com.datastax.butler.commons.jenkins.TestName;
@@ -19,6 +25,8 @@ import freemarker.cache.ClassTemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateException;
 import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
 import org.json.JSONException;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -55,6 +63,24 @@ class JiraProjectTest {
     verify(jiraClient, times(1)).search(expectedJql);
   }
 
+  @Test
+  void shouldFetchStatusOfIssuesInBatch() {
+    var jiraClient = Mockito.mock(JiraClient.class);
+    var project = new JiraProject(jiraClient, "XYZ");
+    var fields = List.of("resolution", "status");
+    var issueIds = List.<IssueId>of(new JiraIssueId("XYZ-1"), new JiraIssueId("XYZ-2"));
+    when(jiraClient.search(anyString(), eq(fields))).thenReturn(List.of());
+
+    assertTrue(project.getLinks(issueIds, null).isEmpty());
+    verify(jiraClient, times(1)).search("key in (XYZ-1, XYZ-2)", fields);
+
+    project.getLinks(issueIds, Instant.parse("2021-03-02T10:15:30Z"));
+    var jql = "key in (XYZ-1, XYZ-2) AND updated >= \"2021-03-01\"";
+    verify(jiraClient, times(1)).search(jql, fields);
+    assertTrue(project.getLinks(List.of(), null).isEmpty());
+    verifyNoMoreInteractions(jiraClient);
+  }
+
   @Test
   void shouldRenderJiraIssueUsingTemplate() throws TemplateException, IOException, JSONException {
     // given
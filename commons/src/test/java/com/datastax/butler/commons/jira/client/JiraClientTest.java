@@ -5,11 +5,13 @@
  */
 package com.datastax.butler.commons.jira.client;
 
+import static java.util.stream.Collectors.toList;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.datastax.butler.commons.issues.jira.JiraIssueId;
 import com.datastax.butler.commons.web.Credentials;
 import com.datastax.butler.commons.web.TestJsonWebClient;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 /** Tests the {@link JiraClient} using faked answers through {@link TestJsonWebClient}. */
@@ -44,6 +46,23 @@ class JiraClientTest {
     assertTrue(found.isEmpty());
   }
 
+  @Test
+  void shouldFetchAllPagesOfSearchResults() {
+    var found = client.search("paged");
+    var keys = found.stream().map(JiraIssueId::toString).collect(toList());
+    assertEquals(List.of("PRJ-1", "PRJ-2", "PRJ-3", "PRJ-4", "PRJ-5"), keys);
+  }
+
+  @Test
+  void shouldSearchIssuesWithRequestedFields() {
+    var found = client.search("key in (PRJ-42, PRJ-44)", List.of("resolution", "status"));
+    var keys = found.stream().map(JiraObject::key).collect(toList());
+    assertEquals(List.of("PRJ-42", "PRJ-44"), keys);
+    assertEquals("Done", found.get(0).toIssue().resolution());
+    assertNull(found.get(1).toIssue().resolution());
+    assertEquals("Open", found.get(1).toIssue().status());
+  }
+
   @Test
   void shouldTryCreateIssueViaPostRequest() {
     var jiraClient = new JiraClient("http://jira.example.com", webClient);